@@ -23,18 +23,37 @@ import javax.swing.UIManager;
 import javax.swing.JFrame;
 import turtle.windowing.TurtleFrame;
 import turtle.handlers.*;
+import turtle.statistics.StatisticsBean;
 
 public class Turtle {
   private static void setupListeners(TurtleFrame frame) {
     EventBus.registerCommandListener(frame);
+    // the frame must hear of user input before the InformationHandler echoes it (see #find)
+    EventBus.registerEventListener(frame);
     InformationHandler infh = new InformationHandler(frame);
     EventBus.registerEventListener(infh);
     ConnectionHandler conh = new ConnectionHandler();
     EventBus.registerCommandListener(conh);
+    EventBus.registerEventListener(conh);
     TelnetHandler telh = new TelnetHandler(conh);
     EventBus.registerEventListener(telh);
+    EventBus.registerCommandListener(telh);
     CommandParsingHandler cph = new CommandParsingHandler();
     EventBus.registerEventListener(cph);
+    StatisticsHandler sth = new StatisticsHandler();
+    EventBus.registerCommandListener(sth);
+    EventBus.registerEventListener(sth);
+    TimerHandler tih = new TimerHandler();
+    EventBus.registerCommandListener(tih);
+    MapperHandler mah = new MapperHandler();
+    EventBus.registerCommandListener(mah);
+    EventBus.registerEventListener(mah);
+    LogGrepHandler lgh = new LogGrepHandler();
+    EventBus.registerCommandListener(lgh);
+    PromptHandler prh = new PromptHandler();
+    EventBus.registerEventListener(prh);
+    EventBus.registerCommandListener(prh);
+    StatisticsBean.register();
   }
 
   public static void main(String[] args) {
@@ -0,0 +1,62 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A CharsetCommand asks to show or change the character set used for text to and from the
+ * server: #charset shows the current one, and #charset <name> (for instance #charset cp437)
+ * changes it, both for the current connection and for future ones.
+ */
+public class CharsetCommand implements Command {
+  Charset _charset;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("charset")) {
+      return parser.parseError(text, "ERROR: CharsetCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String name = parser.wordsFrom(text, 1);
+    if (name.equals("")) return new CharsetCommand(null);
+    try {
+      if (Charset.isSupported(name)) return new CharsetCommand(Charset.forName(name));
+    }
+    catch (IllegalCharsetNameException e) { }
+    return parser.parseError(text, "Unknown character set [" + name + "].");
+  }
+
+  /** Creates a command to change to the given charset, or (for null) to show the current one. */
+  public CharsetCommand(Charset charset) {
+    _charset = charset;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.CHARSETCMD;
+  }
+
+  /** Returns the character set to use, or null if the current one should be shown. */
+  public Charset queryCharset() {
+    return _charset;
+  }
+}
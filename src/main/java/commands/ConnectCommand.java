@@ -22,27 +22,41 @@ package turtle.commands;
 import turtle.interfaces.immutable.Command;
 import turtle.interfaces.CommandParser;
 
+/**
+ * A ConnectCommand asks to connect to a server: #connect <host> [<port>] [ssl], where "ssl" (or
+ * "tls") asks for the connection to be encrypted.  The port is 23 by default, or 992 (telnets)
+ * for an encrypted connection.
+ */
 public class ConnectCommand implements Command {
   String _host;
   int _port;
+  boolean _tls;
 
   public static Command parse(String text, CommandParser parser) {
     String host = parser.word(text, 1);
     String port = parser.word(text, 2);
-    
+    String security = parser.word(text, 3).toLowerCase();
+    if (port.equalsIgnoreCase("ssl") || port.equalsIgnoreCase("tls")) {
+      security = port.toLowerCase();
+      port = "";
+    }
+    boolean tls = security.equals("ssl") || security.equals("tls");
+    int extra = port.equals("") ? 2 : 3;
+
     if (!parser.queryCommand(text).equals("connect")) {
       return parser.parseError(text, "ERROR: ConnectCommand command called when command is [" +
                                      parser.queryCommand(text) + "]");
     }
-    if (!parser.wordsFrom(text, 3).equals("")) {
-      return parser.parseError(text, "Expected at most 2 arguments in #connect (host and port).");
+    if (!parser.wordsFrom(text, tls ? extra + 1 : extra).equals("")) {
+      return parser.parseError(text, "Expected at most 3 arguments in #connect " +
+                                     "(host, port and ssl).");
     }
     if (host.equals("")) {
       return parser.parseError(text, "Expected at least 1 argument in #connect (host).");
     }
 
     int p;
-    if (port.equals("")) p = 23;
+    if (port.equals("")) p = tls ? 992 : 23;
     else {
       try { p = Integer.parseInt(port); }
       catch (NumberFormatException e) {
@@ -50,13 +64,18 @@ public class ConnectCommand implements Command {
       }
     }
     
-    return new ConnectCommand(host, p);
+    return new ConnectCommand(host, p, tls);
   }
 
   public ConnectCommand(String host, int port) {
+    this(host, port, false);
+  }
+
+  public ConnectCommand(String host, int port, boolean tls) {
     if (host == null) throw new Error("ConnectCommand given an empty host.");
     _host = host;
     _port = port;
+    _tls = tls;
   }
 
   public CommandKind queryCommandKind() {
@@ -70,4 +89,9 @@ public class ConnectCommand implements Command {
   public int queryPort() {
     return _port;
   }
+
+  /** Returns whether the connection should be encrypted with TLS. */
+  public boolean queryTls() {
+    return _tls;
+  }
 }
@@ -0,0 +1,64 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A DebugCommand sets how much debugging output is shown for a part of the client.  Currently
+ * the only part is "telnet": #debug telnet [on|all|off], where "on" shows option negotiation,
+ * "all" also shows subnegotiation (such as GMCP and MSDP data), and no argument toggles between
+ * on and off.
+ */
+public class DebugCommand implements Command {
+  public enum Level { OFF, NEGOTIATION, ALL, TOGGLE };
+  Level _level;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("debug")) {
+      return parser.parseError(text, "ERROR: DebugCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String part = parser.word(text, 1).toLowerCase();
+    if (!part.equals("telnet")) {
+      return parser.parseError(text, "Unexpected argument [" + part + "]: expected telnet.");
+    }
+    String level = parser.wordsFrom(text, 2).toLowerCase();
+    if (level.equals("")) return new DebugCommand(Level.TOGGLE);
+    if (level.equals("on")) return new DebugCommand(Level.NEGOTIATION);
+    if (level.equals("all")) return new DebugCommand(Level.ALL);
+    if (level.equals("off")) return new DebugCommand(Level.OFF);
+    return parser.parseError(text, "Unexpected argument [" + level + "]: expected " +
+                                   "nothing, on, all or off.");
+  }
+
+  public DebugCommand(Level level) {
+    _level = level;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.DEBUGCMD;
+  }
+
+  public Level queryLevel() {
+    return _level;
+  }
+}
@@ -0,0 +1,69 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A FanoutCommand sends the same command to several connections at once: #all <command> sends it
+ * to the main connection and all sessions, and #group <name> <command> to the sessions in the
+ * given group.
+ */
+public class FanoutCommand implements Command {
+  String _group;
+  String _command;
+
+  public static Command parse(String text, CommandParser parser) {
+    String cmd = parser.queryCommand(text);
+    if (cmd.equals("all")) {
+      String command = parser.wordsFrom(text, 1);
+      if (command.equals("")) return parser.parseError(text, "Expected #all <command>.");
+      return new FanoutCommand(null, command);
+    }
+    if (!cmd.equals("group")) {
+      return parser.parseError(text, "ERROR: FanoutCommand.parse called when command is [" +
+                                     cmd + "]");
+    }
+    String group = parser.word(text, 1);
+    String command = parser.wordsFrom(text, 2);
+    if (command.equals("")) return parser.parseError(text, "Expected #group <name> <command>.");
+    return new FanoutCommand(group, command);
+  }
+
+  /** Creates a command to send the given text to the given group, or to all if group is null. */
+  public FanoutCommand(String group, String command) {
+    _group = group;
+    _command = command;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.FANOUTCMD;
+  }
+
+  /** Returns the name of the group to send to, or null for all connections. */
+  public String queryGroup() {
+    return _group;
+  }
+
+  public String queryCommand() {
+    return _command;
+  }
+}
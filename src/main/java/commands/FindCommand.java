@@ -0,0 +1,81 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A FindCommand asks to search the output window: #find <text> looks for the most recent line
+ * containing <text> (ignoring case), #find /<regex>/ does the same for a regular expression, and
+ * #find without arguments moves on to the next (older) match.  The PREVIOUS action, which moves
+ * back to a more recent match, is only given through the keyboard.
+ */
+public class FindCommand implements Command {
+  public enum Action { SEARCH, NEXT, PREVIOUS };
+  Action _action;
+  String _text;
+  Pattern _pattern;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("find")) {
+      return parser.parseError(text, "ERROR: FindCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String query = parser.wordsFrom(text, 1);
+    if (query.equals("")) return new FindCommand(Action.NEXT, null, null);
+    if (query.length() > 2 && query.startsWith("/") && query.endsWith("/")) {
+      String regex = query.substring(1, query.length() - 1);
+      try { return new FindCommand(Action.SEARCH, query, Pattern.compile(regex,
+                                   Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)); }
+      catch (PatternSyntaxException e) {
+        return parser.parseError(text, "Illegal regular expression: " + e.getDescription());
+      }
+    }
+    return new FindCommand(Action.SEARCH, query, null);
+  }
+
+  /** Creates a FindCommand; for Action.SEARCH, pattern is null for a literal search. */
+  public FindCommand(Action action, String text, Pattern pattern) {
+    _action = action;
+    _text = text;
+    _pattern = pattern;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.FINDCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  /** For Action.SEARCH, returns the query as given (including the slashes of a regex). */
+  public String queryText() {
+    return _text;
+  }
+
+  /** For a regular expression search, returns the expression; otherwise returns null. */
+  public Pattern queryPattern() {
+    return _pattern;
+  }
+}
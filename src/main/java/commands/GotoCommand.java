@@ -0,0 +1,54 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A GotoCommand asks to walk to the given room of the automapper's map, which is identified
+ * either by its number or by (part of) its name.
+ */
+public class GotoCommand implements Command {
+  String _target;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("goto")) {
+      return parser.parseError(text, "ERROR: GotoCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String target = parser.wordsFrom(text, 1).trim();
+    if (target.equals("")) return parser.parseError(text, "Expected #goto <room>.");
+    return new GotoCommand(target);
+  }
+
+  public GotoCommand(String target) {
+    _target = target;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.GOTOCMD;
+  }
+
+  /** Returns the room number or name that was given. */
+  public String queryTarget() {
+    return _target;
+  }
+}
@@ -0,0 +1,80 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A LogGrepCommand asks to search the archived session logs: #loggrep <text> looks for lines
+ * containing <text> (ignoring case), #loggrep /<regex>/ for lines matching a regular expression,
+ * and #loggrep without arguments cancels a search that is still running.
+ */
+public class LogGrepCommand implements Command {
+  public enum Action { SEARCH, CANCEL };
+  Action _action;
+  String _text;
+  Pattern _pattern;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("loggrep")) {
+      return parser.parseError(text, "ERROR: LogGrepCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String query = parser.wordsFrom(text, 1);
+    if (query.equals("")) return new LogGrepCommand(Action.CANCEL, null, null);
+    if (query.length() > 2 && query.startsWith("/") && query.endsWith("/")) {
+      String regex = query.substring(1, query.length() - 1);
+      try { return new LogGrepCommand(Action.SEARCH, query, Pattern.compile(regex,
+                                      Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)); }
+      catch (PatternSyntaxException e) {
+        return parser.parseError(text, "Illegal regular expression: " + e.getDescription());
+      }
+    }
+    return new LogGrepCommand(Action.SEARCH, query, null);
+  }
+
+  /** Creates a LogGrepCommand; for Action.SEARCH, pattern is null for a literal search. */
+  public LogGrepCommand(Action action, String text, Pattern pattern) {
+    _action = action;
+    _text = text;
+    _pattern = pattern;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.LOGGREPCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  /** For Action.SEARCH, returns the query as given (including the slashes of a regex). */
+  public String queryText() {
+    return _text;
+  }
+
+  /** For a regular expression search, returns the expression; otherwise returns null. */
+  public Pattern queryPattern() {
+    return _pattern;
+  }
+}
@@ -0,0 +1,68 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A MapCommand asks to show information about the automapper's map, to save it to or load it
+ * from a file (#map save [file] / #map load [file]), or to clear it.
+ */
+public class MapCommand implements Command {
+  public enum Action { SHOW, SAVE, LOAD, CLEAR };
+  public static final String DEFAULTFILE = "turtle.map";
+  Action _action;
+  String _file;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("map")) {
+      return parser.parseError(text, "ERROR: MapCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String action = parser.word(text, 1).toLowerCase();
+    String file = parser.wordsFrom(text, 2);
+    if (file.equals("")) file = DEFAULTFILE;
+    if (action.equals("")) return new MapCommand(Action.SHOW, null);
+    if (action.equals("save")) return new MapCommand(Action.SAVE, file);
+    if (action.equals("load")) return new MapCommand(Action.LOAD, file);
+    if (action.equals("clear")) return new MapCommand(Action.CLEAR, null);
+    return parser.parseError(text, "Unexpected argument [" + action + "]: expected " +
+                                   "nothing, save, load or clear.");
+  }
+
+  public MapCommand(Action action, String file) {
+    _action = action;
+    _file = file;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.MAPCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  /** For Action.SAVE and Action.LOAD, returns the file to use; otherwise returns null. */
+  public String queryFile() {
+    return _file;
+  }
+}
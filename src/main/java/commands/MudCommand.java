@@ -20,13 +20,32 @@
 package turtle.commands;
 
 import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
 
-/** A MudCommand is a string to be sent to the server. */
+/**
+ * A MudCommand is a string to be sent to the server.
+ * An urgent MudCommand (given as #urgent <command>) is sent before any normal commands that are
+ * still waiting to be sent, for instance because of a long speedwalk.
+ */
 public class MudCommand implements Command {
   String _cmd;
+  boolean _urgent;
+
+  public static Command parseUrgent(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("urgent")) {
+      return parser.parseError(text, "ERROR: MudCommand.parseUrgent called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    return new MudCommand(parser.wordsFrom(text, 1), true);
+  }
 
   public MudCommand(String text) {
+    this(text, false);
+  }
+
+  public MudCommand(String text, boolean urgent) {
     _cmd = text;
+    _urgent = urgent;
   }
 
   public CommandKind queryCommandKind() {
@@ -36,4 +55,8 @@ public class MudCommand implements Command {
   public String queryText() {
     return _cmd;
   }
+
+  public boolean queryUrgent() {
+    return _urgent;
+  }
 }
@@ -0,0 +1,86 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A PaceCommand asks to show or change how fast commands are sent to the server:
+ * #pace shows the current limits, #pace off disables pacing, and #pace <rate> [burst] sends at
+ * most <rate> commands per second, in bursts of at most [burst] commands.
+ */
+public class PaceCommand implements Command {
+  public enum Action { SHOW, OFF, SET };
+  Action _action;
+  double _rate;
+  int _burst;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("pace")) {
+      return parser.parseError(text, "ERROR: PaceCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String first = parser.word(text, 1).toLowerCase();
+    String second = parser.word(text, 2);
+    if (first.equals("")) return new PaceCommand(Action.SHOW, 0, 0);
+    if (first.equals("off") && second.equals("")) return new PaceCommand(Action.OFF, 0, 0);
+    if (!parser.word(text, 3).equals("")) {
+      return parser.parseError(text, "#pace takes at most two arguments.");
+    }
+    double rate;
+    int burst = -1;
+    try {
+      rate = Double.parseDouble(first);
+      if (!second.equals("")) burst = Integer.parseInt(second);
+    }
+    catch (NumberFormatException e) {
+      return parser.parseError(text, "Expected #pace, #pace off or #pace <rate> [burst], " +
+                                     "where rate and burst are numbers.");
+    }
+    if (!(rate > 0) || (!second.equals("") && burst <= 0)) {
+      return parser.parseError(text, "The rate and burst size should be positive.");
+    }
+    return new PaceCommand(Action.SET, rate, burst);
+  }
+
+  /** For Action.SET, a burst of -1 indicates that the burst size should not be changed. */
+  public PaceCommand(Action action, double rate, int burst) {
+    _action = action;
+    _rate = rate;
+    _burst = burst;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.PACECMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  public double queryRate() {
+    return _rate;
+  }
+
+  public int queryBurst() {
+    return _burst;
+  }
+}
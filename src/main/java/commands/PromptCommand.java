@@ -0,0 +1,70 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A PromptCommand asks to show or change how long to wait after an incomplete line before it is
+ * considered a prompt (for servers that do not mark their prompts with GA or EOR):
+ * #prompt shows the current timeout, #prompt off disables the timeout, and #prompt <ms> sets it.
+ */
+public class PromptCommand implements Command {
+  public enum Action { SHOW, OFF, SET };
+  Action _action;
+  int _timeout;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("prompt")) {
+      return parser.parseError(text, "ERROR: PromptCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String arg = parser.wordsFrom(text, 1).toLowerCase();
+    if (arg.equals("")) return new PromptCommand(Action.SHOW, 0);
+    if (arg.equals("off")) return new PromptCommand(Action.OFF, 0);
+    int timeout;
+    try { timeout = Integer.parseInt(arg); }
+    catch (NumberFormatException e) { timeout = -1; }
+    if (timeout <= 0) {
+      return parser.parseError(text, "Expected #prompt, #prompt off or #prompt <ms>, where ms " +
+                                     "is a positive number of milliseconds.");
+    }
+    return new PromptCommand(Action.SET, timeout);
+  }
+
+  public PromptCommand(Action action, int timeout) {
+    _action = action;
+    _timeout = timeout;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.PROMPTCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  /** For Action.SET, returns the new timeout in milliseconds. */
+  public int queryTimeout() {
+    return _timeout;
+  }
+}
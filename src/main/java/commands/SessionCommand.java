@@ -0,0 +1,102 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import java.util.ArrayList;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A SessionCommand asks to list, open or close the named sessions which are kept next to the
+ * main connection (for instance to play a party of characters): #session lists them,
+ * #session open <name> <host> <port> [<group> ...] connects a new session and puts it in the
+ * given groups, and #session close <name> disconnects it again.
+ */
+public class SessionCommand implements Command {
+  public enum Action { LIST, OPEN, CLOSE };
+  Action _action;
+  String _name;
+  String _host;
+  int _port;
+  ArrayList<String> _groups;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("session")) {
+      return parser.parseError(text, "ERROR: SessionCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String action = parser.word(text, 1).toLowerCase();
+    String name = parser.word(text, 2);
+    if (action.equals("")) return new SessionCommand(Action.LIST, null, null, 0, null);
+    if (action.equals("close") && !name.equals("") && parser.word(text, 3).equals("")) {
+      return new SessionCommand(Action.CLOSE, name, null, 0, null);
+    }
+    if (!action.equals("open") || parser.word(text, 4).equals("")) {
+      return parser.parseError(text, "Expected #session, #session open <name> <host> <port> " +
+                                     "[<group> ...] or #session close <name>.");
+    }
+    int port;
+    try { port = Integer.parseInt(parser.word(text, 4)); }
+    catch (NumberFormatException e) {
+      return parser.parseError(text, "Port should be numeric, but is [" + parser.word(text, 4) +
+                                     "]");
+    }
+    ArrayList<String> groups = new ArrayList<String>();
+    for (int i = 5; !parser.word(text, i).equals(""); i++) groups.add(parser.word(text, i));
+    return new SessionCommand(Action.OPEN, name, parser.word(text, 3), port, groups);
+  }
+
+  public SessionCommand(Action action, String name, String host, int port,
+                        ArrayList<String> groups) {
+    _action = action;
+    _name = name;
+    _host = host;
+    _port = port;
+    _groups = groups == null ? new ArrayList<String>() : groups;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.SESSIONCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  /** For Action.OPEN and Action.CLOSE, returns the name of the session. */
+  public String queryName() {
+    return _name;
+  }
+
+  /** For Action.OPEN, returns the host to connect to. */
+  public String queryHost() {
+    return _host;
+  }
+
+  /** For Action.OPEN, returns the port to connect to. */
+  public int queryPort() {
+    return _port;
+  }
+
+  /** For Action.OPEN, returns the groups that the new session should be in (possibly none). */
+  public ArrayList<String> queryGroups() {
+    return _groups;
+  }
+}
@@ -0,0 +1,55 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/** A StatsCommand asks to show, enable, disable or reset the pipeline statistics. */
+public class StatsCommand implements Command {
+  public enum Action { SHOW, ON, OFF, RESET };
+  Action _action;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("stats")) {
+      return parser.parseError(text, "ERROR: StatsCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String action = parser.wordsFrom(text, 1).toLowerCase();
+    if (action.equals("")) return new StatsCommand(Action.SHOW);
+    if (action.equals("on")) return new StatsCommand(Action.ON);
+    if (action.equals("off")) return new StatsCommand(Action.OFF);
+    if (action.equals("reset")) return new StatsCommand(Action.RESET);
+    return parser.parseError(text, "Unexpected argument [" + action + "]: expected " +
+                                   "nothing, on, off or reset.");
+  }
+
+  public StatsCommand(Action action) {
+    _action = action;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.STATSCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+}
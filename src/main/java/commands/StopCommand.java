@@ -0,0 +1,41 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/** A StopCommand asks to cancel all commands that are still waiting to be sent to the server. */
+public class StopCommand implements Command {
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("stop")) {
+      return parser.parseError(text, "ERROR: StopCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    if (!parser.wordsFrom(text, 1).equals("")) {
+      return parser.parseError(text, "#stop does not take any arguments.");
+    }
+    return new StopCommand();
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.STOPCMD;
+  }
+}
@@ -0,0 +1,58 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A TerminalCommand switches the output between the normal scrolling window and a terminal
+ * screen, which follows cursor movement and other VT100/xterm codes (for MUDs with full-screen
+ * editors or status lines): #terminal [on|off], where no argument toggles between the two.
+ */
+public class TerminalCommand implements Command {
+  public enum Action { ON, OFF, TOGGLE };
+  Action _action;
+
+  public static Command parse(String text, CommandParser parser) {
+    if (!parser.queryCommand(text).equals("terminal")) {
+      return parser.parseError(text, "ERROR: TerminalCommand.parse called when command is [" +
+                                     parser.queryCommand(text) + "]");
+    }
+    String arg = parser.wordsFrom(text, 1).toLowerCase();
+    if (arg.equals("")) return new TerminalCommand(Action.TOGGLE);
+    if (arg.equals("on")) return new TerminalCommand(Action.ON);
+    if (arg.equals("off")) return new TerminalCommand(Action.OFF);
+    return parser.parseError(text, "Unexpected argument [" + arg + "]: expected nothing, on or " +
+                                   "off.");
+  }
+
+  public TerminalCommand(Action action) {
+    _action = action;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.TERMINALCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+}
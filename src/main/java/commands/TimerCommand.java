@@ -0,0 +1,100 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.commands;
+
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandParser;
+
+/**
+ * A TimerCommand asks to list, add or remove timers, or to run a command after a delay:
+ * #timer lists all timers, #timer <name> <seconds> <command> runs <command> every <seconds>
+ * seconds, #timer <name> off removes the timer again, and #delay <seconds> <command> runs
+ * <command> once, after <seconds> seconds.
+ */
+public class TimerCommand implements Command {
+  public enum Action { LIST, ADD, REMOVE, ONCE };
+  public static final double MAXSECONDS = 365 * 24 * 3600;
+  Action _action;
+  String _name;
+  double _seconds;
+  String _command;
+
+  public static Command parse(String text, CommandParser parser) {
+    String cmd = parser.queryCommand(text);
+    if (cmd.equals("delay")) return parseTimer(text, parser, null, 1);
+    if (!cmd.equals("timer")) {
+      return parser.parseError(text, "ERROR: TimerCommand.parse called when command is [" +
+                                     cmd + "]");
+    }
+    String name = parser.word(text, 1);
+    if (name.equals("")) return new TimerCommand(Action.LIST, null, 0, null);
+    String rest = parser.wordsFrom(text, 2);
+    if (rest.equalsIgnoreCase("off")) return new TimerCommand(Action.REMOVE, name, 0, null);
+    return parseTimer(text, parser, name, 2);
+  }
+
+  /** Helper function for parse: reads <seconds> <command> starting at the given word. */
+  private static Command parseTimer(String text, CommandParser parser, String name, int word) {
+    String usage = name == null ? "#delay <seconds> <command>" : "#timer <name> <seconds> " +
+                                  "<command> or #timer <name> off";
+    double seconds;
+    try { seconds = Double.parseDouble(parser.word(text, word)); }
+    catch (NumberFormatException e) { return parser.parseError(text, "Expected " + usage + "."); }
+    if (!(seconds > 0)) return parser.parseError(text, "The number of seconds should be positive.");
+    if (!(seconds <= MAXSECONDS)) {
+      return parser.parseError(text, "The number of seconds should be at most " +
+                                     (long)MAXSECONDS + " (a year).");
+    }
+    String command = parser.wordsFrom(text, word + 1);
+    if (command.equals("")) return parser.parseError(text, "Expected " + usage + ".");
+    if (name == null) return new TimerCommand(Action.ONCE, null, seconds, command);
+    return new TimerCommand(Action.ADD, name, seconds, command);
+  }
+
+  public TimerCommand(Action action, String name, double seconds, String command) {
+    _action = action;
+    _name = name;
+    _seconds = seconds;
+    _command = command;
+  }
+
+  public CommandKind queryCommandKind() {
+    return CommandKind.TIMERCMD;
+  }
+
+  public Action queryAction() {
+    return _action;
+  }
+
+  /** Returns the name of the timer, or null for Action.LIST and Action.ONCE. */
+  public String queryName() {
+    return _name;
+  }
+
+  /** Returns the interval (or for Action.ONCE, the delay) in seconds. */
+  public double querySeconds() {
+    return _seconds;
+  }
+
+  /** Returns the command that should be run when the timer goes off. */
+  public String queryCommand() {
+    return _command;
+  }
+}
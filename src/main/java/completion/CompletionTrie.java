@@ -0,0 +1,290 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.completion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A CompletionTrie holds a vocabulary of (lower case) words with a score for each, and quickly
+ * finds the highest scoring words that start with a given prefix.
+ *
+ * The trie is stored in parallel arrays indexed by node (node 0 being the root): the character
+ * that leads to the node, its first child, its next sibling and its parent, the score of the word
+ * ending at the node (0 if no word ends there), and the best score anywhere in the subtree below
+ * it.  The latter lets complete() visit the subtree of the prefix in order of decreasing score,
+ * so it only looks at a handful of nodes even when the prefix has many completions.
+ *
+ * Recent words should count for more than old ones, so scores decay over time.  Rather than
+ * lowering all scores, this is done by letting the amount that a new occurrence adds grow by a
+ * constant factor with each word; once it becomes very large, all scores are divided by it.  Since
+ * this scales every score by the same factor, the order of the words is not affected.
+ *
+ * A CompletionTrie is not thread-safe.
+ */
+public class CompletionTrie {
+  public static final int MAXLENGTH = 32;
+  private static final float RESCALE = 1e20f;
+
+  private char[] _label;
+  private int[] _child;
+  private int[] _sibling;
+  private int[] _parent;
+  private float[] _score;
+  private float[] _best;
+  private int _nodes;
+  private int _words;
+  private float _increment;
+  private float _growth;
+
+  /**
+   * Creates an empty trie in which the weight of an occurrence halves after halfLife further
+   * words have been added.
+   */
+  public CompletionTrie(int halfLife) {
+    this(halfLife, 1024);
+  }
+
+  private CompletionTrie(int halfLife, int capacity) {
+    _label = new char[capacity];
+    _child = new int[capacity];
+    _sibling = new int[capacity];
+    _parent = new int[capacity];
+    _score = new float[capacity];
+    _best = new float[capacity];
+    _nodes = 1;
+    _words = 0;
+    _increment = 1;
+    _growth = (float)Math.pow(2, 1.0 / halfLife);
+    _parent[0] = -1;
+  }
+
+  /** Returns the number of distinct words in the trie. */
+  public int queryWordCount() {
+    return _words;
+  }
+
+  /** Returns the number of nodes in the trie. */
+  public int queryNodeCount() {
+    return _nodes;
+  }
+
+  /** Returns the (approximate) number of bytes used by the trie. */
+  public long queryMemoryUse() {
+    return 22L * _label.length;
+  }
+
+  /** Returns the current score of the given word, or 0 if it is not in the trie. */
+  public float queryScore(String word) {
+    int node = findNode(word.toLowerCase());
+    if (node <= 0) return 0;
+    return _score[node] / _increment;
+  }
+
+  /** Returns the child of the given node reached by c, or 0 if there is none. */
+  private int findChild(int node, char c) {
+    for (int child = _child[node]; child != 0; child = _sibling[child]) {
+      if (_label[child] == c) return child;
+    }
+    return 0;
+  }
+
+  /** Returns the node for the given (lower case) word, or -1 if there is none. */
+  private int findNode(CharSequence word) {
+    int node = 0;
+    for (int i = 0; i < word.length() && node >= 0; i++) {
+      node = findChild(node, word.charAt(i));
+      if (node == 0) node = -1;
+    }
+    return node;
+  }
+
+  private int newNode(int parent, char c) {
+    if (_nodes == _label.length) {
+      int capacity = 2 * _nodes;
+      _label = Arrays.copyOf(_label, capacity);
+      _child = Arrays.copyOf(_child, capacity);
+      _sibling = Arrays.copyOf(_sibling, capacity);
+      _parent = Arrays.copyOf(_parent, capacity);
+      _score = Arrays.copyOf(_score, capacity);
+      _best = Arrays.copyOf(_best, capacity);
+    }
+    int node = _nodes++;
+    _label[node] = c;
+    _child[node] = 0;
+    _sibling[node] = _child[parent];
+    _parent[node] = parent;
+    _score[node] = 0;
+    _best[node] = 0;
+    _child[parent] = node;
+    return node;
+  }
+
+  /**
+   * Records an occurrence of the word text[start..end-1] with the given weight.  The word should
+   * already be in lower case; words longer than MAXLENGTH are ignored.
+   */
+  public void add(CharSequence text, int start, int end, float weight) {
+    if (end <= start || end - start > MAXLENGTH) return;
+    int node = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      int child = findChild(node, c);
+      node = child == 0 ? newNode(node, c) : child;
+    }
+    if (_score[node] == 0) _words++;
+    float score = _score[node] + weight * _increment;
+    _score[node] = score;
+    for (; node >= 0 && _best[node] < score; node = _parent[node]) _best[node] = score;
+    _increment *= _growth;
+    if (_increment > RESCALE) rescale();
+  }
+
+  /** Records an occurrence of the given word. */
+  public void add(String word, float weight) {
+    add(word.toLowerCase(), 0, word.length(), weight);
+  }
+
+  /**
+   * Divides all scores by the current increment, so the increment can start at 1 again.  Words
+   * that were last seen so long ago that their score becomes 0 are thereby removed.
+   */
+  private void rescale() {
+    float factor = 1 / _increment;
+    for (int i = 0; i < _nodes; i++) {
+      if (_score[i] > 0) {
+        _score[i] *= factor;
+        if (_score[i] == 0) _words--;
+      }
+      _best[i] *= factor;
+    }
+    _increment = 1;
+  }
+
+  /** Returns the word that ends at the given node. */
+  private String wordAt(int node) {
+    char[] chars = new char[MAXLENGTH];
+    int k = MAXLENGTH;
+    for (; node > 0; node = _parent[node]) chars[--k] = _label[node];
+    return new String(chars, k, MAXLENGTH - k);
+  }
+
+  /**
+   * Returns at most max words that start with the given prefix (but are longer than it), highest
+   * scores first.
+   *
+   * This is a best-first search below the node of the prefix.  The queue holds both nodes whose
+   * subtree has yet to be explored (with the best score in that subtree) and words that have been
+   * found (with their own score); whenever a word comes out on top, no better word remains.
+   * Entries are packed into longs as (score bits << 32 | node << 1 | isWord); since scores are
+   * positive, comparing their bits as ints gives the same order as comparing the floats.
+   */
+  public ArrayList<String> complete(String prefix, int max) {
+    ArrayList<String> ret = new ArrayList<String>();
+    int start = findNode(prefix.toLowerCase());
+    if (start < 0) return ret;
+    long[] heap = new long[64];
+    int size = 0;
+    for (int child = _child[start]; child != 0; child = _sibling[child]) {
+      if (size == heap.length) heap = Arrays.copyOf(heap, 2 * size);
+      size = push(heap, size, _best[child], child, 0);
+    }
+    while (size > 0 && ret.size() < max) {
+      long top = heap[0];
+      heap[0] = heap[--size];
+      siftDown(heap, size);
+      int node = (int)top >>> 1;
+      if ((top & 1) != 0) { ret.add(wordAt(node)); continue; }
+      if (size + 1 >= heap.length) heap = Arrays.copyOf(heap, 2 * heap.length);
+      if (_score[node] > 0) size = push(heap, size, _score[node], node, 1);
+      for (int child = _child[node]; child != 0; child = _sibling[child]) {
+        if (size == heap.length) heap = Arrays.copyOf(heap, 2 * size);
+        size = push(heap, size, _best[child], child, 0);
+      }
+    }
+    return ret;
+  }
+
+  /** Adds an entry to the (max-)heap, and returns the new size. */
+  private static int push(long[] heap, int size, float score, int node, int isWord) {
+    long value = ((long)Float.floatToIntBits(score) << 32) | ((long)node << 1) | isWord;
+    int pos = size;
+    while (pos > 0) {
+      int parent = (pos - 1) / 2;
+      if (heap[parent] >= value) break;
+      heap[pos] = heap[parent];
+      pos = parent;
+    }
+    heap[pos] = value;
+    return size + 1;
+  }
+
+  private static void siftDown(long[] heap, int size) {
+    if (size == 0) return;
+    long value = heap[0];
+    int pos = 0;
+    while (2 * pos + 1 < size) {
+      int child = 2 * pos + 1;
+      if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+      if (heap[child] <= value) break;
+      heap[pos] = heap[child];
+      pos = child;
+    }
+    heap[pos] = value;
+  }
+
+  /**
+   * Returns a new trie that holds only the (at most) max highest scoring words of this one, with
+   * their scores; the trie itself is not changed.  This is used to keep the vocabulary bounded,
+   * and since the new trie is built from scratch, it also reclaims the nodes of removed words.
+   */
+  public CompletionTrie prune(int max) {
+    float threshold = 0;
+    if (_words > max) {
+      float[] scores = new float[_words];
+      int k = 0;
+      for (int i = 1; i < _nodes; i++) if (_score[i] > 0) scores[k++] = _score[i];
+      Arrays.sort(scores);
+      threshold = scores[_words - max];
+    }
+    CompletionTrie ret = new CompletionTrie(1, Math.max(1024, _nodes));
+    ret._growth = _growth;
+    ret._increment = _increment;
+    int[] map = new int[_nodes];
+    // parents always come before their children, so one pass in node order copies the paths;
+    // nodes that lead to no remaining word are skipped, and their children with them
+    for (int node = 1; node < _nodes; node++) {
+      map[node] = -1;
+      int parent = map[_parent[node]];
+      if (parent < 0 || _best[node] < threshold || _best[node] == 0) continue;
+      int copy = ret.newNode(parent, _label[node]);
+      map[node] = copy;
+      if (_score[node] >= threshold && _score[node] > 0 && ret._words < max) {
+        ret._score[copy] = _score[node];
+        ret._words++;
+        float score = _score[node];
+        for (int n = copy; n >= 0 && ret._best[n] < score; n = ret._parent[n]) {
+          ret._best[n] = score;
+        }
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,147 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.completion;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.events.MudTextEvent;
+
+/**
+ * The WordCompleter collects the words that occur in the text from the MUD and in the user's own
+ * commands, and suggests completions for partially typed words.  Words from the user's commands
+ * weigh more than words the MUD sent.
+ *
+ * Splitting text into words and adding them to the trie happens on a separate daemon thread, so
+ * the event queue only has to hand over the text.  If that thread falls too far behind, further
+ * text is simply not indexed.  To keep memory use bounded, the vocabulary is pruned back to three
+ * quarters of its maximum size whenever it grows beyond that maximum; the pruned trie is built on
+ * the indexing thread while lookups continue on the old one.
+ *
+ * A completer can also be created without a thread, in which case text is indexed immediately
+ * (this is mostly useful for testing).
+ */
+public class WordCompleter implements EventListener {
+  public static final int DEFAULT_MAXWORDS = 100000;
+  public static final int HALFLIFE = 50000;
+  public static final int MINLENGTH = 3;
+  private static final float USERWEIGHT = 4;
+  private static final int MAXQUEUE = 10000;
+
+  private CompletionTrie _trie;
+  private int _maxWords;
+  private LinkedBlockingQueue<Chunk> _queue;
+  private Thread _indexer;
+
+  /** A piece of text waiting to be indexed. */
+  private static class Chunk {
+    String _text;
+    float _weight;
+    Chunk(String text, float weight) { _text = text; _weight = weight; }
+  }
+
+  /** Creates a completer which indexes text on its own daemon thread. */
+  public WordCompleter() {
+    this(true, DEFAULT_MAXWORDS);
+  }
+
+  /**
+   * Creates a completer holding at most (about) maxWords words, which indexes text either on a
+   * daemon thread (if background is true) or immediately when it is offered.
+   */
+  public WordCompleter(boolean background, int maxWords) {
+    _trie = new CompletionTrie(HALFLIFE);
+    _maxWords = maxWords;
+    _queue = null;
+    _indexer = null;
+    if (background) startIndexer();
+  }
+
+  private void startIndexer() {
+    _queue = new LinkedBlockingQueue<Chunk>(MAXQUEUE);
+    _indexer = new Thread(new Runnable() {
+        public void run() {
+          try {
+            while (true) {
+              Chunk chunk = _queue.take();
+              index(chunk._text, chunk._weight);
+            }
+          }
+          catch (InterruptedException e) { }
+        }
+      }, "WordCompleter");
+    _indexer.setDaemon(true);
+    _indexer.start();
+  }
+
+  /**
+   * Indexes the text from the MUD.  The user's own commands are offered by the input window, which
+   * leaves out what is typed while the server hides the input (such as passwords).
+   */
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.MUDTEXT) offer(((MudTextEvent)event).queryText(), false);
+  }
+
+  /** Adds the words in the given text to the vocabulary; userText indicates the user typed it. */
+  public void offer(String text, boolean userText) {
+    float weight = userText ? USERWEIGHT : 1;
+    if (_queue == null) index(text, weight);
+    else _queue.offer(new Chunk(text, weight));
+  }
+
+  /**
+   * Splits the text into words, and adds those of at least MINLENGTH characters to the trie.  A
+   * word is a sequence of letters and digits; ANSI escape sequences are skipped.
+   */
+  private void index(String text, float weight) {
+    String lower = text.toLowerCase();
+    int len = lower.length();
+    synchronized (this) {
+      int start = -1;
+      for (int i = 0; i <= len; i++) {
+        char c = i < len ? lower.charAt(i) : ' ';
+        if (Character.isLetterOrDigit(c)) {
+          if (start < 0) start = i;
+          continue;
+        }
+        if (start >= 0 && i - start >= MINLENGTH) _trie.add(lower, start, i, weight);
+        start = -1;
+        if (c == 27) {  // skip an escape sequence up to the letter that ends it
+          for (i++; i < len && !Character.isLetter(lower.charAt(i)); i++);
+        }
+      }
+    }
+    if (_trie.queryWordCount() > _maxWords) {
+      CompletionTrie pruned = _trie.prune(_maxWords * 3 / 4);
+      synchronized (this) { _trie = pruned; }
+    }
+  }
+
+  /** Returns up to max completions of the given prefix, best first. */
+  public synchronized ArrayList<String> complete(String prefix, int max) {
+    return _trie.complete(prefix, max);
+  }
+
+  /** Returns the number of words currently in the vocabulary. */
+  public synchronized int queryWordCount() {
+    return _trie.queryWordCount();
+  }
+}
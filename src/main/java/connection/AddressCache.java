@@ -0,0 +1,116 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import turtle.interfaces.HostResolver;
+
+/**
+ * The AddressCache remembers the addresses of recently resolved hosts for a short while, so that
+ * opening many sessions to the same server (or reconnecting) does not wait for DNS every time.
+ * If several threads ask for the same host at once, only one of them does the lookup, and the
+ * others wait for its result.  Failed lookups are not remembered.
+ * All functions may be called from any thread; a single cache is shared by all connections.
+ */
+public class AddressCache {
+  /** How long resolved addresses are remembered by default, in milliseconds. */
+  public static final long DEFAULT_TTL = 30000;
+
+  private static AddressCache _shared = null;
+
+  private HostResolver _resolver;
+  private long _ttl;
+  private ConcurrentHashMap<String,Lookup> _lookups;
+
+  /** A single lookup, which may still be in progress. */
+  private class Lookup {
+    private CountDownLatch _done = new CountDownLatch(1);
+    private InetAddress[] _addresses = null;
+    private UnknownHostException _error = null;
+    private long _expires;
+  }
+
+  /** Creates a cache which uses the given resolver, and remembers addresses for ttl ms. */
+  public AddressCache(HostResolver resolver, long ttl) {
+    _resolver = resolver;
+    _ttl = ttl;
+    _lookups = new ConcurrentHashMap<String,Lookup>();
+  }
+
+  /** Returns the cache shared by all connections, which uses the system resolver. */
+  public static synchronized AddressCache shared() {
+    if (_shared == null) {
+      _shared = new AddressCache(new HostResolver() {
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+          return InetAddress.getAllByName(host);
+        }
+      }, DEFAULT_TTL);
+    }
+    return _shared;
+  }
+
+  /**
+   * Returns all addresses of the given host, looking them up if they are not known (or have
+   * expired), or waiting for a lookup by another thread if one is in progress.
+   */
+  public InetAddress[] resolve(String host) throws UnknownHostException {
+    String key = host.toLowerCase();
+    Lookup lookup;
+    boolean mine = false;
+    while (true) {
+      lookup = _lookups.get(key);
+      if (lookup != null && (lookup._done.getCount() > 0 ||
+                             lookup._expires - System.nanoTime() > 0)) break;
+      Lookup fresh = new Lookup();
+      if (lookup == null ? _lookups.putIfAbsent(key, fresh) == null
+                         : _lookups.replace(key, lookup, fresh)) {
+        lookup = fresh;
+        mine = true;
+        break;
+      }
+    }
+
+    if (mine) {
+      try { lookup._addresses = _resolver.resolve(host); }
+      catch (UnknownHostException e) { lookup._error = e; }
+      catch (RuntimeException e) { lookup._error = new UnknownHostException(e.getMessage()); }
+      if (lookup._addresses == null) lookup._addresses = new InetAddress[0];
+      lookup._expires = System.nanoTime() + _ttl * 1000000;
+      if (lookup._error != null || lookup._addresses.length == 0) _lookups.remove(key, lookup);
+      lookup._done.countDown();
+    }
+    else {
+      try { lookup._done.await(); }
+      catch (InterruptedException e) { throw new UnknownHostException(host + " (interrupted)"); }
+    }
+
+    if (lookup._error != null) throw lookup._error;
+    if (lookup._addresses.length == 0) throw new UnknownHostException(host);
+    return lookup._addresses.clone();
+  }
+
+  /** Forgets all remembered addresses. */
+  public void clear() {
+    _lookups.clear();
+  }
+}
@@ -0,0 +1,123 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection;
+
+import java.util.ArrayDeque;
+
+/**
+ * The CommandScheduler paces the commands that are sent to the server, so that a long speedwalk
+ * or a pasted block of text does not overflow the server's input buffer (or get us disconnected
+ * for spamming).
+ * Pacing uses a token bucket: the bucket holds at most <burst> tokens, and is refilled at <rate>
+ * tokens per second; every command that is sent uses up one token.  Thus, a few commands typed by
+ * hand go out immediately, while a long sequence is sent at <rate> commands per second.
+ * There are two lanes: urgent commands are always sent before the normal ones still waiting.
+ *
+ * The scheduler does not keep time itself: all times are given in nanoseconds, as returned by
+ * System.nanoTime().  It may be used from multiple threads.
+ */
+public class CommandScheduler {
+  public static final double DEFAULT_RATE = 8;
+  public static final int DEFAULT_BURST = 10;
+
+  private ArrayDeque<String> _urgent;
+  private ArrayDeque<String> _normal;
+  private double _rate;
+  private int _burst;
+  private double _tokens;
+  private long _lastRefill;
+  private boolean _refilled;
+
+  /** Creates a scheduler with the given limits; a rate of 0 means that pacing is disabled. */
+  public CommandScheduler(double rate, int burst) {
+    _urgent = new ArrayDeque<String>();
+    _normal = new ArrayDeque<String>();
+    _refilled = false;
+    setLimits(rate, burst);
+    _tokens = _burst;
+  }
+
+  /**
+   * Changes the rate (in commands per second) and burst size; a rate of 0 (or less) disables
+   * pacing altogether.  The burst size is at least 1.
+   */
+  public synchronized void setLimits(double rate, int burst) {
+    _rate = Math.max(rate, 0);
+    _burst = Math.max(burst, 1);
+    _tokens = Math.min(_tokens, _burst);
+  }
+
+  public synchronized double queryRate() { return _rate; }
+  public synchronized int queryBurst() { return _burst; }
+
+  /** Returns the number of commands that are waiting to be sent. */
+  public synchronized int queryPending() {
+    return _urgent.size() + _normal.size();
+  }
+
+  /** Adds a command to the end of the urgent or the normal lane. */
+  public synchronized void submit(String command, boolean urgent) {
+    if (urgent) _urgent.addLast(command);
+    else _normal.addLast(command);
+  }
+
+  private void refill(long now) {
+    if (_refilled && now > _lastRefill) {
+      _tokens = Math.min(_burst, _tokens + (now - _lastRefill) * _rate / 1000000000.0);
+    }
+    if (!_refilled || now > _lastRefill) _lastRefill = now;
+    _refilled = true;
+  }
+
+  /**
+   * Returns the command that should be sent at the given time and removes it from the schedule;
+   * if no command should be sent (yet), null is returned instead.
+   */
+  public synchronized String take(long now) {
+    if (_urgent.isEmpty() && _normal.isEmpty()) return null;
+    if (_rate > 0) {
+      refill(now);
+      if (_tokens < 1) return null;
+      _tokens -= 1;
+    }
+    if (!_urgent.isEmpty()) return _urgent.pollFirst();
+    return _normal.pollFirst();
+  }
+
+  /**
+   * Returns the number of nanoseconds after the given time at which the next command may be
+   * taken: 0 if this can be done right away, and -1 if there are no waiting commands.
+   */
+  public synchronized long queryDelay(long now) {
+    if (_urgent.isEmpty() && _normal.isEmpty()) return -1;
+    if (_rate <= 0) return 0;
+    refill(now);
+    if (_tokens >= 1) return 0;
+    return (long)Math.ceil((1 - _tokens) * 1000000000.0 / _rate);
+  }
+
+  /** Removes all waiting commands, and returns how many there were. */
+  public synchronized int cancel() {
+    int ret = queryPending();
+    _urgent.clear();
+    _normal.clear();
+    return ret;
+  }
+}
@@ -22,7 +22,9 @@ package turtle.connection;
 import java.awt.EventQueue;
 import java.io.*;
 import java.net.*;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import javax.net.ssl.SSLContext;
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.interfaces.ConnectionListener;
 import turtle.interfaces.TelnetSender;
@@ -31,33 +33,56 @@ import turtle.interfaces.TelnetSender;
  * A Connection represents a telnet connection to a given server, which receives and sends both
  * normal text and telnet codes.
  * The Connection class runs in a separate thread, but takes full responsibility for organising
- * deadlock-freeness.  Received data is passed to a given ConnectionListener; sent data is passed
- * over the socket connection when the thread is given focus.
+ * deadlock-freeness.  Received data is passed to a given ConnectionListener; sent data is placed
+ * on an OutboundQueue by the caller, and passed over the socket connection by the Connection
+ * thread, in the order in which it was sent.
  */
 public class Connection extends Thread {
   private String _host;
   private int _port;
   private Socket _socket;
-  private TelnetInputStream _reader;
-  private TelnetOutputStream _writer;
+  private volatile TelnetInputStream _reader;
+  private volatile TelnetOutputStream _writer;
   private boolean _ended;
-  private boolean _locked;
   private boolean _userClose;
-  private ArrayList<String> _queuedText;
-  private ArrayList<TelnetCode> _queuedTelnet;
+  private OutboundQueue _outbound;
   private ConnectionListener _listener;
+  private volatile Charset _charset;
+  private SSLContext _tls;
+  private AddressCache _addresses;
 
   /** Default constructor; sets up the class and immediately opens the connection. */
   public Connection(String host, int port, ConnectionListener listener) {
+    this(host, port, StandardCharsets.UTF_8, listener);
+  }
+
+  /** Creates a connection that decodes and encodes text using the given character set. */
+  public Connection(String host, int port, Charset charset, ConnectionListener listener) {
+    this(host, port, charset, null, listener);
+  }
+
+  /**
+   * Creates a connection that decodes and encodes text using the given character set, and which
+   * is encrypted with TLS using the given context (or not encrypted at all if tls is null).
+   */
+  public Connection(String host, int port, Charset charset, SSLContext tls,
+                    ConnectionListener listener) {
+    this(host, port, charset, tls, AddressCache.shared(), listener);
+  }
+
+  /** Creates a connection which looks up the address of the host in the given cache. */
+  public Connection(String host, int port, Charset charset, SSLContext tls,
+                    AddressCache addresses, ConnectionListener listener) {
     _host = host;
     _port = port;
     _socket = null;
     _ended = false;
-    _locked = false;
     _userClose = false;
-    _queuedText = new ArrayList<String>();
-    _queuedTelnet = new ArrayList<TelnetCode>();
+    _outbound = new OutboundQueue();
     _listener = listener;
+    _charset = charset;
+    _tls = tls;
+    _addresses = addresses;
     start();
   }
 
@@ -73,8 +98,7 @@ public class Connection extends Thread {
     verifyConnectionData();
     if (!_ended) createConnection();
     while (!_ended) {
-      sendQueuedCommands();
-      sendQueuedTelnet();
+      sendQueuedFrames();
       receiveMudText();
     }
     closeConnection();
@@ -98,65 +122,110 @@ public class Connection extends Thread {
   }
 
   /**
-   * Find the IP address. Note that this does a call to the IP server, so may block for a longer
-   * time, or fail if the connection is unreliable or the host cannot be found.
+   * Finds all IP addresses of the host.  This may need to ask the DNS server, so may block for a
+   * longer time, or fail if the connection is unreliable or the host cannot be found; recently
+   * found addresses are remembered by the AddressCache.
    */
-  private InetAddress lookupAddress() {
-    InetAddress address;
-    try { address = InetAddress.getByName(_host); }
-    catch (UnknownHostException e) { address = null; }
-    if (address == null) {
+  private InetAddress[] lookupAddresses() {
+    long start = System.nanoTime();
+    try {
+      InetAddress[] addresses = _addresses.resolve(_host);
+      _listener.connectionPhaseTimed(ConnectionListener.ConnectionPhase.RESOLVE,
+                                     System.nanoTime() - start);
+      return addresses;
+    }
+    catch (UnknownHostException e) {
       _listener.connectionFailed("Unknown host: " + _host);
       _ended = true;
+      return null;
     }
-    else _listener.connectionFoundAddress(_host, address.toString(), _port);
-    return address;
   }
 
   /**
-   * This opens a connection to the given IP address by creating the relevant socket, making it
-   * connect, setting up a reasonable timeout and passing it to a TelnetInputStream that will be
-   * responsible for reading, and a BufferedWriter to do the writing.
+   * This opens a connection to one of the given IP addresses by creating the relevant socket,
+   * setting up a reasonable timeout and passing it to a TelnetInputStream that will be
+   * responsible for reading, and a TelnetOutputStream to do the writing.
+   * The addresses are tried in parallel by a ParallelConnector, so a host whose first address is
+   * unreachable does not make us wait for the full timeout.
+   * For a TLS connection, the handshake is done first (with the same timeout as connecting), and
+   * the telnet streams are placed on top of the TlsTransport rather than directly on the socket.
    */
-  private void connectToAddress(InetAddress address) {
+  private void connectToAddresses(InetAddress[] addresses) {
     try {
-      _socket = new Socket();
-      _socket.connect(new InetSocketAddress(address, _port), 20000);
+      long start = System.nanoTime();
+      ParallelConnector connector =
+        new ParallelConnector(addresses, _port, ParallelConnector.DEFAULT_DELAY);
+      _socket = connector.connect(20000, _host, _listener);
+      _listener.connectionPhaseTimed(ConnectionListener.ConnectionPhase.CONNECT,
+                                     System.nanoTime() - start);
+      InputStream input = _socket.getInputStream();
+      OutputStream output = _socket.getOutputStream();
+      if (_tls != null) {
+        start = System.nanoTime();
+        TlsTransport transport = new TlsTransport(_socket, _tls, _host, _port);
+        _socket.setSoTimeout(20000);
+        try { transport.handshake(); }
+        catch (IOException e) {
+          _listener.connectionFailed("TLS handshake failed: " + e.getMessage());
+          _ended = true;
+          try { transport.close(); } catch (IOException ex) { }
+          return;
+        }
+        _listener.connectionPhaseTimed(ConnectionListener.ConnectionPhase.HANDSHAKE,
+                                       System.nanoTime() - start);
+        input = transport.queryInputStream();
+        output = transport.queryOutputStream();
+      }
       try { _socket.setSoTimeout(250); }
       catch (SocketException e) {
         _listener.connectionFailed("Could not set socket timeout: " + e.getMessage());
         _ended = true;
         return;
       }
-      _reader = new TelnetInputStream(_socket.getInputStream());
-      _writer = new TelnetOutputStream(_socket.getOutputStream());
+      TelnetInputStream reader = new TelnetInputStream(input);
+      TelnetOutputStream writer = new TelnetOutputStream(output);
+      _reader = reader;
+      _writer = writer;
+      // setCharset may be called concurrently, so apply the charset only after the streams are set
+      reader.setCharset(_charset);
+      writer.setCharset(_charset);
     }
     catch (IOException e) {
       _listener.connectionFailed("Could not connect to IP: " + e.getMessage());
       _ended = true;
     }
-    if (!_ended)_listener.connectionEstablished(_host, address.toString(), _port);
+    if (!_ended) {
+      _listener.connectionEstablished(_host, _socket.getInetAddress().toString(), _port);
+    }
   }
 
   private void createConnection() {
-    InetAddress address = lookupAddress();
-    if (!_ended) connectToAddress(address);
+    InetAddress[] addresses = lookupAddresses();
+    if (!_ended) connectToAddresses(addresses);
   }
   
-  private void sendQueuedCommands() {
-    lock();
-    try { _writer.sendCommands(_queuedText); }   
-    catch (IOException e) { } 
-    _queuedText.clear();
-    unlock();
-  }
-
-  private void sendQueuedTelnet() {
-    lock();
-    try { _writer.sendTelnetCodes(_queuedTelnet); }
-    catch (IOException e) { } 
-    _queuedTelnet.clear();
-    unlock();
+  /**
+   * Moves everything that is waiting in the outbound queue into the writer's buffer, and sends it
+   * over the connection with a single flush (the writer itself only writes out early if the
+   * batch grows very large).
+   * This is normally done by the Connection thread, but flush() may also do it from another thread,
+   * so the queue is only ever drained by one thread at a time; this keeps the frames in order.
+   */
+  private void sendQueuedFrames() {
+    TelnetOutputStream writer = _writer;
+    if (writer == null) return;
+    synchronized (_outbound) {
+      if (_outbound.isEmpty()) return;
+      try {
+        OutboundQueue.Frame frame;
+        while ((frame = _outbound.poll()) != null) {
+          if (frame.isTelnet()) writer.queueTelnet(frame.queryTelnetCode());
+          else writer.queueCommand(frame.queryText());
+        }
+        writer.flush();
+      }
+      catch (IOException e) { }
+    }
   }
 
   private void receiveMudText() {
@@ -182,6 +251,8 @@ public class Connection extends Thread {
   }
 
   private void closeConnection() {
+    // whatever was sent before the disconnect should still reach the server
+    if (_writer != null) sendQueuedFrames();
     try {
       if (_reader != null) { _reader.close(); _writer = null; }
       if (_writer != null) { _writer.close(); _writer = null; }
@@ -191,47 +262,54 @@ public class Connection extends Thread {
     if (_userClose) _listener.connectionClosed(false);
   }
 
-  /**
-   * Lock the variable for the send queue.
-   * This is needed because the send functionality is called from the event queue, while the actual
-   * sending happens in the Connection thread.
-   */
-  private synchronized void lock() {
-    while (_locked) {
-      try { wait(); }
-      catch (InterruptedException e) {}
-    }
-    _locked = true;
-  }
-
-  /** Unlock the variable for the send queue. */
-  private synchronized void unlock() {
-    _locked = false;
-    notify();
-  }
-
   /**
    * Call this from any other thread to send the given text over the current connection.  If the
    * connection is not open yet, it will be sent once the connection is established (or never, if
    * that doesn't happen).
    */
   public void send(String text) {
-    lock();
-    _queuedText.add(text);
-    unlock();
+    _outbound.addText(text);
   }
 
   /**
    * Call this from any other thread to send the given telnet code over the current connection.  If
    * the connection is not open yet, it will be sent once the connection is established (or never,
    * if that doesn't happen).
-   * Note that if telnet commands and text commands are passed to Connection interleaved, they are
-   * not necessarily sent in over the connection in that same order.
+   * Text and telnet codes are sent over the connection in the order in which they are passed to
+   * Connection (for calls from different threads: the order in which the calls took effect).
    */
   public void sendTelnet(TelnetCode code) {
-    lock();
-    _queuedTelnet.add(code);
-    unlock();
+    _outbound.addTelnet(code);
+  }
+
+  /**
+   * Call this from any other thread to send everything that was passed to send() and sendTelnet()
+   * right away, rather than waiting for the Connection thread to do so (which may take a while,
+   * as it also waits for input from the server).  This blocks while the data is written to the
+   * socket, so should not be called on the event queue.
+   * Returns false if the connection is not established (yet), in which case nothing is sent.
+   */
+  public boolean flush() {
+    if (_writer == null) return false;
+    sendQueuedFrames();
+    return true;
+  }
+
+  /**
+   * Call this from any other thread to change the character set of the connection.  It applies to
+   * all text that has not been decoded yet, and to commands that are sent from now on; telnet
+   * codes are not affected.
+   */
+  public void setCharset(Charset charset) {
+    _charset = charset;
+    TelnetInputStream reader = _reader;
+    TelnetOutputStream writer = _writer;
+    if (reader != null) reader.setCharset(charset);
+    if (writer != null) writer.setCharset(charset);
+  }
+
+  public Charset queryCharset() {
+    return _charset;
   }
 
   /**
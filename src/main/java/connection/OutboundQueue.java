@@ -0,0 +1,89 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection;
+
+import java.util.concurrent.atomic.AtomicReference;
+import turtle.interfaces.immutable.TelnetCode;
+
+/**
+ * The OutboundQueue holds the text lines and telnet codes that are waiting to be sent over a
+ * connection, in the order in which they were submitted.
+ * Any number of threads may add frames to the queue, without locking: adding a frame is a single
+ * atomic swap of the tail of a linked list.  Only one thread (the connection thread) may take
+ * frames from it.  A frame that is still being added by another thread may not be visible to
+ * poll() yet; it will be returned by a later call, and never before frames added after it.
+ */
+public class OutboundQueue {
+  /** A single frame in the queue: either a line of text, or a telnet code. */
+  public static class Frame {
+    private String _text;
+    private TelnetCode _code;
+    private volatile Frame _next;
+
+    private Frame(String text, TelnetCode code) {
+      _text = text;
+      _code = code;
+      _next = null;
+    }
+
+    public boolean isTelnet() { return _code != null; }
+    public String queryText() { return _text; }
+    public TelnetCode queryTelnetCode() { return _code; }
+  }
+
+  private AtomicReference<Frame> _tail;
+  private Frame _head;
+
+  public OutboundQueue() {
+    _head = new Frame(null, null);
+    _tail = new AtomicReference<Frame>(_head);
+  }
+
+  private void add(Frame frame) {
+    Frame previous = _tail.getAndSet(frame);
+    previous._next = frame;
+  }
+
+  /** Adds a line of text to the queue; this may be called from any thread. */
+  public void addText(String text) {
+    add(new Frame(text, null));
+  }
+
+  /** Adds a telnet code to the queue; this may be called from any thread. */
+  public void addTelnet(TelnetCode code) {
+    add(new Frame(null, code));
+  }
+
+  /**
+   * Removes and returns the first frame of the queue, or returns null if there is none.
+   * This should only ever be called from a single thread.
+   */
+  public Frame poll() {
+    Frame next = _head._next;
+    if (next == null) return null;
+    _head = next;
+    return next;
+  }
+
+  /** Returns whether there are frames waiting; like poll(), this is for the consuming thread. */
+  public boolean isEmpty() {
+    return _head._next == null;
+  }
+}
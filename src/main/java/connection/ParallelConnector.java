@@ -0,0 +1,166 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.ConnectionListener;
+
+/**
+ * The ParallelConnector connects to a host which may have several addresses, in the style of
+ * "Happy Eyeballs" (RFC 8305): the addresses are tried in turn, alternating between IPv6 and
+ * IPv4, but if an attempt has not succeeded after a short delay, the next one is started without
+ * abandoning the first.  The first attempt to succeed is used, and the others are closed.  Thus,
+ * a dead address costs at most the delay, rather than the full timeout.
+ * Every attempt runs in its own thread; connect() blocks the calling thread until it is done.
+ */
+public class ParallelConnector {
+  /** The time after which the next address is tried, if the current attempts are still busy. */
+  public static final int DEFAULT_DELAY = 250;
+
+  private ArrayList<InetAddress> _addresses;
+  private int _port;
+  private int _delay;
+  private LinkedBlockingQueue<Object> _results;
+  private ArrayList<Socket> _sockets;
+  private boolean _done;
+
+  /** Sets up a connector for the given addresses (in order of preference) and port. */
+  public ParallelConnector(InetAddress[] addresses, int port, int delay) {
+    _addresses = interleave(addresses);
+    _port = port;
+    _delay = delay;
+    _results = new LinkedBlockingQueue<Object>();
+    _sockets = new ArrayList<Socket>();
+    _done = false;
+  }
+
+  /**
+   * Returns the given addresses, reordered so that the families alternate: the first address
+   * stays first, followed by the first of the other family, and so on.  Within a family, the
+   * original order is kept.
+   */
+  public static ArrayList<InetAddress> interleave(InetAddress[] addresses) {
+    ArrayList<InetAddress> first = new ArrayList<InetAddress>();
+    ArrayList<InetAddress> other = new ArrayList<InetAddress>();
+    for (InetAddress address : addresses) {
+      if ((address instanceof Inet6Address) == (addresses[0] instanceof Inet6Address)) {
+        first.add(address);
+      }
+      else other.add(address);
+    }
+    ArrayList<InetAddress> ret = new ArrayList<InetAddress>();
+    for (int i = 0; i < first.size() || i < other.size(); i++) {
+      if (i < first.size()) ret.add(first.get(i));
+      if (i < other.size()) ret.add(other.get(i));
+    }
+    return ret;
+  }
+
+  /** Starts a connection attempt in a separate thread, which reports on _results. */
+  private void startAttempt(InetAddress address, int timeout) {
+    Socket socket = new Socket();
+    synchronized (this) { _sockets.add(socket); }
+    Thread thread = new Thread() {
+      public void run() {
+        Object result = socket;
+        try { socket.connect(new InetSocketAddress(address, _port), timeout); }
+        catch (IOException e) {
+          result = e;
+          try { socket.close(); } catch (IOException ex) { }
+        }
+        synchronized (ParallelConnector.this) {
+          // a late success is not needed anymore
+          if (_done && result == socket) {
+            try { socket.close(); } catch (IOException e) { }
+            return;
+          }
+          _results.add(result);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Stops all attempts other than the given (which may be null), so they do not linger. */
+  private synchronized void finish(Socket winner) {
+    _done = true;
+    for (Socket socket : _sockets) {
+      if (socket == winner) continue;
+      try { socket.close(); } catch (IOException e) { }
+    }
+  }
+
+  /**
+   * Connects to the first address that works, and returns the connected socket.  If none works
+   * within the timeout (in milliseconds), the error of the last attempt to fail is thrown, or a
+   * SocketTimeoutException if some were still busy.
+   * Every attempt is reported to the listener (if not null) through connectionFoundAddress, on
+   * the calling thread.
+   */
+  public Socket connect(int timeout, String host, ConnectionListener listener)
+      throws IOException {
+    if (_addresses.isEmpty()) throw new IOException("No addresses to connect to.");
+    long deadline = System.nanoTime() + timeout * 1000000L;
+    int started = 0, failed = 0;
+    try {
+      while (true) {
+        long left = (deadline - System.nanoTime()) / 1000000;
+        if (left <= 0) break;
+        long wait = left;
+        if (started < _addresses.size()) {
+          InetAddress address = _addresses.get(started);
+          if (listener != null) listener.connectionFoundAddress(host, address.toString(), _port);
+          startAttempt(address, (int)left);
+          started++;
+          if (started < _addresses.size()) wait = Math.min(left, _delay);
+        }
+        Object result = _results.poll(wait, TimeUnit.MILLISECONDS);
+        // keep waiting for running attempts until the next one is due
+        while (result != null) {
+          if (result instanceof Socket) {
+            finish((Socket)result);
+            return (Socket)result;
+          }
+          failed++;
+          if (failed == _addresses.size()) throw (IOException)result;
+          // if an attempt fails, the next one is started right away
+          if (started < _addresses.size()) break;
+          result = _results.poll(Math.max(1, (deadline - System.nanoTime()) / 1000000),
+                                 TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      finish(null);
+      throw new IOException("Interrupted while connecting.");
+    }
+    finish(null);
+    throw new SocketTimeoutException("Connect timed out");
+  }
+}
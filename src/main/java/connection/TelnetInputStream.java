@@ -20,30 +20,44 @@
 package turtle.connection;
 
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.connection.telnet.*;
+import turtle.statistics.Statistics;
 
 /**
  * A TelnetInputStream is based on a given InputStream, but separates out all the telnet commands.
  * Care is taken to give the results in order, so that even if the server sends a telnet command
  * halfway through a line, this will lead to three events: first a text arriving event for the
  * first half, then a telnet event, then a text event for the last half.
+ *
+ * Text is decoded using UTF-8 unless another character set is chosen (see setCharset).  For
+ * character sets with a single byte per character, such as ISO-8859-1 or CP437, the stream uses a
+ * table of 256 characters, so a whole buffer is converted in a single loop; other character sets
+ * go through a CharsetDecoder.  An escaped byte 255 (IAC IAC) is decoded as part of the text,
+ * rather than returned as a telnet code.
  */
 public class TelnetInputStream {
   private InputStream _source;
   private byte[] _textBuffer;
   private byte[] _connectionBuffer;
+  private char[] _charBuffer;
   private int _textBufferSize;
   private int _textBufferStart;
   private int _connectionBufferSize;
   private int _connectionBufferStart;
-  private InternalBufferStream _ibs;
-  private InputStreamReader _reader;
-  private ArrayList<Integer> _partialTelnetCode;
+  private CharsetDecoder _decoder;
+  private char[] _table;
+  private volatile Charset _requestedCharset;
+  private byte[] _partialTelnetCode;
+  private int _partialTelnetCodeSize;
   private TelnetCode _availableTelnetCode;
   private String _availableText;
   private static final int BUFFERSIZE = 1000;
@@ -55,39 +69,21 @@ public class TelnetInputStream {
    */
   public enum StreamStatus { NONE, TEXT, TELNET, EOF };
 
-  private class OutOfBufferException extends IOException { }
-
-  /**
-   * For internal use only: this buffer stream is used to turn the internally buffered text into a
-   * stream that an InputStreamReader can use to create a char stream.
-   * Doing this rather than simply converting the byte sequence to a string is necessary because
-   * the buffered text is never guaranteed to be complete, so may well end in the middle of a
-   * unicode char; the InputStreamReader can deal with that, and wait with outputting the relevant
-   * char until more of the byte stream is added to the buffer.
-   */
-  private class InternalBufferStream extends InputStream {
-    public int read() throws IOException {
-      if (_textBufferStart >= _textBufferSize) throw new OutOfBufferException();
-      int c = _textBuffer[_textBufferStart];
-      if (c < 0) c += 256;
-      _textBufferStart++;
-      return c;
-    }
-  }
-
   public TelnetInputStream(InputStream source) throws IOException {
     _source = source;
     _textBufferSize = 0;
     _textBufferStart = 0;
     _connectionBufferSize = 0;
     _connectionBufferStart = 0;
-    _ibs = new InternalBufferStream();
     _textBuffer = new byte[BUFFERSIZE];
     _connectionBuffer = new byte[BUFFERSIZE];
-    _reader = new InputStreamReader(_ibs, "UTF-8");
+    _charBuffer = new char[BUFFERSIZE];
+    _requestedCharset = null;
+    useCharset(StandardCharsets.UTF_8);
     _availableText = null;
     _availableTelnetCode = null;
-    _partialTelnetCode = new ArrayList<Integer>();
+    _partialTelnetCode = new byte[BUFFERSIZE];
+    _partialTelnetCodeSize = 0;
   }
 
   /**
@@ -103,6 +99,7 @@ public class TelnetInputStream {
 
     // okay, we have to read new text instead
     _connectionBufferSize = _source.read(_connectionBuffer);
+    Statistics.recordRead(_connectionBufferSize);
     if (_connectionBufferSize == -1) return false;
     else {
       _connectionBufferStart = 0;
@@ -146,18 +143,78 @@ public class TelnetInputStream {
     }
   }
 
+  /**
+   * Sets the character set used to decode text from the server.  This may be called from any
+   * thread; it takes effect for all bytes that have not been decoded yet.
+   */
+  public void setCharset(Charset charset) {
+    _requestedCharset = charset;
+  }
+
+  /** Returns the character set that text is currently decoded with. */
+  public Charset queryCharset() {
+    Charset requested = _requestedCharset;
+    return requested == null ? _decoder.charset() : requested;
+  }
+
+  /**
+   * Returns the characters that the 256 byte values stand for in the given character set, if it
+   * uses exactly one byte for every character; otherwise returns null.
+   */
+  public static char[] singleByteTable(Charset charset) {
+    if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) return null;
+    CharsetDecoder decoder = charset.newDecoder();
+    decoder.onMalformedInput(CodingErrorAction.REPLACE);
+    decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    char[] table = new char[256];
+    byte[] single = new byte[1];
+    for (int i = 0; i < 256; i++) {
+      single[0] = (byte)i;
+      try {
+        CharBuffer chars = decoder.reset().decode(ByteBuffer.wrap(single));
+        if (chars.remaining() != 1) return null;
+        table[i] = chars.get();
+      }
+      catch (IOException e) { return null; }
+    }
+    return table;
+  }
+
+  private void useCharset(Charset charset) {
+    _decoder = charset.newDecoder();
+    _decoder.onMalformedInput(CodingErrorAction.REPLACE);
+    _decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    _table = singleByteTable(charset);
+  }
+
   /**
    * This function parses _textBuffer into a string.
-   * It is possible that _textBuffer does not end at a complete utf-8 codepoint.  In that case, the
-   * string up to the last character is returned, and the incomplete character is left in the
-   * buffer for later completing.
+   * It is possible that _textBuffer does not end at a complete (multi-byte) character.  In that
+   * case, the string up to the last character is returned, and the incomplete character is left
+   * in the buffer for later completing.
    */
-  private StreamStatus readTextBufferToString() throws IOException {
-    char[] charbuffer = new char[BUFFERSIZE];
-    int len = _reader.read(charbuffer);
-    if (len == -1) return StreamStatus.EOF;
+  private StreamStatus readTextBufferToString() {
+    int len;
+    if (_table != null) {
+      // single-byte character sets: every byte is one character
+      char[] table = _table;
+      byte[] bytes = _textBuffer;
+      len = _textBufferSize - _textBufferStart;
+      for (int i = 0, j = _textBufferStart; i < len; i++, j++) {
+        _charBuffer[i] = table[bytes[j] & 0xFF];
+      }
+      _textBufferStart = _textBufferSize;
+    }
+    else {
+      ByteBuffer in = ByteBuffer.wrap(_textBuffer, _textBufferStart,
+                                      _textBufferSize - _textBufferStart);
+      CharBuffer out = CharBuffer.wrap(_charBuffer);
+      _decoder.decode(in, out, false);
+      _textBufferStart = in.position();
+      len = out.position();
+    }
     if (len == 0) return StreamStatus.NONE;
-    _availableText = new String(charbuffer, 0, len);
+    _availableText = new String(_charBuffer, 0, len);
     return StreamStatus.TEXT;
   }
 
@@ -167,7 +224,7 @@ public class TelnetInputStream {
    * stored as _availableText.
    * @return true if a String of length at least 1 was found.
    */
-  private StreamStatus readTextFromConnectionBuffer() throws IOException {
+  private StreamStatus readTextFromConnectionBuffer() {
     shiftTextBuffer();
     moveNonTelnetFromConnectionToTextBuffer();
     return readTextBufferToString();
@@ -179,24 +236,29 @@ public class TelnetInputStream {
    */
   private TelnetCode tryPartialToCompleteTelnetCode() {
     TelnetCode ret;
-    ret = SingleTelnetCommand.readFromArrayList(_partialTelnetCode);
-    if (ret == null) ret = SupportTelnetCommand.readFromArrayList(_partialTelnetCode);
-    if (ret == null) ret = SubNegotiationTelnetCommand.readFromArrayList(_partialTelnetCode);
+    byte[] code = _partialTelnetCode;
+    int size = _partialTelnetCodeSize;
+    ret = SingleTelnetCommand.readFromBytes(code, size);
+    if (ret == null) ret = SupportTelnetCommand.readFromBytes(code, size);
+    if (ret == null) ret = SubNegotiationTelnetCommand.readFromBytes(code, size);
     return ret;
   }
 
   private StreamStatus readRemainingTelnetCode() {
     // read one character at a time, so we don't accidentally overshoot the telnet code
     while (_connectionBufferStart < _connectionBufferSize) {
-      int b = _connectionBuffer[_connectionBufferStart];
-      if (b < 0) b += 256;
-      _partialTelnetCode.add(b);
+      if (_partialTelnetCodeSize == _partialTelnetCode.length) {
+        byte[] larger = new byte[2 * _partialTelnetCode.length];
+        System.arraycopy(_partialTelnetCode, 0, larger, 0, _partialTelnetCodeSize);
+        _partialTelnetCode = larger;
+      }
+      _partialTelnetCode[_partialTelnetCodeSize++] = _connectionBuffer[_connectionBufferStart];
       _connectionBufferStart++;
 
       TelnetCode code = tryPartialToCompleteTelnetCode();
       if (code != null) {
         _availableTelnetCode = code;
-        _partialTelnetCode.clear();
+        _partialTelnetCodeSize = 0;
         return StreamStatus.TELNET;
       }
     }
@@ -208,18 +270,35 @@ public class TelnetInputStream {
    * The return value tells you what the next thing to be read is.
    * It is allowed to call this function multiple times without reading the available text or
    * telnet code; in that case, the string or code that was ready for reading will be forgotten.
+   * The time spent parsing (but not the time waiting for the network) is recorded in the
+   * TELNET stage of the Statistics.
    */
   public StreamStatus probeAvailableContent() throws IOException {
+    Charset requested = _requestedCharset;
+    if (requested != null) {
+      useCharset(requested);
+      if (_requestedCharset == requested) _requestedCharset = null;
+    }
     try { if (!fillConnectionBuffer()) return StreamStatus.EOF; }
     catch (SocketTimeoutException e) { return StreamStatus.NONE; }
     if (_connectionBufferStart >= _connectionBufferSize) return StreamStatus.NONE;
 
-    if (_partialTelnetCode.size() > 0 || _connectionBuffer[_connectionBufferStart] == -1) {
-      return readRemainingTelnetCode();
+    long start = Statistics.startTimer();
+    StreamStatus ret;
+    if (_partialTelnetCodeSize > 0 || _connectionBuffer[_connectionBufferStart] == -1) {
+      ret = readRemainingTelnetCode();
+      // IAC IAC is an escaped byte 255, which is decoded along with the text that follows it
+      if (ret == StreamStatus.TELNET && _availableTelnetCode.queryCommand() == TelnetCode.IAC) {
+        shiftTextBuffer();
+        _textBuffer[_textBufferSize++] = -1;
+        ret = readTextFromConnectionBuffer();
+      }
     }
     else {
-      return readTextFromConnectionBuffer();
+      ret = readTextFromConnectionBuffer();
     }
+    Statistics.stopTimer(Statistics.Stage.TELNET, start);
+    return ret;
   }
 
   public String readString() {
@@ -232,7 +311,6 @@ public class TelnetInputStream {
 
   public void close() throws IOException {
     _source.close();
-    _reader.close();
   }
 }
 
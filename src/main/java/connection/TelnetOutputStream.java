@@ -19,69 +19,134 @@
 
 package turtle.connection;
 
-import java.io.BufferedWriter;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import turtle.interfaces.immutable.TelnetCode;
 
 /**
  * The TelnetOutputStream is based on a given OutputStream, and writes both user commands and
  * telnet codes to it.
+ * Commands and codes are collected in a single byte buffer, in the order in which they are
+ * queued, and only passed to the underlying stream (in one write) when the stream is flushed.
+ * Commands are encoded in UTF-8, unless another character set is chosen.
  */
 public class TelnetOutputStream {
-  private BufferedWriter _commandWriter;
-  private BufferedOutputStream _telnetWriter;
-  
+  private OutputStream _target;
+  private byte[] _buffer;
+  private int _size;
+  private volatile Charset _charset;
+  private static final int BUFFERSIZE = 1024;
+  private static final int FLUSHSIZE = 65536;
+
   public TelnetOutputStream(OutputStream target) throws IOException {
-    _commandWriter = new BufferedWriter(new OutputStreamWriter(target, "UTF-8"));
-    _telnetWriter = new BufferedOutputStream(target);
+    _target = target;
+    _buffer = new byte[BUFFERSIZE];
+    _size = 0;
+    _charset = StandardCharsets.UTF_8;
   }
 
-  private void sendSingleLine(String text) throws IOException {
-    _commandWriter.write(text + "\n", 0, text.length() + 1);
+  /** Sets the character set used to encode commands; this may be called from any thread. */
+  public void setCharset(Charset charset) {
+    _charset = charset;
   }
 
-  private void sendSingleTelnet(TelnetCode code) throws IOException {
-    int[] parts = code.queryCompleteCode();
-    for (int j = 0; j < parts.length; j++) {
-      _telnetWriter.write(parts[j]);
+  /**
+   * Makes sure that the buffer has room for the given number of extra bytes; if the buffer has
+   * grown large, it is written out first.
+   */
+  private void reserve(int extra) throws IOException {
+    if (_size > 0 && _size + extra > FLUSHSIZE) writeBuffer();
+    if (_size + extra > _buffer.length) {
+      byte[] larger = new byte[Math.max(_size + extra, 2 * _buffer.length)];
+      System.arraycopy(_buffer, 0, larger, 0, _size);
+      _buffer = larger;
     }
   }
 
+  private void writeBuffer() throws IOException {
+    _target.write(_buffer, 0, _size);
+    _size = 0;
+  }
+
+  /**
+   * Adds a single line to the buffer, followed by a newline; it is sent at the next flush.  IAC
+   * bytes in the encoded text (which single-byte charsets can produce) are doubled.
+   */
+  public void queueCommand(String text) throws IOException {
+    byte[] bytes = text.getBytes(_charset);
+    reserve(2 * bytes.length + 1);
+    copyEscaped(bytes);
+    _buffer[_size++] = '\n';
+  }
+
+  /**
+   * Adds text to the buffer as it is, without a newline (for instance to pass on text from a
+   * server); IAC bytes in the encoded text are doubled, as telnet requires.  It is sent at the
+   * next flush.
+   */
+  public void queueText(String text) throws IOException {
+    byte[] bytes = text.getBytes(_charset);
+    reserve(2 * bytes.length);
+    copyEscaped(bytes);
+  }
+
+  /** Copies the given bytes into the buffer, doubling IAC; the space must be reserved already. */
+  private void copyEscaped(byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      _buffer[_size++] = bytes[i];
+      if (bytes[i] == (byte)TelnetCode.IAC) _buffer[_size++] = bytes[i];
+    }
+  }
+
+  /** Adds a single telnet code to the buffer; it is sent at the next flush. */
+  public void queueTelnet(TelnetCode code) throws IOException {
+    ByteBuffer parts = code.queryCompleteCode();
+    int length = parts.remaining();
+    reserve(length);
+    parts.get(_buffer, _size, length);
+    _size += length;
+  }
+
+  /** Writes everything that was queued to the underlying stream, and flushes it. */
+  public void flush() throws IOException {
+    if (_size > 0) writeBuffer();
+    _target.flush();
+  }
+
   /** Sends a single line over the output stream; a newline is added to the end. */
   public void sendCommand(String text) throws IOException {
-    sendSingleLine(text);
-    _commandWriter.flush();
+    queueCommand(text);
+    flush();
   }
 
   /** Sends 0 or more lines over the output stream, adding newlines after each. */
   public void sendCommands(ArrayList<String> texts) throws IOException {
     for (int i = 0; i < texts.size(); i++) {
-      sendSingleLine(texts.get(i));
+      queueCommand(texts.get(i));
     }
-    if (texts.size() > 0) _commandWriter.flush();
+    if (texts.size() > 0) flush();
   }
 
   /** Sends a single telnet code over the output stream. */
   public void sendTelnet(TelnetCode code) throws IOException {
-    sendSingleTelnet(code);
-    _telnetWriter.flush();
+    queueTelnet(code);
+    flush();
   }
 
   /** Sends 0 or more telnet codes over the output stream. */
   public void sendTelnetCodes(ArrayList<TelnetCode> codes) throws IOException {
     for (int i = 0; i < codes.size(); i++) {
-      sendSingleTelnet(codes.get(i));
+      queueTelnet(codes.get(i));
     }
-    if (codes.size() > 0) _telnetWriter.flush();
+    if (codes.size() > 0) flush();
   }
 
   public void close() throws IOException {
-    _commandWriter.close();
-    _telnetWriter.close();
+    flush();
+    _target.close();
   }
 }
-
@@ -0,0 +1,306 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * A TlsTransport encrypts the traffic over an already connected socket, using an SSLEngine.
+ * It offers an InputStream and OutputStream for the plain data, so the telnet streams can be
+ * placed on top of it just as they are for an unencrypted socket: reading follows the timeout of
+ * the socket in the same way, and writing may happen from another thread than reading.
+ * Engines are created for a given host and port, so the SSLContext can resume an earlier session
+ * with the same server, which makes reconnecting faster.  The buffers for encrypted data are
+ * taken from a small pool, and returned to it when the transport is closed.
+ */
+public class TlsTransport {
+  private Socket _socket;
+  private InputStream _rawIn;
+  private OutputStream _rawOut;
+  private SSLEngine _engine;
+  private ByteBuffer _netIn;    // encrypted data read from the socket, in write mode
+  private ByteBuffer _appIn;    // decrypted data that has not been read yet, in write mode
+  private ByteBuffer _netOut;   // only used while holding _writeLock
+  private Object _writeLock;
+  private boolean _inboundClosed;
+  private boolean _closed;
+
+  private static final int MAXPOOLED = 16;
+  private static final ArrayDeque<ByteBuffer> _pool = new ArrayDeque<ByteBuffer>();
+
+  /**
+   * Sets up (but does not yet start) a client-side TLS session over the given socket; host and
+   * port identify the server, to check its certificate and find a session to resume.
+   */
+  public TlsTransport(Socket socket, SSLContext context, String host, int port)
+      throws IOException {
+    _socket = socket;
+    _rawIn = socket.getInputStream();
+    _rawOut = socket.getOutputStream();
+    _engine = context.createSSLEngine(host, port);
+    _engine.setUseClientMode(true);
+    SSLParameters parameters = _engine.getSSLParameters();
+    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+    _engine.setSSLParameters(parameters);
+    SSLSession session = _engine.getSession();
+    _netIn = acquireBuffer(session.getPacketBufferSize());
+    _netOut = acquireBuffer(session.getPacketBufferSize());
+    _appIn = acquireBuffer(session.getApplicationBufferSize());
+    _writeLock = new Object();
+    _inboundClosed = false;
+    _closed = false;
+  }
+
+  /** Returns the context used for TLS connections by default, with the system's trusted CAs. */
+  public static SSLContext defaultContext() {
+    try { return SSLContext.getDefault(); }
+    catch (NoSuchAlgorithmException e) { throw new Error("No default TLS context available!"); }
+  }
+
+  /** Takes a buffer with at least the given capacity from the pool, or creates a new one. */
+  private static ByteBuffer acquireBuffer(int size) {
+    synchronized (_pool) {
+      for (ByteBuffer buffer : _pool) {
+        if (buffer.capacity() >= size) {
+          _pool.remove(buffer);
+          buffer.clear();
+          return buffer;
+        }
+      }
+    }
+    return ByteBuffer.allocate(size);
+  }
+
+  private static void releaseBuffer(ByteBuffer buffer) {
+    synchronized (_pool) {
+      if (_pool.size() < MAXPOOLED) _pool.add(buffer);
+    }
+  }
+
+  /** Returns a buffer with room for at least the given number of bytes, with the same content. */
+  private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+    if (buffer.capacity() >= size) size = 2 * buffer.capacity();
+    ByteBuffer larger = acquireBuffer(size);
+    buffer.flip();
+    larger.put(buffer);
+    releaseBuffer(buffer);
+    return larger;
+  }
+
+  /**
+   * Does the TLS handshake, blocking until it is done.  This throws an SSLException if the
+   * server cannot be trusted or the parties cannot agree, and a SocketTimeoutException if the
+   * server does not answer within the timeout of the socket.
+   */
+  public void handshake() throws IOException {
+    _engine.beginHandshake();
+    while (true) {
+      SSLEngineResult.HandshakeStatus status = _engine.getHandshakeStatus();
+      if (status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP ||
+          status == SSLEngineResult.HandshakeStatus.NEED_UNWRAP_AGAIN) {
+        if (_inboundClosed) throw new SSLException("Server closed the connection in handshake.");
+        if (!unwrap() && !readPacketData()) {
+          throw new SSLException("Connection closed during the TLS handshake.");
+        }
+      }
+      else if (!handleHandshakeStatus()) return;
+    }
+  }
+
+  /**
+   * Does whatever the engine needs to continue the handshake (if anything), except for reading
+   * data; returns whether anything was done.
+   */
+  private boolean handleHandshakeStatus() throws IOException {
+    SSLEngineResult.HandshakeStatus status = _engine.getHandshakeStatus();
+    if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+      Runnable task;
+      while ((task = _engine.getDelegatedTask()) != null) task.run();
+      return true;
+    }
+    if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+      synchronized (_writeLock) { wrap(ByteBuffer.allocate(0)); }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reads more encrypted data from the socket (blocking until the timeout of the socket); returns
+   * false if the socket has been closed.
+   */
+  private boolean readPacketData() throws IOException {
+    if (!_netIn.hasRemaining()) {
+      _netIn = enlarge(_netIn, _engine.getSession().getPacketBufferSize());
+    }
+    int count = _rawIn.read(_netIn.array(), _netIn.position(), _netIn.remaining());
+    if (count < 0) return false;
+    _netIn.position(_netIn.position() + count);
+    return true;
+  }
+
+  /**
+   * Decrypts as much of the data in _netIn as the engine allows into _appIn, and continues the
+   * handshake if needed; returns whether this made any progress.  If not, more data should be
+   * read from the socket.
+   */
+  private boolean unwrap() throws IOException {
+    if (_inboundClosed) return false;
+    _netIn.flip();
+    SSLEngineResult result;
+    try { result = _engine.unwrap(_netIn, _appIn); }
+    finally { _netIn.compact(); }
+    SSLEngineResult.Status status = result.getStatus();
+    if (status == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+      _appIn = enlarge(_appIn, _engine.getSession().getApplicationBufferSize());
+      return true;
+    }
+    if (status == SSLEngineResult.Status.BUFFER_UNDERFLOW) return false;
+    if (status == SSLEngineResult.Status.CLOSED) _inboundClosed = true;
+    boolean progress = result.bytesConsumed() > 0 || result.bytesProduced() > 0 || _inboundClosed;
+    return handleHandshakeStatus() || progress;
+  }
+
+  /** Encrypts all of the given data and writes it to the socket; requires _writeLock. */
+  private void wrap(ByteBuffer data) throws IOException {
+    while (true) {
+      _netOut.clear();
+      SSLEngineResult result = _engine.wrap(data, _netOut);
+      if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+        _netOut = enlarge(_netOut, _engine.getSession().getPacketBufferSize());
+        continue;
+      }
+      if (result.getStatus() == SSLEngineResult.Status.CLOSED && data.hasRemaining()) {
+        throw new SSLException("Cannot send data: the TLS session has been closed.");
+      }
+      _rawOut.write(_netOut.array(), 0, _netOut.position());
+      if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+        handleHandshakeStatus();
+      }
+      if (!data.hasRemaining()) break;
+    }
+    _rawOut.flush();
+  }
+
+  /**
+   * Reads decrypted data into the given array, returning the number of bytes read, or -1 if the
+   * connection has been closed.  Like reading from the socket, this throws a
+   * SocketTimeoutException if nothing arrives within the timeout.
+   */
+  private int read(byte[] buffer, int offset, int length) throws IOException {
+    while (true) {
+      if (_appIn.position() > 0) {
+        _appIn.flip();
+        int count = Math.min(length, _appIn.remaining());
+        _appIn.get(buffer, offset, count);
+        _appIn.compact();
+        return count;
+      }
+      if (_inboundClosed) return -1;
+      if (unwrap()) continue;
+      if (!readPacketData()) {
+        // the server closed the socket without a close_notify; treat it as a normal end
+        _inboundClosed = true;
+        try { _engine.closeInbound(); }
+        catch (SSLException e) { }
+      }
+    }
+  }
+
+  /** Encrypts the given data and sends it over the socket. */
+  private void write(byte[] buffer, int offset, int length) throws IOException {
+    synchronized (_writeLock) {
+      if (_closed) throw new IOException("Cannot send data: the TLS transport has been closed.");
+      wrap(ByteBuffer.wrap(buffer, offset, length));
+    }
+  }
+
+  /** Returns the negotiated session, for instance to see the protocol and cipher suite. */
+  public SSLSession querySession() {
+    return _engine.getSession();
+  }
+
+  /**
+   * Tells the server that we are done (if the socket is still open), and closes the socket.
+   * This should be called from the reading thread, or after reading has stopped.
+   */
+  public void close() throws IOException {
+    synchronized (_writeLock) {
+      if (_closed) return;
+      _closed = true;
+      _engine.closeOutbound();
+      try { if (!_socket.isClosed()) wrap(ByteBuffer.allocate(0)); }
+      catch (IOException e) { }
+      releaseBuffer(_netOut);
+      _netOut = null;
+    }
+    releaseBuffer(_netIn);
+    releaseBuffer(_appIn);
+    _netIn = null;
+    _appIn = null;
+    _socket.close();
+  }
+
+  /** Returns the stream of decrypted data from the server. */
+  public InputStream queryInputStream() {
+    return new InputStream() {
+      public int read() throws IOException {
+        byte[] single = new byte[1];
+        int count;
+        while ((count = TlsTransport.this.read(single, 0, 1)) == 0);
+        return count < 0 ? -1 : single[0] & 0xff;
+      }
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        return TlsTransport.this.read(buffer, offset, length);
+      }
+      public void close() throws IOException {
+        TlsTransport.this.close();
+      }
+    };
+  }
+
+  /** Returns the stream that encrypts data and sends it to the server. */
+  public OutputStream queryOutputStream() {
+    return new OutputStream() {
+      public void write(int b) throws IOException {
+        TlsTransport.this.write(new byte[] { (byte)b }, 0, 1);
+      }
+      public void write(byte[] buffer, int offset, int length) throws IOException {
+        TlsTransport.this.write(buffer, offset, length);
+      }
+      public void close() throws IOException {
+        TlsTransport.this.close();
+      }
+    };
+  }
+}
@@ -0,0 +1,140 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection.telnet;
+
+import java.awt.EventQueue;
+import turtle.interfaces.TelnetSender;
+import turtle.timers.TimingWheel;
+
+/**
+ * The NawsReporter tells the server the size of the output window (in columns and rows) through
+ * NAWS (Negotiate About Window Size, RFC 1073), once the server has asked for it.
+ *
+ * While the user drags the edge of the window, the size changes many times in quick succession;
+ * rather than sending each of these, the reporter waits until the size has been stable for
+ * DELAY milliseconds, and then sends only the final size (and only if it differs from what the
+ * server already knows).  If the size keeps changing, an update is sent at least every MAXWAIT
+ * milliseconds.  The waiting is done on a TimingWheel; rather than rescheduling for every change,
+ * the reporter remembers the tick of the last change and checks it when its timer expires.
+ *
+ * All methods should be called on the event queue; timer expiry is passed on to the event queue
+ * as well.
+ */
+public class NawsReporter {
+  public static final int TELOPT_NAWS = 31;
+  public static final long DELAY = 200;
+  public static final long MAXWAIT = 1000;
+
+  private TelnetSender _sender;
+  private TimingWheel _wheel;
+  private boolean _enabled;
+  private int _columns;
+  private int _rows;
+  private int _sentColumns;
+  private int _sentRows;
+  private boolean _waiting;
+  private long _firstChange;
+  private long _lastChange;
+  private int _packets;
+
+  public NawsReporter(TelnetSender sender, TimingWheel wheel) {
+    _sender = sender;
+    _wheel = wheel;
+    _enabled = false;
+    _columns = 0;
+    _rows = 0;
+    _sentColumns = -1;
+    _sentRows = -1;
+    _waiting = false;
+    _packets = 0;
+  }
+
+  /**
+   * Called when NAWS is switched on or off.  When it is switched on, the current size (if known)
+   * is sent immediately, as the server expects.
+   */
+  public void setEnabled(boolean enabled) {
+    _enabled = enabled;
+    _sentColumns = -1;
+    _sentRows = -1;
+    if (enabled) sendSize();
+  }
+
+  public boolean queryEnabled() {
+    return _enabled;
+  }
+
+  /** Returns the number of NAWS subnegotiations that were sent. */
+  public int queryPacketsSent() {
+    return _packets;
+  }
+
+  /** Called when the size of the output window has changed. */
+  public void resize(int columns, int rows) {
+    _columns = columns;
+    _rows = rows;
+    if (!_enabled) return;
+    _lastChange = _wheel.queryTick();
+    if (_waiting) return;
+    _waiting = true;
+    _firstChange = _lastChange;
+    schedule(DELAY);
+  }
+
+  private void schedule(long delay) {
+    _wheel.schedule(new Runnable() {
+      public void run() {
+        EventQueue.invokeLater(new Runnable() {
+          public void run() { timerExpired(); }
+        });
+      }
+    }, delay);
+  }
+
+  /** Sends the size if it has been stable long enough, or we have waited too long already. */
+  private void timerExpired() {
+    if (!_waiting) return;
+    long now = _wheel.queryTick();
+    long stable = (now - _lastChange) * TimingWheel.TICK;
+    long waited = (now - _firstChange) * TimingWheel.TICK;
+    if (stable < DELAY && waited < MAXWAIT) {
+      schedule(Math.min(DELAY - stable, MAXWAIT - waited));
+      return;
+    }
+    _waiting = false;
+    if (_enabled) sendSize();
+  }
+
+  private void sendSize() {
+    if (_columns <= 0 || _rows <= 0) return;
+    if (_columns == _sentColumns && _rows == _sentRows) return;
+    _sentColumns = _columns;
+    _sentRows = _rows;
+    _packets++;
+    _sender.sendTelnet(new SubNegotiationTelnetCommand(TELOPT_NAWS, encode(_columns, _rows)));
+  }
+
+  /** Returns the data of a NAWS subnegotiation: width and height as 16-bit numbers. */
+  public static byte[] encode(int columns, int rows) {
+    columns = Math.min(columns, 0xFFFF);
+    rows = Math.min(rows, 0xFFFF);
+    return new byte[] { (byte)(columns >> 8), (byte)columns, (byte)(rows >> 8), (byte)rows };
+  }
+}
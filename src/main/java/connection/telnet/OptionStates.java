@@ -0,0 +1,244 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection.telnet;
+
+import java.util.Arrays;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.TelnetSender;
+
+/**
+ * The OptionStates keep track of the state of every telnet option, on both sides of the
+ * connection, following the "Q method" of RFC 1143.  For each option, the server side ("him" in
+ * the RFC) and the client side ("us") are each in one of the states NO, YES, WANTNO (we asked to
+ * disable it) or WANTYES (we asked to enable it), and for the WANT states, a request for the
+ * opposite may be queued.  All states are kept in two arrays of 256 bytes, indexed by option.
+ *
+ * Incoming WILL, WONT, DO and DONT are passed to receive(), which sends the reply (if any) and
+ * tells whether the option was switched on or off.  A request that does not change anything, for
+ * instance a WILL for an option that is already enabled, is not answered; this prevents the
+ * endless loops of identical packets that occur when both sides answer every request.
+ * Which options are accepted when the server asks is configured with acceptServer and
+ * acceptClient; options can also be switched on or off later with requestServer and
+ * requestClient.
+ *
+ * TIMING-MARK does not follow these rules (every request is answered), so it should not be given
+ * to the OptionStates.
+ */
+public class OptionStates {
+  public static final int NO = 0;
+  public static final int YES = 1;
+  public static final int WANTNO = 2;
+  public static final int WANTYES = 3;
+  private static final int STATE = 3;
+  private static final int OPPOSITE = 4;
+  private static final int ACCEPT_SERVER = 1;
+  private static final int ACCEPT_CLIENT = 2;
+
+  private TelnetSender _sender;
+  private byte[] _server;
+  private byte[] _client;
+  private byte[] _accept;
+  private int _sent;
+  private int _suppressed;
+
+  public OptionStates(TelnetSender sender) {
+    _sender = sender;
+    _server = new byte[256];
+    _client = new byte[256];
+    _accept = new byte[256];
+    _sent = 0;
+    _suppressed = 0;
+  }
+
+  /** Sets all options back to NO (for instance after a disconnect); what is accepted remains. */
+  public void reset() {
+    Arrays.fill(_server, (byte)NO);
+    Arrays.fill(_client, (byte)NO);
+  }
+
+  /** Sets whether we agree when the server offers to enable the given option (WILL). */
+  public void acceptServer(int option, boolean accept) {
+    if (accept) _accept[option] |= ACCEPT_SERVER;
+    else _accept[option] &= ~ACCEPT_SERVER;
+  }
+
+  /** Sets whether we agree when the server asks us to enable the given option (DO). */
+  public void acceptClient(int option, boolean accept) {
+    if (accept) _accept[option] |= ACCEPT_CLIENT;
+    else _accept[option] &= ~ACCEPT_CLIENT;
+  }
+
+  /** Returns whether the server side of the given option is enabled. */
+  public boolean queryServer(int option) {
+    return (_server[option] & STATE) == YES;
+  }
+
+  /** Returns whether our side of the given option is enabled. */
+  public boolean queryClient(int option) {
+    return (_client[option] & STATE) == YES;
+  }
+
+  /** Returns the state of the server side of the given option (NO, YES, WANTNO or WANTYES). */
+  public int queryServerState(int option) {
+    return _server[option] & STATE;
+  }
+
+  /** Returns the state of our side of the given option (NO, YES, WANTNO or WANTYES). */
+  public int queryClientState(int option) {
+    return _client[option] & STATE;
+  }
+
+  /** Returns the number of negotiation packets sent. */
+  public int queryRepliesSent() {
+    return _sent;
+  }
+
+  /**
+   * Returns the number of incoming requests that were not answered because they did not change
+   * anything (a client that answers every request would have sent a packet for each of them).
+   */
+  public int queryRepliesSuppressed() {
+    return _suppressed;
+  }
+
+  private void reply(int command, int option) {
+    _sent++;
+    _sender.sendTelnet(new SupportTelnetCommand(command, option));
+  }
+
+  /**
+   * Handles an incoming WILL, WONT, DO or DONT for the given option, sending a reply if needed.
+   * If this switched the option on or off, the given command is returned (so WILL means that the
+   * server now does the option, DONT that we no longer do it); otherwise -1 is returned.
+   */
+  public int receive(int command, int option) {
+    boolean changed;
+    if (command == TelnetCode.WILL) {
+      changed = receivePositive(_server, option, (_accept[option] & ACCEPT_SERVER) != 0,
+                                TelnetCode.DO, TelnetCode.DONT);
+    }
+    else if (command == TelnetCode.WONT) {
+      changed = receiveNegative(_server, option, TelnetCode.DO, TelnetCode.DONT);
+    }
+    else if (command == TelnetCode.DO) {
+      changed = receivePositive(_client, option, (_accept[option] & ACCEPT_CLIENT) != 0,
+                                TelnetCode.WILL, TelnetCode.WONT);
+    }
+    else if (command == TelnetCode.DONT) {
+      changed = receiveNegative(_client, option, TelnetCode.WILL, TelnetCode.WONT);
+    }
+    else throw new Error("OptionStates.receive called with command " + command);
+    return changed ? command : -1;
+  }
+
+  /**
+   * Handles a request to enable the option (WILL or DO) in the given state table, where yes and
+   * no are the replies that agree and refuse respectively; returns whether the option became
+   * enabled.
+   */
+  private boolean receivePositive(byte[] states, int option, boolean accept, int yes, int no) {
+    int state = states[option];
+    switch (state & STATE) {
+      case NO:
+        if (!accept) { reply(no, option); return false; }
+        states[option] = YES;
+        reply(yes, option);
+        return true;
+      case YES:
+        _suppressed++;
+        return false;
+      case WANTNO:
+        // an error by the other side: it should have answered our refusal negatively
+        if ((state & OPPOSITE) == 0) { states[option] = NO; return false; }
+        states[option] = YES;
+        return true;
+      default:  // WANTYES
+        if ((state & OPPOSITE) == 0) { states[option] = YES; return true; }
+        states[option] = WANTNO;
+        reply(no, option);
+        return false;
+    }
+  }
+
+  /**
+   * Handles a request to disable the option (WONT or DONT) in the given state table; returns
+   * whether the option was enabled before.
+   */
+  private boolean receiveNegative(byte[] states, int option, int yes, int no) {
+    int state = states[option];
+    switch (state & STATE) {
+      case NO:
+        _suppressed++;
+        return false;
+      case YES:
+        states[option] = NO;
+        reply(no, option);
+        return true;
+      case WANTNO:
+        if ((state & OPPOSITE) == 0) states[option] = NO;
+        else { states[option] = WANTYES; reply(yes, option); }
+        return false;
+      default:  // WANTYES
+        states[option] = NO;
+        return false;
+    }
+  }
+
+  /**
+   * Asks the server to enable or disable the given option (with DO or DONT), unless this is
+   * already happening; from now on, the server offering the option is accepted only if enable is
+   * true.
+   */
+  public void requestServer(int option, boolean enable) {
+    acceptServer(option, enable);
+    request(_server, option, enable, TelnetCode.DO, TelnetCode.DONT);
+  }
+
+  /**
+   * Offers to enable or disable the given option on our side (with WILL or WONT), unless this is
+   * already happening; from now on, the server asking for the option is accepted only if enable is
+   * true.
+   */
+  public void requestClient(int option, boolean enable) {
+    acceptClient(option, enable);
+    request(_client, option, enable, TelnetCode.WILL, TelnetCode.WONT);
+  }
+
+  private void request(byte[] states, int option, boolean enable, int yes, int no) {
+    int state = states[option];
+    boolean queued = (state & OPPOSITE) != 0;
+    switch (state & STATE) {
+      case NO:
+        if (enable) { states[option] = WANTYES; reply(yes, option); }
+        break;
+      case YES:
+        if (!enable) { states[option] = WANTNO; reply(no, option); }
+        break;
+      case WANTNO:
+        // once the server has confirmed, we will ask for the option again
+        if (enable && !queued) states[option] = WANTNO | OPPOSITE;
+        if (!enable && queued) states[option] = WANTNO;
+        break;
+      default:  // WANTYES
+        if (!enable && !queued) states[option] = WANTYES | OPPOSITE;
+        if (enable && queued) states[option] = WANTYES;
+    }
+  }
+}
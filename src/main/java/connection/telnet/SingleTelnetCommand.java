@@ -19,26 +19,28 @@
 
 package turtle.connection.telnet;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import turtle.interfaces.immutable.TelnetCode;
 
 /** A telnet command without any parameters (so IAC <X>). */
 public class SingleTelnetCommand implements TelnetCode {
   private int _command;
+  private byte[] _complete;
 
   public SingleTelnetCommand(int cmd) {
     _command = cmd;
+    _complete = new byte[] { (byte)IAC, (byte)cmd };
   }
 
   /**
-   * Tests whether the given arraylist represents a complete SingleTelnetCommand; if so, a
-   * SingleTelnetCommand is returned; if not, null is returned.
+   * Tests whether the first length bytes of the given array represent a complete
+   * SingleTelnetCommand; if so, a SingleTelnetCommand is returned; if not, null is returned.
    */
-  public static TelnetCode readFromArrayList(ArrayList<Integer> list) {
-    if (list.size() < 2) return null;
-    int cmd = list.get(1);
+  public static TelnetCode readFromBytes(byte[] data, int length) {
+    if (length < 2) return null;
+    int cmd = data[1] & 0xFF;
     if (cmd != WILL && cmd != WONT && cmd != DO && cmd != DONT && cmd != SB) {
-      if (list.size() != 2) throw new Error("Telnet scanning not done char by char?");
+      if (length != 2) throw new Error("Telnet scanning not done char by char?");
       return new SingleTelnetCommand(cmd);
     }
     else return null;
@@ -46,10 +48,9 @@ public class SingleTelnetCommand implements TelnetCode {
 
   public int queryCommand() { return _command; }
   public int queryOption() { return -1; }
-  public int[] querySubNegotiation() { return null; }
+  public ByteBuffer querySubNegotiation() { return null; }
 
-  public int[] queryCompleteCode() {
-    return new int[] { IAC, _command };
+  public ByteBuffer queryCompleteCode() {
+    return ByteBuffer.wrap(_complete).asReadOnlyBuffer();
   }
 }
-
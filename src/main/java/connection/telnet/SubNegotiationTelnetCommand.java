@@ -19,68 +19,110 @@
 
 package turtle.connection.telnet;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import turtle.interfaces.immutable.TelnetCode;
 
 /**
  * A telnet command of the form IAC SB <option> <data> IAC SE, which can be used to communicate all
  * kinds of things in more detail.
+ * Inside <data>, a byte 255 is sent as IAC IAC.  The command keeps its bytes in the form in which
+ * they are sent over the connection; only if the data actually contains such an escaped byte is an
+ * unescaped copy of the data kept as well.
  */
 public class SubNegotiationTelnetCommand implements TelnetCode {
   private int _option;
-  private int[] _data;
+  private byte[] _complete;
+  private byte[] _data;
+  private int _dataStart;
+  private int _dataLength;
 
-  public SubNegotiationTelnetCommand(int option, ArrayList<Integer> data) {
-    _option = option;
-    _data = new int[data.size()];
-    for (int i = 0; i < data.size(); i++) _data[i] = data.get(i);
+  /** Creates the subnegotiation IAC SB option data IAC SE; the data is copied. */
+  public SubNegotiationTelnetCommand(int option, byte[] data) {
+    this(option, data, 0, data.length);
   }
 
-  private SubNegotiationTelnetCommand(int option, int[] data) {
+  /** Creates the subnegotiation IAC SB option data[start..end-1] IAC SE; the data is copied. */
+  public SubNegotiationTelnetCommand(int option, byte[] data, int start, int end) {
+    int escapes = 0;
+    for (int i = start; i < end; i++) if (data[i] == (byte)IAC) escapes++;
     _option = option;
+    _complete = new byte[end - start + escapes + 5];
+    _complete[0] = (byte)IAC;
+    _complete[1] = (byte)SB;
+    _complete[2] = (byte)option;
+    int k = 3;
+    for (int i = start; i < end; i++) {
+      _complete[k++] = data[i];
+      if (data[i] == (byte)IAC) _complete[k++] = (byte)IAC;
+    }
+    _complete[k++] = (byte)IAC;
+    _complete[k] = (byte)SE;
+    if (escapes == 0) {
+      _data = _complete;
+      _dataStart = 3;
+    }
+    else {
+      _data = new byte[end - start];
+      System.arraycopy(data, start, _data, 0, end - start);
+      _dataStart = 0;
+    }
+    _dataLength = end - start;
+  }
+
+  /**
+   * Used by readFromBytes: the given array is the complete code as received, and is not copied.
+   * The data must already have been unescaped into data (which may be the same array).
+   */
+  private SubNegotiationTelnetCommand(byte[] complete, byte[] data, int start, int length) {
+    _option = complete[2] & 0xFF;
+    _complete = complete;
     _data = data;
+    _dataStart = start;
+    _dataLength = length;
   }
 
   /**
-   * Tests whether the given arraylist represents a complete SubNegotiationTelnetCommand; if so, a
-   * SubNegotiationTelnetCommand is returned; if not, null is returned.
+   * Tests whether the first length bytes of the given array represent a complete
+   * SubNegotiationTelnetCommand; if so, a SubNegotiationTelnetCommand is returned; if not, null
+   * is returned.
+   * The command is complete once it ends in an IAC SE where the IAC is not itself an escaped data
+   * byte (as in IAC IAC SE, which is the data byte 255 followed by the data byte 240).
    */
-  public static TelnetCode readFromArrayList(ArrayList<Integer> list) {
-    if (list.size() < 4) return null;
-    // we allow both IAC SB <option> <data> IAC SE and IAC SB <option> <data> SE, because some
-    // servers erroneously omit the final IAC in some cases
-    // (if this turns out to be a problem, just require it after all)
-    if (!list.get(1).equals(SB) || !list.get(list.size()-1).equals(SE)) return null;
+  public static TelnetCode readFromBytes(byte[] list, int length) {
+    if (length < 5) return null;
+    if (list[1] != (byte)SB || list[length-1] != (byte)SE || list[length-2] != (byte)IAC) {
+      return null;
+    }
+    int iacs = 0;
+    for (int i = length - 2; i >= 3 && list[i] == (byte)IAC; i--) iacs++;
+    if (iacs % 2 == 0) return null;
 
-    int length = list.size()-4;
-    if (list.get(list.size()-2).equals(IAC)) length--;
-    
-    int[] data = new int[length];
-    for (int i = 0; i < length; i++) data[i] = list.get(i+3);
+    byte[] complete = new byte[length];
+    System.arraycopy(list, 0, complete, 0, length);
+    int escapes = 0;
+    for (int i = 3; i < length - 2; i++) {
+      if (complete[i] == (byte)IAC) { escapes++; i++; }
+    }
+    if (escapes == 0) return new SubNegotiationTelnetCommand(complete, complete, 3, length - 5);
 
-    return new SubNegotiationTelnetCommand(list.get(2), data);
+    byte[] data = new byte[length - 5 - escapes];
+    for (int i = 3, k = 0; i < length - 2; i++) {
+      data[k++] = complete[i];
+      if (complete[i] == (byte)IAC) i++;
+    }
+    return new SubNegotiationTelnetCommand(complete, data, 0, data.length);
   }
 
   public int queryCommand() { return SB; }
   public int queryOption() { return _option; }
 
-  public int[] querySubNegotiation() {
-    // as this class is immutable, we should return a copy, so that querying classes cannot
+  public ByteBuffer querySubNegotiation() {
+    // as this class is immutable, we return a read-only view, so that querying classes cannot
     // manipulate our data!
-    int[] ret = new int[_data.length];
-    System.arraycopy(_data, 0, ret, 0, _data.length);
-    return ret;
+    return ByteBuffer.wrap(_data, _dataStart, _dataLength).slice().asReadOnlyBuffer();
   }
 
-  public int[] queryCompleteCode() {
-    int[] ret = new int[_data.length+5];
-    ret[0] = IAC;
-    ret[1] = SB;
-    ret[2] = _option;
-    for (int i = 0; i < _data.length; i++) ret[i+3] = _data[i];
-    ret[ret.length-2] = IAC;
-    ret[ret.length-1] = SE;
-    return ret;
+  public ByteBuffer queryCompleteCode() {
+    return ByteBuffer.wrap(_complete).asReadOnlyBuffer();
   }
 }
-
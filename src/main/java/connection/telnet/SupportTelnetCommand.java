@@ -19,7 +19,7 @@
 
 package turtle.connection.telnet;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import turtle.interfaces.immutable.TelnetCode;
 
 /**
@@ -29,6 +29,7 @@ import turtle.interfaces.immutable.TelnetCode;
 public class SupportTelnetCommand implements TelnetCode {
   private int _command;
   private int _option;
+  private byte[] _complete;
 
   public SupportTelnetCommand(int cmd, int option) {
     if (cmd != WILL && cmd != WONT && cmd != DO && cmd != DONT) {
@@ -36,26 +37,26 @@ public class SupportTelnetCommand implements TelnetCode {
     }
     _command = cmd;
     _option = option;
+    _complete = new byte[] { (byte)IAC, (byte)cmd, (byte)option };
   }
 
   /**
-   * Tests whether the given arraylist represents a complete SupportTelnetCommand; if so, a
-   * SupportTelnetCommand is returned; if not, null is returned.
+   * Tests whether the first length bytes of the given array represent a complete
+   * SupportTelnetCommand; if so, a SupportTelnetCommand is returned; if not, null is returned.
    */
-  public static TelnetCode readFromArrayList(ArrayList<Integer> list) {
-    if (list.size() < 3) return null;
-    int cmd = list.get(1);
+  public static TelnetCode readFromBytes(byte[] data, int length) {
+    if (length < 3) return null;
+    int cmd = data[1] & 0xFF;
     if (cmd != WILL && cmd != WONT && cmd != DO && cmd != DONT) return null;
-    if (list.size() != 3) throw new Error("Telnet scanning not done char by char?");
-    return new SupportTelnetCommand(cmd, list.get(2));
+    if (length != 3) throw new Error("Telnet scanning not done char by char?");
+    return new SupportTelnetCommand(cmd, data[2] & 0xFF);
   }
 
   public int queryCommand() { return _command; }
   public int queryOption() { return _option; }
-  public int[] querySubNegotiation() { return null; }
+  public ByteBuffer querySubNegotiation() { return null; }
 
-  public int[] queryCompleteCode() {
-    return new int[] { TelnetCode.IAC, _command, _option };
+  public ByteBuffer queryCompleteCode() {
+    return ByteBuffer.wrap(_complete).asReadOnlyBuffer();
   }
 }
-
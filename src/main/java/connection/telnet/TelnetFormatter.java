@@ -0,0 +1,134 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.connection.telnet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.protocols.Gmcp;
+import turtle.protocols.Msdp;
+import turtle.protocols.Zmp;
+
+/**
+ * The TelnetFormatter translates telnet codes into a readable form, for instance
+ * IAC SB TTYPE IS "ansi" IAC SE, for debugging output.  This takes into account what is known
+ * about the format of specific subnegotiations.
+ */
+public class TelnetFormatter {
+  private static final int TELOPT_TTYPE = 24;
+  private static final int TELOPT_ZMP = Zmp.TELOPT_ZMP;
+  private static final int TELOPT_GMCP = Gmcp.TELOPT_GMCP;
+  private static final int TELQUAL_IS   =  0;
+  private static final int TELQUAL_SEND =  1;
+  private static final String[] COMMANDS = { "EOR", "SE", "NOP", "DAT", "BRK", "IP", "AO", "AYT",
+                                             "EC", "EL", "GA", "SB", "WILL", "WONT", "DO",
+                                             "DONT" };
+  private static final String[] OPTIONS = new String[256];
+
+  static {
+    OPTIONS[6] = "TIMING-MARK";
+    OPTIONS[TELOPT_TTYPE] = "TTYPE";
+    OPTIONS[25] = "EOR";
+    OPTIONS[Msdp.TELOPT_MSDP] = "MSDP";
+    OPTIONS[31] = "NAWS";
+    OPTIONS[42] = "CHARSET";
+    OPTIONS[86] = "COMPRESS";
+    OPTIONS[91] = "MXP";
+    OPTIONS[TELOPT_ZMP] = "ZMP";
+    OPTIONS[TELOPT_GMCP] = "GMCP";
+  }
+
+  /** Returns a string representation of the given telnet command. */
+  public static String commandToString(int cmd) {
+    if (cmd >= 239 && cmd <= 254) return COMMANDS[cmd - 239];
+    else return "" + cmd;
+  }
+
+  /** Returns a string representation of the given telnet option. */
+  public static String optionToString(int option) {
+    if (option >= 0 && option < 256 && OPTIONS[option] != null) return OPTIONS[option];
+    return "" + option;
+  }
+
+  /** Returns a String representation of the given telnet code. */
+  public static String format(TelnetCode code) {
+    StringBuilder ret = new StringBuilder("IAC ");
+    ret.append(commandToString(code.queryCommand()));
+    int option = code.queryOption();
+    if (option != -1) ret.append(' ').append(optionToString(option));
+    ByteBuffer subn = code.querySubNegotiation();
+    if (subn != null) {
+      ret.append(' ');
+      appendSubNegotiation(ret, option, subn);
+      ret.append("IAC SE");
+    }
+    return ret.toString();
+  }
+
+  /**
+   * Reads the given (partial) byte buffer as though it is a 0-separated list of strings, each
+   * presented as a byte sequence that defines a UTF-8 string, and appends each of them in quotes
+   * and followed by a space; if onlyFirst is true, only the first string is added.
+   */
+  private static void appendStrings(StringBuilder ret, ByteBuffer code, int start, int end,
+                                    boolean onlyFirst) {
+    for (int p = start; p < end; p++) {
+      if (code.get(p) == 0) continue;
+      int q = p;
+      while (q < end && code.get(q) != 0) q++;
+      byte[] bs = new byte[q-p];
+      for (int i = 0; i < bs.length; i++) bs[i] = code.get(p+i);
+      ret.append('"').append(new String(bs, StandardCharsets.UTF_8)).append("\" ");
+      if (onlyFirst) return;
+      p = q;
+    }
+  }
+
+  /** Appends *just* the subnegotiation part to the given builder, ending with a space. */
+  private static void appendSubNegotiation(StringBuilder ret, int option, ByteBuffer subn) {
+    int length = subn.remaining();
+    if (length == 0) { ret.append(' '); return; }
+
+    if (option == TELOPT_GMCP) {
+      int before = ret.length();
+      appendStrings(ret, subn, 0, length, true);
+      if (ret.length() == before) ret.append(' ');
+      return;
+    }
+
+    String[] zmp = option == TELOPT_ZMP ? Zmp.decode(subn) : null;
+    if (zmp != null) {
+      for (int i = 0; i < zmp.length; i++) ret.append('"').append(zmp[i]).append("\" ");
+      return;
+    }
+
+    int start = 1;
+    if (subn.get(0) == TELQUAL_IS) ret.append("IS ");
+    else if (subn.get(0) == TELQUAL_SEND) ret.append("SEND ");
+    else start = 0;
+
+    if ((option == TELOPT_TTYPE || option == TELOPT_ZMP) && subn.get(0) == TELQUAL_IS) {
+      appendStrings(ret, subn, 1, length, false);
+    }
+    else {
+      for (int i = start; i < length; i++) ret.append(subn.get(i) & 0xFF).append(' ');
+    }
+  }
+}
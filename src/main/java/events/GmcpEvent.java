@@ -0,0 +1,90 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.events;
+
+import java.nio.ByteBuffer;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.protocols.JsonReader;
+
+/**
+ * This class represents the event that a GMCP message has arrived from the server.
+ * A GMCP message consists of a package name such as "Char.Vitals", optionally followed by a JSON
+ * value.  The JSON is not parsed in advance: listeners can read the parts they are interested in
+ * using queryReader(), which works directly on the bytes received from the server.
+ * The underlying buffer is shared (typically a read-only view of the telnet subnegotiation), and
+ * should never be modified.
+ */
+public class GmcpEvent implements TurtleEvent {
+  private String _package;
+  private ByteBuffer _data;
+  private int _start;
+  private int _end;
+
+  /**
+   * Creates a GMCP event for the given package, whose JSON data is data[start..end-1] (using
+   * absolute indexes in the buffer).
+   */
+  public GmcpEvent(String pkg, ByteBuffer data, int start, int end) {
+    if (pkg == null) throw new Error("Cannot initialise GmcpEvent with null!");
+    _package = pkg;
+    _data = data;
+    _start = start;
+    _end = end;
+  }
+
+  public EventKind queryEventKind() {
+    return EventKind.GMCP;
+  }
+
+  /** Returns the full package name of the message, for instance "Char.Vitals". */
+  public String queryPackage() {
+    return _package;
+  }
+
+  /** Returns the module the message belongs to, for instance "Char" for "Char.Vitals". */
+  public String queryModule() {
+    int k = _package.lastIndexOf('.');
+    if (k == -1) return "";
+    return _package.substring(0, k);
+  }
+
+  /** Returns the name of the message within its module, for instance "Vitals". */
+  public String queryMessage() {
+    return _package.substring(_package.lastIndexOf('.') + 1);
+  }
+
+  /** Returns whether the message carries any JSON data. */
+  public boolean hasData() {
+    return _end > _start;
+  }
+
+  /** Returns a fresh reader that can be used to step through the JSON data of the message. */
+  public JsonReader queryReader() {
+    ByteBuffer json = _data.duplicate();
+    json.limit(_end);
+    json.position(_start);
+    return new JsonReader(json);
+  }
+
+  /** Returns the JSON data of the message as a String (mostly useful for debugging). */
+  public String queryJson() {
+    return JsonReader.decodeString(_data, _start, _end);
+  }
+}
@@ -26,7 +26,7 @@ import turtle.interfaces.immutable.TurtleEvent;
  * the user.
  */
 public class InformationEvent implements TurtleEvent {
-  public enum InformationKind { FEEDBACK, TELNET };
+  public enum InformationKind { FEEDBACK, TELNET, SESSION };
   private String _text;
   private InformationKind _kind;
 
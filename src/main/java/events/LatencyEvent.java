@@ -0,0 +1,65 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.events;
+
+import turtle.interfaces.immutable.TurtleEvent;
+
+/**
+ * This class represents the event that the round-trip time to the server has been measured.
+ * Aside from the latest measurement, it carries a summary of the recent measurements.
+ * All times are in nanoseconds.
+ */
+public class LatencyEvent implements TurtleEvent {
+  private long _last;
+  private long _median;
+  private long _high;
+  private int _samples;
+
+  public LatencyEvent(long last, long median, long high, int samples) {
+    _last = last;
+    _median = median;
+    _high = high;
+    _samples = samples;
+  }
+
+  public EventKind queryEventKind() {
+    return EventKind.LATENCY;
+  }
+
+  /** Returns the most recently measured round-trip time. */
+  public long queryLast() {
+    return _last;
+  }
+
+  /** Returns the median of the recently measured round-trip times. */
+  public long queryMedian() {
+    return _median;
+  }
+
+  /** Returns the 90th percentile of the recently measured round-trip times. */
+  public long queryHigh() {
+    return _high;
+  }
+
+  /** Returns the number of measurements that the median and high values are based on. */
+  public int querySampleCount() {
+    return _samples;
+  }
+}
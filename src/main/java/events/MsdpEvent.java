@@ -0,0 +1,50 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.events;
+
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.protocols.MsdpValue;
+
+/**
+ * This class represents the event that the server has reported a new value for an MSDP variable.
+ * Such events are only sent when the value has actually changed.
+ */
+public class MsdpEvent implements TurtleEvent {
+  private String _name;
+  private MsdpValue _value;
+
+  public MsdpEvent(String name, MsdpValue value) {
+    if (name == null || value == null) throw new Error("Cannot initialise MsdpEvent with null!");
+    _name = name;
+    _value = value;
+  }
+
+  public EventKind queryEventKind() {
+    return EventKind.MSDP;
+  }
+
+  public String queryVariable() {
+    return _name;
+  }
+
+  public MsdpValue queryValue() {
+    return _value;
+  }
+}
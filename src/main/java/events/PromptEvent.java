@@ -0,0 +1,52 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.events;
+
+import turtle.interfaces.immutable.TurtleEvent;
+
+/**
+ * This class represents the event that the server has sent a prompt: text that is not followed by
+ * a newline, because the server is waiting for the user.  The text is the unparsed text since the
+ * last newline (so it may contain ansi codes).  A prompt is "marked" if the server explicitly said
+ * so (with telnet GA or EOR), and unmarked if it was only guessed because the server has been
+ * quiet for a while after an incomplete line.
+ */
+public class PromptEvent implements TurtleEvent {
+  private String _text;
+  private boolean _marked;
+
+  public PromptEvent(String txt, boolean marked) {
+    if (txt == null) throw new Error("Cannot initialise PromptEvent with null!");
+    _text = txt;
+    _marked = marked;
+  }
+
+  public EventKind queryEventKind() {
+    return EventKind.PROMPT;
+  }
+
+  public String queryText() {
+    return _text;
+  }
+
+  public boolean queryMarked() {
+    return _marked;
+  }
+}
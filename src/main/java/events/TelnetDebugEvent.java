@@ -0,0 +1,63 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.events;
+
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.connection.telnet.TelnetFormatter;
+
+/**
+ * This class represents the event that a telnet code was received from or sent to the server,
+ * for the user to see while telnet debugging is enabled (#debug telnet).  The event carries the
+ * code itself; it is only translated into text when someone asks for it.
+ */
+public class TelnetDebugEvent implements TurtleEvent {
+  private boolean _sent;
+  private TelnetCode _code;
+  private String _text;
+
+  public TelnetDebugEvent(boolean sent, TelnetCode code) {
+    _sent = sent;
+    _code = code;
+    _text = null;
+  }
+
+  public EventKind queryEventKind() {
+    return EventKind.DEBUG;
+  }
+
+  /** Returns true if the code was sent by us, false if it was received from the server. */
+  public boolean querySent() {
+    return _sent;
+  }
+
+  public TelnetCode queryTelnetCode() {
+    return _code;
+  }
+
+  /** Returns the text to show the user, for instance [Received telnet: IAC WILL GMCP]. */
+  public String queryText() {
+    if (_text == null) {
+      _text = "[" + (_sent ? "Sent" : "Received") + " telnet: " +
+              TelnetFormatter.format(_code) + "]";
+    }
+    return _text;
+  }
+}
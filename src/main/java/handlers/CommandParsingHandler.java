@@ -64,6 +64,23 @@ public class CommandParsingHandler implements CommandParser, EventListener {
 
     if (cmd.equals("connect")) return ConnectCommand.parse(text, this);
     if (cmd.equals("scroll")) return ScrollCommand.parse(text, this);
+    if (cmd.equals("stats")) return StatsCommand.parse(text, this);
+    if (cmd.equals("debug")) return DebugCommand.parse(text, this);
+    if (cmd.equals("prompt")) return PromptCommand.parse(text, this);
+    if (cmd.equals("charset")) return CharsetCommand.parse(text, this);
+    if (cmd.equals("terminal")) return TerminalCommand.parse(text, this);
+    if (cmd.equals("session")) return SessionCommand.parse(text, this);
+    if (cmd.equals("all")) return FanoutCommand.parse(text, this);
+    if (cmd.equals("group")) return FanoutCommand.parse(text, this);
+    if (cmd.equals("pace")) return PaceCommand.parse(text, this);
+    if (cmd.equals("stop")) return StopCommand.parse(text, this);
+    if (cmd.equals("urgent")) return MudCommand.parseUrgent(text, this);
+    if (cmd.equals("timer")) return TimerCommand.parse(text, this);
+    if (cmd.equals("delay")) return TimerCommand.parse(text, this);
+    if (cmd.equals("map")) return MapCommand.parse(text, this);
+    if (cmd.equals("goto")) return GotoCommand.parse(text, this);
+    if (cmd.equals("find")) return FindCommand.parse(text, this);
+    if (cmd.equals("loggrep")) return LogGrepCommand.parse(text, this);
 
     EventBus.eventOccurred(new WarningEvent("Unknown Turtle command: " + text));
     return null;
@@ -20,37 +20,103 @@
 package turtle.handlers;
 
 import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import javax.swing.Timer;
 import turtle.interfaces.immutable.Command;
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.interfaces.immutable.TurtleEvent;
 import turtle.interfaces.CommandListener;
 import turtle.interfaces.ConnectionListener;
+import turtle.interfaces.EventListener;
 import turtle.interfaces.TelnetSender;
 import turtle.EventBus;
+import turtle.events.CharsetEvent;
 import turtle.events.ConnectEvent;
 import turtle.events.DisconnectEvent;
 import turtle.events.InformationEvent;
 import turtle.events.MudTextEvent;
 import turtle.events.TelnetEvent;
 import turtle.events.WarningEvent;
+import turtle.commands.CharsetCommand;
 import turtle.commands.ConnectCommand;
+import turtle.commands.FanoutCommand;
 import turtle.commands.MudCommand;
+import turtle.commands.PaceCommand;
+import turtle.commands.SessionCommand;
+import turtle.connection.CommandScheduler;
 import turtle.connection.Connection;
+import turtle.connection.TlsTransport;
+import turtle.connection.telnet.OptionStates;
+import turtle.connection.telnet.SupportTelnetCommand;
+import turtle.statistics.LatencyRecorder;
+import turtle.statistics.Statistics;
 
 /**
  * The Connection Handler manages connections to a remote server.
  * This is all done asynchronously, but the rest of the program does not need to consider that.
+ * Commands for the server are paced by a CommandScheduler; commands that cannot be sent yet are
+ * sent later by a timer (on the event queue).
+ * Text is decoded with the character set chosen by the user (UTF-8 by default); for a single
+ * connection, this may be replaced by a character set negotiated with the server.
+ * Next to the main connection, there may be any number of named sessions, which can be put in
+ * groups; a command can be sent to all sessions in a group (or to all connections) at once.  Such
+ * a fan-out is written to the sockets by a small pool of threads, so a slow connection never holds
+ * up the event queue, and the time until each session has sent the command is reported.
+ * The sessions and groups are only modified on the event queue.
  */
-public class ConnectionHandler implements CommandListener, ConnectionListener, TelnetSender {
+public class ConnectionHandler implements CommandListener, ConnectionListener, EventListener,
+                                          TelnetSender {
   Connection _connection;
+  CommandScheduler _scheduler;
+  Timer _pacer;
+  Charset _charset;
+  StringBuilder _setupTimes;    // only used by the connection thread, once it is started
+  TreeMap<String,NamedSession> _sessions;
+  TreeMap<String,TreeSet<String>> _groups;
+  ExecutorService _fanoutPool;
+
+  /** The number of threads used to write fanned-out commands to the sessions. */
+  public static final int FANOUTTHREADS = 8;
 
   public ConnectionHandler() {
     _connection = null;
+    _setupTimes = new StringBuilder();
+    _sessions = new TreeMap<String,NamedSession>();
+    _groups = new TreeMap<String,TreeSet<String>>();
+    _fanoutPool = null;
+    _charset = StandardCharsets.UTF_8;
+    _scheduler = new CommandScheduler(CommandScheduler.DEFAULT_RATE,
+                                      CommandScheduler.DEFAULT_BURST);
+    _pacer = new Timer(0, new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+        sendScheduledCommands();
+      }
+    });
+    _pacer.setRepeats(false);
   }
 
   public void createConnection(String host, int port) {
+    createConnection(host, port, false);
+  }
+
+  /** Connects to the given server, encrypting the connection with TLS if so requested. */
+  public void createConnection(String host, int port, boolean tls) {
     if (_connection == null) {
-      _connection = new Connection(host, port, this);
+      _setupTimes = new StringBuilder();
+      _connection = new Connection(host, port, _charset,
+                                   tls ? TlsTransport.defaultContext() : null, this);
     }
     else {
       String warning = "Cannot create a new connection when you are already connected.";
@@ -67,13 +133,39 @@ public class ConnectionHandler implements CommandListener, ConnectionListener, T
   public void commandGiven(Command.CommandKind kind, Command command) {
     if (kind == Command.CommandKind.MUDCMD) handleMudCommand((MudCommand)command);
     if (kind == Command.CommandKind.CONNECTCMD) handleConnectCommand((ConnectCommand)command);
+    if (kind == Command.CommandKind.PACECMD) handlePaceCommand((PaceCommand)command);
+    if (kind == Command.CommandKind.STOPCMD) handleStopCommand();
+    if (kind == Command.CommandKind.CHARSETCMD) handleCharsetCommand((CharsetCommand)command);
+    if (kind == Command.CommandKind.SESSIONCMD) handleSessionCommand((SessionCommand)command);
+    if (kind == Command.CommandKind.FANOUTCMD) handleFanoutCommand((FanoutCommand)command);
+  }
+
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.CHARSET && _connection != null) {
+      Charset charset = ((CharsetEvent)event).queryCharset();
+      _connection.setCharset(charset);
+      sendInformation("The server switched to the " + charset.name() + " character set.");
+    }
+  }
+
+  /** Handles #charset by showing or changing the character set used for the server's text. */
+  private void handleCharsetCommand(CharsetCommand cmd) {
+    Charset charset = cmd.queryCharset();
+    if (charset == null) {
+      Charset current = _connection == null ? _charset : _connection.queryCharset();
+      sendInformation("The character set is " + current.name() + ".");
+      return;
+    }
+    _charset = charset;
+    if (_connection != null) _connection.setCharset(charset);
+    sendInformation("The character set is now " + charset.name() + ".");
   }
 
-  /** Handles the command to #connect <host> <port> by calling createConnection. */
+  /** Handles the command to #connect <host> <port> [ssl] by calling createConnection. */
   private void handleConnectCommand(ConnectCommand cmd) {
     String host = cmd.queryHost();
     int port = cmd.queryPort();
-    createConnection(host, port);
+    createConnection(host, port, cmd.queryTls());
   }
 
   /**
@@ -81,10 +173,14 @@ public class ConnectionHandler implements CommandListener, ConnectionListener, T
    * just put them on the event bus, or we risk concurrency issues all over the places.
    * Thus, this function makes sure that the relevant events are send on the standard event queue
    * where the rest of the program runs.
+   * The time the event spends waiting on the queue is recorded in the QUEUE stage of the
+   * Statistics.
    */
   private void sendEventOnQueue(TurtleEvent event) {
+    long start = Statistics.startTimer();
     EventQueue.invokeLater(new Runnable() {
       public void run() {
+        Statistics.stopTimer(Statistics.Stage.QUEUE, start);
         EventBus.eventOccurred(event);
       }
     });
@@ -100,17 +196,342 @@ public class ConnectionHandler implements CommandListener, ConnectionListener, T
     sendEventOnQueue(new WarningEvent(txt));
   }
 
-  /** Handles the given command by sending it to the server (if we are connected). */
+  /**
+   * Handles the given command by scheduling it to be sent to the server (if we are connected);
+   * unless many commands are given in a short time, it is sent immediately.
+   */
   private void handleMudCommand(MudCommand cmd) {
-    String txt = ((MudCommand)cmd).queryText();
-    if (_connection != null) _connection.send(txt);
-    else sendWarning("Cannot send command: no active connection.");
+    if (_connection == null) {
+      sendWarning("Cannot send command: no active connection.");
+      return;
+    }
+    _scheduler.submit(cmd.queryText(), cmd.queryUrgent());
+    sendScheduledCommands();
+  }
+
+  /**
+   * Sends all commands that the scheduler allows to be sent now, and if any commands remain, sets
+   * the timer to try again when the next one is allowed.
+   */
+  private void sendScheduledCommands() {
+    Connection connection = _connection;
+    if (connection == null) {
+      _scheduler.cancel();
+      return;
+    }
+    long now = System.nanoTime();
+    String command;
+    while ((command = _scheduler.take(now)) != null) connection.send(command);
+    long delay = _scheduler.queryDelay(now);
+    if (delay > 0) {
+      _pacer.setInitialDelay((int)((delay + 999999) / 1000000));
+      _pacer.restart();
+    }
+  }
+
+  /** Handles #pace by showing or changing the limits of the command scheduler. */
+  private void handlePaceCommand(PaceCommand cmd) {
+    // without pacing the burst does not matter, but keep it for a later #pace <rate>
+    if (cmd.queryAction() == PaceCommand.Action.OFF) {
+      _scheduler.setLimits(0, _scheduler.queryBurst());
+    }
+    else if (cmd.queryAction() == PaceCommand.Action.SET) {
+      int burst = cmd.queryBurst();
+      if (burst == -1) burst = _scheduler.queryBurst();
+      _scheduler.setLimits(cmd.queryRate(), burst);
+    }
+    if (_scheduler.queryRate() == 0) sendInformation("Commands are sent without pacing.");
+    else {
+      double rate = _scheduler.queryRate();
+      String rateText = rate == Math.floor(rate) ? "" + (long)rate : "" + rate;
+      sendInformation("Commands are sent at most " + rateText + " per second, " +
+                      "in bursts of at most " + _scheduler.queryBurst() + ".");
+    }
+    // with different limits, waiting commands may be sent at a different time
+    sendScheduledCommands();
   }
 
+  /** Handles #stop by cancelling all commands that are still waiting to be sent. */
+  private void handleStopCommand() {
+    _pacer.stop();
+    int cancelled = _scheduler.cancel();
+    sendInformation("Cancelled " + cancelled + " pending command" + (cancelled == 1 ? "." : "s."));
+  }
+
+  /** Handles #session by listing, opening or closing named sessions. */
+  private void handleSessionCommand(SessionCommand cmd) {
+    if (cmd.queryAction() == SessionCommand.Action.LIST) listSessions();
+    else if (cmd.queryAction() == SessionCommand.Action.OPEN) {
+      String name = cmd.queryName();
+      if (_sessions.containsKey(name)) {
+        sendWarning("There is already a session called " + name + ".");
+        return;
+      }
+      NamedSession session = new NamedSession(name);
+      _sessions.put(name, session);
+      for (String group : cmd.queryGroups()) {
+        TreeSet<String> members = _groups.get(group);
+        if (members == null) { members = new TreeSet<String>(); _groups.put(group, members); }
+        members.add(name);
+      }
+      session.open(cmd.queryHost(), cmd.queryPort(), _charset);
+    }
+    else {
+      NamedSession session = _sessions.get(cmd.queryName());
+      if (session == null) sendWarning("There is no session called " + cmd.queryName() + ".");
+      else {
+        removeSession(session);
+        session._connection.disconnect();
+      }
+    }
+  }
+
+  /** Shows the open sessions, with their groups and the latency of the last fan-out. */
+  private void listSessions() {
+    if (_sessions.isEmpty()) {
+      sendInformation("There are no sessions.");
+      return;
+    }
+    for (NamedSession session : _sessions.values()) {
+      ArrayList<String> groups = new ArrayList<String>();
+      for (Map.Entry<String,TreeSet<String>> entry : _groups.entrySet()) {
+        if (entry.getValue().contains(session._name)) groups.add(entry.getKey());
+      }
+      long latency = session._latency;
+      sendInformation("Session " + session._name + ": " + session._host + " " + session._port +
+                      (groups.isEmpty() ? "" : ", groups " + groups) +
+                      (latency < 0 ? "" : ", last send " + Statistics.durationToString(latency)));
+    }
+  }
+
+  /** Forgets the given session, if it is still registered; this must be done on the event queue. */
+  private void removeSession(NamedSession session) {
+    if (_sessions.get(session._name) != session) return;
+    _sessions.remove(session._name);
+    ArrayList<String> empty = new ArrayList<String>();
+    for (Map.Entry<String,TreeSet<String>> entry : _groups.entrySet()) {
+      entry.getValue().remove(session._name);
+      if (entry.getValue().isEmpty()) empty.add(entry.getKey());
+    }
+    for (String group : empty) _groups.remove(group);
+  }
+
+  /**
+   * Returns the time it took to send the last fanned-out command to the given session, in
+   * nanoseconds, or -1 if there is no such session or nothing has been fanned out to it yet.
+   */
+  public long querySessionLatency(String name) {
+    NamedSession session = _sessions.get(name);
+    return session == null ? -1 : session._latency;
+  }
+
+  /**
+   * Handles #all and #group: the command is placed in the outbound queue of every target, after
+   * which the pool threads write it to the sockets in parallel.  #all also sends it to the main
+   * connection, with the usual pacing.
+   */
+  private void handleFanoutCommand(FanoutCommand cmd) {
+    String text = cmd.queryCommand();
+    ArrayList<NamedSession> targets = new ArrayList<NamedSession>();
+    if (cmd.queryGroup() == null) targets.addAll(_sessions.values());
+    else {
+      TreeSet<String> members = _groups.get(cmd.queryGroup());
+      if (members == null) {
+        sendWarning("There is no group called " + cmd.queryGroup() + ".");
+        return;
+      }
+      for (String name : members) targets.add(_sessions.get(name));
+    }
+    if (cmd.queryGroup() == null && _connection != null) {
+      _scheduler.submit(text, false);
+      sendScheduledCommands();
+    }
+    else if (targets.isEmpty()) {
+      sendWarning("Cannot send command: no active connection.");
+      return;
+    }
+    if (targets.isEmpty()) return;
+
+    if (_fanoutPool == null) {
+      _fanoutPool = Executors.newFixedThreadPool(FANOUTTHREADS, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "fanout");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    Fanout fanout = new Fanout(text, targets.size());
+    for (NamedSession session : targets) session._connection.send(text);
+    for (NamedSession session : targets) {
+      _fanoutPool.execute(new Runnable() {
+        public void run() {
+          fanout.flush(session);
+        }
+      });
+    }
+  }
+
+  /**
+   * A single fanned-out command, which collects the send latency of all its targets; the pool
+   * thread which finishes last reports the result.
+   */
+  private class Fanout {
+    private String _text;
+    private long _start;
+    private AtomicInteger _remaining;
+    private AtomicInteger _unconnected;
+    private LatencyRecorder _latencies;
+    private volatile long _slowest;
+    private volatile String _slowestName;
+
+    Fanout(String text, int targets) {
+      _text = text;
+      _start = System.nanoTime();
+      _remaining = new AtomicInteger(targets);
+      _unconnected = new AtomicInteger(0);
+      _latencies = new LatencyRecorder();
+      _slowest = -1;
+      _slowestName = null;
+    }
+
+    /** Called on a pool thread: writes the command to the session's socket. */
+    void flush(NamedSession session) {
+      if (session._connection.flush()) {
+        long latency = System.nanoTime() - _start;
+        session._latency = latency;
+        _latencies.record(latency);
+        synchronized (this) {
+          if (latency > _slowest) { _slowest = latency; _slowestName = session._name; }
+        }
+      }
+      // if the session is not connected yet, the command is sent once it is
+      else _unconnected.incrementAndGet();
+      if (_remaining.decrementAndGet() == 0) report();
+    }
+
+    private void report() {
+      long count = _latencies.queryCount();
+      String txt = "Sent [" + _text + "] to " + count + " session" + (count == 1 ? "" : "s");
+      if (count > 0) {
+        txt += ": median " + Statistics.durationToString(_latencies.queryPercentile(50)) +
+               ", p90 " + Statistics.durationToString(_latencies.queryPercentile(90)) +
+               ", slowest " + Statistics.durationToString(_slowest) + " (" + _slowestName + ")";
+      }
+      int unconnected = _unconnected.get();
+      if (unconnected > 0) txt += "; " + unconnected + " not connected yet";
+      sendInformation(txt + ".");
+    }
+  }
+
+  /**
+   * A named session next to the main connection.  Its text is shown line by line, marked with the
+   * name of the session and without colours.  As the session only shows text, every option the
+   * server proposes is refused, but timing marks are answered.
+   * The listener functions are called on the session's connection thread.
+   */
+  private class NamedSession implements ConnectionListener {
+    private String _name;
+    private String _host;
+    private int _port;
+    private volatile Connection _connection;
+    private StringBuilder _partial;
+    private OptionStates _options;
+    private volatile long _latency;
+
+    NamedSession(String name) {
+      _name = name;
+      _partial = new StringBuilder();
+      _options = new OptionStates(new TelnetSender() {
+        public void sendTelnet(TelnetCode code) { sendToServer(code); }
+      });
+      _latency = -1;
+    }
+
+    private void sendToServer(TelnetCode code) {
+      Connection connection = _connection;
+      if (connection != null) connection.sendTelnet(code);
+    }
+
+    void open(String host, int port, Charset charset) {
+      _host = host;
+      _port = port;
+      _connection = new Connection(host, port, charset, this);
+    }
+
+    /** Shows a complete line; colour codes are removed here, as they may span several chunks. */
+    private void show(String line) {
+      String text = ANSICODE.matcher(line).replaceAll("");
+      sendEventOnQueue(new InformationEvent("[" + _name + "] " + text,
+                                            InformationEvent.InformationKind.SESSION));
+    }
+
+    /** Removes the session on the event queue, once its connection has ended. */
+    private void ended() {
+      if (_partial.length() > 0) show(_partial.toString());
+      _partial.setLength(0);
+      EventQueue.invokeLater(new Runnable() {
+        public void run() {
+          removeSession(NamedSession.this);
+        }
+      });
+    }
+
+    public void connectionFailed(String error) {
+      sendWarning("Session " + _name + " closed: " + error);
+      ended();
+    }
+
+    public void connectionClosed(boolean remote) {
+      sendInformation("Session " + _name + " was closed by " + (remote ? "the server." : "you."));
+      ended();
+    }
+
+    public void connectionEstablished(String host, String address, int port) {
+      sendInformation("Session " + _name + " connected to " + address + " on port " + port + ".");
+    }
+
+    public void connectionFoundAddress(String host, String address, int port) { }
+
+    public void connectionPhaseTimed(ConnectionPhase phase, long nanos) { }
+
+    public void connectionReceivedText(String text) {
+      _partial.append(text);
+      int start = 0;
+      for (int i = 0; i < _partial.length(); i++) {
+        if (_partial.charAt(i) != '\n') continue;
+        int end = i > start && _partial.charAt(i - 1) == '\r' ? i - 1 : i;
+        show(_partial.substring(start, end));
+        start = i + 1;
+      }
+      _partial.delete(0, start);
+    }
+
+    public void connectionReceivedTelnet(TelnetCode code) {
+      int command = code.queryCommand();
+      if (!(code instanceof SupportTelnetCommand)) return;
+      int option = code.queryOption();
+      if (option != TELOPT_TM) _options.receive(command, option);
+      else if (command == TelnetCode.DO) {
+        sendToServer(new SupportTelnetCommand(TelnetCode.WILL, TELOPT_TM));
+      }
+    }
+
+    public void connectionErrorOccurred(String explanation) {
+      sendWarning("Session " + _name + ": " + explanation);
+    }
+  }
+
+  private static final int TELOPT_TM = 6;
+
+  /** Matches colour codes and other control sequences, which are left out of session text. */
+  private static final Pattern ANSICODE = Pattern.compile("\u001b\\[[0-9;?]*[ -/]*[@-~]");
+
   /** Called when connecting failed or the connection is broken improperly. */
   public void connectionFailed(String error) {
     if (_connection != null) sendWarning("Connection closed: " + error);
     _connection = null;
+    _scheduler.cancel();
   }
 
   /** Called when the connection is closed without errors. */
@@ -121,11 +542,12 @@ public class ConnectionHandler implements CommandListener, ConnectionListener, T
     else source = DisconnectEvent.DisconnectSource.USER;
     sendEventOnQueue(new DisconnectEvent(source));
     _connection = null;
+    _scheduler.cancel();
   }
 
   /** Called when the connection has successfully been established. */
   public void connectionEstablished(String host, String address, int port) {
-    sendInformation("Connection established.");
+    sendInformation("Connection established (" + _setupTimes + ").");
     sendEventOnQueue(new ConnectEvent());
   }
 
@@ -134,6 +556,15 @@ public class ConnectionHandler implements CommandListener, ConnectionListener, T
     sendInformation("Connecting to " + address.toString() + " on port " + port + "...");
   }
 
+  /** Called when a phase of setting up the connection is done; these are shown once connected. */
+  public void connectionPhaseTimed(ConnectionPhase phase, long nanos) {
+    if (_setupTimes.length() > 0) _setupTimes.append(", ");
+    if (phase == ConnectionPhase.RESOLVE) _setupTimes.append("lookup ");
+    if (phase == ConnectionPhase.CONNECT) _setupTimes.append("connect ");
+    if (phase == ConnectionPhase.HANDSHAKE) _setupTimes.append("TLS handshake ");
+    _setupTimes.append(Statistics.durationToString(nanos));
+  }
+
   /**
    * Called when the connection has acquired text from the server;
    * sends a "mud text arrived" event with the given text.
@@ -27,12 +27,18 @@ import turtle.styles.AnsiColour;
 import turtle.styles.DefaultColour;
 import turtle.styles.RGBAColour;
 import turtle.styles.AttributeGroup;
-import turtle.styles.AnsiCodeReader;
 import turtle.styles.ColourString;
+import turtle.styles.MxpReader;
+import turtle.EventBus;
+import turtle.commands.MudCommand;
 import turtle.events.InformationEvent;
 import turtle.events.MudTextEvent;
+import turtle.events.MxpEvent;
+import turtle.events.PromptEvent;
+import turtle.events.TelnetDebugEvent;
 import turtle.events.UserInputEvent;
 import turtle.events.WarningEvent;
+import turtle.statistics.Statistics;
 
 /**
  * The Information Handler listens for all kinds of events that require information to be printed
@@ -42,11 +48,13 @@ import turtle.events.WarningEvent;
  */
 public class InformationHandler implements EventListener {
   private OutputTarget _target;
-  private AnsiCodeReader _ansireader;
+  private MxpReader _reader;
+  private boolean _afterPrompt;
 
   public InformationHandler(OutputTarget output) {
     _target = output;
-    _ansireader = new AnsiCodeReader();
+    _reader = new MxpReader();
+    _afterPrompt = false;
   }
 
   public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
@@ -62,40 +70,82 @@ public class InformationHandler implements EventListener {
       handleInformation((InformationEvent)event);
     }
 
+    if (kind == TurtleEvent.EventKind.DEBUG) {
+      handleTelnetDebug((TelnetDebugEvent)event);
+    }
+
     if (kind == TurtleEvent.EventKind.WARNING) {
        handleWarning((WarningEvent)event);
     }
 
-    // on disconnect, forget the current style or partial ansi codes
+    // after a prompt marked by the server, the user's command goes on the same line, but
+    // anything else starts a new line
+    if (kind == TurtleEvent.EventKind.PROMPT) {
+      _afterPrompt = ((PromptEvent)event).queryMarked();
+    }
+
+    if (kind == TurtleEvent.EventKind.MXP) {
+      _reader.setEnabled(((MxpEvent)event).queryEnabled());
+    }
+
+    // on disconnect, forget the current style, partial ansi codes and MXP state
     if (kind == TurtleEvent.EventKind.DISCONNECT) {
-      _ansireader = new AnsiCodeReader();
+      _reader = new MxpReader();
+      _afterPrompt = false;
     }
   }
 
+  /** If the last thing printed was a prompt, this ends its line. */
+  private void endPromptLine() {
+    if (!_afterPrompt) return;
+    _afterPrompt = false;
+    _target.print(new ColourString("\n"));
+  }
+
   private void handleUserInput(UserInputEvent event) {
     RGBAColour colour = new RGBAColour(255, 255, 120);
+    _afterPrompt = false;
     _target.print(new ColourString(event.queryCommand() + "\n", colour));
   }
 
   private void handleMudText(MudTextEvent event) {
-    LayoutedText txt = _ansireader.parse(event.queryText());
+    String text = event.queryText();
+    if (!text.startsWith("\n") && !text.startsWith("\r\n")) endPromptLine();
+    else _afterPrompt = false;
+    long start = Statistics.startTimer();
+    LayoutedText txt = _reader.parse(text);
+    Statistics.stopTimer(Statistics.Stage.ANSI, start);
     _target.print(txt);
+    // MXP queries such as <version> are answered directly
+    for (String reply : _reader.queryReplies()) EventBus.commandGiven(new MudCommand(reply));
   }
 
   private AttributeGroup queryInformationAttributes(InformationEvent event) {
     if (event.queryInformationKind() == InformationEvent.InformationKind.TELNET) {
       return new AttributeGroup(new DefaultColour(false, true));
     }
+    // text from a named session is shown as it is, after the session's name
+    if (event.queryInformationKind() == InformationEvent.InformationKind.SESSION) {
+      return new AttributeGroup();
+    }
     // default -- for instance FEEDBACK
     AnsiColour colour = new AnsiColour(AnsiColour.COL_GREEN, true);
     return new AttributeGroup(colour, AttributeGroup.ATT_ITALIC);
   }
 
   private void handleInformation(InformationEvent event) {
+    endPromptLine();
     _target.print(new ColourString(event.queryText() + "\n", queryInformationAttributes(event)));
   }
 
+  private void handleTelnetDebug(TelnetDebugEvent event) {
+    endPromptLine();
+    AttributeGroup ag = new AttributeGroup(new DefaultColour(false, true));
+    _target.print(new ColourString(event.queryText() + "\n", ag));
+  }
+
   private void handleWarning(WarningEvent event) {
+    endPromptLine();
     AnsiColour colour = new AnsiColour(AnsiColour.COL_RED, true);
     AttributeGroup ag = new AttributeGroup(colour, AttributeGroup.ATT_BOLD);
     _target.print(new ColourString(event.queryText() + "\n", ag));
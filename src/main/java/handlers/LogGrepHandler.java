@@ -0,0 +1,126 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.handlers;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandListener;
+import turtle.EventBus;
+import turtle.commands.LogGrepCommand;
+import turtle.events.InformationEvent;
+import turtle.events.WarningEvent;
+import turtle.search.LogGrep;
+
+/**
+ * The LogGrep Handler responds to #loggrep commands, by searching the log directory with a
+ * LogGrep.  Matches are found on the worker threads; they are collected in a queue, and moved to
+ * the event queue in batches (at most one pending batch at a time), so a search with many
+ * matches streams into the output window without flooding the event queue.
+ */
+public class LogGrepHandler implements CommandListener {
+  public static final int MAXMATCHES = 1000;
+
+  private File _directory;
+  private LogGrep _grep;
+  private long _started;
+  private ConcurrentLinkedQueue<String> _found;
+  private AtomicBoolean _flushPending;
+
+  /** Creates a handler which searches the default log directory. */
+  public LogGrepHandler() {
+    this(LogGrep.defaultDirectory());
+  }
+
+  public LogGrepHandler(File directory) {
+    _directory = directory;
+    _grep = null;
+    _found = new ConcurrentLinkedQueue<String>();
+    _flushPending = new AtomicBoolean(false);
+  }
+
+  public void commandGiven(Command.CommandKind kind, Command command) {
+    if (kind == Command.CommandKind.LOGGREPCMD) handleLogGrepCommand((LogGrepCommand)command);
+  }
+
+  private void inform(String txt) {
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+
+  private void handleLogGrepCommand(LogGrepCommand cmd) {
+    if (cmd.queryAction() == LogGrepCommand.Action.CANCEL) {
+      if (_grep == null) inform("There is no log search running.");
+      else _grep.cancel();
+      return;
+    }
+    if (!_directory.isDirectory()) {
+      EventBus.eventOccurred(new WarningEvent("Log directory " + _directory.getPath() +
+                                              " does not exist."));
+      return;
+    }
+    if (_grep != null) _grep.cancel();
+    final LogGrep[] grep = new LogGrep[1];
+    grep[0] = new LogGrep(cmd.queryText(), cmd.queryPattern(), new LogGrep.Listener() {
+      public void found(File file, long offset, String line) {
+        _found.add(file.getName() + ":" + offset + ": " + line);
+        scheduleFlush();
+      }
+      public void finished(final boolean cancelled) {
+        scheduleFlush();
+        EventQueue.invokeLater(new Runnable() {
+          public void run() { searchFinished(grep[0], cancelled); }
+        });
+      }
+    }, MAXMATCHES);
+    _grep = grep[0];
+    _started = System.currentTimeMillis();
+    ArrayList<File> paths = new ArrayList<File>();
+    paths.add(_directory);
+    _grep.start(paths);
+  }
+
+  /** Makes sure that the queue of matches will be emptied on the event queue. */
+  private void scheduleFlush() {
+    if (!_flushPending.compareAndSet(false, true)) return;
+    EventQueue.invokeLater(new Runnable() {
+      public void run() {
+        _flushPending.set(false);
+        for (String line = _found.poll(); line != null; line = _found.poll()) inform(line);
+      }
+    });
+  }
+
+  /** Called on the event queue when a search is done. */
+  private void searchFinished(LogGrep grep, boolean cancelled) {
+    // another search may have been started before this one finished
+    if (_grep != grep) return;
+    long millis = System.currentTimeMillis() - _started;
+    int matches = grep.queryMatches();
+    String state = matches >= MAXMATCHES ? "stopped" : cancelled ? "cancelled" : "done";
+    String txt = "Log search " + state + ": " + matches + (matches == 1 ? " match" : " matches") +
+                 " in " + grep.queryFiles() + " files (" + (grep.queryBytes() >> 20) + " MB, " +
+                 millis + " ms).";
+    _grep = null;
+    inform(txt);
+  }
+}
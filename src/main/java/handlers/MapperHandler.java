@@ -0,0 +1,257 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.handlers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.CommandListener;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.GotoCommand;
+import turtle.commands.MapCommand;
+import turtle.commands.MudCommand;
+import turtle.events.GmcpEvent;
+import turtle.events.InformationEvent;
+import turtle.events.UserInputEvent;
+import turtle.events.WarningEvent;
+import turtle.mapper.RoomGraph;
+import turtle.protocols.JsonReader;
+
+/**
+ * The Mapper Handler builds a map of the MUD as the user walks around.  Rooms and their exits are
+ * taken from the GMCP Room.Info messages that the server sends whenever the user enters a room;
+ * if the server does not list an exit, but the user moved between two rooms, the movement command
+ * that was used becomes an exit.  Movement commands are only matched to a new room if the move is
+ * confirmed by a known exit or by the way back, since the server may refuse a move, or send room
+ * information for other reasons (such as "look").
+ * The handler also responds to #map commands, and to #goto, which walks the shortest path to the
+ * given room by feeding the directions into the normal command path.
+ */
+public class MapperHandler implements CommandListener, EventListener {
+  private RoomGraph _graph;
+  private int _current;
+  private ArrayDeque<Integer> _moves;
+
+  /** The largest number of movement commands that are remembered while waiting for rooms. */
+  public static final int MAXMOVES = 20;
+
+  public MapperHandler() {
+    _graph = new RoomGraph();
+    _current = RoomGraph.NONE;
+    _moves = new ArrayDeque<Integer>();
+  }
+
+  /** Returns the map that is being built. */
+  public RoomGraph queryGraph() {
+    return _graph;
+  }
+
+  /** Returns the index of the room the user is in, or RoomGraph.NONE if this is not known. */
+  public int queryCurrentRoom() {
+    return _current;
+  }
+
+  /** Returns the number of movement commands that have not been matched to a room yet. */
+  public int queryPendingMoves() {
+    return _moves.size();
+  }
+
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.GMCP) {
+      GmcpEvent e = (GmcpEvent)event;
+      if (e.queryPackage().equalsIgnoreCase("Room.Info")) handleRoomInfo(e.queryReader());
+    }
+    if (kind == TurtleEvent.EventKind.DISCONNECT) {
+      _current = RoomGraph.NONE;
+      _moves.clear();
+    }
+  }
+
+  public void commandGiven(Command.CommandKind kind, Command command) {
+    if (kind == Command.CommandKind.MUDCMD) {
+      int dir = RoomGraph.parseDirection(((MudCommand)command).queryText().trim());
+      if (dir != RoomGraph.NONE) {
+        if (_moves.size() == MAXMOVES) _moves.poll();
+        _moves.add(dir);
+      }
+    }
+    if (kind == Command.CommandKind.MAPCMD) handleMapCommand((MapCommand)command);
+    if (kind == Command.CommandKind.GOTOCMD) handleGotoCommand((GotoCommand)command);
+  }
+
+  private void inform(String txt) {
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+
+  private void warn(String txt) {
+    EventBus.eventOccurred(new WarningEvent(txt));
+  }
+
+  /**
+   * Handles a Room.Info message, which is an object with (at least) the room number in "num" (or
+   * "vnum" or "id"), and usually also "name" and an "exits" object mapping directions to room
+   * numbers.
+   */
+  private void handleRoomInfo(JsonReader reader) {
+    if (reader.next() != JsonReader.Token.START_OBJECT) return;
+    long number = -1;
+    String name = null;
+    int[] exits = new int[RoomGraph.DIRECTIONS.length];
+    boolean[] hasExit = new boolean[exits.length];
+    JsonReader.Token token;
+    while ((token = reader.next()) == JsonReader.Token.NAME) {
+      if (reader.nameEquals("num") || reader.nameEquals("vnum") || reader.nameEquals("id")) {
+        token = reader.next();
+        if (token == JsonReader.Token.NUMBER) number = reader.queryLong();
+        else if (token == JsonReader.Token.STRING) {
+          try { number = Long.parseLong(reader.queryString()); }
+          catch (NumberFormatException e) { }
+        }
+        else reader.skipValue(token);
+      }
+      else if (reader.nameEquals("name")) {
+        token = reader.next();
+        if (token == JsonReader.Token.STRING) name = reader.queryString();
+        else reader.skipValue(token);
+      }
+      else if (reader.nameEquals("exits")) {
+        token = reader.next();
+        if (token != JsonReader.Token.START_OBJECT) { reader.skipValue(token); continue; }
+        while (reader.next() == JsonReader.Token.NAME) {
+          int dir = RoomGraph.parseDirection(reader.queryString());
+          token = reader.next();
+          if (dir == RoomGraph.NONE || token != JsonReader.Token.NUMBER) {
+            reader.skipValue(token);
+            continue;
+          }
+          exits[dir] = (int)reader.queryLong();
+          hasExit[dir] = true;
+        }
+      }
+      else reader.skipValue(token);
+    }
+    if (number < 0 || number > Integer.MAX_VALUE) return;
+    enterRoom((int)number, name, exits, hasExit);
+  }
+
+  /** Records that the user has entered the given room, which has the given exits. */
+  private void enterRoom(int number, String name, int[] exits, boolean[] hasExit) {
+    int room = _graph.addRoom(number, name);
+    for (int dir = 0; dir < exits.length; dir++) {
+      if (hasExit[dir]) _graph.setExit(room, dir, _graph.addRoom(exits[dir], null));
+    }
+    if (_current != RoomGraph.NONE && _current != room) {
+      int move = findMove(room);
+      if (move != RoomGraph.NONE && _graph.queryExit(_current, move) == RoomGraph.NONE) {
+        _graph.setExit(_current, move, room);
+      }
+    }
+    _current = room;
+  }
+
+  /**
+   * Finds the pending movement command which took the user from _current to the given room: one
+   * which is a known exit to that room, or whose opposite leads back from there.  This move, and
+   * the ones given before it (which apparently did not lead anywhere), are removed from the queue;
+   * if no move matches, the queue is cleared, since it cannot be trusted anymore.
+   */
+  private int findMove(int room) {
+    int skip = 0;
+    for (int move : _moves) {
+      if (_graph.queryExit(_current, move) == room ||
+          _graph.queryExit(room, RoomGraph.opposite(move)) == _current) {
+        for (int i = 0; i <= skip; i++) _moves.poll();
+        return move;
+      }
+      skip++;
+    }
+    _moves.clear();
+    return RoomGraph.NONE;
+  }
+
+  private void handleMapCommand(MapCommand cmd) {
+    switch (cmd.queryAction()) {
+      case SAVE:
+        try {
+          _graph.save(new File(cmd.queryFile()));
+          inform("Saved " + _graph.size() + " rooms to " + cmd.queryFile() + ".");
+        }
+        catch (IOException e) { warn("Could not save map: " + e.getMessage()); }
+        break;
+      case LOAD:
+        try {
+          _graph = RoomGraph.load(new File(cmd.queryFile()));
+          _current = RoomGraph.NONE;
+          _moves.clear();
+          inform("Loaded " + _graph.size() + " rooms from " + cmd.queryFile() + ".");
+        }
+        catch (IOException e) { warn("Could not load map: " + e.getMessage()); }
+        break;
+      case CLEAR:
+        _graph = new RoomGraph();
+        _current = RoomGraph.NONE;
+        _moves.clear();
+        inform("The map has been cleared.");
+        break;
+      default:
+        String where = _current == RoomGraph.NONE ? "unknown" : describe(_current);
+        inform("The map has " + _graph.size() + " rooms and " + _graph.queryExitCount() +
+               " exits; current room: " + where + ".");
+    }
+  }
+
+  private String describe(int room) {
+    String name = _graph.queryName(room);
+    if (name == null) return "#" + _graph.queryNumber(room);
+    return name + " (#" + _graph.queryNumber(room) + ")";
+  }
+
+  private void handleGotoCommand(GotoCommand cmd) {
+    if (_current == RoomGraph.NONE) {
+      warn("Cannot #goto: the current room is not known.");
+      return;
+    }
+    int target = RoomGraph.NONE;
+    try { target = _graph.findRoom(Integer.parseInt(cmd.queryTarget())); }
+    catch (NumberFormatException e) { target = _graph.findRoomByName(cmd.queryTarget()); }
+    if (target == RoomGraph.NONE) {
+      warn("Cannot #goto: there is no room " + cmd.queryTarget() + " on the map.");
+      return;
+    }
+    int[] path = _graph.findPath(_current, target);
+    if (path == null) {
+      warn("Cannot #goto: there is no known path to " + describe(target) + ".");
+      return;
+    }
+    if (path.length == 0) {
+      inform("You are already in " + describe(target) + ".");
+      return;
+    }
+    StringBuilder walk = new StringBuilder();
+    for (int i = 0; i < path.length; i++) {
+      if (i > 0) walk.append(";;");
+      walk.append(RoomGraph.DIRECTIONS[path[i]]);
+    }
+    EventBus.eventOccurred(new UserInputEvent(walk.toString()));
+  }
+}
@@ -0,0 +1,159 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.handlers;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.CommandListener;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.PromptCommand;
+import turtle.events.DisconnectEvent;
+import turtle.events.InformationEvent;
+import turtle.events.MudTextEvent;
+import turtle.events.PromptEvent;
+import turtle.events.TelnetEvent;
+
+/**
+ * The Prompt Handler keeps track of the text since the last newline from the server, and sends a
+ * PromptEvent with it when the server marks it as a prompt, by sending telnet GA or EOR.
+ * Servers that do not mark their prompts are handled with an idle timeout: if an incomplete line
+ * is not continued within the timeout, it is taken to be a prompt as well.  Once the server has
+ * marked a prompt, the timeout is no longer used for the rest of the connection.
+ */
+public class PromptHandler implements EventListener, CommandListener {
+  public static final int DEFAULT_TIMEOUT = 500;
+  private static final int MAXPROMPT = 4096;
+
+  private StringBuilder _partial;
+  private boolean _serverMarks;
+  private int _timeout;
+  private Timer _idleTimer;
+  private boolean _idlePending;
+  private long _lastText;
+
+  public PromptHandler() {
+    _partial = new StringBuilder();
+    _serverMarks = false;
+    _idlePending = false;
+    _idleTimer = new Timer(DEFAULT_TIMEOUT, new ActionListener() {
+      public void actionPerformed(ActionEvent e) { checkIdle(); }
+    });
+    _idleTimer.setRepeats(false);
+    setTimeout(DEFAULT_TIMEOUT);
+  }
+
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.MUDTEXT) handleMudText(((MudTextEvent)event).queryText());
+    if (kind == TurtleEvent.EventKind.TELNET) {
+      int command = ((TelnetEvent)event).queryTelnetCode().queryCommand();
+      if (command == TelnetCode.GA || command == TelnetCode.EOR) {
+        _serverMarks = true;
+        flushPrompt(true);
+      }
+    }
+    if (kind == TurtleEvent.EventKind.DISCONNECT) {
+      stopTimer();
+      _partial.setLength(0);
+      _serverMarks = false;
+    }
+  }
+
+  public void commandGiven(Command.CommandKind kind, Command command) {
+    if (kind == Command.CommandKind.PROMPTCMD) handlePromptCommand((PromptCommand)command);
+  }
+
+  /** Sets the idle timeout in milliseconds; 0 means that unmarked prompts are not detected. */
+  public void setTimeout(int timeout) {
+    _timeout = timeout;
+    stopTimer();
+  }
+
+  public int queryTimeout() {
+    return _timeout;
+  }
+
+  /** Returns the text received since the last newline. */
+  public String queryPartialLine() {
+    return _partial.toString();
+  }
+
+  private void handleMudText(String text) {
+    int newline = text.lastIndexOf('\n');
+    if (newline >= 0) _partial.setLength(0);
+    _partial.append(text, newline + 1, text.length());
+    // a server that never sends a newline should not make us keep all its text
+    if (_partial.length() > MAXPROMPT) _partial.delete(0, _partial.length() - MAXPROMPT);
+    if (_partial.length() == 0 || _timeout == 0 || _serverMarks) return;
+    // rather than restarting the timer for every bit of text, which is relatively expensive, we
+    // remember when the text arrived, and check this when the timer goes off
+    _lastText = System.nanoTime();
+    if (!_idlePending) startTimer(_timeout);
+  }
+
+  private void startTimer(int delay) {
+    _idlePending = true;
+    _idleTimer.setInitialDelay(delay);
+    _idleTimer.start();
+  }
+
+  private void stopTimer() {
+    if (!_idlePending) return;
+    _idlePending = false;
+    _idleTimer.stop();
+  }
+
+  /**
+   * Called when the idle timer goes off: if text has arrived in the meantime, the timer is set for
+   * the remainder of the timeout; otherwise the incomplete line (if any) is a prompt.
+   */
+  private void checkIdle() {
+    _idlePending = false;
+    if (_timeout == 0 || _serverMarks) return;
+    long idle = (System.nanoTime() - _lastText) / 1000000;
+    if (idle < _timeout) startTimer((int)(_timeout - idle));
+    else flushPrompt(false);
+  }
+
+  /** Sends the current incomplete line as a prompt, if there is one. */
+  private void flushPrompt(boolean marked) {
+    stopTimer();
+    if (_partial.length() == 0) return;
+    String prompt = _partial.toString();
+    _partial.setLength(0);
+    EventBus.eventOccurred(new PromptEvent(prompt, marked));
+  }
+
+  private void handlePromptCommand(PromptCommand cmd) {
+    if (cmd.queryAction() == PromptCommand.Action.OFF) setTimeout(0);
+    else if (cmd.queryAction() == PromptCommand.Action.SET) setTimeout(cmd.queryTimeout());
+    String txt;
+    if (_timeout == 0) txt = "Incomplete lines are only taken as prompts if the server says so.";
+    else {
+      txt = "Incomplete lines are taken as prompts after " + _timeout + " ms without further " +
+            "text, unless the server marks its prompts.";
+    }
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+}
@@ -0,0 +1,91 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.handlers;
+
+import java.util.ArrayList;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.CommandListener;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.StatsCommand;
+import turtle.events.InformationEvent;
+import turtle.events.LatencyEvent;
+import turtle.statistics.Statistics;
+
+/**
+ * The Statistics Handler responds to #stats commands by controlling or reporting Statistics.
+ * It also remembers the latest latency measurement of the current connection, so this can be
+ * included in the report.
+ */
+public class StatisticsHandler implements CommandListener, EventListener {
+  private LatencyEvent _latency;
+
+  public StatisticsHandler() {
+    _latency = null;
+  }
+
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.LATENCY) _latency = (LatencyEvent)event;
+    if (kind == TurtleEvent.EventKind.DISCONNECT) _latency = null;
+  }
+
+  public void commandGiven(Command.CommandKind kind, Command command) {
+    if (kind == Command.CommandKind.STATSCMD) handleStatsCommand((StatsCommand)command);
+  }
+
+  private void inform(String txt) {
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+
+  private void handleStatsCommand(StatsCommand cmd) {
+    switch (cmd.queryAction()) {
+      case ON:
+        Statistics.setEnabled(true);
+        inform("Statistics are now being recorded.");
+        break;
+      case OFF:
+        Statistics.setEnabled(false);
+        inform("Statistics are no longer being recorded.");
+        break;
+      case RESET:
+        Statistics.reset();
+        inform("Statistics have been reset.");
+        break;
+      default:
+        printReport();
+    }
+  }
+
+  private void printReport() {
+    if (!Statistics.queryEnabled()) {
+      inform("Statistics are currently disabled; use #stats on to start recording.");
+    }
+    ArrayList<String> report = Statistics.queryReport();
+    for (int i = 0; i < report.size(); i++) inform(report.get(i));
+    if (_latency == null) inform("round trip: not measured yet");
+    else {
+      inform("round trip: last " + Statistics.durationToString(_latency.queryLast()) +
+             ", median " + Statistics.durationToString(_latency.queryMedian()) +
+             ", p90 " + Statistics.durationToString(_latency.queryHigh()) +
+             " (" + _latency.querySampleCount() + " samples)");
+    }
+  }
+}
@@ -19,180 +19,485 @@
 
 package turtle.handlers;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+import javax.swing.Timer;
+import turtle.interfaces.immutable.Command;
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.CommandListener;
 import turtle.interfaces.EventListener;
 import turtle.interfaces.TelnetSender;
+import turtle.events.CharsetEvent;
 import turtle.events.InformationEvent;
+import turtle.events.TelnetDebugEvent;
 import turtle.events.TelnetEvent;
+import turtle.events.WindowSizeEvent;
 import turtle.events.DisconnectEvent;
+import turtle.events.GmcpEvent;
+import turtle.events.LatencyEvent;
+import turtle.events.MsdpEvent;
+import turtle.events.MxpEvent;
+import turtle.commands.DebugCommand;
 import turtle.connection.telnet.*;
+import turtle.protocols.Gmcp;
+import turtle.protocols.Msdp;
+import turtle.protocols.MsdpValue;
+import turtle.protocols.MsdpVariables;
+import turtle.protocols.Zmp;
+import turtle.protocols.ZmpRegistry;
+import turtle.statistics.LatencyProbe;
+import turtle.timers.TimingWheel;
 import turtle.EventBus;
 
 /** The Telnet Handler listens for telnet events and handles them as appropriate. */
-public class TelnetHandler implements EventListener {
+public class TelnetHandler implements EventListener, CommandListener {
+  private static final int TELOPT_TM = 6;
   private static final int TELOPT_TTYPE = 24;
-  private static final int TELOPT_NAWS = 31;
-  private static final int TELOPT_COMPRESS = 86;
+  private static final int TELOPT_EOR = 25;
+  private static final int TELOPT_NAWS = NawsReporter.TELOPT_NAWS;
+  private static final int TELOPT_CHARSET = 42;
+  private static final int TELOPT_MSDP = Msdp.TELOPT_MSDP;
   private static final int TELOPT_MXP = 91;
-  private static final int TELOPT_ZMP = 93;
+  private static final int TELOPT_ZMP = Zmp.TELOPT_ZMP;
+  private static final int TELOPT_GMCP = Gmcp.TELOPT_GMCP;
   private static final int TELQUAL_IS   =  0;
   private static final int TELQUAL_SEND =  1;
+  private static final int CHARSET_REQUEST = 1;
+  private static final int CHARSET_ACCEPTED = 2;
+  private static final int CHARSET_REJECTED = 3;
+  private static final int CHARSET_TTABLE_IS = 4;
+  private static final int CHARSET_TTABLE_REJECTED = 5;
+  private static final int PROBE_INTERVAL = 30000;
 
   private TelnetSender _sender;
   private String _lastTtype;
+  private LatencyProbe _latency;
+  private Timer _probeTimer;
+  private MsdpVariables _msdp;
+  private ZmpRegistry _zmp;
+  private OptionStates _options;
+  private DebugCommand.Level _debugLevel;
+  private NawsReporter _naws;
 
   public TelnetHandler(TelnetSender sender) {
+    this(sender, TimingWheel.shared());
+  }
+
+  /** Creates a TelnetHandler which uses the given wheel to time window size reports. */
+  public TelnetHandler(TelnetSender sender, TimingWheel wheel) {
     _sender = sender;
     _lastTtype = null;
+    _debugLevel = DebugCommand.Level.OFF;
+    _latency = new LatencyProbe();
+    _msdp = new MsdpVariables();
+    _zmp = new ZmpRegistry();
+    registerZmpCore();
+    _options = new OptionStates(new TelnetSender() {
+      public void sendTelnet(TelnetCode code) { send(code); }
+    });
+    _options.acceptServer(TELOPT_EOR, true);
+    _options.acceptServer(TELOPT_GMCP, true);
+    _options.acceptServer(TELOPT_MSDP, true);
+    _options.acceptServer(TELOPT_MXP, true);
+    _options.acceptServer(TELOPT_ZMP, true);
+    _options.acceptClient(TELOPT_TTYPE, true);
+    _options.acceptClient(TELOPT_NAWS, true);
+    _options.acceptServer(TELOPT_CHARSET, true);
+    _options.acceptClient(TELOPT_CHARSET, true);
+    _naws = new NawsReporter(new TelnetSender() {
+      public void sendTelnet(TelnetCode code) { send(code); }
+    }, wheel);
+    _probeTimer = new Timer(PROBE_INTERVAL, new ActionListener() {
+      public void actionPerformed(ActionEvent e) { sendTimingMark(); }
+    });
+    _probeTimer.setInitialDelay(PROBE_INTERVAL / 10);
   }
 
-  private void sendEvent(String kind, TelnetCode code) {
-    String txt = "[" + kind + " telnet: " + telnetToString(code) + "]";
-    InformationEvent event = new InformationEvent(txt, InformationEvent.InformationKind.TELNET);
-    EventBus.eventOccurred(event);
+  /**
+   * Lets the user see the given telnet code, if telnet debugging is switched on at a level that
+   * includes it.  The code is only formatted if the event is actually printed.
+   */
+  private void sendEvent(boolean sent, TelnetCode code) {
+    if (_debugLevel == DebugCommand.Level.OFF) return;
+    if (_debugLevel == DebugCommand.Level.NEGOTIATION && code.querySubNegotiation() != null) return;
+    EventBus.eventOccurred(new TelnetDebugEvent(sent, code));
   }
 
   public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent evt) {
     if (kind == TurtleEvent.EventKind.TELNET) handleTelnetEvent((TelnetEvent)evt);
+    else if (kind == TurtleEvent.EventKind.CONNECT) _probeTimer.restart();
+    else if (kind == TurtleEvent.EventKind.WINDOWSIZE) {
+      WindowSizeEvent size = (WindowSizeEvent)evt;
+      _naws.resize(size.queryColumns(), size.queryRows());
+    }
     else if (kind == TurtleEvent.EventKind.DISCONNECT) handleDisconnectEvent((DisconnectEvent)evt);
   }
 
+  public void commandGiven(Command.CommandKind kind, Command command) {
+    if (kind == Command.CommandKind.DEBUGCMD) handleDebugCommand((DebugCommand)command);
+  }
+
+  private void handleDebugCommand(DebugCommand cmd) {
+    DebugCommand.Level level = cmd.queryLevel();
+    if (level == DebugCommand.Level.TOGGLE) {
+      if (_debugLevel == DebugCommand.Level.OFF) level = DebugCommand.Level.NEGOTIATION;
+      else level = DebugCommand.Level.OFF;
+    }
+    _debugLevel = level;
+    if (level == DebugCommand.Level.OFF) inform("Telnet debugging is now off.");
+    else if (level == DebugCommand.Level.NEGOTIATION) {
+      inform("Telnet debugging is now on: option negotiation is shown.");
+    }
+    else inform("Telnet debugging is now on: all telnet codes are shown.");
+  }
+
+  private void inform(String txt) {
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+
+  /** Returns how much telnet is currently shown to the user. */
+  public DebugCommand.Level queryDebugLevel() {
+    return _debugLevel;
+  }
+
   private void handleTelnetEvent(TelnetEvent evt) {
     TelnetCode code = evt.queryTelnetCode();
-    sendEvent("Received", code);
+    sendEvent(false, code);
     int command = code.queryCommand();
     int option = code.queryOption();
-    // here handle codes we actually want to do something with
-    if (handleSupportedCommand(command, option, code.querySubNegotiation())) return;
-    // remaining codes are not supported; inform the server of this
-    if (command == TelnetCode.WILL) rejectWill(option);
-    if (command == TelnetCode.WONT) acceptWont(option);
-    if (command == TelnetCode.DO)   rejectDo(option);
+    // negotiation is answered by the option states; we only need to act when an option is
+    // actually switched on or off
+    if (code instanceof SupportTelnetCommand && option != TELOPT_TM) {
+      command = _options.receive(command, option);
+      if (command == -1) return;
+    }
+    handleSupportedCommand(command, option, code.querySubNegotiation());
   }
   
   /**
    * after a disconnect, stop remembering what the last ttype option we sent was, since we'll need
-   * a new one in future connections.
+   * a new one in future connections; similarly, forget the latency of the old connection.
    */
   private void handleDisconnectEvent(DisconnectEvent evt) {
     _lastTtype = null;
+    _probeTimer.stop();
+    _latency.reset();
+    _msdp.clear();
+    _options.reset();
+    _naws.setEnabled(false);
   }
 
   /**
-   * Helper function for telnetCodeToString:
-   * Returns a string representation of the given telnet command.
+   * Returns the MSDP variables that the server has reported to us.  These may be read from any
+   * thread.
    */
-  private String commandToString(int cmd) {
-    String[] commands = { "NOP", "DAT", "BRK", "IP", "AO", "AYT", "EC", "EL", "GA",
-                          "SB", "WILL", "WONT", "DO", "DONT" };
-    if (cmd >= 241 && cmd <= 254) return commands[cmd - 241];
-    else return "" + cmd;
+  public MsdpVariables queryMsdpVariables() {
+    return _msdp;
   }
 
   /**
-   * Helper function for telnetCodeToString:
-   * Returns a string representation of the given telnet option.
+   * Returns the state table of all telnet options, which can also be used to switch options on or
+   * off.  It should only be used from the event queue.
    */
-  private String optionToString(int option) {
-    if (option == TELOPT_TTYPE) return "TTYPE";
-    if (option == TELOPT_NAWS) return "NAWS";
-    if (option == TELOPT_COMPRESS) return "COMPRESS";
-    if (option == TELOPT_MXP) return "MXP";
-    if (option == TELOPT_ZMP) return "ZMP";
-    return "" + option;
+  public OptionStates queryOptionStates() {
+    return _options;
   }
 
   /**
-   * Helper function for telnetCodeToString:
-   * Reads the given (partial) integer array as though it is a 0-separated list of strings, each
-   * presented as a byte array that defines a UTF-8 string.
+   * Returns a String representation of the given telnet code.
+   * This tries to pretty-print, taking into account all information known by the handler about
+   * specific kinds of telnet commands.
    */
-  private ArrayList<String> makeStrings(int[] code, int start, int end) {
-    ArrayList<String> ret = new ArrayList<String>();
-    for (int p = start; p < end; p++) {
-      if (code[p] == 0) continue;
-      int q = p;
-      while (q < end && code[q] != 0) q++;
-      byte[] bs = new byte[q-p];
-      for (int i = 0; i < bs.length; i++) bs[i] = (byte)code[p+i];
-      ret.add(new String(bs, StandardCharsets.UTF_8));
-      p = q;
-    }
-    return ret;
+  public String telnetToString(TelnetCode code) {
+    return TelnetFormatter.format(code);
+  }
+
+  private void send(TelnetCode code) {
+    _sender.sendTelnet(code);
+    sendEvent(true, code);
+  }
+
+  private boolean handleSupportedCommand(int command, int option, ByteBuffer subnegotiation) {
+    if (option == TELOPT_TM) return handleTimingMark(command);
+    if (option == TELOPT_TTYPE) return handleTType(command, subnegotiation);
+    // with EOR, the server marks its prompts with IAC EOR, which the PromptHandler handles
+    if (option == TELOPT_EOR) return true;
+    if (option == TELOPT_NAWS) return handleNaws(command);
+    if (option == TELOPT_CHARSET) return handleCharset(command, subnegotiation);
+    if (option == TELOPT_GMCP) return handleGmcp(command, subnegotiation);
+    if (option == TELOPT_MSDP) return handleMsdp(command, subnegotiation);
+    if (option == TELOPT_MXP) return handleMxp(command);
+    if (option == TELOPT_ZMP) return handleZmp(command, subnegotiation);
+    return false;
   }
 
   /**
-   * Helper function for telnetCodeToString:
-   * Translates *just* the subnegotiation part to a string, and ends with a space.
+   * Sends a TIMING-MARK request to the server, which the server should answer (with WILL or WONT)
+   * once it has processed everything we sent before; the time until the answer arrives is the
+   * round-trip time to the server.
+   * This is called periodically while connected, but may also be called manually.
    */
-  private String subNegotiationToString(int option, int[] subn) {
-    if (subn.length == 0) return " ";
-
-    int start = 1;
-    String ret = "";
-    if (subn[0] == TELQUAL_IS) ret += "IS ";
-    else if (subn[0] == TELQUAL_SEND) ret += "SEND ";
-    else start = 0;
+  public void sendTimingMark() {
+    send(new SupportTelnetCommand(TelnetCode.DO, TELOPT_TM));
+    _latency.markSent(System.nanoTime());
+  }
 
-    if ((option == TELOPT_TTYPE || option == TELOPT_ZMP) && subn[0] == TELQUAL_IS) {
-      ArrayList<String> values = makeStrings(subn, 1, subn.length);
-      for (int i = 0; i < values.size(); i++) {
-        ret += "\"" + values.get(i) + "\" ";
+  /**
+   * A WILL or WONT TIMING-MARK is the answer to a request sent by sendTimingMark; these should not
+   * be replied to, but are used to measure the latency.  A DO TIMING-MARK is a request by the
+   * server, which we answer immediately since we process everything in order anyway.
+   */
+  private boolean handleTimingMark(int command) {
+    if (command == TelnetCode.WILL || command == TelnetCode.WONT) {
+      long rtt = _latency.replyReceived(System.nanoTime());
+      if (rtt >= 0) {
+        EventBus.eventOccurred(new LatencyEvent(rtt, _latency.queryPercentile(50),
+                                                _latency.queryPercentile(90),
+                                                _latency.querySampleCount()));
       }
+      return true;
     }
-    else {
-      for (int i = start; i < subn.length; i++) ret += subn[i] + " ";
+    if (command == TelnetCode.DO) {
+      send(new SupportTelnetCommand(TelnetCode.WILL, TELOPT_TM));
+      return true;
     }
+    return false;
+  }
 
-    return ret;
+  /**
+   * Sends a GMCP message with the given package name and JSON data (which may be null) to the
+   * server.
+   */
+  public void sendGmcp(String pkg, String json) {
+    send(new SubNegotiationTelnetCommand(TELOPT_GMCP, Gmcp.encode(pkg, json)));
   }
 
   /**
-   * Returns a String representation of the given telnet code.
-   * This tries to pretty-print, taking into account all information known by the handler about
-   * specific kinds of telnet commands.
+   * Once the server has asked for NAWS, we report the size of the output window, now and whenever
+   * it changes.
    */
-  public String telnetToString(TelnetCode code) {
-    String ret = "IAC " + commandToString(code.queryCommand());
-    int option = code.queryOption();
-    if (option != -1) ret += " " + optionToString(option);
-    int[] subn = code.querySubNegotiation();
-    if (subn != null) ret += " " + subNegotiationToString(option, subn) + "IAC SE";
-    return ret;
+  private boolean handleNaws(int command) {
+    if (command == TelnetCode.DO) _naws.setEnabled(true);
+    else if (command == TelnetCode.DONT) _naws.setEnabled(false);
+    else return false;
+    return true;
   }
 
-  private void send(TelnetCode code) {
-    _sender.sendTelnet(code);
-    sendEvent("Sent", code);
+  /**
+   * CHARSET may be enabled in either direction; we leave it to the server to send a REQUEST with
+   * the character sets it can use.  We pick UTF-8 if it is offered, and otherwise the first one
+   * that Java supports.  The connection switches to the new character set before we answer, since
+   * the server may use it as soon as it has our answer.  Translation tables are not supported.
+   */
+  private boolean handleCharset(int command, ByteBuffer subn) {
+    if (command == TelnetCode.WILL || command == TelnetCode.DO) return true;
+    if (command != TelnetCode.SB || subn.remaining() == 0) return false;
+    int kind = subn.get(0);
+    if (kind == CHARSET_TTABLE_IS) {
+      send(new SubNegotiationTelnetCommand(TELOPT_CHARSET, new byte[] { CHARSET_TTABLE_REJECTED }));
+      return true;
+    }
+    // we never send requests ourselves, so ACCEPTED and REJECTED are not expected
+    if (kind != CHARSET_REQUEST) return false;
+    byte[] request = new byte[subn.remaining() - 1];
+    for (int i = 0; i < request.length; i++) request[i] = subn.get(i + 1);
+    String name = chooseCharset(new String(request, StandardCharsets.ISO_8859_1));
+    if (name == null) {
+      send(new SubNegotiationTelnetCommand(TELOPT_CHARSET, new byte[] { CHARSET_REJECTED }));
+      return true;
+    }
+    EventBus.eventOccurred(new CharsetEvent(Charset.forName(name)));
+    byte[] bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+    byte[] data = new byte[bytes.length + 1];
+    data[0] = CHARSET_ACCEPTED;
+    System.arraycopy(bytes, 0, data, 1, bytes.length);
+    send(new SubNegotiationTelnetCommand(TELOPT_CHARSET, data));
+    return true;
   }
 
-  private void rejectWill(int option) {
-    send(new SupportTelnetCommand(TelnetCode.DONT, option));
+  /**
+   * Given the list of a CHARSET REQUEST ([TTABLE] version, then a separator, and the names of the
+   * character sets, each preceded by the separator), returns the name we prefer, or null if we do
+   * not support any of them.
+   */
+  private String chooseCharset(String request) {
+    if (request.startsWith("[TTABLE]")) request = request.substring(Math.min(9, request.length()));
+    if (request.length() < 2) return null;
+    String separator = request.substring(0, 1);
+    String first = null;
+    for (String name : request.substring(1).split(Pattern.quote(separator))) {
+      try {
+        if (name.equals("") || !Charset.isSupported(name)) continue;
+      }
+      catch (IllegalCharsetNameException e) { continue; }
+      if (Charset.forName(name).equals(StandardCharsets.UTF_8)) return name;
+      if (first == null) first = name;
+    }
+    return first;
   }
 
-  private void acceptWont(int option) {
-    send(new SupportTelnetCommand(TelnetCode.DONT, option));
+  /** Returns the object reporting the window size to the server. */
+  public NawsReporter queryNawsReporter() {
+    return _naws;
   }
 
-  private void rejectDo(int option) {
-    send(new SupportTelnetCommand(TelnetCode.WONT, option));
+  /**
+   * When GMCP is enabled, we introduce ourselves and tell the server which packages we are
+   * interested in.  Incoming GMCP messages are passed on as GmcpEvents; their
+   * JSON data is not parsed here, but left for the listeners that are interested in it.
+   */
+  private boolean handleGmcp(int command, ByteBuffer subn) {
+    if (command == TelnetCode.WILL) {
+      sendGmcp("Core.Hello", "{ \"client\": \"Turtle\", \"version\": \"1.0\" }");
+      sendGmcp("Core.Supports.Set", "[ \"Char 1\", \"Char.Vitals 1\", \"Char.Status 1\", " +
+                                    "\"Room 1\", \"Comm 1\" ]");
+      return true;
+    }
+    if (command == TelnetCode.SB) {
+      GmcpEvent event = Gmcp.decode(subn);
+      if (event != null) EventBus.eventOccurred(event);
+      return true;
+    }
+    return false;
   }
 
-  private boolean handleSupportedCommand(int command, int option, int[] subnegotiation) {
-    if (option == TELOPT_TTYPE) return handleTType(command, subnegotiation);
+  /**
+   * When MXP is enabled, it is switched on for the text that follows.  The server may also
+   * (re)start MXP with an empty subnegotiation.  If the server disables MXP, it is switched off
+   * again.
+   */
+  private boolean handleMxp(int command) {
+    if (command == TelnetCode.WILL || command == TelnetCode.SB) {
+      EventBus.eventOccurred(new MxpEvent(true));
+      return true;
+    }
+    if (command == TelnetCode.WONT) {
+      EventBus.eventOccurred(new MxpEvent(false));
+      return true;
+    }
+    return false;
+  }
+
+  /** Sends the ZMP message with the given command and arguments to the server. */
+  public void sendZmp(String command, String... arguments) {
+    send(new SubNegotiationTelnetCommand(TELOPT_ZMP, Zmp.encode(command, arguments)));
+  }
+
+  /**
+   * Returns the registry of supported ZMP commands, where other components can register handlers
+   * for the commands they are interested in.  It should only be used from the event queue.
+   */
+  public ZmpRegistry queryZmpRegistry() {
+    return _zmp;
+  }
+
+  /**
+   * When ZMP is enabled, we identify ourselves.  Incoming ZMP messages are
+   * passed to the handler registered for their command; messages for unknown commands are
+   * ignored, as the protocol requires.
+   */
+  private boolean handleZmp(int command, ByteBuffer subn) {
+    if (command == TelnetCode.WILL) {
+      sendZmp("zmp.ident", "Turtle", "1.0", "A Java MUD client");
+      return true;
+    }
+    if (command == TelnetCode.SB) {
+      String[] message = Zmp.decode(subn);
+      if (message != null) _zmp.dispatch(message);
+      return true;
+    }
     return false;
   }
 
   /**
-   * This function translates the given list to the sequence of integers that represents it, and
-   * appends this sequence to arr.
+   * Registers the commands of the core zmp package: zmp.ping is answered with our current time
+   * (in UTC, as the protocol prescribes), zmp.check with zmp.support or zmp.no-support, and the
+   * server's zmp.ident and zmp.time are reported to the user.
    */
-  private void addStringToIntList(String str, ArrayList<Integer> arr) {
-    byte[] parts = str.getBytes();
-    for (int i = 0; i < parts.length; i++) arr.add(parts[i] < 0 ? parts[i] + 256 : parts[i]);
+  private void registerZmpCore() {
+    _zmp.register("zmp.ping", new ZmpRegistry.Handler() {
+      public void handle(String[] message) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        sendZmp("zmp.time", format.format(new Date()));
+      }
+    });
+    _zmp.register("zmp.check", new ZmpRegistry.Handler() {
+      public void handle(String[] message) {
+        if (message.length < 2) return;
+        if (_zmp.supports(message[1])) sendZmp("zmp.support", message[1]);
+        else sendZmp("zmp.no-support", message[1]);
+      }
+    });
+    _zmp.register("zmp.ident", new ZmpRegistry.Handler() {
+      public void handle(String[] message) {
+        if (message.length < 3) return;
+        String txt = "The server identifies itself as " + message[1] + " " + message[2];
+        if (message.length > 3 && !message[3].equals("")) txt += " (" + message[3] + ")";
+        EventBus.eventOccurred(new InformationEvent(txt + "."));
+      }
+    });
+    _zmp.register("zmp.time", new ZmpRegistry.Handler() {
+      public void handle(String[] message) {
+        if (message.length < 2) return;
+        EventBus.eventOccurred(new InformationEvent("Server time: " + message[1] + " UTC."));
+      }
+    });
+  }
+
+  /** Sends VAR <name> VAL <value1> VAL <value2> ... to the server over MSDP. */
+  private void sendMsdp(String name, ArrayList<String> values) {
+    send(new SubNegotiationTelnetCommand(TELOPT_MSDP, Msdp.encode(name, values)));
+  }
+
+  /**
+   * When MSDP is enabled, we ask which variables can be reported; once the
+   * server answers that, we ask it to report all of them.  Incoming variables are stored in the
+   * MSDP variable store, and an MsdpEvent is sent for each variable whose value has changed.
+   */
+  private boolean handleMsdp(int command, ByteBuffer subn) {
+    if (command == TelnetCode.WILL) {
+      ArrayList<String> values = new ArrayList<String>();
+      values.add("REPORTABLE_VARIABLES");
+      sendMsdp("LIST", values);
+      return true;
+    }
+    if (command == TelnetCode.SB) {
+      LinkedHashMap<String,MsdpValue> variables = new LinkedHashMap<String,MsdpValue>();
+      Msdp.decode(subn, variables);
+      for (Map.Entry<String,MsdpValue> entry : variables.entrySet()) {
+        if (entry.getKey().equals("REPORTABLE_VARIABLES")) requestMsdpReports(entry.getValue());
+        else if (_msdp.update(entry.getKey(), entry.getValue())) {
+          EventBus.eventOccurred(new MsdpEvent(entry.getKey(), entry.getValue()));
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** Asks the server to report all the variables in the given list whenever they change. */
+  private void requestMsdpReports(MsdpValue reportable) {
+    ArrayList<String> values = new ArrayList<String>();
+    if (reportable.queryKind() == MsdpValue.Kind.STRING) values.add(reportable.queryText());
+    else if (reportable.queryKind() == MsdpValue.Kind.ARRAY) {
+      for (MsdpValue value : reportable.queryArray()) {
+        if (value.queryKind() == MsdpValue.Kind.STRING) values.add(value.queryText());
+      }
+    }
+    if (values.size() > 0) sendMsdp("REPORT", values);
   }
 
   /**
@@ -211,18 +516,16 @@ public class TelnetHandler implements EventListener {
     if (_lastTtype == null || !_lastTtype.equals(sendNow)) _lastTtype = sendNow;
     else _lastTtype = null;
 
-    ArrayList<Integer> arr = new ArrayList<Integer>();
-    arr.add(TELQUAL_IS);
-    addStringToIntList(sendNow, arr);
-    send(new SubNegotiationTelnetCommand(TELOPT_TTYPE, arr));
+    byte[] name = sendNow.getBytes(StandardCharsets.US_ASCII);
+    byte[] data = new byte[name.length + 1];
+    data[0] = TELQUAL_IS;
+    System.arraycopy(name, 0, data, 1, name.length);
+    send(new SubNegotiationTelnetCommand(TELOPT_TTYPE, data));
   }
 
-  private boolean handleTType(int command, int[] subn) {
-    if (command == TelnetCode.DO) {
-      send(new SupportTelnetCommand(TelnetCode.WILL, TELOPT_TTYPE));
-      return true;
-    }
-    if (command == TelnetCode.SB && subn.length == 1 && subn[0] == TELQUAL_SEND) {
+  private boolean handleTType(int command, ByteBuffer subn) {
+    if (command == TelnetCode.DO) return true;
+    if (command == TelnetCode.SB && subn.remaining() == 1 && subn.get(0) == TELQUAL_SEND) {
       sendTTypeRequest();
       return true;
     }
@@ -0,0 +1,146 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.handlers;
+
+import java.awt.EventQueue;
+import java.util.LinkedHashMap;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.CommandListener;
+import turtle.EventBus;
+import turtle.commands.TimerCommand;
+import turtle.events.InformationEvent;
+import turtle.events.UserInputEvent;
+import turtle.timers.TimingWheel;
+
+/**
+ * The Timer Handler responds to #timer and #delay commands.  When a timer goes off, its command
+ * is given as user input again, so it is parsed and executed just like a typed command.
+ * The timers themselves are kept on a TimingWheel, which may be shared with other sessions; when
+ * a timer expires, the rest of the work is passed back to the event queue, so the handler's own
+ * state is only ever touched from there.
+ */
+public class TimerHandler implements CommandListener {
+  private class NamedTimer {
+    String _name;
+    long _interval;
+    String _command;
+    TimingWheel.Timeout _timeout;
+  }
+
+  private TimingWheel _wheel;
+  private LinkedHashMap<String,NamedTimer> _timers;
+
+  /** Creates a handler whose timers run on the shared wheel. */
+  public TimerHandler() {
+    this(TimingWheel.shared());
+  }
+
+  /** Creates a handler whose timers run on the given wheel (for instance a virtual one). */
+  public TimerHandler(TimingWheel wheel) {
+    _wheel = wheel;
+    _timers = new LinkedHashMap<String,NamedTimer>();
+  }
+
+  public void commandGiven(Command.CommandKind kind, Command command) {
+    if (kind == Command.CommandKind.TIMERCMD) handleTimerCommand((TimerCommand)command);
+  }
+
+  private void inform(String txt) {
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+
+  private void handleTimerCommand(TimerCommand cmd) {
+    long millis = (long)Math.ceil(cmd.querySeconds() * 1000);
+    switch (cmd.queryAction()) {
+      case ADD:
+        removeTimer(cmd.queryName());
+        addTimer(cmd.queryName(), millis, cmd.queryCommand());
+        inform("Timer " + cmd.queryName() + " will run [" + cmd.queryCommand() + "] every " +
+               secondsToString(millis) + ".");
+        break;
+      case REMOVE:
+        if (removeTimer(cmd.queryName())) inform("Timer " + cmd.queryName() + " removed.");
+        else inform("There is no timer called " + cmd.queryName() + ".");
+        break;
+      case ONCE:
+        scheduleOnce(millis, cmd.queryCommand());
+        break;
+      default:
+        listTimers();
+    }
+  }
+
+  private String secondsToString(long millis) {
+    if (millis % 1000 == 0) return (millis / 1000) + " seconds";
+    return (millis / 1000.0) + " seconds";
+  }
+
+  private void listTimers() {
+    if (_timers.size() == 0) inform("There are no timers.");
+    for (NamedTimer timer : _timers.values()) {
+      inform(timer._name + ": every " + secondsToString(timer._interval) + ": " + timer._command);
+    }
+  }
+
+  private void addTimer(String name, long interval, String command) {
+    NamedTimer timer = new NamedTimer();
+    timer._name = name;
+    timer._interval = interval;
+    timer._command = command;
+    _timers.put(name, timer);
+    scheduleTimer(timer);
+  }
+
+  private boolean removeTimer(String name) {
+    NamedTimer timer = _timers.remove(name);
+    if (timer == null) return false;
+    timer._timeout.cancel();
+    return true;
+  }
+
+  /** Schedules the next run of the given timer. */
+  private void scheduleTimer(NamedTimer timer) {
+    timer._timeout = _wheel.schedule(new Runnable() {
+      public void run() {
+        EventQueue.invokeLater(new Runnable() {
+          public void run() { timerExpired(timer); }
+        });
+      }
+    }, timer._interval);
+  }
+
+  /** Called on the event queue when a named timer goes off: runs it, and schedules the next run. */
+  private void timerExpired(NamedTimer timer) {
+    // the timer may have been removed or replaced since it expired
+    if (_timers.get(timer._name) != timer) return;
+    scheduleTimer(timer);
+    EventBus.eventOccurred(new UserInputEvent(timer._command));
+  }
+
+  private void scheduleOnce(long delay, String command) {
+    _wheel.schedule(new Runnable() {
+      public void run() {
+        EventQueue.invokeLater(new Runnable() {
+          public void run() { EventBus.eventOccurred(new UserInputEvent(command)); }
+        });
+      }
+    }, delay);
+  }
+}
@@ -26,6 +26,9 @@ import turtle.interfaces.immutable.TelnetCode;
  * The listener is responsible for taking care of responding in the right thread.
  */
 public interface ConnectionListener {
+  /** The phases of setting up a connection, which are timed separately. */
+  public enum ConnectionPhase { RESOLVE, CONNECT, HANDSHAKE };
+
   /** Used if the connection runs into errors and is broken non-neatly. */
   public void connectionFailed(String error);
 
@@ -38,9 +41,15 @@ public interface ConnectionListener {
   /** Used when the connection has successfully been established. */
   public void connectionEstablished(String host, String address, int port);
 
-  /** Used when an IP address is found. */
+  /** Used when an IP address is found, and a connection attempt to it is started. */
   public void connectionFoundAddress(String host, String address, int port);
 
+  /**
+   * Used when a phase of setting up the connection has finished successfully, with the time it
+   * took in nanoseconds; the HANDSHAKE phase only occurs for TLS connections.
+   */
+  public void connectionPhaseTimed(ConnectionPhase phase, long nanos);
+
   /** Used when the connection has received text from the server. */
   public void connectionReceivedText(String text);
 
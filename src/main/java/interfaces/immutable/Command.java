@@ -28,6 +28,20 @@ public interface Command {
   public enum CommandKind { MUDCMD,     // UserCommand: send a command to the MUD
                             CONNECTCMD, // ConnectCommand: #connect to a server and port
                             SCROLLCMD,  // ScrollCommand: #scroll {up|down|toggle}
+                            STATSCMD,   // StatsCommand: #stats [on|off|reset]
+                            PACECMD,    // PaceCommand: #pace [off|<rate> [burst]]
+                            STOPCMD,    // StopCommand: #stop
+                            TIMERCMD,   // TimerCommand: #timer [<name> ...] or #delay
+                            MAPCMD,     // MapCommand: #map [save|load|clear]
+                            GOTOCMD,    // GotoCommand: #goto <room>
+                            FINDCMD,    // FindCommand: #find [<text>|/<regex>/]
+                            LOGGREPCMD, // LogGrepCommand: #loggrep [<text>|/<regex>/]
+                            DEBUGCMD,   // DebugCommand: #debug telnet [on|all|off]
+                            PROMPTCMD,  // PromptCommand: #prompt [off|<ms>]
+                            CHARSETCMD, // CharsetCommand: #charset [<name>]
+                            TERMINALCMD,// TerminalCommand: #terminal [on|off]
+                            SESSIONCMD, // SessionCommand: #session [open|close <name> ...]
+                            FANOUTCMD,  // FanoutCommand: #all <cmd> or #group <name> <cmd>
                           };
 
   public CommandKind queryCommandKind();
@@ -19,13 +19,18 @@
 
 package turtle.interfaces.immutable;
 
+import java.nio.ByteBuffer;
+
 /**
  * A TelnetCode represents a code that is received or sent over the telnet connection.
  * Codes have one of a few standard forms that should be handled in different ways following the
  * telnet protocol.
+ * Byte values are given as read-only ByteBuffers, which are views of the code's internal data
+ * rather than copies; as with all bytes, use (b & 0xFF) to obtain a value between 0 and 255.
  */
 public interface TelnetCode {
   /* The bytes that are part of a telnet requeest */
+  public static final int EOR  = 239;
   public static final int SE   = 240;
   public static final int NOP  = 241;
   public static final int DAT  = 242;
@@ -56,11 +61,15 @@ public interface TelnetCode {
   public int queryOption();
 
   /**
-   * For a command IAC SB <O> [...] IAC SE or IAC SB <O> [...] SE, this returns [...].
+   * For a command IAC SB <O> [...] IAC SE, this returns [...], with any escaped IAC IAC pairs
+   * already replaced by a single IAC.  The buffer covers exactly the subnegotiation data.
    * For all other commands, null is returned.
    */
-  public int[] querySubNegotiation();
+  public ByteBuffer querySubNegotiation();
 
-  public int[] queryCompleteCode();
+  /**
+   * Returns the complete code exactly as it is sent over the connection (so including the leading
+   * IAC, and with IACs inside subnegotiation data escaped).
+   */
+  public ByteBuffer queryCompleteCode();
 }
-
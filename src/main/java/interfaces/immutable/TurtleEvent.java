@@ -34,6 +34,14 @@ public interface TurtleEvent {
                           TELNET, // telnet has arrived from the MUD or is generated by us
                           INFORMATION, // information is available for printing: InformationEvent
                           WARNING, // something encountered a (minor) problem: WarningEvent
+                          LATENCY, // the round-trip time to the server was measured: LatencyEvent
+                          GMCP, // a GMCP message has arrived from the server: GmcpEvent
+                          MSDP, // the server has changed an MSDP variable: MsdpEvent
+                          MXP, // MXP was switched on or off: MxpEvent
+                          CHARSET, // a character set was negotiated: CharsetEvent
+                          WINDOWSIZE, // the output window was resized: WindowSizeEvent
+                          PROMPT, // the server has sent a prompt: PromptEvent
+                          DEBUG, // telnet was sent or received, for debugging: TelnetDebugEvent
                         };
 
   public EventKind queryEventKind();
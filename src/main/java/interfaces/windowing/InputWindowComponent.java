@@ -42,5 +42,8 @@ public interface InputWindowComponent {
    * component do not need to be informed of.
    */
   void deregisterSignificantKeystroke(KeyStroke k);
+
+  /** Shows the given text as a hint next to the input, or removes the hint if text is null. */
+  void showSuggestion(String text);
 }
 
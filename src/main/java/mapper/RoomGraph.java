@@ -0,0 +1,435 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.mapper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A RoomGraph holds the rooms of a map and the exits between them.
+ * To keep large maps (100 000 rooms and more) small, everything is stored in primitive arrays,
+ * indexed by the room's index in the graph: every room has a slot for each of the standard
+ * directions, holding the index of the room that the exit leads to (or NONE).  Rooms are also
+ * known by the number the server gives them; room names are stored as UTF-8 in a single byte
+ * array.
+ *
+ * Shortest paths are found with Dijkstra's algorithm, where entering a room costs that room's
+ * weight (1 by default).  A search from a given room yields the paths to all rooms at once, so the
+ * resulting shortest-path trees are cached for the most recently used starting rooms; any change
+ * to the exits or weights invalidates the cache.
+ *
+ * A RoomGraph is not thread-safe: it should only be used from the event queue.
+ */
+public class RoomGraph {
+  public static final int NONE = -1;
+  public static final String[] DIRECTIONS =
+    { "n", "ne", "e", "se", "s", "sw", "w", "nw", "u", "d", "in", "out" };
+  private static final String[] LONGDIRECTIONS =
+    { "north", "northeast", "east", "southeast", "south", "southwest", "west", "northwest",
+      "up", "down", "in", "out" };
+  private static final int[] OPPOSITES = { 4, 5, 6, 7, 0, 1, 2, 3, 9, 8, 11, 10 };
+  private static final int NUMDIRS = DIRECTIONS.length;
+  private static final int MAGIC = 0x544D4150;   // TMAP
+  private static final int FORMAT = 1;
+  private static final int TREECACHE = 4;
+
+  private int _size;
+  private int[] _numbers;
+  private byte[] _weights;
+  private int[] _exits;
+  private int[] _nameStart;
+  private int[] _nameLength;
+  private byte[] _names;
+  private int _namesSize;
+  private int[] _indexKeys;
+  private int[] _indexValues;
+  private int _version;
+  private PathTree[] _trees;
+  private int _nextTree;
+
+  /** The result of a single search: for every room, how to get there from the source. */
+  private static class PathTree {
+    int _source;
+    int _version;
+    int[] _previous;
+    byte[] _direction;
+  }
+
+  public RoomGraph() {
+    this(16);
+  }
+
+  private RoomGraph(int capacity) {
+    _size = 0;
+    _numbers = new int[capacity];
+    _weights = new byte[capacity];
+    _exits = new int[capacity * NUMDIRS];
+    _nameStart = new int[capacity];
+    _nameLength = new int[capacity];
+    _names = new byte[capacity * 16];
+    _namesSize = 0;
+    int indexSize = Integer.highestOneBit(2 * capacity - 1) << 1;
+    _indexKeys = new int[indexSize];
+    _indexValues = new int[indexSize];
+    _version = 0;
+    _trees = new PathTree[TREECACHE];
+    _nextTree = 0;
+  }
+
+  /** Returns the index of the given direction (such as "n" or "north"), or NONE. */
+  public static int parseDirection(String dir) {
+    for (int i = 0; i < NUMDIRS; i++) {
+      if (DIRECTIONS[i].equalsIgnoreCase(dir) || LONGDIRECTIONS[i].equalsIgnoreCase(dir)) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+
+  /** Returns the direction opposite the given one (so south for north, out for in). */
+  public static int opposite(int dir) {
+    return OPPOSITES[dir];
+  }
+
+  /** Returns the number of rooms in the graph. */
+  public int size() {
+    return _size;
+  }
+
+  /** Returns the number of exits in the graph. */
+  public int queryExitCount() {
+    int ret = 0;
+    for (int i = 0; i < _size * NUMDIRS; i++) if (_exits[i] != NONE) ret++;
+    return ret;
+  }
+
+  /** Returns the (approximate) number of bytes used to store the graph. */
+  public long queryMemoryUse() {
+    return 4L * (_numbers.length + _exits.length + _nameStart.length + _nameLength.length +
+                 _indexKeys.length + _indexValues.length) + _weights.length + _names.length;
+  }
+
+  // the index from room numbers to room indexes is an open addressing hash table whose size is a
+  // power of two; since 0 marks an empty slot, room indexes are stored plus one
+
+  private int indexSlot(int number) {
+    int mask = _indexKeys.length - 1;
+    int slot = (number * 0x9E3779B9) >>> 1 & mask;
+    while (_indexValues[slot] != 0 && _indexKeys[slot] != number) slot = (slot + 1) & mask;
+    return slot;
+  }
+
+  private void addToIndex(int number, int room) {
+    if (2 * (room + 1) > _indexKeys.length) {
+      int[] keys = _indexKeys;
+      int[] values = _indexValues;
+      _indexKeys = new int[2 * keys.length];
+      _indexValues = new int[2 * keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        if (values[i] == 0) continue;
+        int slot = indexSlot(keys[i]);
+        _indexKeys[slot] = keys[i];
+        _indexValues[slot] = values[i];
+      }
+    }
+    int slot = indexSlot(number);
+    _indexKeys[slot] = number;
+    _indexValues[slot] = room + 1;
+  }
+
+  /** Returns the index of the room with the given number, or NONE if there is no such room. */
+  public int findRoom(int number) {
+    return _indexValues[indexSlot(number)] - 1;
+  }
+
+  /**
+   * Returns the index of a room with the given name: a room whose name is equal to it (ignoring
+   * case) if there is one, otherwise a room whose name contains it; if neither exists, NONE.
+   */
+  public int findRoomByName(String name) {
+    int partial = NONE;
+    String lower = name.toLowerCase();
+    for (int i = 0; i < _size; i++) {
+      String roomName = queryName(i);
+      if (roomName == null) continue;
+      if (roomName.equalsIgnoreCase(name)) return i;
+      if (partial == NONE && roomName.toLowerCase().contains(lower)) partial = i;
+    }
+    return partial;
+  }
+
+  private void grow() {
+    int capacity = 2 * _numbers.length;
+    _numbers = Arrays.copyOf(_numbers, capacity);
+    _weights = Arrays.copyOf(_weights, capacity);
+    _exits = Arrays.copyOf(_exits, capacity * NUMDIRS);
+    _nameStart = Arrays.copyOf(_nameStart, capacity);
+    _nameLength = Arrays.copyOf(_nameLength, capacity);
+  }
+
+  /**
+   * Returns the index of the room with the given number, adding it if it does not exist yet.  If
+   * name is not null, it is stored as the name of the room.
+   */
+  public int addRoom(int number, String name) {
+    int room = findRoom(number);
+    if (room == NONE) {
+      if (_size == _numbers.length) grow();
+      room = _size++;
+      _numbers[room] = number;
+      _weights[room] = 1;
+      Arrays.fill(_exits, room * NUMDIRS, (room + 1) * NUMDIRS, NONE);
+      _nameStart[room] = 0;
+      _nameLength[room] = -1;
+      addToIndex(number, room);
+    }
+    if (name != null && !name.equals(queryName(room))) setName(room, name);
+    return room;
+  }
+
+  private void setName(int room, String name) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (_namesSize + bytes.length > _names.length) {
+      _names = Arrays.copyOf(_names, Math.max(2 * _names.length, _namesSize + bytes.length));
+    }
+    System.arraycopy(bytes, 0, _names, _namesSize, bytes.length);
+    _nameStart[room] = _namesSize;
+    _nameLength[room] = bytes.length;
+    _namesSize += bytes.length;
+  }
+
+  /** Returns the number that the server uses for the given room. */
+  public int queryNumber(int room) {
+    return _numbers[room];
+  }
+
+  /** Returns the name of the given room, or null if it is not known (yet). */
+  public String queryName(int room) {
+    if (_nameLength[room] < 0) return null;
+    return new String(_names, _nameStart[room], _nameLength[room], StandardCharsets.UTF_8);
+  }
+
+  /** Returns the room that the given exit leads to, or NONE if there is no such exit. */
+  public int queryExit(int room, int dir) {
+    return _exits[room * NUMDIRS + dir];
+  }
+
+  /** Sets the room that the given exit leads to; use NONE to remove the exit. */
+  public void setExit(int room, int dir, int target) {
+    if (_exits[room * NUMDIRS + dir] == target) return;
+    _exits[room * NUMDIRS + dir] = target;
+    _version++;
+  }
+
+  public int queryWeight(int room) {
+    return _weights[room];
+  }
+
+  /** Sets the cost of entering the given room, which should be between 1 and 127. */
+  public void setWeight(int room, int weight) {
+    byte w = (byte)Math.max(1, Math.min(weight, 127));
+    if (_weights[room] == w) return;
+    _weights[room] = w;
+    _version++;
+  }
+
+  /**
+   * Returns the directions to walk to get from one room to another, or null if the target cannot
+   * be reached from the source.
+   */
+  public int[] findPath(int from, int to) {
+    PathTree tree = queryTree(from);
+    if (from != to && tree._previous[to] == NONE) return null;
+    int length = 0;
+    for (int room = to; room != from; room = tree._previous[room]) length++;
+    int[] ret = new int[length];
+    for (int room = to; room != from; room = tree._previous[room]) {
+      ret[--length] = tree._direction[room];
+    }
+    return ret;
+  }
+
+  /** Returns the shortest-path tree from the given room, from the cache if possible. */
+  private PathTree queryTree(int source) {
+    for (int i = 0; i < TREECACHE; i++) {
+      PathTree tree = _trees[i];
+      if (tree != null && tree._source == source && tree._version == _version &&
+          tree._previous.length >= _size) return tree;
+    }
+    PathTree tree = _trees[_nextTree];
+    if (tree == null || tree._previous.length < _size) {
+      tree = new PathTree();
+      tree._previous = new int[_numbers.length];
+      tree._direction = new byte[_numbers.length];
+      _trees[_nextTree] = tree;
+    }
+    _nextTree = (_nextTree + 1) % TREECACHE;
+    tree._source = source;
+    tree._version = _version;
+    search(source, tree);
+    return tree;
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from the given source, storing the results in the given tree.  The
+   * priority queue is a binary heap of longs, holding (distance << 32 | room); rooms may occur in
+   * it more than once, in which case only the first (shortest) occurrence is used.
+   */
+  private void search(int source, PathTree tree) {
+    int[] distance = new int[_size];
+    Arrays.fill(distance, Integer.MAX_VALUE);
+    Arrays.fill(tree._previous, 0, _size, NONE);
+    long[] heap = new long[64];
+    int heapSize = 0;
+    distance[source] = 0;
+    heap[heapSize++] = source;
+    while (heapSize > 0) {
+      long top = heap[0];
+      heap[0] = heap[--heapSize];
+      siftDown(heap, heapSize);
+      int room = (int)top;
+      int dist = (int)(top >>> 32);
+      if (dist > distance[room]) continue;
+      for (int dir = 0; dir < NUMDIRS; dir++) {
+        int target = _exits[room * NUMDIRS + dir];
+        if (target == NONE) continue;
+        int d = dist + _weights[target];
+        if (d >= distance[target]) continue;
+        distance[target] = d;
+        tree._previous[target] = room;
+        tree._direction[target] = (byte)dir;
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, 2 * heap.length);
+        heap[heapSize] = ((long)d << 32) | target;
+        siftUp(heap, heapSize++);
+      }
+    }
+  }
+
+  private static void siftUp(long[] heap, int pos) {
+    long value = heap[pos];
+    while (pos > 0) {
+      int parent = (pos - 1) / 2;
+      if (heap[parent] <= value) break;
+      heap[pos] = heap[parent];
+      pos = parent;
+    }
+    heap[pos] = value;
+  }
+
+  private static void siftDown(long[] heap, int size) {
+    if (size == 0) return;
+    long value = heap[0];
+    int pos = 0;
+    while (2 * pos + 1 < size) {
+      int child = 2 * pos + 1;
+      if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+      if (heap[child] >= value) break;
+      heap[pos] = heap[child];
+      pos = child;
+    }
+    heap[pos] = value;
+  }
+
+  /**
+   * Saves the graph to the given file.  The format is: MAGIC, FORMAT, the number of rooms, the
+   * length of the name data, and then the arrays of room numbers, weights, exits, name starts,
+   * name lengths and the name data, all big-endian.
+   */
+  public void save(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                  new FileOutputStream(file), 65536))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT);
+      out.writeInt(_size);
+      out.writeInt(_namesSize);
+      for (int i = 0; i < _size; i++) out.writeInt(_numbers[i]);
+      out.write(_weights, 0, _size);
+      for (int i = 0; i < _size * NUMDIRS; i++) out.writeInt(_exits[i]);
+      for (int i = 0; i < _size; i++) out.writeInt(_nameStart[i]);
+      for (int i = 0; i < _size; i++) out.writeInt(_nameLength[i]);
+      out.write(_names, 0, _namesSize);
+    }
+  }
+
+  /** Loads a graph that was saved with save(); the file is read by mapping it into memory. */
+  public static RoomGraph load(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+        throw new IOException("Not a map file: " + file);
+      }
+      int size = buffer.getInt();
+      int namesSize = buffer.getInt();
+      long expected = 16L + 4L * size * (NUMDIRS + 3) + size + namesSize;
+      if (size < 0 || namesSize < 0 || buffer.capacity() < expected) {
+        throw new IOException("Map file is damaged: " + file);
+      }
+      RoomGraph graph = new RoomGraph(Math.max(size, 16));
+      graph._size = size;
+      readInts(buffer, graph._numbers, size);
+      buffer.get(graph._weights, 0, size);
+      readInts(buffer, graph._exits, size * NUMDIRS);
+      readInts(buffer, graph._nameStart, size);
+      readInts(buffer, graph._nameLength, size);
+      graph._names = new byte[Math.max(namesSize, 16)];
+      buffer.get(graph._names, 0, namesSize);
+      graph._namesSize = namesSize;
+      // everything that is used as an index later must be checked here, so a damaged file does
+      // not cause errors when the map is used
+      for (int i = 0; i < size * NUMDIRS; i++) {
+        int target = graph._exits[i];
+        if (target != NONE && (target < 0 || target >= size)) {
+          throw new IOException("Map file is damaged (exit to room " + target + "): " + file);
+        }
+      }
+      // weights outside 1..127 (as setWeight allows) would break the shortest path search
+      for (int i = 0; i < size; i++) {
+        if (graph._weights[i] < 1) {
+          throw new IOException("Map file is damaged (weight of room " + i + "): " + file);
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        long start = graph._nameStart[i];
+        long length = graph._nameLength[i];
+        if (length == -1) continue;
+        if (start < 0 || length < 0 || start + length > namesSize) {
+          throw new IOException("Map file is damaged (name of room " + i + "): " + file);
+        }
+      }
+      for (int i = 0; i < size; i++) graph.addToIndex(graph._numbers[i], i);
+      return graph;
+    }
+  }
+
+  /** Reads count ints from the buffer into the given array, and moves the buffer forward. */
+  private static void readInts(ByteBuffer buffer, int[] into, int count) {
+    buffer.asIntBuffer().get(into, 0, count);
+    buffer.position(buffer.position() + 4 * count);
+  }
+}
@@ -0,0 +1,63 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import turtle.events.GmcpEvent;
+
+/**
+ * This class translates between GMCP messages (the Generic Mud Communication Protocol, telnet
+ * option 201) and the bytes of the corresponding telnet subnegotiation.
+ */
+public class Gmcp {
+  public static final int TELOPT_GMCP = 201;
+
+  /**
+   * Splits the subnegotiation data (between the position and limit of the given buffer) into a
+   * package name and JSON data, and returns the corresponding event; if there is no package name,
+   * null is returned.
+   * Only the package name is turned into a String; the JSON data is left in the given buffer.
+   */
+  public static GmcpEvent decode(ByteBuffer data) {
+    int start = data.position();
+    int end = data.limit();
+    int split = start;
+    while (split < end && data.get(split) != ' ') split++;
+    if (split == start) return null;
+    String pkg = JsonReader.decodeString(data, start, split);
+    int json = split;
+    while (json < end && isSpace(data.get(json))) json++;
+    return new GmcpEvent(pkg, data, json, end);
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\n' || b == '\r';
+  }
+
+  /**
+   * Returns the subnegotiation data for a GMCP message with the given package and JSON data;
+   * json may be null for messages without data.
+   */
+  public static byte[] encode(String pkg, String json) {
+    String message = json == null ? pkg : pkg + " " + json;
+    return message.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,306 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JsonReader is a streaming ("pull") parser for JSON data that is given as a range of UTF-8
+ * encoded bytes.  Rather than building a tree of objects, it lets the caller step through the
+ * document one token at a time, and only creates Strings or numbers when explicitly asked.  This
+ * makes it cheap to skip the parts of a message one is not interested in.
+ *
+ * A typical use is:
+ *   while ((token = reader.next()) != JsonReader.Token.END) {
+ *     if (token == JsonReader.Token.NAME && reader.nameEquals("hp")) {
+ *       reader.next(); hp = reader.queryLong();
+ *     }
+ *   }
+ *
+ * The reader does not modify the underlying buffer, but does not copy it either, so the buffer
+ * should not be changed while it is being read.  Malformed input results in an ERROR token, after
+ * which only END is returned.
+ */
+public class JsonReader {
+  public enum Token { START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY,
+                      NAME, STRING, NUMBER, TRUE, FALSE, NULL, END, ERROR };
+
+  private static final int MAXDEPTH = 64;
+
+  private ByteBuffer _data;
+  private int _pos;
+  private int _end;
+  private boolean[] _inObject;
+  private int _depth;
+  private boolean _expectValue;   // inside an object: a name has been read, its value is next
+  private boolean _needSeparator; // a value has been completed, so a comma or close is next
+  private boolean _done;
+  private int _tokenStart;
+  private int _tokenEnd;
+  private boolean _tokenEscaped;
+
+  /**
+   * Creates a reader for the JSON text between the position and limit of the given buffer.  The
+   * buffer's own position is not changed by reading.
+   */
+  public JsonReader(ByteBuffer data) {
+    _data = data;
+    _pos = data.position();
+    _end = data.limit();
+    _inObject = new boolean[MAXDEPTH];
+    _depth = 0;
+    _expectValue = false;
+    _needSeparator = false;
+    _done = false;
+  }
+
+  /** Creates a reader for the JSON text in data[start..end-1]. */
+  public JsonReader(byte[] data, int start, int end) {
+    this(ByteBuffer.wrap(data, start, end - start));
+  }
+
+  /** Creates a reader for the JSON text in the given array. */
+  public JsonReader(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  /**
+   * Returns the UTF-8 string in data[start..end-1], using absolute indexes in the buffer.  This
+   * avoids an intermediate copy when the buffer is backed by an accessible array.
+   */
+  public static String decodeString(ByteBuffer data, int start, int end) {
+    if (data.hasArray()) {
+      return new String(data.array(), data.arrayOffset() + start, end - start,
+                        StandardCharsets.UTF_8);
+    }
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) bytes[i] = data.get(start + i);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private Token error() {
+    _done = true;
+    _pos = _end;
+    return Token.ERROR;
+  }
+
+  private void skipWhitespace() {
+    while (_pos < _end) {
+      byte b = _data.get(_pos);
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') return;
+      _pos++;
+    }
+  }
+
+  /** Returns the next token in the document. */
+  public Token next() {
+    if (_done) return Token.END;
+    skipWhitespace();
+    if (_pos >= _end) {
+      if (_depth > 0) return error();
+      _done = true;
+      return Token.END;
+    }
+
+    byte b = _data.get(_pos);
+    boolean inObject = _depth > 0 && _inObject[_depth-1];
+
+    // closing an object or array
+    if (b == '}' || b == ']') {
+      if (_depth == 0 || _inObject[_depth-1] != (b == '}') || _expectValue) return error();
+      _pos++;
+      _depth--;
+      _needSeparator = true;
+      return b == '}' ? Token.END_OBJECT : Token.END_ARRAY;
+    }
+
+    // separators between values
+    if (_needSeparator) {
+      if (_depth == 0) return error();      // only one top-level value is allowed
+      if (b != ',') return error();
+      _pos++;
+      _needSeparator = false;
+      skipWhitespace();
+      if (_pos >= _end) return error();
+      b = _data.get(_pos);
+    }
+
+    // in an object, a name (followed by a colon) comes before every value
+    if (inObject && !_expectValue) {
+      if (b != '"' || !scanString()) return error();
+      skipWhitespace();
+      if (_pos >= _end || _data.get(_pos) != ':') return error();
+      _pos++;
+      _expectValue = true;
+      return Token.NAME;
+    }
+
+    _expectValue = false;
+    return readValue(b);
+  }
+
+  /** Reads the value starting with byte b, at position _pos. */
+  private Token readValue(byte b) {
+    if (b == '{' || b == '[') {
+      if (_depth >= MAXDEPTH) return error();
+      _inObject[_depth++] = (b == '{');
+      _pos++;
+      return b == '{' ? Token.START_OBJECT : Token.START_ARRAY;
+    }
+    _needSeparator = true;
+    if (b == '"') return scanString() ? Token.STRING : error();
+    if (b == '-' || (b >= '0' && b <= '9')) return scanNumber() ? Token.NUMBER : error();
+    if (scanLiteral("true")) return Token.TRUE;
+    if (scanLiteral("false")) return Token.FALSE;
+    if (scanLiteral("null")) return Token.NULL;
+    return error();
+  }
+
+  private boolean scanLiteral(String literal) {
+    int len = literal.length();
+    if (_pos + len > _end) return false;
+    for (int i = 0; i < len; i++) {
+      if (_data.get(_pos + i) != literal.charAt(i)) return false;
+    }
+    _pos += len;
+    return true;
+  }
+
+  /** Scans the string starting at _pos (which is a quote), and sets _tokenStart and _tokenEnd. */
+  private boolean scanString() {
+    _tokenEscaped = false;
+    _tokenStart = ++_pos;
+    while (_pos < _end) {
+      byte b = _data.get(_pos);
+      if (b == '"') {
+        _tokenEnd = _pos++;
+        return true;
+      }
+      if (b == '\\') {
+        _tokenEscaped = true;
+        _pos++;
+      }
+      _pos++;
+    }
+    return false;
+  }
+
+  private boolean scanNumber() {
+    _tokenStart = _pos;
+    while (_pos < _end) {
+      byte b = _data.get(_pos);
+      if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+        _pos++;
+      }
+      else break;
+    }
+    _tokenEnd = _pos;
+    return _tokenEnd > _tokenStart &&
+           !(_tokenEnd == _tokenStart + 1 && _data.get(_tokenStart) == '-');
+  }
+
+  /**
+   * For a NAME or STRING token, returns whether it is equal to the given text, without creating
+   * a String for the token.  Only suitable for names without escapes.
+   */
+  public boolean nameEquals(String text) {
+    int len = _tokenEnd - _tokenStart;
+    if (_tokenEscaped || len != text.length()) return false;
+    for (int i = 0; i < len; i++) {
+      if (_data.get(_tokenStart + i) != text.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /** For a NAME, STRING or NUMBER token, returns the text of the token (with escapes resolved). */
+  public String queryString() {
+    if (!_tokenEscaped) {
+      return decodeString(_data, _tokenStart, _tokenEnd);
+    }
+    return unescape();
+  }
+
+  private String unescape() {
+    StringBuilder ret = new StringBuilder(_tokenEnd - _tokenStart);
+    int start = _tokenStart;
+    for (int i = _tokenStart; i < _tokenEnd; i++) {
+      if (_data.get(i) != '\\') continue;
+      ret.append(decodeString(_data, start, i));
+      i++;
+      if (i >= _tokenEnd) break;
+      byte b = _data.get(i);
+      if (b == 'n') ret.append('\n');
+      else if (b == 't') ret.append('\t');
+      else if (b == 'r') ret.append('\r');
+      else if (b == 'b') ret.append('\b');
+      else if (b == 'f') ret.append('\f');
+      else if (b == 'u' && i + 4 < _tokenEnd) {
+        try {
+          ret.append((char)Integer.parseInt(decodeString(_data, i+1, i+5), 16));
+        }
+        catch (NumberFormatException e) { }
+        i += 4;
+      }
+      else ret.append((char)b);
+      start = i + 1;
+    }
+    if (start < _tokenEnd) {
+      ret.append(decodeString(_data, start, _tokenEnd));
+    }
+    return ret.toString();
+  }
+
+  /**
+   * For a NUMBER token, returns its value as a long (fractions are truncated); for other tokens
+   * 0 is returned.  Integers are parsed directly from the bytes without creating a String.
+   */
+  public long queryLong() {
+    long ret = 0;
+    boolean negative = false;
+    for (int i = _tokenStart; i < _tokenEnd; i++) {
+      byte b = _data.get(i);
+      if (b == '-' && i == _tokenStart) negative = true;
+      else if (b >= '0' && b <= '9') ret = ret * 10 + (b - '0');
+      else return (long)queryDouble();
+    }
+    return negative ? -ret : ret;
+  }
+
+  /** For a NUMBER token, returns its value as a double. */
+  public double queryDouble() {
+    try { return Double.parseDouble(queryString()); }
+    catch (NumberFormatException e) { return 0; }
+  }
+
+  /**
+   * Skips the value that the last token started.  If the last token was a START_OBJECT or
+   * START_ARRAY, this reads up to and including the matching END token; if it was a NAME, the
+   * value belonging to that name is skipped; otherwise, nothing happens.
+   */
+  public void skipValue(Token last) {
+    if (last == Token.NAME) last = next();
+    if (last != Token.START_OBJECT && last != Token.START_ARRAY) return;
+    int depth = _depth - 1;
+    Token token;
+    do { token = next(); }
+    while (_depth > depth && token != Token.END && token != Token.ERROR);
+  }
+}
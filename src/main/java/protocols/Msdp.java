@@ -0,0 +1,142 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * This class translates between MSDP variables (the Mud Server Data Protocol, telnet option 69)
+ * and the bytes of the corresponding telnet subnegotiation.
+ * An MSDP subnegotiation consists of a sequence of VAR <name> VAL <value> pairs, where a value is
+ * either a string, an array (ARRAY_OPEN VAL <value> ... ARRAY_CLOSE) or a table (TABLE_OPEN
+ * VAR <name> VAL <value> ... TABLE_CLOSE).  A variable followed by multiple VALs is read as an
+ * array.
+ */
+public class Msdp {
+  public static final int TELOPT_MSDP = 69;
+  public static final byte VAR = 1;
+  public static final byte VAL = 2;
+  public static final byte TABLE_OPEN = 3;
+  public static final byte TABLE_CLOSE = 4;
+  public static final byte ARRAY_OPEN = 5;
+  public static final byte ARRAY_CLOSE = 6;
+
+  private ByteBuffer _data;
+  private int _pos;
+  private int _end;
+
+  private Msdp(ByteBuffer data) {
+    _data = data;
+    _pos = data.position();
+    _end = data.limit();
+  }
+
+  /**
+   * Decodes the subnegotiation data between the position and limit of the given buffer, and adds
+   * all variables in it to the given map (in order of appearance).  Malformed parts of the data
+   * are skipped.  The position of the buffer is not changed.
+   */
+  public static void decode(ByteBuffer data, LinkedHashMap<String,MsdpValue> into) {
+    Msdp decoder = new Msdp(data);
+    while (decoder._pos < decoder._end) {
+      if (decoder._data.get(decoder._pos) != VAR) { decoder._pos++; continue; }
+      decoder._pos++;
+      String name = decoder.readString();
+      MsdpValue value = decoder.readValues();
+      if (value != null) into.put(name, value);
+    }
+  }
+
+  /** Decodes the subnegotiation data[start..end-1]; see decode(ByteBuffer, LinkedHashMap). */
+  public static void decode(byte[] data, int start, int end, LinkedHashMap<String,MsdpValue> into) {
+    decode(ByteBuffer.wrap(data, start, end - start), into);
+  }
+
+  private boolean isControl(byte b) {
+    return b >= VAR && b <= ARRAY_CLOSE;
+  }
+
+  /** Reads a string up to the next control byte. */
+  private String readString() {
+    int start = _pos;
+    while (_pos < _end && !isControl(_data.get(_pos))) _pos++;
+    return JsonReader.decodeString(_data, start, _pos);
+  }
+
+  /**
+   * Reads one or more VAL <value> parts following a name; a single value is returned as it is,
+   * multiple ones as an array.  If there is no VAL at all, null is returned.
+   */
+  private MsdpValue readValues() {
+    ArrayList<MsdpValue> values = new ArrayList<MsdpValue>();
+    while (_pos < _end && _data.get(_pos) == VAL) {
+      _pos++;
+      values.add(readValue());
+    }
+    if (values.size() == 0) return null;
+    if (values.size() == 1) return values.get(0);
+    return MsdpValue.makeArray(values);
+  }
+
+  /** Reads a single value, directly following a VAL. */
+  private MsdpValue readValue() {
+    if (_pos < _end && _data.get(_pos) == TABLE_OPEN) {
+      _pos++;
+      LinkedHashMap<String,MsdpValue> table = new LinkedHashMap<String,MsdpValue>();
+      while (_pos < _end && _data.get(_pos) == VAR) {
+        _pos++;
+        String name = readString();
+        MsdpValue value = readValues();
+        if (value != null) table.put(name, value);
+      }
+      if (_pos < _end && _data.get(_pos) == TABLE_CLOSE) _pos++;
+      return MsdpValue.makeTable(table);
+    }
+    if (_pos < _end && _data.get(_pos) == ARRAY_OPEN) {
+      _pos++;
+      ArrayList<MsdpValue> array = new ArrayList<MsdpValue>();
+      while (_pos < _end && _data.get(_pos) == VAL) {
+        _pos++;
+        array.add(readValue());
+      }
+      if (_pos < _end && _data.get(_pos) == ARRAY_CLOSE) _pos++;
+      return MsdpValue.makeArray(array);
+    }
+    return MsdpValue.makeString(readString());
+  }
+
+  /** Returns the subnegotiation data for VAR <name> VAL <value1> VAL <value2> ... */
+  public static byte[] encode(String name, ArrayList<String> values) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    out.write(VAR);
+    out.write(bytes, 0, bytes.length);
+    for (int i = 0; i < values.size(); i++) {
+      bytes = values.get(i).getBytes(StandardCharsets.UTF_8);
+      out.write(VAL);
+      out.write(bytes, 0, bytes.length);
+    }
+    return out.toByteArray();
+  }
+}
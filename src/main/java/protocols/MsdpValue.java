@@ -0,0 +1,107 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An MsdpValue is the (immutable) value of an MSDP variable: either a string, an array of values,
+ * or a table mapping names to values.
+ */
+public class MsdpValue {
+  public enum Kind { STRING, ARRAY, TABLE };
+
+  private Kind _kind;
+  private String _text;
+  private List<MsdpValue> _array;
+  private Map<String,MsdpValue> _table;
+
+  private MsdpValue(Kind kind, String text, List<MsdpValue> array, Map<String,MsdpValue> table) {
+    _kind = kind;
+    _text = text;
+    _array = array;
+    _table = table;
+  }
+
+  public static MsdpValue makeString(String text) {
+    if (text == null) throw new Error("Cannot create an MsdpValue from null!");
+    return new MsdpValue(Kind.STRING, text, null, null);
+  }
+
+  /** Creates an array value; the given list should not be changed afterwards. */
+  public static MsdpValue makeArray(ArrayList<MsdpValue> values) {
+    return new MsdpValue(Kind.ARRAY, null, Collections.unmodifiableList(values), null);
+  }
+
+  /** Creates a table value; the given map should not be changed afterwards. */
+  public static MsdpValue makeTable(LinkedHashMap<String,MsdpValue> values) {
+    return new MsdpValue(Kind.TABLE, null, null, Collections.unmodifiableMap(values));
+  }
+
+  public Kind queryKind() {
+    return _kind;
+  }
+
+  /** For a STRING value, returns the string; for other kinds, returns null. */
+  public String queryText() {
+    return _text;
+  }
+
+  /** For an ARRAY value, returns the (unmodifiable) list of elements; otherwise returns null. */
+  public List<MsdpValue> queryArray() {
+    return _array;
+  }
+
+  /** For a TABLE value, returns the (unmodifiable) map of entries; otherwise returns null. */
+  public Map<String,MsdpValue> queryTable() {
+    return _table;
+  }
+
+  /** For a TABLE value, returns the entry with the given name, or null if there is none. */
+  public MsdpValue queryEntry(String name) {
+    if (_table == null) return null;
+    return _table.get(name);
+  }
+
+  public boolean equals(Object other) {
+    if (!(other instanceof MsdpValue)) return false;
+    MsdpValue value = (MsdpValue)other;
+    if (_kind != value._kind) return false;
+    if (_kind == Kind.STRING) return _text.equals(value._text);
+    if (_kind == Kind.ARRAY) return _array.equals(value._array);
+    return _table.equals(value._table);
+  }
+
+  public int hashCode() {
+    if (_kind == Kind.STRING) return _text.hashCode();
+    if (_kind == Kind.ARRAY) return _array.hashCode();
+    return _table.hashCode();
+  }
+
+  public String toString() {
+    if (_kind == Kind.STRING) return _text;
+    if (_kind == Kind.ARRAY) return _array.toString();
+    return _table.toString();
+  }
+}
@@ -0,0 +1,73 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MsdpVariables is the store of all MSDP variables the server has reported to us.
+ * It is written by a single thread (the one handling telnet codes), but may be read concurrently
+ * by any number of other threads, for instance to show status bars.  Updates replace a single
+ * entry in place, so an update never copies the whole store.
+ */
+public class MsdpVariables {
+  private ConcurrentHashMap<String,MsdpValue> _variables;
+
+  public MsdpVariables() {
+    _variables = new ConcurrentHashMap<String,MsdpValue>();
+  }
+
+  /**
+   * Sets the given variable, and returns whether this actually changed anything (that is,
+   * whether the variable previously had a different value, or none at all).
+   */
+  public boolean update(String name, MsdpValue value) {
+    MsdpValue old = _variables.put(name, value);
+    return !value.equals(old);
+  }
+
+  /** Returns the current value of the given variable, or null if it has not been reported. */
+  public MsdpValue query(String name) {
+    return _variables.get(name);
+  }
+
+  /** Returns the current value of the given variable if it is a string, and null otherwise. */
+  public String queryText(String name) {
+    MsdpValue value = _variables.get(name);
+    if (value == null) return null;
+    return value.queryText();
+  }
+
+  /** Returns a read-only view of all variables; this view is updated as the store changes. */
+  public Map<String,MsdpValue> queryAll() {
+    return Collections.unmodifiableMap(_variables);
+  }
+
+  public int size() {
+    return _variables.size();
+  }
+
+  /** Forgets all variables (for instance after a disconnect). */
+  public void clear() {
+    _variables.clear();
+  }
+}
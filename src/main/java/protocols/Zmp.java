@@ -0,0 +1,87 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class translates between ZMP messages (the Zenith Mud Protocol, telnet option 93) and the
+ * bytes of the corresponding telnet subnegotiation.
+ * A ZMP message is a command name followed by any number of arguments, each of them a UTF-8
+ * string terminated by a NUL byte.
+ */
+public class Zmp {
+  public static final int TELOPT_ZMP = 93;
+
+  /**
+   * Decodes the subnegotiation data between the position and limit of the given buffer into the
+   * command name and its arguments, or returns null if the data is not a valid ZMP message (it is
+   * empty, has an empty command name or does not end in a NUL byte).
+   * Each string is decoded directly from the underlying bytes; if the buffer does not give access
+   * to its array (for instance because it is read-only), the data is copied once, in bulk.
+   */
+  public static String[] decode(ByteBuffer data) {
+    int start = data.position();
+    int end = data.limit();
+    if (end == start || data.get(end - 1) != 0 || data.get(start) == 0) return null;
+    byte[] bytes;
+    int offset;
+    if (data.hasArray()) {
+      bytes = data.array();
+      offset = data.arrayOffset();
+    }
+    else {
+      bytes = new byte[end - start];
+      ByteBuffer copy = data.duplicate();
+      copy.position(start);
+      copy.get(bytes);
+      offset = -start;
+    }
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      if (bytes[offset + i] == 0) count++;
+    }
+    String[] ret = new String[count];
+    int k = 0;
+    for (int p = start; p < end; p++) {
+      int q = p;
+      while (bytes[offset + q] != 0) q++;
+      ret[k++] = new String(bytes, offset + p, q - p, StandardCharsets.UTF_8);
+      p = q;
+    }
+    return ret;
+  }
+
+  /** Returns the subnegotiation data for the ZMP message with the given command and arguments. */
+  public static byte[] encode(String command, String... arguments) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+    out.write(bytes, 0, bytes.length);
+    out.write(0);
+    for (int i = 0; i < arguments.length; i++) {
+      bytes = arguments[i].getBytes(StandardCharsets.UTF_8);
+      out.write(bytes, 0, bytes.length);
+      out.write(0);
+    }
+    return out.toByteArray();
+  }
+}
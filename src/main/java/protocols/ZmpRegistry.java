@@ -0,0 +1,90 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.protocols;
+
+import java.util.HashMap;
+
+/**
+ * The ZmpRegistry keeps track of the ZMP commands that Turtle supports, and passes incoming ZMP
+ * messages to the Handler registered for their command (found by a hash lookup on the name).
+ * It also answers whether a command or a package (a name ending in a dot, such as "zmp.") is
+ * supported, as the server may ask with zmp.check; for this, the number of commands in every
+ * package is kept up to date.
+ * The registry is not thread-safe; like the TelnetHandler that owns it, it should only be used
+ * from the event queue.
+ */
+public class ZmpRegistry {
+  /** A Handler is given the messages for one ZMP command: the command name, then the arguments. */
+  public interface Handler {
+    void handle(String[] message);
+  }
+
+  private HashMap<String,Handler> _handlers;
+  private HashMap<String,Integer> _packages;
+
+  public ZmpRegistry() {
+    _handlers = new HashMap<String,Handler>();
+    _packages = new HashMap<String,Integer>();
+  }
+
+  /**
+   * Registers the handler for the given command, replacing any previous handler.  Command names
+   * are case-sensitive, and may not be empty or end in a dot.
+   */
+  public void register(String command, Handler handler) {
+    if (command.equals("") || command.endsWith(".")) {
+      throw new Error("Illegal ZMP command name: [" + command + "]");
+    }
+    if (_handlers.put(command, handler) != null) return;
+    for (int i = command.indexOf('.'); i >= 0; i = command.indexOf('.', i + 1)) {
+      String pkg = command.substring(0, i + 1);
+      Integer count = _packages.get(pkg);
+      _packages.put(pkg, count == null ? 1 : count + 1);
+    }
+  }
+
+  /** Removes the handler for the given command, if there is one. */
+  public void remove(String command) {
+    if (_handlers.remove(command) == null) return;
+    for (int i = command.indexOf('.'); i >= 0; i = command.indexOf('.', i + 1)) {
+      String pkg = command.substring(0, i + 1);
+      int count = _packages.get(pkg);
+      if (count == 1) _packages.remove(pkg);
+      else _packages.put(pkg, count - 1);
+    }
+  }
+
+  /** Returns whether the given command, or package if the name ends in a dot, is supported. */
+  public boolean supports(String name) {
+    if (name.endsWith(".")) return _packages.containsKey(name);
+    return _handlers.containsKey(name);
+  }
+
+  /**
+   * Passes the given message (as returned by Zmp.decode) to the handler for its command, and
+   * returns whether there was such a handler.
+   */
+  public boolean dispatch(String[] message) {
+    Handler handler = _handlers.get(message[0]);
+    if (handler == null) return false;
+    handler.handle(message);
+    return true;
+  }
+}
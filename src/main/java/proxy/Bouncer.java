@@ -0,0 +1,262 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.proxy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The Bouncer is a headless process which owns the connections to MUDs, so they survive when
+ * Turtle is restarted.  It listens on a local port, to which a front-end (such as Turtle, with
+ * #connect localhost <port>) connects like it would to a MUD.  Since any local user can connect to
+ * the port, a front-end must first prove that it may use the bouncer, by giving the secret from
+ * the token file (see readSecret):
+ *   auth <secret>              -- anything else, or a wrong secret, ends the connection.
+ * After that, and before it is attached to a session, the front-end's lines are commands for the
+ * bouncer:
+ *   open <name> <host> <port>  -- connects to a MUD and attaches to the new session;
+ *   attach <name>              -- attaches to an existing session, replaying its scrollback;
+ *   close <name>               -- ends a session;
+ *   list                       -- lists the sessions.
+ * Once attached, everything is passed between the front-end and the MUD.  A front-end detaches
+ * by disconnecting; any number of front-ends may be attached to the same session.
+ */
+public class Bouncer extends Thread {
+  public static final int DEFAULT_PORT = 4455;
+  public static final int DEFAULT_SCROLLBACK = 100000;
+  public static final String TOKEN_FILE = ".turtle_bouncer_token";
+
+  private ServerSocket _server;
+  private byte[] _secret;
+  private TreeMap<String,Session> _sessions;
+  private int _maxLines;
+  private volatile boolean _ended;
+
+  /**
+   * Starts a bouncer on the given port of the loopback interface (0 picks a free port), which
+   * front-ends can only use after giving the given secret.
+   */
+  public Bouncer(int port, int maxLines, String secret) throws IOException {
+    if (secret == null || secret.trim().equals("")) throw new Error("The bouncer needs a secret.");
+    _secret = secret.trim().getBytes(StandardCharsets.UTF_8);
+    _server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    _sessions = new TreeMap<String,Session>();
+    _maxLines = maxLines;
+    _ended = false;
+    start();
+  }
+
+  /** Returns the port that the bouncer listens on. */
+  public int queryPort() {
+    return _server.getLocalPort();
+  }
+
+  /**
+   * Accepts front-ends until the bouncer is shut down.
+   * Do not call manually! It is public only because it needs to be for the threading code.
+   */
+  public void run() {
+    while (!_ended) {
+      try {
+        Socket socket = _server.accept();
+        new FrontEnd(this, socket).start();
+      }
+      catch (IOException e) {
+        if (!_ended) System.err.println("Could not accept front-end: " + e.getMessage());
+      }
+    }
+  }
+
+  /** Closes all sessions and stops listening for front-ends. */
+  public void shutdown() {
+    _ended = true;
+    try { _server.close(); }
+    catch (IOException e) { }
+    for (Session session : querySessions()) session.close();
+  }
+
+  public synchronized Session querySession(String name) {
+    return _sessions.get(name);
+  }
+
+  public synchronized ArrayList<Session> querySessions() {
+    return new ArrayList<Session>(_sessions.values());
+  }
+
+  /** Called by a session when its connection has ended. */
+  synchronized void sessionEnded(Session session) {
+    if (_sessions.get(session.queryName()) == session) _sessions.remove(session.queryName());
+  }
+
+  /** Asks a new front-end for the secret. */
+  void greet(FrontEnd frontEnd) {
+    frontEnd.inform("Turtle bouncer.  Please authenticate with: auth <secret>.");
+  }
+
+  /**
+   * Handles the first line from a front-end, which should give the secret; if it does, the
+   * front-end is sent the list of sessions and commands, and otherwise it is disconnected.
+   */
+  private void authenticate(FrontEnd frontEnd, String line) {
+    String text = line.trim();
+    String given = "";
+    if (text.toLowerCase().startsWith("auth ")) given = text.substring(5).trim();
+    // compared in constant time, so the time taken does not tell how much of the secret is right
+    if (!MessageDigest.isEqual(given.getBytes(StandardCharsets.UTF_8), _secret)) {
+      frontEnd.inform("Authentication failed.");
+      frontEnd.disconnect();
+      return;
+    }
+    frontEnd.setAuthenticated();
+    frontEnd.inform("Commands: open <name> <host> <port>, attach <name>, close <name>, list.");
+    list(frontEnd);
+  }
+
+  private void list(FrontEnd frontEnd) {
+    ArrayList<Session> sessions = querySessions();
+    if (sessions.isEmpty()) frontEnd.inform("No sessions.");
+    for (Session session : sessions) frontEnd.inform("Session " + session.queryDescription());
+  }
+
+  /** Handles a line from a front-end that is not attached to a session. */
+  void handleCommand(FrontEnd frontEnd, String line) {
+    if (!frontEnd.queryAuthenticated()) {
+      authenticate(frontEnd, line);
+      return;
+    }
+    String[] words = line.trim().split("\\s+");
+    String command = words[0].toLowerCase();
+    if (command.equals("")) return;
+    if (command.equals("list") && words.length == 1) list(frontEnd);
+    else if (command.equals("open") && words.length == 4) open(frontEnd, words);
+    else if (command.equals("attach") && words.length == 2) attach(frontEnd, words[1]);
+    else if (command.equals("close") && words.length == 2) close(frontEnd, words[1]);
+    else frontEnd.inform("Unexpected command [" + line + "]: expected open <name> <host> " +
+                         "<port>, attach <name>, close <name> or list.");
+  }
+
+  private void open(FrontEnd frontEnd, String[] words) {
+    int port;
+    try { port = Integer.parseInt(words[3]); }
+    catch (NumberFormatException e) { port = -1; }
+    if (port <= 0 || port > 65535) {
+      frontEnd.inform("Invalid port: should be between 1 and 65535 (given: " + words[3] + ")");
+      return;
+    }
+    Session session;
+    synchronized (this) {
+      if (_sessions.containsKey(words[1])) {
+        frontEnd.inform("There is already a session called " + words[1] + ".");
+        return;
+      }
+      session = new Session(this, words[1], words[2], port, _maxLines);
+      _sessions.put(words[1], session);
+    }
+    session.attach(frontEnd);
+  }
+
+  private void attach(FrontEnd frontEnd, String name) {
+    Session session = querySession(name);
+    if (session == null) frontEnd.inform("There is no session called " + name + ".");
+    else session.attach(frontEnd);
+  }
+
+  private void close(FrontEnd frontEnd, String name) {
+    Session session = querySession(name);
+    if (session == null) frontEnd.inform("There is no session called " + name + ".");
+    else {
+      session.close();
+      frontEnd.inform("Closing session " + name + ".");
+    }
+  }
+
+  /**
+   * Returns the secret from the given token file: its first line, without surrounding spaces.
+   * The file must only be accessible to its owner (mode 0600); if it does not exist, it is created
+   * with a new random secret.  An IOException is thrown if the secret cannot be read, or if the
+   * file is accessible to others.
+   */
+  public static String readSecret(File file) throws IOException {
+    boolean posix = file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix");
+    if (!file.exists()) {
+      byte[] random = new byte[24];
+      new SecureRandom().nextBytes(random);
+      StringBuilder secret = new StringBuilder();
+      for (byte b : random) secret.append(String.format("%02x", b & 0xFF));
+      if (posix) {
+        Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(
+                                          PosixFilePermissions.fromString("rw-------")));
+      }
+      Files.write(file.toPath(), (secret + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    if (posix) {
+      Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+      permissions.remove(PosixFilePermission.OWNER_READ);
+      permissions.remove(PosixFilePermission.OWNER_WRITE);
+      if (!permissions.isEmpty()) {
+        throw new IOException(file + " may only be readable and writable by its owner (use " +
+                              "chmod 600).");
+      }
+    }
+    String line;
+    try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      line = in.readLine();
+    }
+    if (line == null || line.trim().equals("")) throw new IOException(file + " has no secret.");
+    return line.trim();
+  }
+
+  /**
+   * Starts a bouncer on the port given as argument, or on DEFAULT_PORT; the secret is read from
+   * TOKEN_FILE in the user's home directory.
+   */
+  public static void main(String[] args) {
+    int port = DEFAULT_PORT;
+    if (args.length > 0) {
+      try { port = Integer.parseInt(args[0]); }
+      catch (NumberFormatException e) {
+        System.err.println("Usage: Bouncer [port]");
+        return;
+      }
+    }
+    File tokenFile = new File(System.getProperty("user.home"), TOKEN_FILE);
+    try {
+      Bouncer bouncer = new Bouncer(port, DEFAULT_SCROLLBACK, readSecret(tokenFile));
+      System.out.println("Turtle bouncer listening on localhost port " + bouncer.queryPort() +
+                         "; front-ends authenticate with the secret in " + tokenFile + ".");
+    }
+    catch (IOException e) {
+      System.err.println("Could not start bouncer: " + e.getMessage());
+    }
+  }
+}
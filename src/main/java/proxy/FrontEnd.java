@@ -0,0 +1,204 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.proxy;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.connection.TelnetInputStream;
+import turtle.connection.TelnetOutputStream;
+
+/**
+ * A FrontEnd is a client (typically a Turtle window) which has connected to the Bouncer over the
+ * local socket.  Until it is attached to a Session, the lines it sends are commands for the
+ * Bouncer; afterwards, they are passed on to the server, and everything that the server sends is
+ * passed on to the front-end.
+ *
+ * Like a Connection, a FrontEnd runs in its own thread, which reads from the socket.  Writing is
+ * done by a second thread, so a front-end that does not keep up never holds up the session:
+ * text for it is queued, and if too much is waiting, the front-end is disconnected.
+ * Text is decoded and encoded as ISO-8859-1, so bytes pass through unchanged whatever character
+ * set the server and front-end use.
+ */
+public class FrontEnd extends Thread {
+  /** The number of chunks that may wait for a front-end before it is considered stuck. */
+  public static final int MAXQUEUED = 8192;
+  /** The longest line that a front-end may send before it has given the secret. */
+  public static final int MAXUNAUTHENTICATED = 1024;
+  private static final Object END = new Object();
+
+  private Bouncer _bouncer;
+  private Socket _socket;
+  private TelnetInputStream _reader;
+  private TelnetOutputStream _writer;
+  private LinkedBlockingQueue<Object> _queue;
+  private Thread _writerThread;
+  private StringBuilder _line;
+  private volatile Session _session;
+  private volatile boolean _ended;
+  private boolean _authenticated;   // only used by the reading thread
+
+  FrontEnd(Bouncer bouncer, Socket socket) throws IOException {
+    _bouncer = bouncer;
+    _socket = socket;
+    _socket.setSoTimeout(250);
+    _socket.setTcpNoDelay(true);
+    _reader = new TelnetInputStream(socket.getInputStream());
+    _reader.setCharset(StandardCharsets.ISO_8859_1);
+    _writer = new TelnetOutputStream(socket.getOutputStream());
+    _writer.setCharset(StandardCharsets.ISO_8859_1);
+    _queue = new LinkedBlockingQueue<Object>();
+    _line = new StringBuilder();
+    _session = null;
+    _ended = false;
+    _authenticated = false;
+    _writerThread = new Thread(new Runnable() {
+      public void run() { writeQueued(); }
+    });
+  }
+
+  /**
+   * Greets the front-end, and then handles its input until either side disconnects.
+   * Do not call manually! It is public only because it needs to be for the threading code.
+   */
+  public void run() {
+    _writerThread.start();
+    _bouncer.greet(this);
+    while (!_ended) receive();
+    Session session = _session;
+    if (session != null) session.detach(this);
+    _queue.add(END);
+    try { _writerThread.join(1000); }
+    catch (InterruptedException e) { }
+    try { _socket.close(); }
+    catch (IOException e) { }
+  }
+
+  private void receive() {
+    try {
+      TelnetInputStream.StreamStatus status = _reader.probeAvailableContent();
+      if (status == TelnetInputStream.StreamStatus.TEXT) receiveText(_reader.readString());
+      else if (status == TelnetInputStream.StreamStatus.TELNET) {
+        Session session = _session;
+        if (session != null) session.sendTelnet(_reader.readTelnetCode());
+      }
+      else if (status == TelnetInputStream.StreamStatus.EOF) _ended = true;
+    }
+    catch (IOException e) { _ended = true; }
+  }
+
+  /** Splits the text into lines, each of which is a command for the bouncer or the server. */
+  private void receiveText(String text) {
+    int start = 0;
+    for (int i = text.indexOf('\n'); i >= 0 && !_ended; i = text.indexOf('\n', start)) {
+      _line.append(text, start, i);
+      int len = _line.length();
+      if (len > 0 && _line.charAt(len - 1) == '\r') _line.setLength(len - 1);
+      String line = _line.toString();
+      _line.setLength(0);
+      start = i + 1;
+      Session session = _session;
+      if (session != null) session.send(line);
+      else _bouncer.handleCommand(this, line);
+    }
+    _line.append(text, start, text.length());
+    // until the secret is given, anyone on this machine can connect; don't let them fill memory
+    if (!_authenticated && _line.length() > MAXUNAUTHENTICATED) {
+      inform("Authentication failed.");
+      disconnect();
+    }
+  }
+
+  /** The writer thread: writes queued items to the socket, flushing when the queue is empty. */
+  private void writeQueued() {
+    try {
+      while (true) {
+        Object item = _queue.take();
+        do {
+          if (item == END) { _writer.flush(); return; }
+          if (item instanceof String) _writer.queueText((String)item);
+          else if (item instanceof TelnetCode) _writer.queueTelnet((TelnetCode)item);
+          else for (Object chunk : (ArrayList<?>)item) _writer.queueText((String)chunk);
+        } while ((item = _queue.poll()) != null);
+        _writer.flush();
+      }
+    }
+    catch (InterruptedException e) { }
+    catch (IOException e) { }
+    _ended = true;
+  }
+
+  /** Queues the given item for the writer thread, disconnecting if the front-end is stuck. */
+  private void queue(Object item) {
+    if (_ended) return;
+    if (_queue.size() >= MAXQUEUED) {
+      _ended = true;
+      return;
+    }
+    _queue.add(item);
+  }
+
+  /** Passes text from the server on to the front-end; this may be called from any thread. */
+  public void sendText(String text) {
+    queue(text);
+  }
+
+  /** Passes a telnet code on to the front-end; this may be called from any thread. */
+  public void sendTelnet(TelnetCode code) {
+    queue(code);
+  }
+
+  /** Sends the given chunks of text as a single item, so a long replay cannot fill the queue. */
+  void sendReplay(ArrayList<String> chunks) {
+    queue(chunks);
+  }
+
+  /** Sends a line of information from the bouncer itself. */
+  public void inform(String message) {
+    queue("[bouncer] " + message + "\r\n");
+  }
+
+  /** Attaches the front-end to the given session (or detaches it if session is null). */
+  void setSession(Session session) {
+    _session = session;
+  }
+
+  public Session querySession() {
+    return _session;
+  }
+
+  /** Marks that the front-end has given the bouncer's secret. */
+  void setAuthenticated() {
+    _authenticated = true;
+  }
+
+  /** Returns whether the front-end has given the bouncer's secret. */
+  boolean queryAuthenticated() {
+    return _authenticated;
+  }
+
+  /** Closes the connection to the front-end, after what was queued for it has been sent. */
+  public void disconnect() {
+    _ended = true;
+  }
+}
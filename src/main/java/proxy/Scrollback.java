@@ -0,0 +1,87 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.proxy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * The Scrollback keeps the most recent text from a server, as the chunks in which it arrived, so
+ * it can be replayed to a front-end that attaches later.
+ * It is bounded by a number of lines: when there are more, the oldest chunks are dropped (so
+ * slightly more than the maximum may be kept, as only whole chunks are removed).  As a server
+ * could send text without any newlines, it is also bounded by MAXLINELENGTH characters per line.
+ */
+public class Scrollback {
+  public static final int MAXLINELENGTH = 256;
+
+  private ArrayDeque<String> _chunks;
+  private ArrayDeque<Integer> _chunkLines;
+  private int _maxLines;
+  private long _lines;
+  private long _chars;
+
+  public Scrollback(int maxLines) {
+    if (maxLines <= 0) throw new Error("Scrollback should keep at least one line.");
+    _chunks = new ArrayDeque<String>();
+    _chunkLines = new ArrayDeque<Integer>();
+    _maxLines = maxLines;
+    _lines = 0;
+    _chars = 0;
+  }
+
+  /** Adds the given text to the end of the scrollback, and drops old text if there is too much. */
+  public void append(String text) {
+    if (text.length() == 0) return;
+    int lines = 0;
+    for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) lines++;
+    _chunks.addLast(text);
+    _chunkLines.addLast(lines);
+    _lines += lines;
+    _chars += text.length();
+    while (_chunks.size() > 1 && (_lines - _chunkLines.peekFirst() >= _maxLines ||
+                                  _chars > (long)_maxLines * MAXLINELENGTH)) {
+      _lines -= _chunkLines.removeFirst();
+      _chars -= _chunks.removeFirst().length();
+    }
+  }
+
+  /** Returns the number of complete lines in the scrollback. */
+  public long queryLines() {
+    return _lines;
+  }
+
+  /** Returns the number of characters in the scrollback. */
+  public long queryChars() {
+    return _chars;
+  }
+
+  /** Returns a copy of the current chunks, oldest first. */
+  public ArrayList<String> queryChunks() {
+    return new ArrayList<String>(_chunks);
+  }
+
+  public void clear() {
+    _chunks.clear();
+    _chunkLines.clear();
+    _lines = 0;
+    _chars = 0;
+  }
+}
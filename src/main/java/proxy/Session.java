@@ -0,0 +1,193 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.ConnectionListener;
+import turtle.connection.Connection;
+
+/**
+ * A Session is a connection to a MUD that is owned by the Bouncer, so it stays open when the
+ * front-ends that use it come and go.  Text from the server is kept in a bounded Scrollback, and
+ * passed on to all attached front-ends; lines and telnet codes from the front-ends are sent to
+ * the server.
+ *
+ * Option negotiation is mostly passed on as it is, but with two changes so that a front-end which
+ * attaches later ends up in the same state as the server: the latest WILL/WONT and DO/DONT from
+ * the server for each option are sent to every front-end that attaches, and a front-end's answer
+ * is only passed on to the server if it differs from the last answer that was sent for that
+ * option (so the server does not see the same agreement repeated for every attach).
+ * Subnegotiations (such as GMCP data) are only passed on live, and not kept.  TIMING-MARK is not
+ * an option that stays on, but a probe that is answered every time, so it is always passed on
+ * live, in both directions.
+ */
+public class Session implements ConnectionListener {
+  private static final int TELOPT_TM = 6;
+
+  private Bouncer _bouncer;
+  private String _name;
+  private String _host;
+  private int _port;
+  private Connection _connection;
+  private Scrollback _scrollback;
+  private ArrayList<FrontEnd> _frontEnds;
+  private TelnetCode[] _offers;     // the last WILL or WONT from the server, for each option
+  private TelnetCode[] _requests;   // the last DO or DONT from the server, for each option
+  private int[] _answers;           // the last DO/DONT resp. WILL/WONT sent to the server
+  private String _endMessage;
+
+  Session(Bouncer bouncer, String name, String host, int port, int maxLines) {
+    _bouncer = bouncer;
+    _name = name;
+    _host = host;
+    _port = port;
+    _scrollback = new Scrollback(maxLines);
+    _frontEnds = new ArrayList<FrontEnd>();
+    _offers = new TelnetCode[256];
+    _requests = new TelnetCode[256];
+    _answers = new int[512];
+    _endMessage = null;
+    _connection = new Connection(host, port, StandardCharsets.ISO_8859_1, this);
+  }
+
+  public String queryName() {
+    return _name;
+  }
+
+  /** Returns a short description, such as "mud (mud.example.org 4000, 2 attached)". */
+  public synchronized String queryDescription() {
+    return _name + " (" + _host + " " + _port + ", " + _frontEnds.size() + " attached, " +
+           _scrollback.queryLines() + " lines)";
+  }
+
+  /** Returns the number of complete lines in the scrollback. */
+  public synchronized long queryLines() {
+    return _scrollback.queryLines();
+  }
+
+  /**
+   * Attaches the given front-end: it is sent the current option negotiation and the scrollback,
+   * and from then on everything the server sends.  As this happens under the session lock, no
+   * text is lost or repeated between the replay and the live stream.
+   */
+  public synchronized void attach(FrontEnd frontEnd) {
+    if (_endMessage != null) {
+      frontEnd.inform(_endMessage);
+      return;
+    }
+    frontEnd.setSession(this);
+    for (int option = 0; option < 256; option++) {
+      if (_offers[option] != null) frontEnd.sendTelnet(_offers[option]);
+      if (_requests[option] != null) frontEnd.sendTelnet(_requests[option]);
+    }
+    frontEnd.inform("Attached to " + _name + "; replaying " + _scrollback.queryLines() +
+                    " lines.");
+    frontEnd.sendReplay(_scrollback.queryChunks());
+    _frontEnds.add(frontEnd);
+  }
+
+  public synchronized void detach(FrontEnd frontEnd) {
+    _frontEnds.remove(frontEnd);
+    if (frontEnd.querySession() == this) frontEnd.setSession(null);
+  }
+
+  /** Sends a line from a front-end to the server. */
+  public void send(String line) {
+    _connection.send(line);
+  }
+
+  /**
+   * Sends a telnet code from a front-end to the server, unless it is an answer to option
+   * negotiation which the server has already been given.
+   */
+  public synchronized void sendTelnet(TelnetCode code) {
+    int command = code.queryCommand();
+    int option = code.queryOption();
+    if (command >= TelnetCode.WILL && command <= TelnetCode.DONT && option >= 0 &&
+        option != TELOPT_TM) {
+      int index = command == TelnetCode.DO || command == TelnetCode.DONT ? option : 256 + option;
+      if (_answers[index] == command) return;
+      _answers[index] = command;
+    }
+    _connection.sendTelnet(code);
+  }
+
+  /** Closes the connection to the server; attached front-ends are disconnected. */
+  public void close() {
+    _connection.disconnect();
+  }
+
+  /** Informs all front-ends, disconnects them, and lets the bouncer forget the session. */
+  private void end(String message) {
+    synchronized (this) {
+      if (_endMessage != null) return;
+      _endMessage = message;
+      for (FrontEnd frontEnd : _frontEnds) {
+        frontEnd.inform(message);
+        frontEnd.setSession(null);
+        frontEnd.disconnect();
+      }
+      _frontEnds.clear();
+    }
+    _bouncer.sessionEnded(this);
+  }
+
+  /** Sends a line of information to all attached front-ends. */
+  private synchronized void informAll(String message) {
+    for (FrontEnd frontEnd : _frontEnds) frontEnd.inform(message);
+  }
+
+  public void connectionFailed(String error) {
+    end("Session " + _name + " failed: " + error);
+  }
+
+  public void connectionClosed(boolean remote) {
+    end("Session " + _name + " was closed" + (remote ? " by the server." : "."));
+  }
+
+  public void connectionEstablished(String host, String address, int port) {
+    informAll("Connected to " + host + " (" + address + ") " + port + ".");
+  }
+
+  public void connectionFoundAddress(String host, String address, int port) { }
+
+  public void connectionPhaseTimed(ConnectionPhase phase, long nanos) { }
+
+  public synchronized void connectionReceivedText(String text) {
+    _scrollback.append(text);
+    for (FrontEnd frontEnd : _frontEnds) frontEnd.sendText(text);
+  }
+
+  public synchronized void connectionReceivedTelnet(TelnetCode code) {
+    int command = code.queryCommand();
+    int option = code.queryOption();
+    if (option != TELOPT_TM) {
+      if (command == TelnetCode.WILL || command == TelnetCode.WONT) _offers[option] = code;
+      if (command == TelnetCode.DO || command == TelnetCode.DONT) _requests[option] = code;
+    }
+    for (FrontEnd frontEnd : _frontEnds) frontEnd.sendTelnet(code);
+  }
+
+  public void connectionErrorOccurred(String explanation) {
+    informAll(explanation);
+  }
+}
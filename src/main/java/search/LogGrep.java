@@ -0,0 +1,342 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A LogGrep searches through (possibly very large) log files for lines containing a literal text
+ * (ignoring case), or matching a regular expression.
+ *
+ * The files are split into chunks of CHUNKSIZE bytes, which are searched in parallel by a
+ * fork/join pool; each chunk is read by mapping it into memory, so the data does not have to be
+ * copied.  A chunk is responsible for the lines that start in it (it may read a little beyond its
+ * end to finish its last line).  Rather than decoding every line, the search looks for a literal
+ * in the raw bytes: the query itself, or for a regular expression, a piece of text that every
+ * match must contain (see ScrollbackIndex.requiredLiteral); only the lines where that literal
+ * occurs are decoded (as UTF-8) and given to the regular expression.  Case is ignored for ASCII
+ * characters in this literal search, so if the literal contains other characters, only its
+ * longest ASCII part is looked for, and the decoded lines are checked for the rest.
+ *
+ * Matches are passed to a Listener as they are found, from the worker threads, so not in order.
+ * Lines are identified by their file and the byte offset where they start.  A search can be
+ * cancelled at any time, and stops by itself after a maximum number of matches.
+ */
+public class LogGrep {
+  public static final int CHUNKSIZE = 16 << 20;
+  private static final int MAXLINE = 64 << 10;
+  private static ForkJoinPool _pool = null;
+
+  /** A Listener is told about matches and the end of the search, on the worker threads. */
+  public interface Listener {
+    void found(File file, long offset, String line);
+    void finished(boolean cancelled);
+  }
+
+  private byte[] _literal;      // in lower case; null if every line should be checked
+  private int[] _shift;         // the Horspool shift table for _literal
+  private String _query;        // the literal query in lower case, if the lines must be checked
+  private Pattern _pattern;
+  private Listener _listener;
+  private int _maxMatches;
+  private volatile boolean _cancelled;
+  private AtomicInteger _matches;
+  private AtomicLong _bytes;
+  private int _files;
+  private ForkJoinTask<?> _task;
+
+  /** A part of a file, which is searched as a single task. */
+  private static class Chunk {
+    File _file;
+    long _start;
+    long _end;
+    long _fileSize;
+    Chunk(File file, long start, long end, long size) {
+      _file = file; _start = start; _end = end; _fileSize = size;
+    }
+  }
+
+  /**
+   * Creates a search for the given pattern, or if pattern is null, for the given literal text.
+   * The search stops after maxMatches matches.
+   */
+  public LogGrep(String literal, Pattern pattern, Listener listener, int maxMatches) {
+    _pattern = pattern;
+    String lit = pattern == null ? literal.toLowerCase()
+                                 : ScrollbackIndex.requiredLiteral(pattern);
+    String ascii = lit == null ? null : longestAsciiRun(lit);
+    _query = pattern != null || ascii.equals(lit) ? null : lit;
+    _literal = ascii == null || ascii.equals("") ? null : ascii.getBytes(StandardCharsets.UTF_8);
+    _shift = _literal == null ? null : makeShiftTable(_literal);
+    _listener = listener;
+    _maxMatches = maxMatches;
+    _cancelled = false;
+    _matches = new AtomicInteger(0);
+    _bytes = new AtomicLong(0);
+    _files = 0;
+    _task = null;
+  }
+
+  /** Returns the shared fork/join pool, which has a worker for every processor. */
+  private static synchronized ForkJoinPool pool() {
+    if (_pool == null) _pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    return _pool;
+  }
+
+  /** Returns the directory where the logs are kept (the turtle.logdir property, or "logs"). */
+  public static File defaultDirectory() {
+    return new File(System.getProperty("turtle.logdir", "logs"));
+  }
+
+  /**
+   * Returns the longest part of the given text that consists of ASCII characters only.  The raw
+   * bytes are only compared ignoring ASCII case, so other characters (whose upper and lower case
+   * forms differ in their bytes) cannot be searched for there.
+   */
+  private static String longestAsciiRun(String text) {
+    int bestStart = 0, bestEnd = 0, start = 0;
+    for (int i = 0; i <= text.length(); i++) {
+      if (i < text.length() && text.charAt(i) < 128) continue;
+      if (i - start > bestEnd - bestStart) { bestStart = start; bestEnd = i; }
+      start = i + 1;
+    }
+    return text.substring(bestStart, bestEnd);
+  }
+
+  private static int[] makeShiftTable(byte[] literal) {
+    int[] shift = new int[256];
+    Arrays.fill(shift, literal.length);
+    for (int i = 0; i < literal.length - 1; i++) {
+      int b = literal[i] & 0xFF;
+      shift[b] = literal.length - 1 - i;
+      if (b >= 'a' && b <= 'z') shift[b - 'a' + 'A'] = literal.length - 1 - i;
+    }
+    return shift;
+  }
+
+  /** Adds the given file, or all files below the given directory, to the list. */
+  private static void collectFiles(File file, List<File> files) {
+    if (file.isDirectory()) {
+      File[] children = file.listFiles();
+      if (children == null) return;
+      Arrays.sort(children);
+      for (File child : children) collectFiles(child, files);
+    }
+    else if (file.isFile()) files.add(file);
+  }
+
+  /** Starts searching the given files and directories; this returns immediately. */
+  public void start(List<File> paths) {
+    ArrayList<File> files = new ArrayList<File>();
+    for (File path : paths) collectFiles(path, files);
+    _files = files.size();
+    final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+    for (File file : files) {
+      long size = file.length();
+      for (long start = 0; start < size; start += CHUNKSIZE) {
+        chunks.add(new Chunk(file, start, Math.min(size, start + CHUNKSIZE), size));
+      }
+    }
+    _task = pool().submit(new RecursiveAction() {
+      protected void compute() {
+        if (chunks.size() > 0) invokeAll(new ChunkTask(chunks, 0, chunks.size()));
+        _listener.finished(_cancelled);
+      }
+    });
+  }
+
+  /** Waits until the search has finished. */
+  public void await() {
+    if (_task != null) _task.join();
+  }
+
+  /** Stops the search as soon as possible; the listener is still told when it has finished. */
+  public void cancel() {
+    _cancelled = true;
+  }
+
+  public boolean isDone() {
+    return _task != null && _task.isDone();
+  }
+
+  /** Returns the number of matches found so far. */
+  public int queryMatches() {
+    return Math.min(_matches.get(), _maxMatches);
+  }
+
+  /** Returns the number of bytes searched so far. */
+  public long queryBytes() {
+    return _bytes.get();
+  }
+
+  /** Returns the number of files being searched. */
+  public int queryFiles() {
+    return _files;
+  }
+
+  /** Searches chunks[from..to-1], splitting the work in halves while there is more than one. */
+  private class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private ArrayList<Chunk> _chunks;
+    private int _from;
+    private int _to;
+
+    ChunkTask(ArrayList<Chunk> chunks, int from, int to) {
+      _chunks = chunks;
+      _from = from;
+      _to = to;
+    }
+
+    protected void compute() {
+      if (_cancelled) return;
+      if (_to - _from > 1) {
+        int mid = (_from + _to) >>> 1;
+        invokeAll(new ChunkTask(_chunks, _from, mid), new ChunkTask(_chunks, mid, _to));
+        return;
+      }
+      try { searchChunk(_chunks.get(_from)); }
+      catch (IOException e) { }   // files that cannot be read are skipped
+    }
+  }
+
+  private void searchChunk(Chunk chunk) throws IOException {
+    long mapStart = Math.max(0, chunk._start - 1);
+    long mapEnd = Math.min(chunk._fileSize, chunk._end + MAXLINE);
+    MappedByteBuffer data;
+    try (FileChannel channel = FileChannel.open(chunk._file.toPath(), StandardOpenOption.READ)) {
+      data = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+    }
+    int end = (int)(chunk._end - mapStart);     // lines must start before this position
+    int limit = data.limit();
+    // find the first line that starts in this chunk
+    int pos = 0;
+    if (chunk._start > 0) {
+      while (pos < limit && data.get(pos) != '\n') pos++;
+      pos++;
+    }
+    while (pos < end && !_cancelled) {
+      int hit = _literal == null ? pos : indexOf(data, pos, limit);
+      if (hit < 0) break;
+      int lineStart = hit;
+      while (lineStart > pos && data.get(lineStart - 1) != '\n') lineStart--;
+      if (lineStart >= end) break;
+      int lineEnd = hit;
+      while (lineEnd < limit && data.get(lineEnd) != '\n') lineEnd++;
+      checkLine(chunk._file, mapStart + lineStart, data, lineStart, lineEnd);
+      pos = lineEnd + 1;
+    }
+    _bytes.addAndGet(chunk._end - chunk._start);
+  }
+
+  /**
+   * Returns the position of the first occurrence of _literal in data[from..limit-1], ignoring the
+   * case of ASCII letters, or -1 if there is none (Boyer-Moore-Horspool).
+   */
+  private int indexOf(MappedByteBuffer data, int from, int limit) {
+    int n = _literal.length;
+    byte last = _literal[n - 1];
+    for (int i = from + n - 1; i < limit; ) {
+      byte b = data.get(i);
+      if (lower(b) == last) {
+        int j = n - 2;
+        while (j >= 0 && lower(data.get(i - n + 1 + j)) == _literal[j]) j--;
+        if (j < 0) return i - n + 1;
+      }
+      i += _shift[b & 0xFF];
+      if ((i & 0xFFFFF) < _shift[b & 0xFF] && _cancelled) return -1;
+    }
+    return -1;
+  }
+
+  private static byte lower(byte b) {
+    return b >= 'A' && b <= 'Z' ? (byte)(b + 32) : b;
+  }
+
+  /** Decodes the given line, and reports it if it matches. */
+  private void checkLine(File file, long offset, MappedByteBuffer data, int start, int end) {
+    if (end > start && data.get(end - 1) == '\r') end--;
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) bytes[i] = data.get(start + i);
+    String line = new String(bytes, StandardCharsets.UTF_8);
+    if (_pattern != null && !_pattern.matcher(line).find()) return;
+    if (_query != null && !line.toLowerCase().contains(_query)) return;
+    int count = _matches.incrementAndGet();
+    if (count > _maxMatches) { _cancelled = true; return; }
+    _listener.found(file, offset, line);
+    if (count == _maxMatches) _cancelled = true;
+  }
+
+  /**
+   * Searches log files from the command line:
+   *   LogGrep [-n <max>] <text>|/<regex>/ <file or directory>...
+   * Matches are printed as file:offset:line.
+   */
+  public static void main(String[] args) throws Exception {
+    int k = 0;
+    int max = Integer.MAX_VALUE;
+    if (args.length > 1 && args[0].equals("-n")) { max = Integer.parseInt(args[1]); k = 2; }
+    if (args.length < k + 2) {
+      System.err.println("Usage: LogGrep [-n <max>] <text>|/<regex>/ <file or directory>...");
+      System.exit(2);
+    }
+    String query = args[k];
+    Pattern pattern = null;
+    if (query.length() > 2 && query.startsWith("/") && query.endsWith("/")) {
+      try {
+        pattern = Pattern.compile(query.substring(1, query.length() - 1),
+                                  Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+      }
+      catch (PatternSyntaxException e) {
+        System.err.println("Illegal regular expression: " + e.getDescription());
+        System.exit(2);
+      }
+    }
+    ArrayList<File> paths = new ArrayList<File>();
+    for (int i = k + 1; i < args.length; i++) paths.add(new File(args[i]));
+    final PrintStream out = System.out;
+    LogGrep grep = new LogGrep(query, pattern, new Listener() {
+      public void found(File file, long offset, String line) {
+        synchronized (out) { out.println(file.getPath() + ":" + offset + ":" + line); }
+      }
+      public void finished(boolean cancelled) { }
+    }, max);
+    grep.start(paths);
+    grep.await();
+    out.flush();
+    System.exit(grep.queryMatches() > 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,322 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.search;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The ScrollbackIndex keeps a copy of the text in the output window, split into lines, so that it
+ * can be searched quickly.  Text is added as it is printed, and the oldest lines can be trimmed
+ * when the output window drops them.
+ *
+ * All characters are kept in a single char array, and each line is known by an (increasing)
+ * number and the position where it starts; complete lines are also added to a TrigramIndex, in
+ * lower case.  A literal query is answered by asking the trigram index for candidate lines, and
+ * checking those against the text.  A regular expression query uses the longest piece of literal
+ * text that every match must contain (if there is one of at least three characters) in the same
+ * way, and otherwise checks every line.  The last line, which is not complete yet, is not in the
+ * trigram index, and is always checked directly.
+ *
+ * Searches are case-insensitive.  Positions in matches are offsets into the text that is still
+ * held, which is exactly the text of the output window if both are trimmed in the same way.
+ * A ScrollbackIndex is not thread-safe.
+ */
+public class ScrollbackIndex {
+  private char[] _text;
+  private int _textEnd;
+  private int[] _starts;        // _starts[line - _firstLine] is where line starts in _text
+  private int _firstLine;
+  private int _openLine;        // the number of the line that is not complete yet
+  private TrigramIndex _index;
+  private LowerCaseView _view;
+
+  /** A match of a query: a line, and the start and end offsets of the match in the text. */
+  public static class Match {
+    private int _line;
+    private int _start;
+    private int _end;
+
+    public Match(int line, int start, int end) {
+      _line = line;
+      _start = start;
+      _end = end;
+    }
+
+    public int queryLine() { return _line; }
+    public int queryStart() { return _start; }
+    public int queryEnd() { return _end; }
+  }
+
+  /** A lower case view on part of the text, used to add lines to the trigram index. */
+  private class LowerCaseView implements CharSequence {
+    int _start;
+    int _length;
+    public int length() { return _length; }
+    public char charAt(int i) { return Character.toLowerCase(_text[_start + i]); }
+    public CharSequence subSequence(int start, int end) {
+      return new String(_text, _start + start, end - start).toLowerCase();
+    }
+  }
+
+  public ScrollbackIndex() {
+    _text = new char[4096];
+    _textEnd = 0;
+    _starts = new int[1024];
+    _starts[0] = 0;
+    _firstLine = 0;
+    _openLine = 0;
+    _index = new TrigramIndex();
+    _view = new LowerCaseView();
+  }
+
+  /** Returns the number of the oldest line that is still held. */
+  public int queryFirstLine() {
+    return _firstLine;
+  }
+
+  /** Returns the number of the last line (which is not yet complete, and may be empty). */
+  public int queryLastLine() {
+    return _openLine;
+  }
+
+  /** Returns the number of characters held. */
+  public int queryLength() {
+    return _textEnd - _starts[0];
+  }
+
+  /** Returns the (approximate) number of bytes used by the index. */
+  public long queryMemoryUse() {
+    return 2L * _text.length + 4L * _starts.length + _index.queryMemoryUse();
+  }
+
+  /** Returns the offset where the given line starts. */
+  public int queryOffset(int line) {
+    return _starts[line - _firstLine] - _starts[0];
+  }
+
+  /** Returns the text of the given line, without the line break. */
+  public String queryLine(int line) {
+    int start = _starts[line - _firstLine];
+    return new String(_text, start, lineEnd(line) - start);
+  }
+
+  /** Returns the position in _text where the given line ends, excluding the line break. */
+  private int lineEnd(int line) {
+    if (line == _openLine) return _textEnd;
+    return _starts[line + 1 - _firstLine] - 1;
+  }
+
+  /** Makes sure there is room for extra more characters, moving the text down if possible. */
+  private void makeRoom(int extra) {
+    if (_textEnd + extra <= _text.length) return;
+    int base = _starts[0];
+    int needed = _textEnd - base + extra;
+    if (needed > _text.length / 2) {
+      char[] text = new char[Math.max(2 * _text.length, 2 * needed)];
+      System.arraycopy(_text, base, text, 0, _textEnd - base);
+      _text = text;
+    }
+    else System.arraycopy(_text, base, _text, 0, _textEnd - base);
+    _textEnd -= base;
+    for (int i = 0; i <= _openLine - _firstLine; i++) _starts[i] -= base;
+  }
+
+  /** Adds the given text at the end; every newline in it completes a line. */
+  public void append(CharSequence text) {
+    int len = text.length();
+    makeRoom(len);
+    for (int i = 0; i < len; i++) {
+      char c = text.charAt(i);
+      _text[_textEnd++] = c;
+      if (c == '\n') completeLine();
+    }
+  }
+
+  /** Adds the open line to the trigram index, and starts a new one. */
+  private void completeLine() {
+    int start = _starts[_openLine - _firstLine];
+    _view._start = start;
+    _view._length = _textEnd - 1 - start;
+    _index.add(_openLine, _view);
+    _openLine++;
+    if (_openLine - _firstLine == _starts.length) {
+      _starts = Arrays.copyOf(_starts, 2 * _starts.length);
+    }
+    _starts[_openLine - _firstLine] = _textEnd;
+  }
+
+  /**
+   * Removes the given number of oldest lines (or fewer, as the last line is never removed), and
+   * returns the number of characters that were removed.
+   */
+  public int trim(int lines) {
+    lines = Math.min(lines, _openLine - _firstLine);
+    if (lines <= 0) return 0;
+    int removed = _starts[lines] - _starts[0];
+    System.arraycopy(_starts, lines, _starts, 0, _openLine - _firstLine - lines + 1);
+    _firstLine += lines;
+    _index.trimBefore(_firstLine);
+    return removed;
+  }
+
+  /** Returns the position of query (which is in lower case) in the given line, or -1. */
+  private int indexIn(int line, String query) {
+    int start = _starts[line - _firstLine];
+    int last = lineEnd(line) - query.length();
+    for (int i = start; i <= last; i++) {
+      int j = 0;
+      while (j < query.length() && Character.toLowerCase(_text[i + j]) == query.charAt(j)) j++;
+      if (j == query.length()) return i - start;
+    }
+    return -1;
+  }
+
+  private Match literalMatch(int line, String query) {
+    int k = indexIn(line, query);
+    if (k < 0) return null;
+    int offset = queryOffset(line) + k;
+    return new Match(line, offset, offset + query.length());
+  }
+
+  private Match patternMatch(int line, Matcher matcher) {
+    int start = _starts[line - _firstLine];
+    matcher.reset(CharBuffer.wrap(_text, start, lineEnd(line) - start));
+    if (!matcher.find()) return null;
+    int offset = queryOffset(line);
+    return new Match(line, offset + matcher.start(), offset + matcher.end());
+  }
+
+  /**
+   * Returns the first match of the given (literal) query on a line that comes before the given
+   * line (going backwards), or null if there is none.  Use queryLastLine() + 1 to search from the
+   * end.
+   */
+  public Match findBefore(String query, int before) {
+    return find(query.toLowerCase(), null, before - 1, -1);
+  }
+
+  /** Returns the first match on a line after the given line (going forwards), or null. */
+  public Match findAfter(String query, int after) {
+    return find(query.toLowerCase(), null, after + 1, 1);
+  }
+
+  /** Like findBefore, but for a regular expression (which should be case-insensitive). */
+  public Match findBefore(Pattern pattern, int before) {
+    return find(requiredLiteral(pattern), pattern.matcher(""), before - 1, -1);
+  }
+
+  /** Like findAfter, but for a regular expression. */
+  public Match findAfter(Pattern pattern, int after) {
+    return find(requiredLiteral(pattern), pattern.matcher(""), after + 1, 1);
+  }
+
+  /**
+   * Searches for a match starting at the given line and moving in the given direction.  If
+   * matcher is null, the query is a literal; otherwise the query is either null or a (lower case)
+   * literal that all matches of the matcher contain.
+   */
+  private Match find(String query, Matcher matcher, int line, int direction) {
+    boolean useIndex = query != null && query.length() >= 3;
+    if (direction < 0) line = Math.min(line, _openLine);
+    else line = Math.max(line, _firstLine);
+    while (line >= _firstLine && line <= _openLine) {
+      if (useIndex && line < _openLine) {
+        int candidate = direction < 0 ? _index.findBefore(query, line + 1)
+                                      : _index.findAfter(query, line - 1);
+        if (candidate >= 0) line = candidate;
+        else if (direction < 0) return null;
+        else line = _openLine;    // the open line is not in the index, so check it directly
+      }
+      Match match = matcher == null ? literalMatch(line, query) : patternMatch(line, matcher);
+      if (match != null) return match;
+      line += direction;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the longest piece of text (in lower case) that every match of the given regular
+   * expression must contain, or null if it cannot easily be determined.  Only literal letters,
+   * digits and spaces outside of groups, classes and repetition counts are considered; a character
+   * followed by a quantifier is optional, and alternatives (|) make the whole thing unsure, as do
+   * quoted text (\Q), inline flags and the COMMENTS flag (where spaces are not literal).
+   */
+  public static String requiredLiteral(Pattern pattern) {
+    if ((pattern.flags() & (Pattern.COMMENTS | Pattern.LITERAL)) != 0) return null;
+    return requiredLiteral(pattern.pattern());
+  }
+
+  /** Like requiredLiteral(Pattern), for a regular expression compiled without special flags. */
+  public static String requiredLiteral(String regex) {
+    if (regex.indexOf('|') >= 0) return null;
+    String best = "";
+    StringBuilder current = new StringBuilder();
+    int depth = 0;        // how deep we are in groups and repetition counts
+    int classes = 0;      // how deep we are in character classes (which may be nested)
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      char next = i + 1 < regex.length() ? regex.charAt(i + 1) : ' ';
+      boolean literal = false;
+      if (c == '\\') {
+        if (next == 'Q') return null;
+        i++;
+      }
+      else if (c == '[') {
+        classes++;
+        // a ] right at the start of a class is an ordinary character
+        if (next == '^') { i++; next = i + 1 < regex.length() ? regex.charAt(i + 1) : ' '; }
+        if (next == ']') i++;
+      }
+      else if (classes > 0) { if (c == ']') classes--; }
+      else if (c == '(') {
+        if (next == '?' && i + 2 < regex.length() && isFlagStart(regex.charAt(i + 2))) {
+          return null;
+        }
+        depth++;
+      }
+      else if (c == '{') depth++;
+      else if (c == ')' || c == '}') depth = Math.max(0, depth - 1);
+      else if (depth == 0 && (Character.isLetterOrDigit(c) || c == ' ')) literal = true;
+      if (literal) {
+        if (next == '?' || next == '*' || next == '{') literal = false;
+        else if (next == '+') {
+          current.append(c);   // at least one occurrence, but the run ends here
+          literal = false;
+          c = 0;
+        }
+      }
+      if (literal) current.append(c);
+      else {
+        if (current.length() > best.length()) best = current.toString();
+        current.setLength(0);
+      }
+    }
+    if (current.length() > best.length()) best = current.toString();
+    return best.length() == 0 ? null : best.toLowerCase();
+  }
+
+  /** Returns whether the given character can follow (? to set or clear inline flags. */
+  private static boolean isFlagStart(char c) {
+    return c == '-' || "idmsuxU".indexOf(c) >= 0;
+  }
+}
@@ -0,0 +1,267 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.search;
+
+import java.util.Arrays;
+
+/**
+ * A TrigramIndex makes it fast to find which of a large number of texts contain a given string.
+ * Texts are known by an id, and must be added in order of increasing id.  For every trigram (three
+ * consecutive characters) that occurs in any text, the index keeps the sorted list of ids of the
+ * texts it occurs in; in addition, it keeps for every text a 64-bit mask of the characters in it.
+ *
+ * A text can only contain a query if it contains all of the query's trigrams, and all of its
+ * characters; so findBefore() walks backwards through the intersection of the trigram lists
+ * (and findAfter() forwards), discarding ids whose mask does not match.  Since this only excludes
+ * texts, the caller should still check the remaining candidates against the actual text.  Queries
+ * shorter than three characters only use the masks.
+ *
+ * The oldest texts can be removed with trimBefore().  Removed ids are simply ignored by searches
+ * at first; once they make up more than half of the index, they are swept out of all lists.
+ *
+ * The index does not know the texts themselves, and is case-sensitive: callers that want
+ * case-insensitive search should add and query lower case text.  It is not thread-safe.
+ */
+public class TrigramIndex {
+  private long[] _keys;
+  private int[][] _postings;
+  private int[] _sizes;
+  private int _trigrams;
+  private long[] _masks;        // _masks[id - _maskBase] is the mask of text id
+  private int _maskBase;
+  private int _first;
+  private int _end;
+
+  public TrigramIndex() {
+    _keys = new long[1024];
+    _postings = new int[1024][];
+    _sizes = new int[1024];
+    _trigrams = 0;
+    _masks = new long[1024];
+    _maskBase = 0;
+    _first = 0;
+    _end = 0;
+  }
+
+  /** Returns one more than the highest id that was added (so 0 for an empty index). */
+  public int queryEnd() {
+    return _end;
+  }
+
+  /** Returns the lowest id that has not been trimmed. */
+  public int queryFirst() {
+    return _first;
+  }
+
+  /** Returns the number of distinct trigrams in the index. */
+  public int queryTrigramCount() {
+    return _trigrams;
+  }
+
+  /** Returns the (approximate) number of bytes used by the index. */
+  public long queryMemoryUse() {
+    long ret = 20L * _keys.length + 8L * _masks.length;
+    for (int i = 0; i < _keys.length; i++) {
+      if (_postings[i] != null) ret += 4L * _postings[i].length + 16;
+    }
+    return ret;
+  }
+
+  private static long trigram(CharSequence text, int i) {
+    return ((long)text.charAt(i) << 32) | ((long)text.charAt(i + 1) << 16) | text.charAt(i + 2);
+  }
+
+  /**
+   * Returns the character mask of the given text.  Lower case letters and digits each have their
+   * own bit, so that short queries (which cannot use trigrams) are filtered well; all other
+   * characters share the remaining bits.
+   */
+  private static long mask(CharSequence text) {
+    long ret = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int bit;
+      if (c >= 'a' && c <= 'z') bit = c - 'a';
+      else if (c >= '0' && c <= '9') bit = 26 + c - '0';
+      else bit = 36 + c % 28;
+      ret |= 1L << bit;
+    }
+    return ret;
+  }
+
+  /** Returns the slot of the given trigram in the hash table (which may be empty). */
+  private int slot(long key) {
+    int mask = _keys.length - 1;
+    int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    while (_postings[slot] != null && _keys[slot] != key) slot = (slot + 1) & mask;
+    return slot;
+  }
+
+  private void growTable() {
+    long[] keys = _keys;
+    int[][] postings = _postings;
+    int[] sizes = _sizes;
+    _keys = new long[2 * keys.length];
+    _postings = new int[2 * keys.length][];
+    _sizes = new int[2 * keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      if (postings[i] == null) continue;
+      int slot = slot(keys[i]);
+      _keys[slot] = keys[i];
+      _postings[slot] = postings[i];
+      _sizes[slot] = sizes[i];
+    }
+  }
+
+  /** Adds the given text under the given id, which must be at least queryEnd(). */
+  public void add(int id, CharSequence text) {
+    if (id < _end) throw new Error("TrigramIndex.add: ids must be increasing.");
+    if (id - _maskBase >= _masks.length) {
+      _masks = Arrays.copyOf(_masks, Math.max(2 * _masks.length, id - _maskBase + 1));
+    }
+    _masks[id - _maskBase] = mask(text);
+    _end = id + 1;
+    for (int i = 0; i + 3 <= text.length(); i++) {
+      long key = trigram(text, i);
+      int slot = slot(key);
+      if (_postings[slot] == null) {
+        if (2 * (_trigrams + 1) > _keys.length) { growTable(); slot = slot(key); }
+        _keys[slot] = key;
+        _postings[slot] = new int[4];
+        _sizes[slot] = 0;
+        _trigrams++;
+      }
+      int size = _sizes[slot];
+      if (size > 0 && _postings[slot][size - 1] == id) continue;  // repeated trigram
+      if (size == _postings[slot].length) {
+        _postings[slot] = Arrays.copyOf(_postings[slot], 2 * size);
+      }
+      _postings[slot][size] = id;
+      _sizes[slot] = size + 1;
+    }
+  }
+
+  /** Removes all texts with an id below the given one. */
+  public void trimBefore(int id) {
+    if (id <= _first) return;
+    _first = Math.min(id, _end);
+    if (_first - _maskBase > _end - _first) sweep();
+  }
+
+  /** Removes the trimmed ids from all lists, and from the masks. */
+  private void sweep() {
+    for (int slot = 0; slot < _keys.length; slot++) {
+      if (_postings[slot] == null) continue;
+      int[] list = _postings[slot];
+      int size = _sizes[slot];
+      int k = ceilingIndex(list, size, _first);
+      if (k == 0) continue;
+      System.arraycopy(list, k, list, 0, size - k);
+      size -= k;
+      _sizes[slot] = size;
+      if (list.length > 8 && size < list.length / 4) {
+        _postings[slot] = Arrays.copyOf(list, Math.max(4, 2 * size));
+      }
+    }
+    long[] masks = new long[Math.max(1024, 2 * (_end - _first))];
+    System.arraycopy(_masks, _first - _maskBase, masks, 0, _end - _first);
+    _masks = masks;
+    _maskBase = _first;
+  }
+
+  /**
+   * Returns the highest id below before (and not trimmed) whose text may contain the given query,
+   * or -1 if there is none.  All texts that do contain the query are found, but not every id
+   * returned necessarily does.
+   */
+  public int findBefore(String query, int before) {
+    return find(query, Math.min(before, _end) - 1, -1);
+  }
+
+  /**
+   * Returns the lowest id above after whose text may contain the given query, or -1 if there is
+   * none; like findBefore(), but searching forwards.
+   */
+  public int findAfter(String query, int after) {
+    return find(query, Math.max(after + 1, _first), 1);
+  }
+
+  /**
+   * Returns the first id whose text may contain the query, going from candidate in the given
+   * direction (-1 for backwards, 1 for forwards), or -1 if there is none.
+   */
+  private int find(String query, int candidate, int direction) {
+    long mask = mask(query);
+    if (query.length() < 3) {
+      for (; candidate >= _first && candidate < _end; candidate += direction) {
+        if ((_masks[candidate - _maskBase] & mask) == mask) return candidate;
+      }
+      return -1;
+    }
+    int n = query.length() - 2;
+    int[] slots = new int[n];
+    for (int i = 0; i < n; i++) {
+      slots[i] = slot(trigram(query, i));
+      if (_postings[slots[i]] == null) return -1;
+    }
+    // move on until all lists agree on a candidate
+    while (candidate >= _first && candidate < _end) {
+      boolean agreed = true;
+      for (int i = 0; i < n && candidate >= _first; i++) {
+        int[] list = _postings[slots[i]];
+        int found;
+        if (direction < 0) found = floor(list, _sizes[slots[i]], candidate);
+        else {
+          int k = ceilingIndex(list, _sizes[slots[i]], candidate);
+          found = k < _sizes[slots[i]] ? list[k] : -1;
+        }
+        if (found != candidate) { candidate = found; agreed = false; }
+      }
+      if (candidate < _first) return -1;
+      if (!agreed) continue;
+      if ((_masks[candidate - _maskBase] & mask) == mask) return candidate;
+      candidate += direction;
+    }
+    return -1;
+  }
+
+  /** Returns the highest element of list[0..size-1] that is at most value, or -1 if none is. */
+  private static int floor(int[] list, int size, int value) {
+    int lo = 0, hi = size - 1;
+    if (size == 0 || list[0] > value) return -1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (list[mid] <= value) lo = mid;
+      else hi = mid - 1;
+    }
+    return list[lo];
+  }
+
+  /** Returns the index of the first element of list[0..size-1] that is at least value. */
+  private static int ceilingIndex(int[] list, int size, int value) {
+    int lo = 0, hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (list[mid] < value) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+}
@@ -0,0 +1,108 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.statistics;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A LatencyProbe measures the round-trip time to a server, by matching in-band markers that we
+ * send to the server with the replies that come back.  The server answers markers in the order
+ * they were sent, so the oldest outstanding marker is always the one being answered.
+ * The probe keeps the most recent WINDOW round trips, so its statistics describe the current
+ * latency rather than that of the whole session.
+ *
+ * All times are given in nanoseconds, as returned by System.nanoTime().
+ */
+public class LatencyProbe {
+  public static final int WINDOW = 100;
+  private static final int MAXOUTSTANDING = 10;
+
+  private ArrayDeque<Long> _outstanding;
+  private long[] _samples;
+  private int _numSamples;
+  private int _nextSample;
+
+  public LatencyProbe() {
+    _outstanding = new ArrayDeque<Long>();
+    _samples = new long[WINDOW];
+    reset();
+  }
+
+  /**
+   * Registers that a marker has been sent at the given time.
+   * If too many markers are unanswered already, the server is probably not answering them at all,
+   * so we give up on the oldest one.
+   */
+  public void markSent(long now) {
+    if (_outstanding.size() >= MAXOUTSTANDING) _outstanding.removeFirst();
+    _outstanding.addLast(now);
+  }
+
+  /** Returns whether any markers are still awaiting a reply. */
+  public boolean queryOutstanding() {
+    return !_outstanding.isEmpty();
+  }
+
+  /**
+   * Registers that a reply has come in at the given time, and returns the corresponding round-trip
+   * time; if no marker was outstanding, the reply is not ours and -1 is returned.
+   */
+  public long replyReceived(long now) {
+    if (_outstanding.isEmpty()) return -1;
+    long rtt = now - _outstanding.removeFirst();
+    _samples[_nextSample] = rtt;
+    _nextSample = (_nextSample + 1) % WINDOW;
+    if (_numSamples < WINDOW) _numSamples++;
+    return rtt;
+  }
+
+  /** Forgets all outstanding markers and measurements (for instance after a disconnect). */
+  public void reset() {
+    _outstanding.clear();
+    _numSamples = 0;
+    _nextSample = 0;
+  }
+
+  /** Returns the number of round trips in the current window. */
+  public int querySampleCount() {
+    return _numSamples;
+  }
+
+  /** Returns the most recent round-trip time, or -1 if there is none. */
+  public long queryLast() {
+    if (_numSamples == 0) return -1;
+    return _samples[(_nextSample + WINDOW - 1) % WINDOW];
+  }
+
+  /**
+   * Returns the round-trip time such that the given percentage of the round trips in the window
+   * was at most that long, or -1 if there are no measurements.
+   */
+  public long queryPercentile(double percentage) {
+    if (_numSamples == 0) return -1;
+    long[] sorted = Arrays.copyOf(_samples, _numSamples);
+    Arrays.sort(sorted);
+    int index = (int)Math.ceil(_numSamples * percentage / 100) - 1;
+    if (index < 0) index = 0;
+    if (index >= _numSamples) index = _numSamples - 1;
+    return sorted[index];
+  }
+}
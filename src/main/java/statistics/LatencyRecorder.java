@@ -0,0 +1,118 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyRecorder keeps a histogram of durations (in nanoseconds), in the style of HdrHistogram:
+ * durations are put in buckets whose width grows with the size of the value, so that any value is
+ * recorded with a relative precision of 1/SUBBUCKETS, using a fixed and small amount of memory.
+ * Recording is lock-free, so any thread may record into the same LatencyRecorder; queries may
+ * be done concurrently, but give only an approximate snapshot if recording is still going on.
+ */
+public class LatencyRecorder {
+  private static final int SUBBUCKETBITS = 3;
+  private static final int SUBBUCKETS = 1 << SUBBUCKETBITS;
+  private static final int BUCKETS = (64 - SUBBUCKETBITS) * SUBBUCKETS + SUBBUCKETS;
+
+  private AtomicLongArray _counts;
+  private AtomicLong _total;
+  private AtomicLong _max;
+
+  public LatencyRecorder() {
+    _counts = new AtomicLongArray(BUCKETS);
+    _total = new AtomicLong(0);
+    _max = new AtomicLong(0);
+  }
+
+  /**
+   * Returns the bucket that the given (non-negative) value is recorded in.
+   * Values below SUBBUCKETS each have their own bucket; beyond that, every power of two is split
+   * into SUBBUCKETS buckets of equal width.
+   */
+  private static int bucketFor(long value) {
+    if (value < SUBBUCKETS) return (int)value;
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUBBUCKETBITS;
+    int sub = (int)(value >>> magnitude) & (SUBBUCKETS - 1);
+    return (magnitude + 1) * SUBBUCKETS + sub;
+  }
+
+  /** Returns the highest value that would be recorded in the given bucket. */
+  private static long bucketTop(int bucket) {
+    if (bucket < SUBBUCKETS) return bucket;
+    int magnitude = bucket / SUBBUCKETS - 1;
+    long sub = bucket % SUBBUCKETS + SUBBUCKETS;
+    return ((sub + 1) << magnitude) - 1;
+  }
+
+  /** Records a single duration; negative durations (e.g. due to clock adjustments) count as 0. */
+  public void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+    _counts.incrementAndGet(bucketFor(nanos));
+    _total.addAndGet(nanos);
+    long max = _max.get();
+    while (nanos > max && !_max.compareAndSet(max, nanos)) max = _max.get();
+  }
+
+  /** Returns the number of durations that have been recorded. */
+  public long queryCount() {
+    long ret = 0;
+    for (int i = 0; i < BUCKETS; i++) ret += _counts.get(i);
+    return ret;
+  }
+
+  /** Returns the longest duration that has been recorded, or 0 if none were. */
+  public long queryMax() {
+    return _max.get();
+  }
+
+  /** Returns the average recorded duration, or 0 if nothing was recorded. */
+  public long queryMean() {
+    long count = queryCount();
+    if (count == 0) return 0;
+    return _total.get() / count;
+  }
+
+  /**
+   * Returns (an upper bound for) the duration such that the given percentage of all recorded
+   * durations is at most this long.  The percentage should be between 0 and 100.
+   */
+  public long queryPercentile(double percentage) {
+    long count = queryCount();
+    if (count == 0) return 0;
+    long needed = (long)Math.ceil(count * percentage / 100);
+    if (needed < 1) needed = 1;
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += _counts.get(i);
+      if (seen >= needed) return Math.min(bucketTop(i), queryMax());
+    }
+    return queryMax();
+  }
+
+  /** Forgets everything that was recorded so far. */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) _counts.set(i, 0);
+    _total.set(0);
+    _max.set(0);
+  }
+}
@@ -0,0 +1,130 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.statistics;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Statistics class keeps track of how much time is spent in each stage of the pipeline that
+ * takes data from the network and shows it to the user, so we can tell whether lag is caused by
+ * the network, by parsing or by the user interface.
+ *
+ * Like the EventBus, this class is static, and may be called from any thread.  Recording is
+ * disabled by default; while disabled, the cost of the instrumentation is a single read of a
+ * volatile boolean at every measuring point.
+ */
+public class Statistics {
+  /** The stages in the pipeline that we measure the duration of. */
+  public enum Stage { TELNET,   // parsing the connection buffer into text and telnet codes
+                      QUEUE,    // waiting for the event queue, from the Connection to the EventBus
+                      ANSI,     // parsing ansi codes into layouted text
+                      OUTPUT,   // adding text to the output window
+                    };
+
+  private static volatile boolean _enabled = false;
+  private static LongAdder _reads = new LongAdder();
+  private static LongAdder _bytesRead = new LongAdder();
+  private static LatencyRecorder[] _recorders = createRecorders();
+
+  private static LatencyRecorder[] createRecorders() {
+    LatencyRecorder[] ret = new LatencyRecorder[Stage.values().length];
+    for (int i = 0; i < ret.length; i++) ret[i] = new LatencyRecorder();
+    return ret;
+  }
+
+  public static boolean queryEnabled() {
+    return _enabled;
+  }
+
+  /** Turns recording on or off; turning it off does not forget what was recorded so far. */
+  public static void setEnabled(boolean value) {
+    _enabled = value;
+  }
+
+  /** Forgets all statistics recorded so far. */
+  public static void reset() {
+    _reads.reset();
+    _bytesRead.reset();
+    for (int i = 0; i < _recorders.length; i++) _recorders[i].reset();
+  }
+
+  /**
+   * Call this at the start of a measured stage, and pass the result to stopTimer at the end.
+   * If recording is disabled, this returns 0 (and stopTimer will do nothing).
+   */
+  public static long startTimer() {
+    if (!_enabled) return 0;
+    return System.nanoTime();
+  }
+
+  /** Records the time passed since the given start time (obtained from startTimer). */
+  public static void stopTimer(Stage stage, long start) {
+    if (start == 0) return;
+    _recorders[stage.ordinal()].record(System.nanoTime() - start);
+  }
+
+  /** Records a single read from the network, which obtained the given number of bytes. */
+  public static void recordRead(int bytes) {
+    if (!_enabled) return;
+    _reads.increment();
+    if (bytes > 0) _bytesRead.add(bytes);
+  }
+
+  public static long queryReads() {
+    return _reads.sum();
+  }
+
+  public static long queryBytesRead() {
+    return _bytesRead.sum();
+  }
+
+  public static LatencyRecorder queryRecorder(Stage stage) {
+    return _recorders[stage.ordinal()];
+  }
+
+  /** Returns a human-readable description of the given duration (in nanoseconds). */
+  public static String durationToString(long nanos) {
+    if (nanos < 10000) return nanos + "ns";
+    if (nanos < 10000000) return (nanos / 1000) + "us";
+    return (nanos / 1000000) + "ms";
+  }
+
+  /** Returns a single line summarising the durations recorded for the given stage. */
+  public static String summarise(Stage stage) {
+    LatencyRecorder recorder = queryRecorder(stage);
+    return stage.toString().toLowerCase() + ": " + recorder.queryCount() + " samples" +
+           ", mean " + durationToString(recorder.queryMean()) +
+           ", p50 " + durationToString(recorder.queryPercentile(50)) +
+           ", p99 " + durationToString(recorder.queryPercentile(99)) +
+           ", max " + durationToString(recorder.queryMax());
+  }
+
+  /** Returns a human-readable report of all statistics, one line per entry. */
+  public static ArrayList<String> queryReport() {
+    ArrayList<String> ret = new ArrayList<String>();
+    long reads = queryReads();
+    long bytes = queryBytesRead();
+    ret.add("network: " + reads + " reads, " + bytes + " bytes" +
+            (reads == 0 ? "" : " (" + (bytes / reads) + " bytes per read)"));
+    for (Stage stage : Stage.values()) ret.add(summarise(stage));
+    return ret;
+  }
+}
@@ -0,0 +1,57 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.statistics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** The StatisticsBean makes the static Statistics available as a JMX MBean. */
+public class StatisticsBean implements StatisticsMBean {
+  public static final String NAME = "turtle:type=Statistics";
+
+  /**
+   * Registers a StatisticsBean with the platform MBean server.
+   * @return false if this failed (for instance because it was already registered).
+   */
+  public static boolean register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new StatisticsBean(),
+                                                               new ObjectName(NAME));
+      return true;
+    }
+    catch (JMException e) { return false; }
+  }
+
+  public boolean getEnabled() { return Statistics.queryEnabled(); }
+  public void setEnabled(boolean value) { Statistics.setEnabled(value); }
+  public long getReads() { return Statistics.queryReads(); }
+  public long getBytesRead() { return Statistics.queryBytesRead(); }
+  public long getTelnetParseP99Nanos() { return p99(Statistics.Stage.TELNET); }
+  public long getEventQueueP99Nanos() { return p99(Statistics.Stage.QUEUE); }
+  public long getAnsiParseP99Nanos() { return p99(Statistics.Stage.ANSI); }
+  public long getOutputP99Nanos() { return p99(Statistics.Stage.OUTPUT); }
+  public String[] getReport() { return Statistics.queryReport().toArray(new String[0]); }
+  public void reset() { Statistics.reset(); }
+
+  private long p99(Statistics.Stage stage) {
+    return Statistics.queryRecorder(stage).queryPercentile(99);
+  }
+}
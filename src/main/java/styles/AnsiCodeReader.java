@@ -244,7 +244,7 @@ public class AnsiCodeReader {
    * Starting from the given AttributeGroup, adapts it for the given ansi escape sequence and
    * returns the result (leaving the original intact).
    */
-  private AttributeGroup adaptWithAnsi(AttributeGroup original, String ansi) {
+  AttributeGroup adaptWithAnsi(AttributeGroup original, String ansi) {
     String[] parts = ansiCodeParts(ansi);
     AttributeGroup layout = new AttributeGroup(original);
     if (parts == null) return layout;
@@ -262,14 +262,17 @@ public class AnsiCodeReader {
   /**
    * Returns the position of the first char after the escape code that is started on text[startpos]
    * (where we assume that text.charAt(startpos) = ESC).
+   * A CSI code consists of parameter characters (digits, ; and markers such as ?) and
+   * intermediate characters (such as space), followed by a single final character; thus, codes
+   * like ESC[?25l are skipped as a whole, even though only SGR codes are followed.
    */
-  private int findAnsiEnd(String text, int startpos) {
+  int findAnsiEnd(String text, int startpos) {
     if (text.length() <= startpos) throw new Error("findAnsiEnd given illegal startpos");
     if (text.length() == startpos + 1) return -1;   // isolated ESC, code is probably incomplete
     if (text.charAt(startpos + 1) != '[') return startpos + 1; // unknown code, just return the ESC
     for (int k = startpos + 2; k < text.length(); k++) {
       char c = text.charAt(k);
-      if (c != ';' && (c < '0' || c > '9')) return k+1;
+      if (c < ' ' || c > '?') return k+1;
     }
     return -1;
   }
@@ -0,0 +1,108 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.styles;
+
+import javax.swing.JTextPane;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+import turtle.interfaces.immutable.Colour;
+import turtle.interfaces.immutable.CharacterLayout;
+
+/**
+ * A LinkLayout is the layout of text that can be clicked on: an MXP <send> or <a> link.  It looks
+ * like the underlying layout, but underlined, and the Style it creates carries the Link as an
+ * attribute (with key LINK), so the output window can find out what to do with a click.
+ */
+public class LinkLayout implements CharacterLayout {
+  public static final Object LINK = new Object() {
+    public String toString() { return "turtle.link"; }
+  };
+
+  /**
+   * A Link is either a command to be sent when clicked, or a url to be opened.  For an MXP
+   * <send> without href, the command is only known once the text of the link has been read, so
+   * it is filled in afterwards.
+   */
+  public static class Link {
+    private String _command;
+    private String _url;
+    private String _hint;
+
+    public Link(String command, String url, String hint) {
+      _command = command;
+      _url = url;
+      _hint = hint;
+    }
+
+    void setCommand(String command) {
+      _command = command;
+    }
+
+    /** Returns the command to send when the link is clicked, or null if this is a url. */
+    public String queryCommand() {
+      return _command;
+    }
+
+    /** Returns the url to open when the link is clicked, or null if this is a command. */
+    public String queryUrl() {
+      return _url;
+    }
+
+    /** Returns the text to show when the mouse is over the link (may be null). */
+    public String queryHint() {
+      if (_hint != null) return _hint;
+      return _command != null ? _command : _url;
+    }
+  }
+
+  private CharacterLayout _layout;
+  private Link _link;
+
+  public LinkLayout(CharacterLayout layout, Link link) {
+    _layout = layout;
+    _link = link;
+  }
+
+  public Link queryLink() {
+    return _link;
+  }
+
+  public Colour getFront() { return _layout.getFront(); }
+  public Colour getBack() { return _layout.getBack(); }
+  public boolean queryBold() { return _layout.queryBold(); }
+  public boolean queryItalic() { return _layout.queryItalic(); }
+  public boolean queryUnderline() { return true; }
+  public boolean queryBlink() { return _layout.queryBlink(); }
+  public boolean queryReverse() { return _layout.queryReverse(); }
+  public boolean queryDim() { return _layout.queryDim(); }
+  public boolean queryInvisible() { return _layout.queryInvisible(); }
+  public boolean queryStrikethrough() { return _layout.queryStrikethrough(); }
+
+  /**
+   * Returns an unnamed style based on the style of the underlying layout; since every link has its
+   * own style, these are not stored in the text pane.
+   */
+  public Style getStyle(JTextPane ref) {
+    Style style = ref.addStyle(null, _layout.getStyle(ref));
+    StyleConstants.setUnderline(style, true);
+    style.addAttribute(LINK, _link);
+    return style;
+  }
+}
@@ -0,0 +1,658 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.styles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import turtle.interfaces.immutable.Colour;
+import turtle.interfaces.immutable.CharacterLayout;
+import turtle.interfaces.immutable.LayoutedText;
+
+/**
+ * The MxpReader turns the text from the server into a LayoutedText, handling both ansi escape
+ * codes (through an AnsiCodeReader) and, once MXP has been enabled, MXP tags and entities.
+ * Like the AnsiCodeReader, it expects to be given _all_ text from a given source: styles, open
+ * tags and definitions carry over from one text to the next, and a code, tag or entity that is
+ * split over two texts is completed when the second one arrives.
+ *
+ * Each text is scanned only once, and the visible text is not copied: the result consists of
+ * slices of the given text (see TextRuns).  Only a token that was split over two texts is copied,
+ * and at most MAXTOKEN characters of it.
+ *
+ * Supported are the MXP line modes (ESC[<n>z), the formatting tags (<b>, <i>, <u>, <s>, <h>,
+ * <color>, <font>), <br>, links (<send> and <a>, which give a LinkLayout), entities (both
+ * standard and defined with <!ENTITY>), and user-defined elements (<!ELEMENT>), which are
+ * expanded into their definitions.  <version> and <support> queries are answered through
+ * queryReplies().  In open mode, only the formatting tags and elements defined as OPEN may be
+ * used; these are closed at the end of the line.
+ */
+public class MxpReader {
+  public static final int MAXTOKEN = 1024;
+  private static final int MAXENTITY = 32;
+  private static final int MAXDEPTH = 10;
+  private static final int CACHESIZE = 64;
+  private static final char ESC = 27;
+  private static final int INCOMPLETE = -1;
+  private static final int LITERAL = -2;
+  private static final int OPEN = 0;
+  private static final int SECURE = 1;
+  private static final int LOCKED = 2;
+
+  /** A tag that has been opened, and not yet closed. */
+  private static class Frame {
+    String _name;
+    boolean _open;              // opened in open mode, so closed at the end of the line
+    int _attributes;            // ATT_ values to add
+    Colour _front;
+    Colour _back;
+    LinkLayout.Link _link;
+    StringBuilder _capture;     // the text of a <send> whose command is that text
+    String _href;               // the href of such a <send>, containing &text;
+    Frame(String name, boolean open) { _name = name; _open = open; }
+  }
+
+  /** A user-defined element (<!ELEMENT>). */
+  private static class Element {
+    String _definition;
+    ArrayList<String> _attributes = new ArrayList<String>();
+    ArrayList<String> _defaults = new ArrayList<String>();
+    boolean _open;
+    boolean _empty;
+  }
+
+  private AnsiCodeReader _ansi;
+  private AttributeGroup _ansiAtts;
+  private CharacterLayout _current;   // the combined layout, or null if it must be recomputed
+  private boolean _enabled;
+  private int _defaultMode;
+  private int _lineMode;
+  private boolean _tempSecure;
+  private ArrayList<Frame> _stack;
+  private StringBuilder _capture;
+  private HashMap<String,Element> _elements;
+  private HashMap<String,String> _entities;
+  private String _pending;
+  private ArrayList<String> _replies;
+  // a cache of the effects of ansi codes: _cacheFrom + _cacheCode gives _cacheTo
+  private AttributeGroup[] _cacheFrom;
+  private String[] _cacheCode;
+  private AttributeGroup[] _cacheTo;
+  private ArrayList<AttributeGroup> _interned;
+
+  public MxpReader() {
+    _ansi = new AnsiCodeReader();
+    _ansiAtts = new AttributeGroup();
+    _current = null;
+    _enabled = false;
+    _defaultMode = _lineMode = OPEN;
+    _tempSecure = false;
+    _stack = new ArrayList<Frame>();
+    _capture = null;
+    _elements = new HashMap<String,Element>();
+    _entities = new HashMap<String,String>();
+    _pending = null;
+    _replies = new ArrayList<String>();
+    _cacheFrom = new AttributeGroup[CACHESIZE];
+    _cacheCode = new String[CACHESIZE];
+    _cacheTo = new AttributeGroup[CACHESIZE];
+    _interned = new ArrayList<AttributeGroup>();
+    _ansiAtts = intern(_ansiAtts);
+  }
+
+  /** Switches MXP on or off; while it is off, only ansi codes are interpreted. */
+  public void setEnabled(boolean enabled) {
+    _enabled = enabled;
+    closeFrames(0);
+    _defaultMode = _lineMode = OPEN;
+    _tempSecure = false;
+  }
+
+  public boolean queryEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * Returns the texts that should be sent to the server in answer to tags that were read (for
+   * instance <version>), and forgets them.
+   */
+  public ArrayList<String> queryReplies() {
+    ArrayList<String> ret = _replies;
+    _replies = new ArrayList<String>();
+    return ret;
+  }
+
+  /** Parses the given text, treating it as a continuation of all the texts given before. */
+  public LayoutedText parse(String text) {
+    TextRuns runs = new TextRuns();
+    int pos = 0, len = text.length();
+    if (_pending != null) pos = continuePending(text, runs);
+    int runStart = pos;
+    while (pos < len) {
+      if (!_enabled) {
+        pos = text.indexOf(ESC, pos);
+        if (pos < 0) { pos = len; break; }
+      }
+      char c = text.charAt(pos);
+      if (c != ESC && c != '<' && c != '&' && c != '\n') { pos++; continue; }
+      if (c == '\n') {
+        pos++;
+        if (lineEndMatters()) {
+          addRun(runs, text, runStart, pos);
+          runStart = pos;
+          endOfLine();
+        }
+        continue;
+      }
+      if (c != ESC && _lineMode == LOCKED) { pos++; continue; }
+      int end = tokenEnd(text, pos);
+      if (end == LITERAL) { pos++; continue; }
+      addRun(runs, text, runStart, pos);
+      if (end == INCOMPLETE) {
+        _pending = text.substring(pos);
+        return runs;
+      }
+      handleToken(text, pos, end, runs);
+      pos = runStart = end;
+    }
+    addRun(runs, text, runStart, len);
+    return runs;
+  }
+
+  /**
+   * Completes the token that was left incomplete at the end of the previous text, using the start
+   * of the given text, and returns the position in text where normal parsing should continue.
+   */
+  private int continuePending(String text, TextRuns runs) {
+    int plen = _pending.length();
+    int take = Math.min(text.length(), MAXTOKEN);
+    String joined = _pending.concat(text.substring(0, take));
+    _pending = null;
+    int end = tokenEnd(joined, 0);
+    if (end == INCOMPLETE && take == text.length()) {
+      _pending = joined;
+      return text.length();
+    }
+    if (end < 0) {
+      addRun(runs, joined, 0, plen);
+      return 0;
+    }
+    handleToken(joined, 0, end, runs);
+    return end - plen;
+  }
+
+  /** Adds text[start..end-1] in the current layout. */
+  private void addRun(TextRuns runs, String text, int start, int end) {
+    if (end <= start) return;
+    runs.append(text, start, end, currentLayout());
+    if (_capture != null) _capture.append(text, start, end);
+  }
+
+  /** Returns the layout given by the ansi codes, adapted by all open tags. */
+  private CharacterLayout currentLayout() {
+    if (_current != null) return _current;
+    AttributeGroup atts = _ansiAtts;
+    LinkLayout.Link link = null;
+    for (int i = 0; i < _stack.size(); i++) {
+      Frame frame = _stack.get(i);
+      if (frame._attributes != 0) atts = atts.addAttribute(frame._attributes);
+      if (frame._front != null) atts = atts.replaceForegroundColour(frame._front);
+      if (frame._back != null) atts = atts.replaceBackgroundColour(frame._back);
+      if (frame._link != null) link = frame._link;
+    }
+    if (link == null) _current = atts;
+    else _current = new LinkLayout(atts, link);
+    return _current;
+  }
+
+  /**
+   * Given that text[pos] starts a token (ESC, '<' or '&'), returns the position after the token,
+   * or INCOMPLETE if the text ends before the token does, or LITERAL if text[pos] does not start a
+   * token after all, and should be printed as it is.
+   */
+  private int tokenEnd(String text, int pos) {
+    char c = text.charAt(pos);
+    int len = text.length();
+    if (c == ESC) {
+      int end = _ansi.findAnsiEnd(text, pos);
+      return end < 0 ? INCOMPLETE : end;
+    }
+    if (c == '&') {
+      for (int i = pos + 1; i < len && i - pos <= MAXENTITY; i++) {
+        char d = text.charAt(i);
+        if (d == ';') return i > pos + 1 ? i + 1 : LITERAL;
+        if (!Character.isLetterOrDigit(d) && d != '#' && d != '_' && d != '-') return LITERAL;
+      }
+      return len - pos > MAXENTITY ? LITERAL : INCOMPLETE;
+    }
+    if (pos + 1 < len) {
+      char d = text.charAt(pos + 1);
+      if (!Character.isLetter(d) && d != '/' && d != '!') return LITERAL;
+    }
+    char quote = 0;
+    for (int i = pos + 1; i < len; i++) {
+      if (i - pos > MAXTOKEN) return LITERAL;
+      char d = text.charAt(i);
+      if (quote != 0) {
+        if (d == quote) quote = 0;
+      }
+      else if (d == '>') return i + 1;
+      else if (d == '\n') return LITERAL;
+      else if ((d == '"' || d == '\'') && (text.charAt(i - 1) == '=' ||
+                                            text.charAt(i - 1) == ' ')) quote = d;
+    }
+    return len - pos > MAXTOKEN ? LITERAL : INCOMPLETE;
+  }
+
+  /** Handles the token text[start..end-1]. */
+  private void handleToken(String text, int start, int end, TextRuns runs) {
+    char c = text.charAt(start);
+    if (c == ESC) {
+      char last = text.charAt(end - 1);
+      if (last == 'm') {
+        _ansiAtts = applyAnsi(text, start, end);
+        _current = null;
+      }
+      else if (last == 'z' && _enabled && end - start > 3) {
+        try { handleLineMode(Integer.parseInt(text.substring(start + 2, end - 1))); }
+        catch (NumberFormatException e) { }
+      }
+    }
+    else if (c == '&') {
+      String value = decodeEntity(text.substring(start + 1, end - 1));
+      if (value == null) addRun(runs, text, start, end);
+      else addRun(runs, value, 0, value.length());
+    }
+    else {
+      boolean secure = _lineMode == SECURE || _tempSecure;
+      _tempSecure = false;
+      handleTag(text.substring(start + 1, end - 1), runs, 0, secure, !secure);
+    }
+  }
+
+  /**
+   * Returns the result of applying the ansi code text[start..end-1] to the current ansi layout.
+   * Servers use only a few different codes, so the results are cached.  To make the cache work,
+   * the layouts it returns are interned (as long as there are not too many of them), so an
+   * unchanged layout is always the same object.
+   */
+  private AttributeGroup applyAnsi(String text, int start, int end) {
+    int hash = System.identityHashCode(_ansiAtts);
+    for (int i = start; i < end; i++) hash = 31 * hash + text.charAt(i);
+    int slot = (hash ^ (hash >>> 16)) & (CACHESIZE - 1);
+    String cached = _cacheCode[slot];
+    if (_cacheFrom[slot] == _ansiAtts && cached != null && cached.length() == end - start &&
+        text.regionMatches(start, cached, 0, end - start)) {
+      return _cacheTo[slot];
+    }
+    String code = text.substring(start, end);
+    AttributeGroup result = intern(_ansi.adaptWithAnsi(_ansiAtts, code));
+    _cacheFrom[slot] = _ansiAtts;
+    _cacheCode[slot] = code;
+    _cacheTo[slot] = result;
+    return result;
+  }
+
+  /** Returns the interned layout equal to atts, or atts itself (interning it if possible). */
+  private AttributeGroup intern(AttributeGroup atts) {
+    for (int i = 0; i < _interned.size(); i++) {
+      if (_interned.get(i).equals(atts)) return _interned.get(i);
+    }
+    if (_interned.size() < CACHESIZE) _interned.add(atts);
+    return atts;
+  }
+
+  /** Handles the MXP line mode code ESC[<mode>z. */
+  private void handleLineMode(int mode) {
+    if (mode == 3) {
+      closeFrames(0);
+      _defaultMode = _lineMode = OPEN;
+    }
+    else if (mode == 4) _tempSecure = true;
+    else if (mode >= 0 && mode <= 2) _lineMode = mode;
+    else if (mode >= 5 && mode <= 7) _defaultMode = _lineMode = mode - 5;
+  }
+
+  /** Returns whether anything changes at the end of the current line. */
+  private boolean lineEndMatters() {
+    if (_lineMode != _defaultMode || _tempSecure) return true;
+    for (int i = 0; i < _stack.size(); i++) {
+      if (_stack.get(i)._open) return true;
+    }
+    return false;
+  }
+
+  /** At the end of a line, tags opened in open mode are closed, and the default mode returns. */
+  private void endOfLine() {
+    for (int i = _stack.size() - 1; i >= 0; i--) {
+      if (_stack.get(i)._open) {
+        finishFrame(_stack.remove(i));
+        _current = null;
+      }
+    }
+    updateCapture();
+    _lineMode = _defaultMode;
+    _tempSecure = false;
+  }
+
+  /** Closes all tags from _stack[from] upwards. */
+  private void closeFrames(int from) {
+    while (_stack.size() > from) finishFrame(_stack.remove(_stack.size() - 1));
+    updateCapture();
+    _current = null;
+  }
+
+  /** Called when a frame is closed: fills in the command of a <send> that used its text. */
+  private void finishFrame(Frame frame) {
+    if (frame._capture == null) return;
+    String txt = frame._capture.toString();
+    if (frame._href == null) frame._link.setCommand(txt);
+    else frame._link.setCommand(frame._href.replace("&text;", txt));
+  }
+
+  /** Makes sure that _capture is the capture of the innermost <send> that needs its text. */
+  private void updateCapture() {
+    _capture = null;
+    for (int i = _stack.size() - 1; i >= 0 && _capture == null; i--) {
+      _capture = _stack.get(i)._capture;
+    }
+  }
+
+  /** Returns the value of the given entity, or null if it is unknown. */
+  private String decodeEntity(String name) {
+    if (name.charAt(0) == '#') {
+      try {
+        int code;
+        if (name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X')) {
+          code = Integer.parseInt(name.substring(2), 16);
+        }
+        else code = Integer.parseInt(name.substring(1));
+        if (code > 0 && code <= Character.MAX_CODE_POINT) {
+          return new String(Character.toChars(code));
+        }
+      }
+      catch (NumberFormatException e) { }
+      return null;
+    }
+    String lower = name.toLowerCase();
+    if (lower.equals("lt")) return "<";
+    if (lower.equals("gt")) return ">";
+    if (lower.equals("amp")) return "&";
+    if (lower.equals("quot")) return "\"";
+    if (lower.equals("apos")) return "'";
+    if (lower.equals("nbsp")) return "\u00a0";
+    return _entities.get(lower);
+  }
+
+  /**
+   * Splits the inside of a tag into its parts: the name, followed by pairs (key, value) for the
+   * arguments, where the key is null for arguments given without a name.  Keys and the name are
+   * returned in lower case, values without their quotes.
+   */
+  private static ArrayList<String> tagParts(String tag) {
+    ArrayList<String> ret = new ArrayList<String>();
+    int len = tag.length();
+    int i = 0;
+    while (i < len && !Character.isWhitespace(tag.charAt(i))) i++;
+    ret.add(tag.substring(0, i).toLowerCase());
+    while (true) {
+      while (i < len && Character.isWhitespace(tag.charAt(i))) i++;
+      if (i >= len) break;
+      String key = null;
+      int start = i;
+      char c = tag.charAt(i);
+      if (c != '"' && c != '\'') {
+        while (i < len && tag.charAt(i) != '=' && !Character.isWhitespace(tag.charAt(i))) i++;
+        if (i >= len || tag.charAt(i) != '=') {
+          ret.add(null);
+          ret.add(tag.substring(start, i));
+          continue;
+        }
+        key = tag.substring(start, i).toLowerCase();
+        i++;
+      }
+      ret.add(key);
+      if (i < len && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+        char quote = tag.charAt(i);
+        int end = tag.indexOf(quote, i + 1);
+        if (end < 0) end = len;
+        ret.add(tag.substring(i + 1, end));
+        i = end + 1;
+      }
+      else {
+        start = i;
+        while (i < len && !Character.isWhitespace(tag.charAt(i))) i++;
+        ret.add(tag.substring(start, i));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the value of the given argument in the result of tagParts: the argument with the
+   * given key if there is one, otherwise the argument without key at the given position (or -1
+   * if it cannot be given that way).
+   */
+  private static String argument(ArrayList<String> parts, String key, int position) {
+    int unnamed = 0;
+    String positional = null;
+    for (int i = 1; i + 1 < parts.size(); i += 2) {
+      String k = parts.get(i);
+      if (k == null) {
+        if (unnamed == position) positional = parts.get(i + 1);
+        unnamed++;
+      }
+      else if (k.equals(key)) return parts.get(i + 1);
+    }
+    return positional;
+  }
+
+  /** Returns whether the given flag (an argument without key) was given. */
+  private static boolean hasFlag(ArrayList<String> parts, String flag) {
+    for (int i = 1; i + 1 < parts.size(); i += 2) {
+      if (parts.get(i) == null && parts.get(i + 1).equalsIgnoreCase(flag)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Handles the tag <tag>, which may use secure tags if secure is true, and should be closed at
+   * the end of the line if open is true; depth counts how deep we are in the expansion of
+   * elements.
+   */
+  private void handleTag(String tag, TextRuns runs, int depth, boolean secure, boolean open) {
+    if (tag.length() == 0) return;
+    if (tag.charAt(0) == '/') {
+      closeTag(tag.substring(1).trim().toLowerCase(), secure);
+      return;
+    }
+    ArrayList<String> parts = tagParts(tag);
+    String name = parts.get(0);
+    if (name.startsWith("!")) {
+      if (secure) handleDefinition(name, parts);
+      return;
+    }
+    if (name.equals("br")) { addRun(runs, "\n", 0, 1); return; }
+    if (name.equals("version")) {
+      _replies.add(ESC + "[1z<VERSION MXP=1.0 CLIENT=Turtle VERSION=1.0>");
+      return;
+    }
+    if (name.equals("support")) {
+      _replies.add(ESC + "[1z<SUPPORTS +b +i +u +s +h +c +color +font +br +send +a +version " +
+                   "+support +!element +!entity>");
+      return;
+    }
+    if (name.equals("reset")) { closeFrames(0); return; }
+    Frame frame = new Frame(name, open);
+    if (name.equals("b") || name.equals("bold") || name.equals("strong") ||
+        name.equals("h") || name.equals("high")) {
+      frame._attributes = AttributeGroup.ATT_BOLD;
+    }
+    else if (name.equals("i") || name.equals("italic") || name.equals("em")) {
+      frame._attributes = AttributeGroup.ATT_ITALIC;
+    }
+    else if (name.equals("u") || name.equals("underline")) {
+      frame._attributes = AttributeGroup.ATT_UNDERLINE;
+    }
+    else if (name.equals("s") || name.equals("strikeout")) {
+      frame._attributes = AttributeGroup.ATT_STRIKETHROUGH;
+    }
+    else if (name.equals("c") || name.equals("color")) {
+      frame._front = colourByName(argument(parts, "fore", 0));
+      frame._back = colourByName(argument(parts, "back", 1));
+    }
+    else if (name.equals("font")) {
+      frame._front = colourByName(argument(parts, "color", -1));
+      frame._back = colourByName(argument(parts, "back", -1));
+    }
+    else if (name.equals("send") || name.equals("a")) {
+      if (!secure) return;
+      startLink(frame, parts);
+    }
+    else {
+      Element element = _elements.get(name);
+      if (element == null || (!secure && !element._open)) return;
+      expandElement(name, element, parts, runs, depth, open);
+      return;
+    }
+    _stack.add(frame);
+    _current = null;
+  }
+
+  /** Sets up the link for a <send> or <a> tag. */
+  private void startLink(Frame frame, ArrayList<String> parts) {
+    String href = argument(parts, "href", 0);
+    String hint = argument(parts, "hint", 1);
+    if (hint != null && hint.indexOf('|') >= 0) hint = hint.substring(0, hint.indexOf('|'));
+    if (frame._name.equals("a")) {
+      frame._link = new LinkLayout.Link(null, href, hint);
+      return;
+    }
+    // of a menu of commands, we only use the first
+    if (href != null && href.indexOf('|') >= 0) href = href.substring(0, href.indexOf('|'));
+    frame._link = new LinkLayout.Link(href, null, hint);
+    if (href == null || href.indexOf("&text;") >= 0) {
+      frame._href = href;
+      frame._capture = new StringBuilder();
+      _capture = frame._capture;
+    }
+  }
+
+  /** Closes the innermost open tag with the given name, and all tags opened after it. */
+  private void closeTag(String name, boolean secure) {
+    for (int i = _stack.size() - 1; i >= 0; i--) {
+      Frame frame = _stack.get(i);
+      if (!frame._name.equals(name)) continue;
+      if (secure || frame._open) closeFrames(i);
+      return;
+    }
+  }
+
+  /** Handles <!ELEMENT ...> and <!ENTITY ...> definitions. */
+  private void handleDefinition(String kind, ArrayList<String> parts) {
+    String name = argument(parts, null, 0);
+    if (name == null) return;
+    name = name.toLowerCase();
+    if (kind.equals("!en") || kind.equals("!entity")) {
+      String value = argument(parts, null, 1);
+      if (value == null || hasFlag(parts, "delete")) _entities.remove(name);
+      else _entities.put(name, value);
+    }
+    else if (kind.equals("!el") || kind.equals("!element")) {
+      if (hasFlag(parts, "delete")) { _elements.remove(name); return; }
+      Element element = new Element();
+      String definition = argument(parts, null, 1);
+      if (definition != null && definition.startsWith("<")) element._definition = definition;
+      element._open = hasFlag(parts, "open");
+      element._empty = hasFlag(parts, "empty");
+      String atts = argument(parts, "att", -1);
+      if (atts != null) {
+        for (String att : atts.trim().split("\\s+")) {
+          if (att.equals("")) continue;
+          int k = att.indexOf('=');
+          element._attributes.add((k < 0 ? att : att.substring(0, k)).toLowerCase());
+          element._defaults.add(k < 0 ? "" : att.substring(k + 1));
+        }
+      }
+      _elements.put(name, element);
+    }
+  }
+
+  /**
+   * Expands a user-defined element: its attributes are filled into the definition, and the tags
+   * in the definition are handled as if they were given in secure mode.  Unless the element is
+   * EMPTY, a frame is opened for it, so closing the element also closes the tags it opened.
+   */
+  private void expandElement(String name, Element element, ArrayList<String> parts,
+                             TextRuns runs, int depth, boolean open) {
+    if (depth >= MAXDEPTH) return;
+    if (!element._empty) {
+      _stack.add(new Frame(name, open));
+      _current = null;
+    }
+    String def = element._definition;
+    if (def == null) return;
+    for (int i = 0; i < element._attributes.size(); i++) {
+      String att = element._attributes.get(i);
+      String value = argument(parts, att, i);
+      if (value == null) value = element._defaults.get(i);
+      def = def.replace("&" + att + ";", value);
+    }
+    for (int pos = 0; pos < def.length(); ) {
+      int start = def.indexOf('<', pos);
+      if (start < 0) break;
+      int end = tokenEnd(def, start);
+      if (end < 0) break;
+      handleTag(def.substring(start + 1, end - 1), runs, depth + 1, true, open);
+      pos = end;
+    }
+  }
+
+  /** Returns the colour for an MXP colour name or #RRGGBB value, or null if it is unknown. */
+  static Colour colourByName(String name) {
+    if (name == null) return null;
+    String lower = name.toLowerCase();
+    int rgb = -1;
+    if (lower.length() == 7 && lower.charAt(0) == '#') {
+      try { rgb = Integer.parseInt(lower.substring(1), 16); }
+      catch (NumberFormatException e) { return null; }
+    }
+    else {
+      for (int i = 0; i < COLOURNAMES.length; i++) {
+        if (COLOURNAMES[i].equals(lower)) rgb = COLOURVALUES[i];
+      }
+    }
+    if (rgb < 0) return null;
+    return new RGBAColour((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+  }
+
+  private static final String[] COLOURNAMES = {
+    "black", "maroon", "green", "olive", "navy", "purple", "teal", "silver", "gray", "grey", "red",
+    "lime", "yellow", "blue", "fuchsia", "magenta", "aqua", "cyan", "white", "orange", "brown",
+    "pink", "gold", "violet", "indigo", "darkred", "darkgreen", "darkblue", "lightblue",
+    "lightgreen", "darkgray", "darkgrey", "lightgray", "lightgrey"
+  };
+
+  private static final int[] COLOURVALUES = {
+    0x000000, 0x800000, 0x008000, 0x808000, 0x000080, 0x800080, 0x008080, 0xC0C0C0, 0x808080,
+    0x808080, 0xFF0000, 0x00FF00, 0xFFFF00, 0x0000FF, 0xFF00FF, 0xFF00FF, 0x00FFFF, 0x00FFFF,
+    0xFFFFFF, 0xFFA500, 0xA52A2A, 0xFFC0CB, 0xFFD700, 0xEE82EE, 0x4B0082, 0x8B0000, 0x006400,
+    0x00008B, 0xADD8E6, 0x90EE90, 0xA9A9A9, 0xA9A9A9, 0xD3D3D3, 0xD3D3D3
+  };
+}
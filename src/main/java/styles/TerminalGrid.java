@@ -0,0 +1,604 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.styles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import turtle.interfaces.immutable.CharacterLayout;
+
+/**
+ * A TerminalGrid is a screen of fixed size, like that of a VT100 or xterm, on which text from the
+ * server is written at a cursor position.  Unlike the AnsiCodeReader, which only follows the SGR
+ * codes that change colours, it also follows the CSI codes which move the cursor, erase (parts
+ * of) lines and the screen, insert and delete lines and characters, and set a scroll region;
+ * these are used by some MUDs for full-screen editors and status lines.
+ *
+ * The cells are kept in two primitive arrays, one with the characters and one with style ids;
+ * an id indexes a table of the layouts that have been used.  Every row that is changed is marked
+ * as damaged, so a view can repaint only those rows (and then clear the damage).
+ * Like the AnsiCodeReader, the grid expects to be given _all_ text from a given source; escape
+ * sequences may be split over several calls to write.
+ */
+public class TerminalGrid {
+  public static final int DEFAULT_COLUMNS = 80;
+  public static final int DEFAULT_ROWS = 24;
+  /** When this many different layouts have been used, the ones no longer on screen are dropped. */
+  private static final int MAXSTYLES = 1024;
+  private static final int MAXPARAMS = 16;
+  private static final char ESC = 27;
+
+  private enum State { TEXT, ESCAPE, ESCAPE_SKIP, CSI, OSC, OSC_ESCAPE };
+
+  private int _columns;
+  private int _rows;
+  private char[] _chars;
+  private int[] _styles;
+  private boolean[] _damaged;
+  private int _damageCount;
+
+  private ArrayList<CharacterLayout> _styleTable;
+  private HashMap<String,Integer> _styleIds;
+  private AnsiCodeReader _ansi;
+  private AttributeGroup _current;
+  private int _currentId;
+  private int _blankId;
+  private int _styleLimit;
+
+  private int _cursorRow;
+  private int _cursorColumn;
+  private boolean _wrapPending;
+  private boolean _autoWrap;
+  private boolean _cursorVisible;
+  private int _top;
+  private int _bottom;
+  private int _savedRow;
+  private int _savedColumn;
+  private AttributeGroup _savedLayout;
+  private char[] _mainChars;
+  private int[] _mainStyles;
+
+  private State _state;
+  private int[] _params;
+  private int _paramCount;
+  private char _private;
+  private StringBuilder _sequence;
+
+  /** Creates a grid with the default size of 80 columns and 24 rows. */
+  public TerminalGrid() {
+    this(DEFAULT_COLUMNS, DEFAULT_ROWS);
+  }
+
+  public TerminalGrid(int columns, int rows) {
+    if (columns <= 0 || rows <= 0) throw new Error("Illegal terminal size " + columns + "x" + rows);
+    _columns = columns;
+    _rows = rows;
+    _chars = new char[columns * rows];
+    _styles = new int[columns * rows];
+    _damaged = new boolean[rows];
+    _ansi = new AnsiCodeReader();
+    _params = new int[MAXPARAMS];
+    _sequence = new StringBuilder();
+    reset();
+  }
+
+  /** Clears the screen and returns all modes, the cursor and the current layout to the start. */
+  public void reset() {
+    _styleTable = new ArrayList<CharacterLayout>();
+    _styleIds = new HashMap<String,Integer>();
+    _styleLimit = MAXSTYLES;
+    _current = new AttributeGroup();
+    _currentId = styleId(_current);
+    _blankId = _currentId;
+    Arrays.fill(_chars, ' ');
+    Arrays.fill(_styles, _currentId);
+    _cursorRow = 0;
+    _cursorColumn = 0;
+    _wrapPending = false;
+    _autoWrap = true;
+    _cursorVisible = true;
+    _top = 0;
+    _bottom = _rows - 1;
+    _savedRow = 0;
+    _savedColumn = 0;
+    _savedLayout = _current;
+    _mainChars = null;
+    _mainStyles = null;
+    _state = State.TEXT;
+    damage(0, _rows);
+  }
+
+  /**
+   * Changes the size of the screen.  The text in the top left corner is kept, the cursor is moved
+   * onto the screen if necessary, and the scroll region is reset to the whole screen.
+   */
+  public void resize(int columns, int rows) {
+    if (columns <= 0 || rows <= 0) throw new Error("Illegal terminal size " + columns + "x" + rows);
+    if (columns == _columns && rows == _rows) return;
+    // new cells are empty, without colours (this may compact the styles, so is done first)
+    int empty = styleId(new AttributeGroup());
+    _chars = resized(_chars, columns, rows, ' ');
+    _styles = resized(_styles, columns, rows, empty);
+    if (_mainChars != null) {
+      _mainChars = resized(_mainChars, columns, rows, ' ');
+      _mainStyles = resized(_mainStyles, columns, rows, empty);
+    }
+    _columns = columns;
+    _rows = rows;
+    _damaged = new boolean[rows];
+    _damageCount = 0;
+    _top = 0;
+    _bottom = rows - 1;
+    _cursorRow = Math.min(_cursorRow, rows - 1);
+    _cursorColumn = Math.min(_cursorColumn, columns - 1);
+    _savedRow = Math.min(_savedRow, rows - 1);
+    _savedColumn = Math.min(_savedColumn, columns - 1);
+    _wrapPending = false;
+    damage(0, rows);
+  }
+
+  /** Helper function for resize: copies the overlapping part of a cell array. */
+  private char[] resized(char[] cells, int columns, int rows, char empty) {
+    char[] ret = new char[columns * rows];
+    Arrays.fill(ret, empty);
+    int width = Math.min(columns, _columns);
+    for (int row = 0; row < Math.min(rows, _rows); row++) {
+      System.arraycopy(cells, row * _columns, ret, row * columns, width);
+    }
+    return ret;
+  }
+
+  /** Helper function for resize: copies the overlapping part of a style array. */
+  private int[] resized(int[] cells, int columns, int rows, int empty) {
+    int[] ret = new int[columns * rows];
+    Arrays.fill(ret, empty);
+    int width = Math.min(columns, _columns);
+    for (int row = 0; row < Math.min(rows, _rows); row++) {
+      System.arraycopy(cells, row * _columns, ret, row * columns, width);
+    }
+    return ret;
+  }
+
+  public int queryColumns() { return _columns; }
+  public int queryRows() { return _rows; }
+  public int queryCursorRow() { return _cursorRow; }
+  public int queryCursorColumn() { return _cursorColumn; }
+  public boolean queryCursorVisible() { return _cursorVisible; }
+
+  public char queryChar(int row, int column) {
+    return _chars[row * _columns + column];
+  }
+
+  /** Returns the id of the layout of the given cell; see queryStyle. */
+  public int queryStyleId(int row, int column) {
+    return _styles[row * _columns + column];
+  }
+
+  /** Returns the layout with the given id. */
+  public CharacterLayout queryStyle(int id) {
+    return _styleTable.get(id);
+  }
+
+  public CharacterLayout queryLayout(int row, int column) {
+    return _styleTable.get(_styles[row * _columns + column]);
+  }
+
+  /** Returns the characters of the given row, without trailing spaces. */
+  public String queryLine(int row) {
+    int start = row * _columns;
+    int end = start + _columns;
+    while (end > start && _chars[end - 1] == ' ') end--;
+    return new String(_chars, start, end - start);
+  }
+
+  /** Returns whether the given row has changed since the damage was last cleared. */
+  public boolean queryDamaged(int row) {
+    return _damaged[row];
+  }
+
+  /** Returns the number of rows that have changed since the damage was last cleared. */
+  public int queryDamageCount() {
+    return _damageCount;
+  }
+
+  /** Returns the first damaged row at or below the given row, or -1 if there is none. */
+  public int nextDamagedRow(int row) {
+    if (_damageCount == 0) return -1;
+    for (; row < _rows; row++) if (_damaged[row]) return row;
+    return -1;
+  }
+
+  /** Marks all rows as undamaged; to be called after the damaged rows have been repainted. */
+  public void clearDamage() {
+    if (_damageCount == 0) return;
+    Arrays.fill(_damaged, false);
+    _damageCount = 0;
+  }
+
+  /** Marks the rows from..to-1 as damaged. */
+  private void damage(int from, int to) {
+    for (int row = from; row < to; row++) {
+      if (!_damaged[row]) { _damaged[row] = true; _damageCount++; }
+    }
+  }
+
+  /** Returns the id for the given layout, adding it to the table if it is not there yet. */
+  private int styleId(AttributeGroup layout) {
+    String name = layout.toString();
+    Integer id = _styleIds.get(name);
+    if (id != null) return id;
+    if (_styleTable.size() >= _styleLimit) compactStyles();
+    _styleTable.add(layout);
+    _styleIds.put(name, _styleTable.size() - 1);
+    return _styleTable.size() - 1;
+  }
+
+  /**
+   * When many colours are used (for instance with xterm16m codes), the style table could keep
+   * growing; this renumbers the styles so only the ones that are still in use are kept.
+   */
+  private void compactStyles() {
+    int[] map = new int[_styleTable.size()];
+    Arrays.fill(map, -1);
+    ArrayList<CharacterLayout> table = new ArrayList<CharacterLayout>();
+    HashMap<String,Integer> ids = new HashMap<String,Integer>();
+    int[][] arrays = _mainStyles == null ? new int[][] { _styles }
+                                         : new int[][] { _styles, _mainStyles };
+    for (int[] cells : arrays) {
+      for (int i = 0; i < cells.length; i++) {
+        int id = cells[i];
+        if (map[id] == -1) {
+          map[id] = table.size();
+          table.add(_styleTable.get(id));
+          ids.put(_styleTable.get(id).toString(), map[id]);
+        }
+        cells[i] = map[id];
+      }
+    }
+    _styleTable = table;
+    _styleIds = ids;
+    // if most styles are still on screen, do not compact again too soon
+    _styleLimit = Math.max(MAXSTYLES, 2 * table.size());
+    // the current layouts may not be on screen, so are looked up again
+    _currentId = -1;
+    _blankId = -1;
+  }
+
+  /**
+   * Writes the given text to the grid: printable characters are put at the cursor, control
+   * characters and escape sequences are executed.
+   */
+  public void write(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (_state == State.TEXT) {
+        if (c >= ' ' && c != 127) put(c);
+        else control(c);
+      }
+      else if (c == 24 || c == 26) _state = State.TEXT;   // CAN and SUB abort a sequence
+      else if (_state == State.ESCAPE) escape(c);
+      else if (_state == State.CSI) csi(c);
+      else if (_state == State.ESCAPE_SKIP) _state = State.TEXT;
+      else if (_state == State.OSC) {
+        if (c == 7) _state = State.TEXT;
+        else if (c == ESC) _state = State.OSC_ESCAPE;
+      }
+      else if (_state == State.OSC_ESCAPE) _state = c == '\\' ? State.TEXT : State.OSC;
+    }
+  }
+
+  /** Puts a printable character at the cursor, and moves the cursor on. */
+  private void put(char c) {
+    if (_wrapPending) {
+      _wrapPending = false;
+      _cursorColumn = 0;
+      lineFeed();
+    }
+    if (_currentId == -1) _currentId = styleId(_current);
+    int pos = _cursorRow * _columns + _cursorColumn;
+    if (_chars[pos] != c || _styles[pos] != _currentId) {
+      _chars[pos] = c;
+      _styles[pos] = _currentId;
+      if (!_damaged[_cursorRow]) { _damaged[_cursorRow] = true; _damageCount++; }
+    }
+    if (_cursorColumn < _columns - 1) _cursorColumn++;
+    else if (_autoWrap) _wrapPending = true;
+  }
+
+  /** Executes a control character (other than those which start an escape sequence). */
+  private void control(char c) {
+    if (c == ESC) { _state = State.ESCAPE; return; }
+    if (c == '\r') { _cursorColumn = 0; _wrapPending = false; }
+    else if (c == '\n' || c == 11 || c == 12) lineFeed();
+    else if (c == '\b') {
+      if (_cursorColumn > 0) _cursorColumn--;
+      _wrapPending = false;
+    }
+    else if (c == '\t') {
+      _cursorColumn = Math.min((_cursorColumn / 8 + 1) * 8, _columns - 1);
+      _wrapPending = false;
+    }
+    // other control characters (such as BEL) do not change the screen
+  }
+
+  /** Moves the cursor down a row, scrolling the scroll region if it is on its last row. */
+  private void lineFeed() {
+    _wrapPending = false;
+    if (_cursorRow == _bottom) scrollUp(_top, _bottom, 1);
+    else if (_cursorRow < _rows - 1) _cursorRow++;
+  }
+
+  /** Moves the cursor up a row, scrolling the scroll region back if it is on its first row. */
+  private void reverseLineFeed() {
+    _wrapPending = false;
+    if (_cursorRow == _top) scrollDown(_top, _bottom, 1);
+    else if (_cursorRow > 0) _cursorRow--;
+  }
+
+  /** Handles the character after an ESC. */
+  private void escape(char c) {
+    _state = State.TEXT;
+    if (c == '[') {
+      _state = State.CSI;
+      _paramCount = 0;
+      _params[0] = -1;
+      _private = 0;
+      _sequence.setLength(0);
+    }
+    else if (c == ']' || c == 'P' || c == '_' || c == '^') _state = State.OSC;
+    else if (c == '(' || c == ')' || c == '*' || c == '+' || c == '#') _state = State.ESCAPE_SKIP;
+    else if (c == '7') saveCursor();
+    else if (c == '8') restoreCursor();
+    else if (c == 'D') lineFeed();
+    else if (c == 'E') { _cursorColumn = 0; lineFeed(); }
+    else if (c == 'M') reverseLineFeed();
+    else if (c == 'c') reset();
+    else if (c == ESC) _state = State.ESCAPE;
+    // anything else (such as keypad modes) does not change the screen
+  }
+
+  /** Handles a character inside a CSI sequence, executing the sequence at the final byte. */
+  private void csi(char c) {
+    if (c >= '0' && c <= '9') {
+      int p = _params[_paramCount];
+      _params[_paramCount] = p < 0 ? c - '0' : Math.min(p * 10 + c - '0', 9999);
+    }
+    else if (c == ';') {
+      if (_paramCount < MAXPARAMS - 1) _paramCount++;
+      _params[_paramCount] = -1;
+    }
+    else if (c >= '<' && c <= '?') _private = c;
+    else if (c >= 0x40 && c <= 0x7e) {
+      _state = State.TEXT;
+      _paramCount++;
+      if (_private != 0) privateMode(c);
+      else executeCsi(c);
+      return;
+    }
+    else if (c < ' ') { control(c); return; }   // control characters are executed in-between
+    _sequence.append(c);
+  }
+
+  /** Returns parameter i of the current CSI sequence, or def if it is missing or 0. */
+  private int param(int i, int def) {
+    if (i >= _paramCount || _params[i] <= 0) return def;
+    return _params[i];
+  }
+
+  /** Executes the CSI sequence with the given final character. */
+  private void executeCsi(char c) {
+    int n = param(0, 1);
+    switch (c) {
+      case 'A': moveCursor(Math.max(_cursorRow - n, _cursorRow >= _top ? _top : 0),
+                           _cursorColumn); break;
+      case 'B': moveCursor(Math.min(_cursorRow + n, _cursorRow <= _bottom ? _bottom : _rows - 1),
+                           _cursorColumn); break;
+      case 'C': moveCursor(_cursorRow, _cursorColumn + n); break;
+      case 'D': moveCursor(_cursorRow, _cursorColumn - n); break;
+      case 'E': moveCursor(_cursorRow + n, 0); break;
+      case 'F': moveCursor(_cursorRow - n, 0); break;
+      case 'G': case '`': moveCursor(_cursorRow, n - 1); break;
+      case 'H': case 'f': moveCursor(param(0, 1) - 1, param(1, 1) - 1); break;
+      case 'd': moveCursor(n - 1, _cursorColumn); break;
+      case 'J': eraseDisplay(param(0, 0)); break;
+      case 'K': eraseLine(param(0, 0)); break;
+      case 'X': erase(_cursorRow, _cursorColumn, Math.min(_cursorColumn + n, _columns)); break;
+      case '@': insertChars(n); break;
+      case 'P': deleteChars(n); break;
+      case 'L': insertLines(n); break;
+      case 'M': deleteLines(n); break;
+      case 'S': scrollUp(_top, _bottom, n); break;
+      case 'T': scrollDown(_top, _bottom, n); break;
+      case 'r': setScrollRegion(param(0, 1) - 1, param(1, _rows) - 1); break;
+      case 's': saveCursor(); break;
+      case 'u': restoreCursor(); break;
+      case 'm': selectGraphics(); break;
+      default: break;   // unsupported sequences are ignored
+    }
+  }
+
+  /** Executes a CSI sequence with a private marker, such as CSI ?25l to hide the cursor. */
+  private void privateMode(char c) {
+    if (_private != '?' || (c != 'h' && c != 'l')) return;
+    boolean set = c == 'h';
+    for (int i = 0; i < _paramCount; i++) {
+      int mode = _params[i];
+      if (mode == 7) _autoWrap = set;
+      else if (mode == 25) _cursorVisible = set;
+      else if (mode == 47 || mode == 1047 || mode == 1049) alternateScreen(set, mode == 1049);
+    }
+  }
+
+  /**
+   * Switches to the alternate screen (which full-screen programs use so the normal screen can be
+   * restored when they exit) or back.
+   */
+  private void alternateScreen(boolean enter, boolean cursor) {
+    if (enter == (_mainChars != null)) return;
+    if (enter) {
+      if (cursor) saveCursor();
+      _mainChars = _chars.clone();
+      _mainStyles = _styles.clone();
+      if (_currentId == -1) _currentId = styleId(_current);
+      Arrays.fill(_chars, ' ');
+      Arrays.fill(_styles, _currentId);
+    }
+    else {
+      _chars = _mainChars;
+      _styles = _mainStyles;
+      _mainChars = null;
+      _mainStyles = null;
+      if (cursor) restoreCursor();
+    }
+    damage(0, _rows);
+  }
+
+  /** Moves the cursor to the given position, kept within the screen. */
+  private void moveCursor(int row, int column) {
+    _cursorRow = Math.max(0, Math.min(row, _rows - 1));
+    _cursorColumn = Math.max(0, Math.min(column, _columns - 1));
+    _wrapPending = false;
+  }
+
+  private void saveCursor() {
+    _savedRow = _cursorRow;
+    _savedColumn = _cursorColumn;
+    _savedLayout = _current;
+  }
+
+  private void restoreCursor() {
+    moveCursor(_savedRow, _savedColumn);
+    _current = _savedLayout;
+    _currentId = -1;
+    _blankId = -1;
+  }
+
+  private void selectGraphics() {
+    _current = _ansi.adaptWithAnsi(_current, ESC + "[" + _sequence + "m");
+    _currentId = -1;
+    _blankId = -1;
+  }
+
+  private void setScrollRegion(int top, int bottom) {
+    if (bottom >= _rows) bottom = _rows - 1;
+    if (top >= bottom) return;
+    _top = top;
+    _bottom = bottom;
+    moveCursor(0, 0);
+  }
+
+  /** Clears the cells row[from..to-1] (using the layout for blank cells). */
+  private void erase(int row, int from, int to) {
+    if (from >= to) return;
+    int id = blankId();
+    int start = row * _columns;
+    Arrays.fill(_chars, start + from, start + to, ' ');
+    Arrays.fill(_styles, start + from, start + to, id);
+    damage(row, row + 1);
+  }
+
+  /**
+   * Returns the id of the layout for blank cells: as in xterm, erasing uses the current
+   * background colour, but none of the other attributes.
+   */
+  private int blankId() {
+    if (_blankId == -1) {
+      _blankId = styleId(new AttributeGroup(_current.getBack(), new DefaultColour(true, false),
+                                            AttributeGroup.ATT_NORMAL));
+    }
+    return _blankId;
+  }
+
+  private void eraseDisplay(int mode) {
+    if (mode == 0) {
+      erase(_cursorRow, _cursorColumn, _columns);
+      for (int row = _cursorRow + 1; row < _rows; row++) erase(row, 0, _columns);
+    }
+    else if (mode == 1) {
+      for (int row = 0; row < _cursorRow; row++) erase(row, 0, _columns);
+      erase(_cursorRow, 0, _cursorColumn + 1);
+    }
+    else for (int row = 0; row < _rows; row++) erase(row, 0, _columns);
+  }
+
+  private void eraseLine(int mode) {
+    if (mode == 0) erase(_cursorRow, _cursorColumn, _columns);
+    else if (mode == 1) erase(_cursorRow, 0, _cursorColumn + 1);
+    else erase(_cursorRow, 0, _columns);
+  }
+
+  /** Shifts the rest of the cursor's row n cells to the right, losing the cells at the end. */
+  private void insertChars(int n) {
+    n = Math.min(n, _columns - _cursorColumn);
+    int start = _cursorRow * _columns;
+    int from = start + _cursorColumn;
+    int len = _columns - _cursorColumn - n;
+    System.arraycopy(_chars, from, _chars, from + n, len);
+    System.arraycopy(_styles, from, _styles, from + n, len);
+    erase(_cursorRow, _cursorColumn, _cursorColumn + n);
+    _wrapPending = false;
+  }
+
+  /** Removes n cells at the cursor, shifting the rest of the row to the left. */
+  private void deleteChars(int n) {
+    n = Math.min(n, _columns - _cursorColumn);
+    int start = _cursorRow * _columns;
+    int from = start + _cursorColumn;
+    int len = _columns - _cursorColumn - n;
+    System.arraycopy(_chars, from + n, _chars, from, len);
+    System.arraycopy(_styles, from + n, _styles, from, len);
+    erase(_cursorRow, _columns - n, _columns);
+    _wrapPending = false;
+  }
+
+  /** Inserts n blank lines at the cursor, pushing the lines below down within the region. */
+  private void insertLines(int n) {
+    if (_cursorRow < _top || _cursorRow > _bottom) return;
+    scrollDown(_cursorRow, _bottom, n);
+    _cursorColumn = 0;
+  }
+
+  /** Removes n lines at the cursor, pulling the lines below up within the region. */
+  private void deleteLines(int n) {
+    if (_cursorRow < _top || _cursorRow > _bottom) return;
+    scrollUp(_cursorRow, _bottom, n);
+    _cursorColumn = 0;
+  }
+
+  /** Moves the rows top+n..bottom up by n rows, and clears the n rows at the bottom. */
+  private void scrollUp(int top, int bottom, int n) {
+    n = Math.min(n, bottom - top + 1);
+    int len = (bottom - top + 1 - n) * _columns;
+    System.arraycopy(_chars, (top + n) * _columns, _chars, top * _columns, len);
+    System.arraycopy(_styles, (top + n) * _columns, _styles, top * _columns, len);
+    for (int row = bottom - n + 1; row <= bottom; row++) erase(row, 0, _columns);
+    damage(top, bottom + 1);
+  }
+
+  /** Moves the rows top..bottom-n down by n rows, and clears the n rows at the top. */
+  private void scrollDown(int top, int bottom, int n) {
+    n = Math.min(n, bottom - top + 1);
+    int len = (bottom - top + 1 - n) * _columns;
+    System.arraycopy(_chars, top * _columns, _chars, (top + n) * _columns, len);
+    System.arraycopy(_styles, top * _columns, _styles, (top + n) * _columns, len);
+    for (int row = top; row < top + n; row++) erase(row, 0, _columns);
+    damage(top, bottom + 1);
+  }
+}
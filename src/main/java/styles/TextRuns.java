@@ -0,0 +1,109 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.styles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import turtle.interfaces.immutable.CharacterLayout;
+import turtle.interfaces.immutable.LayoutedText;
+
+/**
+ * A TextRuns object is a LayoutedText whose parts are slices of other strings (typically the text
+ * that arrived from the server), each with its own layout.  The slices are only turned into
+ * strings when they are asked for, and a slice covering a whole string is returned as is, so
+ * building a TextRuns does not copy any text.
+ *
+ * Like a PartitionedLayoutedText, a TextRuns is built in steps; it should not be changed once it
+ * has been passed on as a LayoutedText.  Consecutive parts may have the same layout (for instance
+ * when an entity was decoded in the middle of a word).
+ */
+public class TextRuns implements LayoutedText {
+  private ArrayList<String> _sources;
+  private ArrayList<CharacterLayout> _styles;
+  private int[] _starts;
+  private int[] _ends;
+  private String[] _parts;
+
+  /** Creates an empty TextRuns, with no text. */
+  public TextRuns() {
+    _sources = new ArrayList<String>();
+    _styles = new ArrayList<CharacterLayout>();
+    _starts = new int[4];
+    _ends = new int[4];
+    _parts = null;
+  }
+
+  /**
+   * Adds source[start..end-1] with the given layout.  If this directly continues the previous
+   * part (same source, same layout object), that part is extended instead.
+   */
+  public void append(String source, int start, int end, CharacterLayout layout) {
+    if (end <= start) return;
+    int n = _sources.size();
+    if (n > 0 && _sources.get(n - 1) == source && _ends[n - 1] == start &&
+        _styles.get(n - 1) == layout) {
+      _ends[n - 1] = end;
+      return;
+    }
+    if (n == _starts.length) {
+      _starts = Arrays.copyOf(_starts, 2 * n);
+      _ends = Arrays.copyOf(_ends, 2 * n);
+    }
+    _sources.add(source);
+    _styles.add(layout);
+    _starts[n] = start;
+    _ends[n] = end;
+    _parts = null;
+  }
+
+  /** Adds the whole of the given string with the given layout. */
+  public void append(String txt, CharacterLayout layout) {
+    append(txt, 0, txt.length(), layout);
+  }
+
+  public int numParts() {
+    return _sources.size();
+  }
+
+  public String getPart(int part) {
+    if (_parts == null) _parts = new String[_sources.size()];
+    if (_parts[part] == null) {
+      String source = _sources.get(part);
+      if (_starts[part] == 0 && _ends[part] == source.length()) _parts[part] = source;
+      else _parts[part] = source.substring(_starts[part], _ends[part]);
+    }
+    return _parts[part];
+  }
+
+  public CharacterLayout getStyle(int part) {
+    return _styles.get(part);
+  }
+
+  public String getFullString() {
+    if (numParts() == 1) return getPart(0);
+    StringBuilder ret = new StringBuilder();
+    for (int i = 0; i < _sources.size(); i++) ret.append(_sources.get(i), _starts[i], _ends[i]);
+    return ret.toString();
+  }
+
+  public boolean isEmpty() {
+    return _sources.size() == 0;
+  }
+}
@@ -0,0 +1,229 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.timers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A TimingWheel runs actions after a given delay.  It is meant to hold many timers at once (all
+ * timers of all sessions share a single wheel, and a single thread), so both scheduling and
+ * cancelling a timer take constant time.
+ *
+ * Time is divided in ticks of TICK milliseconds.  The wheel consists of a power of two buckets,
+ * each holding a doubly linked list of the timers that expire at a tick with that remainder
+ * (modulo the number of buckets); timers that are further away than one turn of the wheel keep
+ * track of how many turns they still have to wait.  At every tick, only the current bucket is
+ * examined.
+ *
+ * Timers may be scheduled and cancelled from any thread; these requests are queued, and handled
+ * by the ticking thread at the start of the next tick.  Actions are run on the ticking thread, so
+ * they should be short (typically, passing something on to the event queue).
+ *
+ * A wheel can run in real time, using its own daemon thread (see start()), or in virtual time,
+ * where the owner moves time forward by calling advance(); the latter is useful for testing.
+ */
+public class TimingWheel {
+  public static final long TICK = 50;
+  public static final int DEFAULT_SIZE = 512;
+  private static final long MAXDELAY = Long.MAX_VALUE / 4;
+
+  private static final int WAITING = 0;
+  private static final int CANCELLED = 1;
+  private static final int EXPIRED = 2;
+  private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+    AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "_state");
+
+  private static TimingWheel _shared = null;
+
+  /** A Timeout is the handle of a single scheduled action, which can be used to cancel it. */
+  public static class Timeout {
+    private TimingWheel _wheel;
+    private Runnable _action;
+    private long _deadline;
+    private long _rounds;
+    private int _bucket;
+    private Timeout _previous;
+    private Timeout _next;
+    volatile int _state;
+
+    private Timeout(TimingWheel wheel, Runnable action, long deadline) {
+      _wheel = wheel;
+      _action = action;
+      _deadline = deadline;
+      _bucket = -1;
+      _state = WAITING;
+    }
+
+    /**
+     * Cancels the action, if it has not run yet; returns whether this was successful.  The timer
+     * is removed from the wheel at the next tick.
+     */
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, WAITING, CANCELLED)) return false;
+      _wheel._cancelled.add(this);
+      return true;
+    }
+
+    public boolean isCancelled() { return _state == CANCELLED; }
+    public boolean isExpired() { return _state == EXPIRED; }
+  }
+
+  private Timeout[] _buckets;
+  private int _mask;
+  private volatile long _tick;
+  private ConcurrentLinkedQueue<Timeout> _pending;
+  private ConcurrentLinkedQueue<Timeout> _cancelled;
+  private Thread _ticker;
+  private volatile boolean _stopped;
+
+  /** Creates a wheel with the given number of buckets (rounded up to a power of two). */
+  public TimingWheel(int size) {
+    int buckets = 1;
+    while (buckets < size) buckets *= 2;
+    _buckets = new Timeout[buckets];
+    _mask = buckets - 1;
+    _tick = 0;
+    _pending = new ConcurrentLinkedQueue<Timeout>();
+    _cancelled = new ConcurrentLinkedQueue<Timeout>();
+    _ticker = null;
+    _stopped = false;
+  }
+
+  /** Returns the wheel that is shared by all sessions; it is started when first requested. */
+  public static synchronized TimingWheel shared() {
+    if (_shared == null) {
+      _shared = new TimingWheel(DEFAULT_SIZE);
+      _shared.start();
+    }
+    return _shared;
+  }
+
+  /**
+   * Schedules the given action to be run after the given delay (in milliseconds, rounded up to a
+   * whole number of ticks).  Delays are capped at MAXDELAY, so the deadline cannot overflow.
+   * This may be called from any thread.
+   */
+  public Timeout schedule(Runnable action, long delay) {
+    long ticks = (Math.min(Math.max(delay, 0), MAXDELAY) + TICK - 1) / TICK;
+    Timeout timeout = new Timeout(this, action, _tick + ticks);
+    _pending.add(timeout);
+    return timeout;
+  }
+
+  /** Returns the number of ticks that have passed since the wheel was created. */
+  public long queryTick() {
+    return _tick;
+  }
+
+  private void link(Timeout timeout, int bucket) {
+    timeout._bucket = bucket;
+    timeout._previous = null;
+    timeout._next = _buckets[bucket];
+    if (_buckets[bucket] != null) _buckets[bucket]._previous = timeout;
+    _buckets[bucket] = timeout;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout._previous != null) timeout._previous._next = timeout._next;
+    else _buckets[timeout._bucket] = timeout._next;
+    if (timeout._next != null) timeout._next._previous = timeout._previous;
+    timeout._previous = null;
+    timeout._next = null;
+    timeout._bucket = -1;
+  }
+
+  /** Places newly scheduled timers in their bucket, as seen from the given (upcoming) tick. */
+  private void transferPending(long tick) {
+    Timeout timeout;
+    while ((timeout = _pending.poll()) != null) {
+      if (timeout._state != WAITING) continue;
+      long deadline = Math.max(timeout._deadline, tick);
+      timeout._rounds = (deadline - tick) / _buckets.length;
+      link(timeout, (int)(deadline & _mask));
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = _cancelled.poll()) != null) {
+      if (timeout._bucket != -1) unlink(timeout);
+    }
+  }
+
+  /** Moves the wheel forward by one tick, running all actions that expire at that tick. */
+  private void processTick() {
+    long tick = _tick + 1;
+    removeCancelled();
+    transferPending(tick);
+    int bucket = (int)(tick & _mask);
+    Timeout timeout = _buckets[bucket];
+    while (timeout != null) {
+      Timeout next = timeout._next;
+      if (timeout._rounds > 0) timeout._rounds--;
+      else {
+        unlink(timeout);
+        if (STATE.compareAndSet(timeout, WAITING, EXPIRED)) {
+          // a failing action should not stop the other timers
+          try { timeout._action.run(); }
+          catch (RuntimeException e) { }
+        }
+      }
+      timeout = next;
+    }
+    _tick = tick;
+  }
+
+  /**
+   * Moves virtual time forward by the given number of milliseconds (rounded down to whole ticks),
+   * running all actions that expire along the way.  This may only be used for wheels that have
+   * not been started.
+   */
+  public void advance(long millis) {
+    if (_ticker != null) throw new Error("Cannot advance a TimingWheel that runs in real time.");
+    for (long i = 0; i < millis / TICK; i++) processTick();
+  }
+
+  /** Starts a daemon thread that moves the wheel forward in real time. */
+  public synchronized void start() {
+    if (_ticker != null) return;
+    _ticker = new Thread(new Runnable() {
+      public void run() {
+        long next = System.nanoTime();
+        while (!_stopped) {
+          next += TICK * 1000000;
+          long wait = next - System.nanoTime();
+          if (wait > 0) {
+            try { Thread.sleep(wait / 1000000, (int)(wait % 1000000)); }
+            catch (InterruptedException e) { }
+          }
+          processTick();
+        }
+      }
+    }, "TimingWheel");
+    _ticker.setDaemon(true);
+    _ticker.start();
+  }
+
+  /** Stops the ticking thread; timers that have not expired yet will never run. */
+  public void stop() {
+    _stopped = true;
+  }
+}
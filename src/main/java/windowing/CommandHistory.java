@@ -0,0 +1,289 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.windowing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import turtle.search.TrigramIndex;
+
+/**
+ * The CommandHistory remembers every distinct command the user has given (up to a large maximum),
+ * across sessions, and allows searching through them.  Whereas the InputHistory is a short list
+ * for browsing with the arrow keys, this is the full record used for reverse search.
+ *
+ * Every command is kept only once: using a command again moves it to the front.  Internally, each
+ * use gets a new (increasing) id and the old id becomes dead, so that ids are in order of last
+ * use; a hash map from commands to ids takes care of the deduplication, and a TrigramIndex makes
+ * substring search fast.  When there are many dead ids, or too many commands, the structures are
+ * rebuilt.
+ *
+ * The history is saved in a file to which every command is appended as it is given, one per line.
+ * Since the file therefore also contains repetitions, it is rewritten when it is loaded and turns
+ * out to have grown much larger than the history it describes.  Loading normally happens on a
+ * background thread (see open()); commands given in the meantime are added after the loaded ones.
+ *
+ * All public functions are thread-safe.
+ */
+public class CommandHistory {
+  public static final int DEFAULT_MAXENTRIES = 200000;
+  private static final int MINREWRITE = 1000;
+
+  private File _file;
+  private Writer _out;
+  private int _maxEntries;
+  private ArrayList<String> _entries;       // by id; null for dead ids
+  private HashMap<String,Integer> _ids;
+  private TrigramIndex _index;
+  private int _live;
+  private boolean _loaded;
+  private int _fileEntries;
+  private ArrayList<String> _pending;       // commands given while loading
+
+  /**
+   * Creates a history that is saved in the given file (if not null), and holds at most maxEntries
+   * commands.  The file is not loaded until load() is called; until then, the history only holds
+   * the commands added to it.
+   */
+  public CommandHistory(File file, int maxEntries) {
+    _file = file;
+    _out = null;
+    _maxEntries = maxEntries;
+    _entries = new ArrayList<String>();
+    _ids = new HashMap<String,Integer>();
+    _index = new TrigramIndex();
+    _live = 0;
+    _loaded = file == null;
+    _fileEntries = 0;
+    _pending = new ArrayList<String>();
+  }
+
+  /** Creates a history for the given file, and starts loading it on a daemon thread. */
+  public static CommandHistory open(File file) {
+    final CommandHistory history = new CommandHistory(file, DEFAULT_MAXENTRIES);
+    Thread loader = new Thread(new Runnable() {
+        public void run() {
+          try { history.load(); }
+          catch (IOException e) { history.markLoaded(); }
+        }
+      }, "CommandHistory");
+    loader.setDaemon(true);
+    loader.start();
+    return history;
+  }
+
+  /** Returns the default history file, in the user's home directory. */
+  public static File defaultFile() {
+    return new File(System.getProperty("user.home"), ".turtle_history");
+  }
+
+  /** Adds the given command to the history in memory (without saving it). */
+  private void insert(String command) {
+    Integer old = _ids.get(command);
+    if (old != null) { _entries.set(old, null); _live--; }
+    int id = _entries.size();
+    _entries.add(command);
+    _ids.put(command, id);
+    _index.add(id, command.toLowerCase());
+    _live++;
+  }
+
+  /**
+   * Rebuilds the structures from the live entries, keeping only the _maxEntries most recent ones,
+   * and returns them from old to new.
+   */
+  private ArrayList<String> rebuild() {
+    ArrayList<String> live = queryRecent(_maxEntries);
+    _entries = new ArrayList<String>(live.size());
+    _ids = new HashMap<String,Integer>();
+    _index = new TrigramIndex();
+    _live = 0;
+    for (String command : live) insert(command);
+    return live;
+  }
+
+  /** Adds the given command to the history, and appends it to the history file. */
+  public synchronized void add(String command) {
+    if (command == null || command.equals("")) return;
+    insert(command);
+    if (!_loaded) _pending.add(command);
+    if (_entries.size() > 2 * _maxEntries) {
+      ArrayList<String> live = rebuild();
+      if (_loaded) { rewrite(live); return; }
+    }
+    append(command);
+  }
+
+  /** Escapes backslashes and newlines, so every command takes exactly one line in the file. */
+  private static String escape(String command) {
+    if (command.indexOf('\\') < 0 && command.indexOf('\n') < 0) return command;
+    return command.replace("\\", "\\\\").replace("\n", "\\n");
+  }
+
+  private static String unescape(String line) {
+    if (line.indexOf('\\') < 0) return line;
+    StringBuilder ret = new StringBuilder(line.length());
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\\' && i + 1 < line.length()) {
+        c = line.charAt(++i);
+        if (c == 'n') c = '\n';
+      }
+      ret.append(c);
+    }
+    return ret.toString();
+  }
+
+  private void append(String command) {
+    if (_file == null) return;
+    try {
+      if (_out == null) {
+        _out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file, true),
+                                                         StandardCharsets.UTF_8));
+      }
+      _out.write(escape(command));
+      _out.write('\n');
+      _out.flush();
+    }
+    catch (IOException e) { _file = null; }   // stop saving, but keep the history in memory
+  }
+
+  /** Replaces the history file by one holding exactly the given commands. */
+  private void rewrite(ArrayList<String> commands) {
+    if (_file == null) return;
+    File temp = new File(_file.getPath() + ".new");
+    try {
+      if (_out != null) { _out.close(); _out = null; }
+      try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp),
+                                                                   StandardCharsets.UTF_8))) {
+        for (String command : commands) { out.write(escape(command)); out.write('\n'); }
+      }
+      if (!temp.renameTo(_file)) {
+        _file.delete();
+        if (!temp.renameTo(_file)) throw new IOException("Could not replace " + _file);
+      }
+    }
+    catch (IOException e) { _file = null; }
+  }
+
+  /**
+   * Reads the history file.  The file is parsed without holding the lock (so the history can be
+   * used in the meantime), and the result then replaces the current contents, followed by the
+   * commands added while loading.
+   */
+  public void load() throws IOException {
+    File file;
+    synchronized (this) {
+      if (_loaded) return;
+      file = _file;
+    }
+    CommandHistory loaded = new CommandHistory(null, _maxEntries);
+    int lines = 0;
+    if (file.exists()) {
+      try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                                 new FileInputStream(file), StandardCharsets.UTF_8), 65536)) {
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (line.equals("")) continue;
+          loaded.insert(unescape(line));
+          lines++;
+          if (loaded._entries.size() > 2 * _maxEntries) loaded.rebuild();
+        }
+      }
+    }
+    synchronized (this) {
+      ArrayList<String> live = loaded.rebuild();
+      _fileEntries = live.size();
+      _entries = loaded._entries;
+      _ids = loaded._ids;
+      _index = loaded._index;
+      _live = loaded._live;
+      for (String command : _pending) insert(command);
+      _pending.clear();
+      _loaded = true;
+      if (lines > MINREWRITE && lines > 2 * _fileEntries) rewrite(queryRecent(_maxEntries));
+    }
+  }
+
+  private synchronized void markLoaded() {
+    _loaded = true;
+    _pending.clear();
+  }
+
+  /** Returns whether the history file has been loaded. */
+  public synchronized boolean isLoaded() {
+    return _loaded;
+  }
+
+  /** Returns how many commands were read from the history file. */
+  public synchronized int queryFileEntries() {
+    return _fileEntries;
+  }
+
+  /** Returns the number of distinct commands in the history. */
+  public synchronized int size() {
+    return _live;
+  }
+
+  /** Returns (at most) the n most recently used commands, from old to new. */
+  public synchronized ArrayList<String> queryRecent(int n) {
+    ArrayList<String> ret = new ArrayList<String>();
+    for (int id = _entries.size() - 1; id >= 0 && ret.size() < n; id--) {
+      if (_entries.get(id) != null) ret.add(_entries.get(id));
+    }
+    Collections.reverse(ret);
+    return ret;
+  }
+
+  /** Returns an id that is higher than all ids in use, as a starting point for search(). */
+  public synchronized int queryEnd() {
+    return _entries.size();
+  }
+
+  /** Returns the command with the given id, or null if the id is not in use. */
+  public synchronized String queryEntry(int id) {
+    if (id < 0 || id >= _entries.size()) return null;
+    return _entries.get(id);
+  }
+
+  /**
+   * Returns the id of the most recently used command that contains the given query (ignoring
+   * case), among those with an id below before; if there is none, -1 is returned.  Searching
+   * again with the result as before gives the next older match.
+   */
+  public synchronized int search(String query, int before) {
+    String lower = query.toLowerCase();
+    for (int id = _index.findBefore(lower, before); id >= 0; id = _index.findBefore(lower, id)) {
+      String command = _entries.get(id);
+      if (command != null && command.toLowerCase().contains(lower)) return id;
+    }
+    return -1;
+  }
+}
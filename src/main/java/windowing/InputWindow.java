@@ -22,25 +22,53 @@ package turtle.windowing;
 import javax.swing.*;
 import java.awt.event.*;
 import java.awt.Font;
+import java.util.ArrayList;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
 import turtle.interfaces.windowing.InputWindowComponent;
 import turtle.interfaces.windowing.InputWindowEventListener;
+import turtle.interfaces.EventListener;
 import turtle.EventBus;
+import turtle.events.TelnetEvent;
 import turtle.events.UserInputEvent;
 import turtle.commands.ScrollCommand;
+import turtle.completion.WordCompleter;
 
-/** This class is a wrapper for the textbox at the bottom of Turtle, where users input text. */
-public class InputWindow implements InputWindowEventListener {
+/**
+ * This class is a wrapper for the textbox at the bottom of Turtle, where users input text.
+ * Commands are remembered for browsing and searching, except for lines given while the server
+ * has taken over echoing (which it does for passwords), and lines that start with a space.
+ */
+public class InputWindow implements InputWindowEventListener, EventListener {
   private JComponent _component;
   private InputWindowComponent _iwc;
   private InputHistory _history;
+  private WordCompleter _completer;
+  private ArrayList<String> _completions;   // null when not completing
+  private int _completionIndex;             // _completions.size() means the original word
+  private String _completionBase;           // the text before the word being completed
+  private String _completionWord;           // the word as the user typed it
+  private CommandHistory _store;
+  private boolean _seeded;
+  private boolean _searching;
+  private String _searchOriginal;           // the text before the search was started
+  private int _searchResult;                // the id of the current match, or -1
+  private boolean _serverEcho;              // the server said WILL ECHO, so input is hidden
+
+  private static final int BROWSESIZE = 1000;
+  private static final int TELOPT_ECHO = 1;
 
   private static final KeyStroke ENTERSTROKE = KeyStroke.getKeyStroke("ENTER");
   private static final KeyStroke UPSTROKE = KeyStroke.getKeyStroke("UP");
   private static final KeyStroke DOWNSTROKE = KeyStroke.getKeyStroke("DOWN");
   private static final KeyStroke PAGEUPSTROKE = KeyStroke.getKeyStroke("PAGE_UP");
   private static final KeyStroke PAGEDOWNSTROKE = KeyStroke.getKeyStroke("PAGE_DOWN");
+  private static final KeyStroke TABSTROKE = KeyStroke.getKeyStroke("TAB");
+  private static final KeyStroke ESCAPESTROKE = KeyStroke.getKeyStroke("ESCAPE");
+  private static final KeyStroke CTRLRSTROKE = KeyStroke.getKeyStroke(KeyEvent.VK_R,
+                                                                      InputEvent.CTRL_DOWN_MASK);
   private static final KeyStroke ALTSPACESTROKE = KeyStroke.getKeyStroke(KeyEvent.VK_SPACE,
-                                                                         InputEvent.ALT_MASK);
+                                                                         InputEvent.ALT_DOWN_MASK);
 
   public InputWindow() {
     InputWindowTextField x = new InputWindowTextField(this);
@@ -48,13 +76,27 @@ public class InputWindow implements InputWindowEventListener {
     _component = x;
     _iwc = x;
     setupHistory();
+    _store = CommandHistory.open(CommandHistory.defaultFile());
+    _completer = new WordCompleter();
+    EventBus.registerEventListener(_completer);
+    EventBus.registerEventListener(this);
+    _completions = null;
+    _seeded = false;
+    _searching = false;
+    _serverEcho = false;
     registerImportantKeys();
   }
 
-  private InputWindow(InputWindowComponent iwc, InputHistory history) {
+  private InputWindow(InputWindowComponent iwc, InputHistory history, WordCompleter completer) {
     _component = null;
     _iwc = iwc;
     _history = history;
+    _store = new CommandHistory(null, CommandHistory.DEFAULT_MAXENTRIES);
+    _completer = completer;
+    _completions = null;
+    _seeded = false;
+    _searching = false;
+    _serverEcho = false;
     registerImportantKeys();
   }
 
@@ -64,7 +106,13 @@ public class InputWindow implements InputWindowEventListener {
    * will return null.
    */
   public static InputWindow createTestWindow(InputWindowComponent comp, InputHistory hist) {
-    return new InputWindow(comp, hist);
+    return new InputWindow(comp, hist, new WordCompleter(false, WordCompleter.DEFAULT_MAXWORDS));
+  }
+
+  /** Exclusively used for unit testing, like the function above. */
+  public static InputWindow createTestWindow(InputWindowComponent comp, InputHistory hist,
+                                             WordCompleter completer) {
+    return new InputWindow(comp, hist, completer);
   }
  
   public void setFont(Font font) {
@@ -82,16 +130,26 @@ public class InputWindow implements InputWindowEventListener {
     _iwc.registerSignificantKeystroke(PAGEUPSTROKE);
     _iwc.registerSignificantKeystroke(PAGEDOWNSTROKE);
     _iwc.registerSignificantKeystroke(ALTSPACESTROKE);
+    _iwc.registerSignificantKeystroke(TABSTROKE);
+    _iwc.registerSignificantKeystroke(ESCAPESTROKE);
+    _iwc.registerSignificantKeystroke(CTRLRSTROKE);
   }
 
   /** Called by the InputWindowComponent when a relevant key event occurs. */
   public void specialKeyEvent(KeyStroke k) {
+    if (_searching && !k.equals(ENTERSTROKE) && !k.equals(CTRLRSTROKE)) {
+      // any other key ends the search; escape goes back to the original text
+      endSearch(!k.equals(ESCAPESTROKE));
+      return;
+    }
+    if (k.equals(CTRLRSTROKE)) searchHistory();
     if (k.equals(ENTERSTROKE)) enterPressed();
     if (k.equals(UPSTROKE)) historyBrowse(1);
     if (k.equals(DOWNSTROKE)) historyBrowse(-1);
     if (k.equals(PAGEUPSTROKE)) doScrolling(ScrollCommand.Direction.UP);
     if (k.equals(PAGEDOWNSTROKE)) doScrolling(ScrollCommand.Direction.DOWN);
     if (k.equals(ALTSPACESTROKE)) doScrolling(ScrollCommand.Direction.TOGGLE);
+    if (k.equals(TABSTROKE)) completeWord();
   }
 
   private void doScrolling(ScrollCommand.Direction direction) {
@@ -101,17 +159,46 @@ public class InputWindow implements InputWindowEventListener {
   /** Called by the InputWindowComponent when the text in the underlying textfield has changed. */
   public void componentChanged() {
     resetHistoryBrowsing();
+    _completions = null;
+    if (_searching) updateSearch(_store.queryEnd());
   }
 
   private void enterPressed() {
+    _completions = null;
+    if (_searching) endSearch(true);
     String text = _iwc.getText();
     _iwc.selectAll();
     EventBus.eventOccurred(new UserInputEvent(text));
+    if (_serverEcho) return;
+    _completer.offer(text, true);
     _history.addHistoryItem(text);
+    if (!text.startsWith(" ")) _store.add(text);
+  }
+
+  /** Keeps track of whether the server echoes our input, so we know when a password is typed. */
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.DISCONNECT) _serverEcho = false;
+    if (kind != TurtleEvent.EventKind.TELNET) return;
+    TelnetCode code = ((TelnetEvent)event).queryTelnetCode();
+    if (code.queryOption() != TELOPT_ECHO) return;
+    if (code.queryCommand() == TelnetCode.WILL) _serverEcho = true;
+    if (code.queryCommand() == TelnetCode.WONT) _serverEcho = false;
   }
 
   private void setupHistory() {
-    _history = new InputHistory(100);
+    _history = new InputHistory(BROWSESIZE);
+  }
+
+  /**
+   * Once the history file has been loaded, the browsing history is replaced by the most recent
+   * commands from the file (which also include the commands given in this session).
+   */
+  private void seedHistory() {
+    if (_seeded || !_store.isLoaded()) return;
+    _seeded = true;
+    if (_store.queryFileEntries() == 0) return;
+    _history = new InputHistory(BROWSESIZE);
+    for (String command : _store.queryRecent(BROWSESIZE)) _history.addHistoryItem(command);
   }
 
   private void resetHistoryBrowsing() {
@@ -119,6 +206,8 @@ public class InputWindow implements InputWindowEventListener {
   }
 
   private void historyBrowse(int direction) {
+    _completions = null;
+    if (_history.queryCurrent() == null) seedHistory();
     // save current result in input history and immediately move to that point
     // (inputhistory will make sure not to add it if it's just the last item)
     if (_history.queryCurrent() == null) {
@@ -140,5 +229,67 @@ public class InputWindow implements InputWindowEventListener {
 
     if (browseText != null) _iwc.changeText(browseText);
   }
-}
 
+  /**
+   * Replaces the word before the end of the input by its most likely completion.  Pressing tab
+   * again (without typing in between) moves on to the next completion, and after the last one,
+   * back to the word as it was typed.
+   */
+  private void completeWord() {
+    if (_completions == null) {
+      String text = _iwc.getText();
+      int k = text.length();
+      while (k > 0 && Character.isLetterOrDigit(text.charAt(k - 1))) k--;
+      if (k == text.length()) return;
+      _completionBase = text.substring(0, k);
+      _completionWord = text.substring(k);
+      _completions = _completer.complete(_completionWord, 10);
+      if (_completions.size() == 0) { _completions = null; return; }
+      _completionIndex = 0;
+    }
+    else _completionIndex = (_completionIndex + 1) % (_completions.size() + 1);
+    if (_completionIndex == _completions.size()) {
+      _iwc.changeText(_completionBase + _completionWord);
+    }
+    else {
+      String completion = _completions.get(_completionIndex);
+      _iwc.changeText(_completionBase + _completionWord +
+                      completion.substring(_completionWord.length()));
+    }
+  }
+
+  /**
+   * Starts a reverse search through the command history, using the current text as the query, or
+   * if a search is already going on, moves to the next older match.  While searching, the match
+   * is shown as a suggestion next to the query, and every change to the query updates it.
+   */
+  private void searchHistory() {
+    if (!_searching) {
+      _searching = true;
+      _searchOriginal = _iwc.getText();
+      updateSearch(_store.queryEnd());
+    }
+    else if (_searchResult >= 0) {
+      int previous = _searchResult;
+      updateSearch(_searchResult);
+      if (_searchResult < 0) updateSearch(previous + 1);   // no older match: stay at this one
+    }
+  }
+
+  /** Looks for the most recent match for the current text below the given id, and shows it. */
+  private void updateSearch(int before) {
+    _searchResult = _store.search(_iwc.getText(), before);
+    String match = _store.queryEntry(_searchResult);
+    if (match == null) _iwc.showSuggestion("(reverse-i-search) no match");
+    else _iwc.showSuggestion("(reverse-i-search) " + match);
+  }
+
+  /** Stops searching, leaving either the current match or the original text in the component. */
+  private void endSearch(boolean accept) {
+    _searching = false;
+    _iwc.showSuggestion(null);
+    String match = _store.queryEntry(_searchResult);
+    if (!accept) _iwc.changeText(_searchOriginal);
+    else if (match != null) _iwc.changeText(match);
+  }
+}
@@ -23,6 +23,10 @@ import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import java.awt.event.*;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
 import turtle.interfaces.windowing.InputWindowComponent;
 import turtle.interfaces.windowing.InputWindowEventListener;
 
@@ -34,11 +38,14 @@ import turtle.interfaces.windowing.InputWindowEventListener;
 public class InputWindowTextField extends JTextField implements InputWindowComponent {
   private InputWindowEventListener _listener;
   private boolean _allowChangeEvents;
+  private String _suggestion;
 
   public InputWindowTextField(InputWindowEventListener l) {
     super();
     _listener = l;
     _allowChangeEvents = true;
+    _suggestion = null;
+    setFocusTraversalKeysEnabled(false);  // tab is used for word completion
 
     setupDocumentListener();
   }
@@ -81,5 +88,23 @@ public class InputWindowTextField extends JTextField implements InputWindowCompo
   public void deregisterSignificantKeystroke(KeyStroke k) {
     getInputMap().remove(k);
   }
-}
 
+  public void showSuggestion(String text) {
+    _suggestion = text;
+    repaint();
+  }
+
+  /** Paints the field, followed by the suggestion (if any) in grey, after the text. */
+  protected void paintComponent(Graphics g) {
+    super.paintComponent(g);
+    if (_suggestion == null) return;
+    FontMetrics metrics = g.getFontMetrics(getFont());
+    Insets insets = getInsets();
+    int x = insets.left + metrics.stringWidth(getText() + "   ");
+    int y = insets.top + (getHeight() - insets.top - insets.bottom - metrics.getHeight()) / 2 +
+            metrics.getAscent();
+    g.setColor(Color.GRAY);
+    g.setFont(getFont());
+    g.drawString(_suggestion, x, y);
+  }
+}
@@ -20,30 +20,68 @@
 package turtle.windowing;
 
 import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Desktop;
 import java.awt.EventQueue;
 import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+import java.net.URI;
+import java.util.regex.Pattern;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultCaret;
+import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Document;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import turtle.interfaces.immutable.CharacterLayout;
 import turtle.interfaces.immutable.LayoutedText;
+import turtle.EventBus;
+import turtle.commands.MudCommand;
+import turtle.events.WindowSizeEvent;
+import turtle.search.ScrollbackIndex;
+import turtle.statistics.Statistics;
+import turtle.styles.LinkLayout;
 
 /**
  * This class represents the main window of Turtle, where text is printed to the user.
  * The window has in-built scrolling functionality, that can be called from the outside.
+ * It keeps at most MAXLINES lines of scrollback, which can be searched; the text is therefore also
+ * kept in a ScrollbackIndex, which is trimmed together with the window.
+ * Text with a LinkLayout can be clicked on: the command of the link is then sent to the mud (or
+ * its url is opened in the browser, if it is a web page).
  */
 public class OutputWindow {
+  public static final int MAXLINES = 100000;
+  private static final int TRIMLINES = 1000;
+  private static final Color HIGHLIGHT = new Color(0, 90, 160);
+
   private JTextPane _textpane;
   private JScrollPane _scrollpane;
   private boolean _shouldScrollToBottom;
   private int _savedScrollPosition;
+  private ScrollbackIndex _index;
+  private String _findText;
+  private Pattern _findPattern;
+  private ScrollbackIndex.Match _found;
+  private int _inputLine;                   // where the echo of the last user input starts
+  private int _inputColumn;
+  private int _searchLine;                  // the same, for the input that started the search
+  private int _searchColumn;
+  private Object _highlight;
+  private int _columns;
+  private int _rows;
 
   public OutputWindow() {
     // set up the text field
@@ -58,23 +96,153 @@ public class OutputWindow {
     caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
     Document document = _textpane.getDocument();
     document.addDocumentListener(new ScrollingDocumentListener());
+    LinkMouseListener links = new LinkMouseListener();
+    _textpane.addMouseListener(links);
+    _textpane.addMouseMotionListener(links);
     _shouldScrollToBottom = false;
     _savedScrollPosition = -1;
+    _index = new ScrollbackIndex();
+    _findText = null;
+    _findPattern = null;
+    _found = null;
+    _inputLine = -1;
+    _inputColumn = 0;
+    _searchLine = -1;
+    _searchColumn = 0;
+    _highlight = null;
+    _columns = 0;
+    _rows = 0;
+    _scrollpane.getViewport().addComponentListener(new ComponentAdapter() {
+      public void componentResized(ComponentEvent e) { reportSize(); }
+    });
   }
 
   public void setFont(Font font) {
     _textpane.setFont(font);
+    reportSize();
+  }
+
+  /**
+   * Determines how many characters of the current font fit in the visible part of the window,
+   * and if this has changed, lets the rest of the program know with a WindowSizeEvent.
+   */
+  private void reportSize() {
+    Font font = _textpane.getFont();
+    if (font == null) return;
+    FontMetrics metrics = _textpane.getFontMetrics(font);
+    Insets insets = _textpane.getInsets();
+    int width = _scrollpane.getViewport().getExtentSize().width - insets.left - insets.right;
+    int height = _scrollpane.getViewport().getExtentSize().height - insets.top - insets.bottom;
+    int charWidth = metrics.charWidth('m');
+    if (charWidth <= 0 || metrics.getHeight() <= 0) return;
+    int columns = Math.max(width / charWidth, 0);
+    int rows = Math.max(height / metrics.getHeight(), 0);
+    if (columns == _columns && rows == _rows) return;
+    _columns = columns;
+    _rows = rows;
+    EventBus.eventOccurred(new WindowSizeEvent(columns, rows));
   }
 
   public void addText(LayoutedText text) {
+    long start = Statistics.startTimer();
     for (int i = 0; i < text.numParts(); i++) {
       CharacterLayout ag = text.getStyle(i);
       String part = text.getPart(i);
       Style style = ag.getStyle(_textpane);
       StyledDocument doc = _textpane.getStyledDocument();
-      try { doc.insertString(doc.getLength(), part, style); }
+      try {
+        doc.insertString(doc.getLength(), part, style);
+        _index.append(part);
+      }
       catch (BadLocationException e) { } 
     }
+    if (_index.queryLastLine() - _index.queryFirstLine() > MAXLINES + TRIMLINES) trim();
+    Statistics.stopTimer(Statistics.Stage.OUTPUT, start);
+  }
+
+  /** Removes the oldest lines, so only MAXLINES remain. */
+  private void trim() {
+    int lines = _index.queryLastLine() - _index.queryFirstLine() - MAXLINES;
+    int chars = _index.trim(lines);
+    try { _textpane.getStyledDocument().remove(0, chars); }
+    catch (BadLocationException e) { }
+    if (_found != null && _found.queryLine() < _index.queryFirstLine()) _found = null;
+  }
+
+  /**
+   * Remembers the current end of the text as the place where the echo of the user's input is about
+   * to be printed.  A search started by that input (#find, or Ctrl-F, which gives #find) skips the
+   * echo, which would otherwise always be the most recent match.
+   */
+  public void markInput() {
+    _inputLine = _index.queryLastLine();
+    _inputColumn = _index.queryLine(_inputLine).length();
+  }
+
+  /**
+   * Searches for the most recent line containing the given text (if pattern is null) or matching
+   * the given pattern, and shows it.  Returns whether a match was found.
+   */
+  public boolean find(String text, Pattern pattern) {
+    _findText = text;
+    _findPattern = pattern;
+    _found = null;
+    _searchLine = _inputLine;
+    _searchColumn = _inputColumn;
+    return findNext(-1);
+  }
+
+  /**
+   * Moves to the next match of the last search in the given direction: -1 for older lines, 1 for
+   * newer ones.  Returns false if there is no such match (or no search was done), in which case
+   * the current match remains selected.
+   */
+  public boolean findNext(int direction) {
+    if (_findText == null) return false;
+    int line = _found != null ? _found.queryLine()
+                              : (direction < 0 ? _index.queryLastLine() + 1 : -1);
+    ScrollbackIndex.Match match = search(line, direction);
+    while (match != null && inSearchEcho(match)) {
+      if (direction > 0) return false;    // everything after this is the echo
+      match = search(match.queryLine(), direction);
+    }
+    if (match == null) return false;
+    _found = match;
+    showMatch(match);
+    return true;
+  }
+
+  /** Returns the first match of the current search after or before the given line. */
+  private ScrollbackIndex.Match search(int line, int direction) {
+    if (_findPattern != null) {
+      if (direction < 0) return _index.findBefore(_findPattern, line);
+      else return _index.findAfter(_findPattern, line);
+    }
+    if (direction < 0) return _index.findBefore(_findText, line);
+    else return _index.findAfter(_findText, line);
+  }
+
+  /** Returns whether the given match (partly) lies in the echo of the input that searched. */
+  private boolean inSearchEcho(ScrollbackIndex.Match match) {
+    if (_searchLine < 0 || match.queryLine() < _searchLine) return false;
+    if (match.queryLine() > _searchLine) return true;
+    return match.queryEnd() - _index.queryOffset(_searchLine) > _searchColumn;
+  }
+
+  /** Highlights the given match, and scrolls it into view. */
+  private void showMatch(ScrollbackIndex.Match match) {
+    try {
+      if (_highlight != null) _textpane.getHighlighter().removeHighlight(_highlight);
+      _highlight = _textpane.getHighlighter().addHighlight(match.queryStart(), match.queryEnd(),
+                     new DefaultHighlighter.DefaultHighlightPainter(HIGHLIGHT));
+      Rectangle2D view = _textpane.modelToView2D(match.queryStart());
+      if (view == null) return;
+      Rectangle rect = view.getBounds();
+      _shouldScrollToBottom = false;
+      rect.height = Math.max(rect.height, 1);
+      _textpane.scrollRectToVisible(rect);
+    }
+    catch (BadLocationException e) { }
   }
 
   public JComponent queryComponent() {
@@ -141,6 +309,50 @@ public class OutputWindow {
     return (model.getExtent() + model.getValue()) >= model.getMaximum() - height - 1;
   }
 
+  /** Returns the link at the given point of the text pane, or null if there is none. */
+  private LinkLayout.Link linkAt(Point point) {
+    int pos = _textpane.viewToModel2D(point);
+    if (pos < 0) return null;
+    StyledDocument doc = _textpane.getStyledDocument();
+    Object link = doc.getCharacterElement(pos).getAttributes().getAttribute(LinkLayout.LINK);
+    if (link instanceof LinkLayout.Link) return (LinkLayout.Link)link;
+    return null;
+  }
+
+  /**
+   * This mouse listener follows links when they are clicked, and shows a hand cursor and the
+   * hint of a link while the mouse is over it.
+   */
+  private class LinkMouseListener extends MouseAdapter {
+    public void mouseClicked(MouseEvent e) {
+      LinkLayout.Link link = linkAt(e.getPoint());
+      if (link == null) return;
+      // the link comes from the server, so its command goes to the mud as it is, without being
+      // split or parsed as a client command, and only web pages are opened
+      if (link.queryCommand() != null) {
+        String command = link.queryCommand().replace('\r', ' ').replace('\n', ' ');
+        EventBus.commandGiven(new MudCommand(command));
+      }
+      else if (link.queryUrl() != null && Desktop.isDesktopSupported()) {
+        try {
+          URI uri = new URI(link.queryUrl());
+          String scheme = uri.getScheme();
+          if (scheme == null) return;
+          scheme = scheme.toLowerCase();
+          if (scheme.equals("http") || scheme.equals("https")) Desktop.getDesktop().browse(uri);
+        }
+        catch (Exception ex) { }
+      }
+    }
+
+    public void mouseMoved(MouseEvent e) {
+      LinkLayout.Link link = linkAt(e.getPoint());
+      _textpane.setCursor(Cursor.getPredefinedCursor(link == null ? Cursor.DEFAULT_CURSOR
+                                                                  : Cursor.HAND_CURSOR));
+      _textpane.setToolTipText(link == null ? null : link.queryHint());
+    }
+  }
+
   /**
    * This document listener, which is attached to the text pane on creation, makes sure that the
    * window is scrolled to the bottom whenever new text is added, except if it was already scrolled
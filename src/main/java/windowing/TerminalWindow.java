@@ -0,0 +1,189 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+package turtle.windowing;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import javax.swing.JComponent;
+import turtle.interfaces.immutable.CharacterLayout;
+import turtle.styles.TerminalGrid;
+
+/**
+ * This class represents the terminal screen, which can be shown instead of the output window for
+ * MUDs which use cursor movement (for instance for full-screen editors or status lines).
+ * Text is written to a TerminalGrid, and the rows of the grid are drawn onto an image; after
+ * every write, only the rows that the grid has marked as damaged are drawn again, and the
+ * component just copies the image to the screen (with the cursor on top).
+ */
+public class TerminalWindow {
+  private static final Color CURSOR = new Color(205, 205, 205);
+
+  private TerminalGrid _grid;
+  private TerminalPanel _panel;
+  private BufferedImage _image;
+  private Font _font;
+  private Font _boldFont;
+  private int _cellWidth;
+  private int _cellHeight;
+  private int _ascent;
+  private int _cursorRow;
+  private int _cursorColumn;
+  private boolean _cursorShown;
+
+  public TerminalWindow() {
+    _grid = new TerminalGrid();
+    _panel = new TerminalPanel();
+    _panel.setOpaque(true);
+    _panel.setBackground(Color.BLACK);
+    _image = null;
+    _font = null;
+    _cursorRow = 0;
+    _cursorColumn = 0;
+    _cursorShown = true;
+  }
+
+  public JComponent queryComponent() {
+    return _panel;
+  }
+
+  public void setFont(Font font) {
+    _font = font;
+    _boldFont = font.deriveFont(Font.BOLD);
+    FontMetrics metrics = _panel.getFontMetrics(font);
+    _cellWidth = Math.max(metrics.charWidth('m'), 1);
+    _cellHeight = Math.max(metrics.getHeight(), 1);
+    _ascent = metrics.getAscent();
+    redrawAll();
+  }
+
+  /** Writes text from the server (including escape codes) to the screen. */
+  public void write(String text) {
+    _grid.write(text);
+    update();
+  }
+
+  /** Changes the number of columns and rows of the screen, for instance when NAWS reports it. */
+  public void resize(int columns, int rows) {
+    if (columns <= 0 || rows <= 0) return;
+    if (columns == _grid.queryColumns() && rows == _grid.queryRows()) return;
+    _grid.resize(columns, rows);
+    redrawAll();
+  }
+
+  /** Clears the screen and forgets any partial escape codes, for instance after disconnecting. */
+  public void reset() {
+    _grid.reset();
+    update();
+  }
+
+  /** Creates a new image of the right size, and draws all rows onto it. */
+  private void redrawAll() {
+    if (_font == null) return;
+    _image = new BufferedImage(_grid.queryColumns() * _cellWidth, _grid.queryRows() * _cellHeight,
+                               BufferedImage.TYPE_INT_RGB);
+    _panel.setPreferredSize(new Dimension(_image.getWidth(), _image.getHeight()));
+    _grid.clearDamage();
+    Graphics g = _image.createGraphics();
+    for (int row = 0; row < _grid.queryRows(); row++) drawRow(g, row);
+    g.dispose();
+    _panel.repaint();
+  }
+
+  /**
+   * Draws the damaged rows of the grid onto the image, and asks for the parts of the component
+   * that have changed (including where the cursor was and is) to be repainted.
+   */
+  private void update() {
+    if (_image == null) return;
+    int width = _image.getWidth();
+    if (_grid.queryDamageCount() > 0) {
+      Graphics g = _image.createGraphics();
+      int rows = _grid.queryRows();
+      for (int row = _grid.nextDamagedRow(0); row != -1; ) {
+        int end = row;
+        while (end < rows && _grid.queryDamaged(end)) drawRow(g, end++);
+        _panel.repaint(0, row * _cellHeight, width, (end - row) * _cellHeight);
+        row = end < rows ? _grid.nextDamagedRow(end) : -1;
+      }
+      g.dispose();
+      _grid.clearDamage();
+    }
+    if (_cursorRow != _grid.queryCursorRow() || _cursorColumn != _grid.queryCursorColumn() ||
+        _cursorShown != _grid.queryCursorVisible()) {
+      repaintCell(_cursorRow, _cursorColumn);
+      _cursorRow = _grid.queryCursorRow();
+      _cursorColumn = _grid.queryCursorColumn();
+      _cursorShown = _grid.queryCursorVisible();
+      repaintCell(_cursorRow, _cursorColumn);
+    }
+  }
+
+  private void repaintCell(int row, int column) {
+    _panel.repaint(column * _cellWidth, row * _cellHeight, _cellWidth, _cellHeight);
+  }
+
+  /** Draws the given row onto the given graphics, in runs of cells with the same layout. */
+  private void drawRow(Graphics g, int row) {
+    int columns = _grid.queryColumns();
+    int y = row * _cellHeight;
+    char[] chars = new char[columns];
+    for (int col = 0; col < columns; col++) chars[col] = _grid.queryChar(row, col);
+    for (int start = 0; start < columns; ) {
+      int id = _grid.queryStyleId(row, start);
+      int end = start + 1;
+      while (end < columns && _grid.queryStyleId(row, end) == id) end++;
+      CharacterLayout layout = _grid.queryStyle(id);
+      Color front = layout.getFront().toJavaColor();
+      Color back = layout.getBack().toJavaColor();
+      if (layout.queryReverse()) { Color c = front; front = back; back = c; }
+      int x = start * _cellWidth;
+      int width = (end - start) * _cellWidth;
+      g.setColor(back);
+      g.fillRect(x, y, width, _cellHeight);
+      if (!layout.queryInvisible()) {
+        g.setColor(front);
+        g.setFont(layout.queryBold() ? _boldFont : _font);
+        g.drawChars(chars, start, end - start, x, y + _ascent);
+        if (layout.queryUnderline()) g.drawLine(x, y + _ascent + 1, x + width - 1, y + _ascent + 1);
+      }
+      start = end;
+    }
+  }
+
+  /** The component which shows the image, and the cursor on top of it. */
+  private class TerminalPanel extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    protected void paintComponent(Graphics g) {
+      g.setColor(getBackground());
+      g.fillRect(0, 0, getWidth(), getHeight());
+      if (_image == null) return;
+      g.drawImage(_image, 0, 0, null);
+      if (!_cursorShown) return;
+      g.setXORMode(CURSOR);
+      g.fillRect(_cursorColumn * _cellWidth, _cursorRow * _cellHeight, _cellWidth, _cellHeight);
+      g.setPaintMode();
+    }
+  }
+}
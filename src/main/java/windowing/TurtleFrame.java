@@ -19,32 +19,58 @@
 
 package turtle.windowing;
 
+import java.awt.CardLayout;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import javax.swing.*;
 import static javax.swing.GroupLayout.Alignment.*;
 import turtle.interfaces.immutable.Command;
 import turtle.interfaces.immutable.LayoutedText;
+import turtle.interfaces.immutable.TurtleEvent;
 import turtle.interfaces.CommandListener;
+import turtle.interfaces.EventListener;
 import turtle.interfaces.OutputTarget;
+import turtle.EventBus;
+import turtle.commands.FindCommand;
 import turtle.commands.ScrollCommand;
+import turtle.commands.TerminalCommand;
+import turtle.events.InformationEvent;
+import turtle.events.LatencyEvent;
+import turtle.events.MudTextEvent;
+import turtle.events.UserInputEvent;
+import turtle.events.WindowSizeEvent;
+import turtle.statistics.Statistics;
 
 /**
  * This class represents the main frame of Turtle.
  * Its responsibility is to show the appropriate windows to the user.
+ * In terminal mode, the terminal window is shown in the place of the output window, and text
+ * from the MUD is also written to it; the size of the terminal follows the size that is reported
+ * to the server, which is that of the output window.
  */
-public class TurtleFrame extends JFrame implements OutputTarget, CommandListener {
+public class TurtleFrame extends JFrame implements OutputTarget, CommandListener, EventListener {
   private InputWindow _input;
   private OutputWindow _output;
+  private TerminalWindow _terminal;
+  private JPanel _screens;
+  private boolean _terminalMode;
+  private JLabel _status;
   private Font _font;
+  private String _lastFind;
 
   /** Helper function for the constructor. */
   private void createDefaultWindows() {
     _input = new InputWindow();
     _output = new OutputWindow();
+    _terminal = new TerminalWindow();
+    _terminalMode = false;
+    _status = new JLabel(" ");
   }
 
   /** Helper function for the constructor. */
@@ -52,6 +78,7 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
     _font = new Font("Monospaced", Font.PLAIN, 14);
     _input.setFont(_font);
     _output.setFont(_font);
+    _terminal.setFont(_font);
   }
 
   /** Helper function for the constructor. */
@@ -66,8 +93,12 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
 
   /** Helper function for the constructor. */
   private void setupDefaultLayout() {
-    JComponent outputwindow = _output.queryComponent();
+    _screens = new JPanel(new CardLayout());
+    _screens.add(_output.queryComponent(), "output");
+    _screens.add(_terminal.queryComponent(), "terminal");
+    JComponent outputwindow = _screens;
     JComponent inputwindow = _input.queryComponent();
+    JComponent statusbar = _status;
 
     JPanel panel = new JPanel();
     GroupLayout layout = new GroupLayout(panel);
@@ -78,12 +109,15 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
     layout.setHorizontalGroup(layout.createParallelGroup(LEADING)
       .addComponent(outputwindow)
       .addComponent(inputwindow)
+      .addComponent(statusbar)
     );  
     
     layout.setVerticalGroup(layout.createSequentialGroup()
       .addComponent(outputwindow)
       .addComponent(inputwindow, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE,
                     GroupLayout.PREFERRED_SIZE)
+      .addComponent(statusbar, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE,
+                    GroupLayout.PREFERRED_SIZE)
     );  
 
     add(panel);
@@ -113,6 +147,36 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
     setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
   }
 
+  /**
+   * Helper function for the constructor: Ctrl-F asks what to search for in the output window,
+   * F3 moves to the next (older) match and Shift-F3 back to a more recent one.
+   */
+  private void setupFindKeys() {
+    InputMap inputs = getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+    ActionMap actions = getRootPane().getActionMap();
+    inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK), "find");
+    inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "find next");
+    inputs.put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, InputEvent.SHIFT_DOWN_MASK), "find previous");
+    actions.put("find", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        String query = JOptionPane.showInputDialog(TurtleFrame.this, "Find (use /.../ for a " +
+                                                   "regular expression):", _lastFind);
+        if (query == null || query.equals("")) return;
+        EventBus.eventOccurred(new UserInputEvent("#find " + query));
+      }
+    });
+    actions.put("find next", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        EventBus.commandGiven(new FindCommand(FindCommand.Action.NEXT, null, null));
+      }
+    });
+    actions.put("find previous", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        EventBus.commandGiven(new FindCommand(FindCommand.Action.PREVIOUS, null, null));
+      }
+    });
+  }
+
   /** Action for when the user indicates a desire to quit. */
   public void quit() {
     dispose();
@@ -127,6 +191,30 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
   /** Responds to Commands relevant to the windowing system. */
   public void commandGiven(Command.CommandKind kind, Command command) {
     if (kind == Command.CommandKind.SCROLLCMD) handleScrolling((ScrollCommand)command);
+    if (kind == Command.CommandKind.FINDCMD) handleFind((FindCommand)command);
+    if (kind == Command.CommandKind.TERMINALCMD) handleTerminal((TerminalCommand)command);
+  }
+
+  /** Responds to Events that are shown in the status bar or the terminal, and to user input. */
+  public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+    if (kind == TurtleEvent.EventKind.LATENCY) showLatency((LatencyEvent)event);
+    // the frame is registered before the InformationHandler, so this happens before the echo
+    if (kind == TurtleEvent.EventKind.USERINPUT) _output.markInput();
+    if (kind == TurtleEvent.EventKind.DISCONNECT) _status.setText(" ");
+    if (kind == TurtleEvent.EventKind.CONNECT) _terminal.reset();
+    if (kind == TurtleEvent.EventKind.MUDTEXT && _terminalMode) {
+      _terminal.write(((MudTextEvent)event).queryText());
+    }
+    if (kind == TurtleEvent.EventKind.WINDOWSIZE) {
+      WindowSizeEvent e = (WindowSizeEvent)event;
+      _terminal.resize(e.queryColumns(), e.queryRows());
+    }
+  }
+
+  private void showLatency(LatencyEvent event) {
+    _status.setText("Latency: " + Statistics.durationToString(event.queryLast()) +
+                    " (median " + Statistics.durationToString(event.queryMedian()) +
+                    ", p90 " + Statistics.durationToString(event.queryHigh()) + ")");
   }
 
   private void handleScrolling(ScrollCommand command) {
@@ -135,7 +223,44 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
     else if (command.queryDirection() == ScrollCommand.Direction.TOGGLE) _output.scrollToggle();
   }
 
+  /**
+   * Switches terminal mode on or off.  The terminal only receives text while it is shown, so when
+   * it is switched on, it starts with a clean screen.
+   */
+  private void handleTerminal(TerminalCommand command) {
+    boolean on = command.queryAction() == TerminalCommand.Action.TOGGLE ? !_terminalMode
+               : command.queryAction() == TerminalCommand.Action.ON;
+    if (on == _terminalMode) return;
+    _terminalMode = on;
+    if (on) _terminal.reset();
+    ((CardLayout)_screens.getLayout()).show(_screens, on ? "terminal" : "output");
+    inform("Terminal mode is now " + (on ? "on" : "off") + ".");
+  }
+
+  private void handleFind(FindCommand command) {
+    boolean found;
+    if (command.queryAction() == FindCommand.Action.SEARCH) {
+      _lastFind = command.queryText();
+      found = _output.find(command.queryText(), command.queryPattern());
+      if (!found) inform("No matches for " + _lastFind + ".");
+      return;
+    }
+    if (_lastFind == null) {
+      inform("Nothing to find yet: use #find <text> or #find /<regex>/.");
+      return;
+    }
+    int direction = command.queryAction() == FindCommand.Action.NEXT ? -1 : 1;
+    if (!_output.findNext(direction)) {
+      inform("No " + (direction < 0 ? "older" : "more recent") + " matches for " + _lastFind + ".");
+    }
+  }
+
+  private void inform(String txt) {
+    EventBus.eventOccurred(new InformationEvent(txt));
+  }
+
   public TurtleFrame() {
+    _lastFind = null;
     createDefaultWindows();
     setupDefaultFont();
     setupDefaultSize();
@@ -143,6 +268,7 @@ public class TurtleFrame extends JFrame implements OutputTarget, CommandListener
 
     setupWindowFocus();
     setupWindowClosing();
+    setupFindKeys();
 
     // finalise
     setTitle("Turtle");
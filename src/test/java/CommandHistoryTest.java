@@ -0,0 +1,170 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import turtle.search.TrigramIndex;
+import turtle.windowing.CommandHistory;
+
+public class CommandHistoryTest {
+  private File tempFile() throws Exception {
+    File file = File.createTempFile("turtle", ".history");
+    file.delete();
+    file.deleteOnExit();
+    return file;
+  }
+
+  private String find(CommandHistory history, String query) {
+    return history.queryEntry(history.search(query, history.queryEnd()));
+  }
+
+  @Test
+  public void testTrigramIndex() {
+    TrigramIndex index = new TrigramIndex();
+    index.add(0, "kill goblin");
+    index.add(1, "look");
+    index.add(3, "cast fireball at goblin");
+    index.add(4, "go");
+    assertTrue(index.findBefore("goblin", 10) == 3);
+    assertTrue(index.findBefore("goblin", 3) == 0);
+    assertTrue(index.findBefore("goblin", 0) == -1);
+    assertTrue(index.findBefore("dragon", 10) == -1);
+    assertTrue(index.findBefore("go", 10) == 4);
+    assertTrue(index.findBefore("lo", 3) == 1);
+    // trigrams match, but not the whole query: the index may return it, the caller should check
+    int k = index.findBefore("fire at", 10);
+    assertTrue(k == 3 || k == -1);
+  }
+
+  @Test
+  public void testDeduplication() {
+    CommandHistory history = new CommandHistory(null, 100);
+    history.add("north");
+    history.add("kill goblin");
+    history.add("north");
+    history.add("");
+    history.add("look");
+    assertTrue(history.size() == 3);
+    ArrayList<String> recent = history.queryRecent(10);
+    assertTrue(recent.size() == 3);
+    assertTrue(recent.get(0).equals("kill goblin"));
+    assertTrue(recent.get(1).equals("north"));
+    assertTrue(recent.get(2).equals("look"));
+  }
+
+  @Test
+  public void testSearch() {
+    CommandHistory history = new CommandHistory(null, 100);
+    history.add("kill goblin");
+    history.add("cast fireball at Goblin");
+    history.add("look");
+    history.add("get all from corpse");
+    assertTrue(find(history, "gob").equals("cast fireball at Goblin"));
+    assertTrue(find(history, "KILL").equals("kill goblin"));
+    assertTrue(find(history, "o").equals("get all from corpse"));
+    assertTrue(find(history, "").equals("get all from corpse"));
+    assertTrue(find(history, "fire at") == null);
+    int id = history.search("goblin", history.queryEnd());
+    id = history.search("goblin", id);
+    assertTrue(history.queryEntry(id).equals("kill goblin"));
+    assertTrue(history.search("goblin", id) == -1);
+    // using a command again makes it the most recent match
+    history.add("kill goblin");
+    assertTrue(find(history, "goblin").equals("kill goblin"));
+    id = history.search("goblin", history.queryEnd());
+    assertTrue(history.queryEntry(history.search("goblin", id)).equals("cast fireball at Goblin"));
+    assertTrue(history.search("goblin", history.search("goblin", id)) == -1);
+  }
+
+  @Test
+  public void testMaximum() {
+    CommandHistory history = new CommandHistory(null, 10);
+    for (int i = 0; i < 100; i++) history.add("say " + i);
+    assertTrue(history.size() <= 20);
+    assertTrue(find(history, "say 99").equals("say 99"));
+    assertTrue(find(history, "say 88").equals("say 88"));
+    assertTrue(find(history, "say 50") == null);
+    assertTrue(history.queryRecent(10).get(0).equals("say 90"));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    File file = tempFile();
+    CommandHistory history = new CommandHistory(file, 100);
+    history.load();
+    assertTrue(history.isLoaded());
+    history.add("say hello\\world");
+    history.add("north");
+    history.add("say two\nlines");
+    history.add("north");
+    CommandHistory loaded = new CommandHistory(file, 100);
+    // given before loading, so it ends up after the loaded commands (it is also saved right
+    // away, so it is part of the file that is read)
+    loaded.add("look");
+    assertTrue(!loaded.isLoaded());
+    loaded.load();
+    assertTrue(loaded.queryFileEntries() == 4);
+    ArrayList<String> recent = loaded.queryRecent(10);
+    assertTrue(recent.size() == 4);
+    assertTrue(recent.get(0).equals("say hello\\world"));
+    assertTrue(recent.get(1).equals("say two\nlines"));
+    assertTrue(recent.get(2).equals("north"));
+    assertTrue(recent.get(3).equals("look"));
+    assertTrue(find(loaded, "two").equals("say two\nlines"));
+  }
+
+  @Test
+  public void testRewriteOnLoad() throws Exception {
+    File file = tempFile();
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 3000; i++) text.append("say " + (i % 10) + "\n");
+    Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+    CommandHistory history = new CommandHistory(file, 100);
+    history.load();
+    assertTrue(history.size() == 10);
+    // the file has been rewritten without the repetitions
+    assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size() == 10);
+    history.add("say 3");
+    CommandHistory loaded = new CommandHistory(file, 100);
+    loaded.load();
+    assertTrue(loaded.size() == 10);
+    assertTrue(loaded.queryRecent(1).get(0).equals("say 3"));
+  }
+
+  @Test
+  public void testRebuildBeforeLoad() throws Exception {
+    File file = tempFile();
+    CommandHistory history = new CommandHistory(file, 2);
+    // enough commands to force rebuilds while the file is not loaded yet; all of them must still
+    // be saved
+    for (int i = 0; i < 6; i++) history.add("say " + i);
+    history.load();
+    assertTrue(history.queryRecent(1).get(0).equals("say 5"));
+    assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size() == 6);
+    CommandHistory loaded = new CommandHistory(file, 2);
+    loaded.load();
+    assertTrue(loaded.queryRecent(2).get(0).equals("say 4"));
+    assertTrue(loaded.queryRecent(2).get(1).equals("say 5"));
+  }
+}
@@ -28,7 +28,19 @@ import turtle.interfaces.EventListener;
 import turtle.EventBus;
 import turtle.events.UserInputEvent;
 import turtle.events.WarningEvent;
+import turtle.commands.CharsetCommand;
+import turtle.commands.DebugCommand;
+import turtle.commands.FanoutCommand;
+import turtle.commands.FindCommand;
+import turtle.commands.GotoCommand;
+import turtle.commands.LogGrepCommand;
+import turtle.commands.MapCommand;
 import turtle.commands.MudCommand;
+import turtle.commands.PaceCommand;
+import turtle.commands.PromptCommand;
+import turtle.commands.SessionCommand;
+import turtle.commands.TerminalCommand;
+import turtle.commands.TimerCommand;
 import turtle.handlers.CommandParsingHandler;
 
 public class CommandParsingHandlerTest {
@@ -140,5 +152,250 @@ public class CommandParsingHandlerTest {
     assertTrue(listener._events.get(1).queryEventKind() == TurtleEvent.EventKind.WARNING);
     assertTrue(listener._events.get(2) == null);
   }
-}
 
+  @Test
+  public void testParseUrgent() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("north;;#urgent  flee now");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 2);
+    assertFalse(((MudCommand)listener._commands.get(0)).queryUrgent());
+    MudCommand cmd = (MudCommand)listener._commands.get(1);
+    assertTrue(cmd.queryUrgent());
+    assertTrue(cmd.queryText().equals("flee now"));
+  }
+
+  @Test
+  public void testParsePace() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#pace 2.5 4;;#pace off;;#pace fast;;#stop");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 4);
+    PaceCommand pace = (PaceCommand)listener._commands.get(0);
+    assertTrue(pace.queryAction() == PaceCommand.Action.SET);
+    assertTrue(pace.queryRate() == 2.5);
+    assertTrue(pace.queryBurst() == 4);
+    pace = (PaceCommand)listener._commands.get(1);
+    assertTrue(pace.queryAction() == PaceCommand.Action.OFF);
+    assertTrue(listener._events.get(2).queryEventKind() == TurtleEvent.EventKind.WARNING);
+    assertTrue(listener._commands.get(3).queryCommandKind() == Command.CommandKind.STOPCMD);
+  }
+
+  @Test
+  public void testParseTimer() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#timer;;#timer heal 2.5 cast heal me;;#timer heal off;;" +
+                                       "#delay 3 look;;#timer heal soon look;;" +
+                                       "#delay 1e300 look;;#delay Infinity look");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 7);
+    TimerCommand timer = (TimerCommand)listener._commands.get(0);
+    assertTrue(timer.queryAction() == TimerCommand.Action.LIST);
+    timer = (TimerCommand)listener._commands.get(1);
+    assertTrue(timer.queryAction() == TimerCommand.Action.ADD);
+    assertTrue(timer.queryName().equals("heal"));
+    assertTrue(timer.querySeconds() == 2.5);
+    assertTrue(timer.queryCommand().equals("cast heal me"));
+    timer = (TimerCommand)listener._commands.get(2);
+    assertTrue(timer.queryAction() == TimerCommand.Action.REMOVE);
+    timer = (TimerCommand)listener._commands.get(3);
+    assertTrue(timer.queryAction() == TimerCommand.Action.ONCE);
+    assertTrue(timer.queryCommand().equals("look"));
+    assertTrue(listener._events.get(4).queryEventKind() == TurtleEvent.EventKind.WARNING);
+    assertTrue(listener._events.get(5).queryEventKind() == TurtleEvent.EventKind.WARNING);
+    assertTrue(listener._events.get(6).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParseMap() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#map;;#map save;;#map load my maps/a.map;;#map clear;;" +
+                                       "#map draw;;#goto 1234;;#goto  town square;;#goto");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 8);
+    MapCommand map = (MapCommand)listener._commands.get(0);
+    assertTrue(map.queryAction() == MapCommand.Action.SHOW);
+    map = (MapCommand)listener._commands.get(1);
+    assertTrue(map.queryAction() == MapCommand.Action.SAVE);
+    assertTrue(map.queryFile().equals(MapCommand.DEFAULTFILE));
+    map = (MapCommand)listener._commands.get(2);
+    assertTrue(map.queryAction() == MapCommand.Action.LOAD);
+    assertTrue(map.queryFile().equals("my maps/a.map"));
+    map = (MapCommand)listener._commands.get(3);
+    assertTrue(map.queryAction() == MapCommand.Action.CLEAR);
+    assertTrue(listener._events.get(4).queryEventKind() == TurtleEvent.EventKind.WARNING);
+    GotoCommand go = (GotoCommand)listener._commands.get(5);
+    assertTrue(go.queryTarget().equals("1234"));
+    go = (GotoCommand)listener._commands.get(6);
+    assertTrue(go.queryTarget().equals("town square"));
+    assertTrue(listener._events.get(7).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParseFind() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#find the Goblin;;#find;;#find /hp: \\d+/;;#find /a(b/");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 4);
+    FindCommand find = (FindCommand)listener._commands.get(0);
+    assertTrue(find.queryAction() == FindCommand.Action.SEARCH);
+    assertTrue(find.queryText().equals("the Goblin"));
+    assertTrue(find.queryPattern() == null);
+    find = (FindCommand)listener._commands.get(1);
+    assertTrue(find.queryAction() == FindCommand.Action.NEXT);
+    find = (FindCommand)listener._commands.get(2);
+    assertTrue(find.queryAction() == FindCommand.Action.SEARCH);
+    assertTrue(find.queryPattern().pattern().equals("hp: \\d+"));
+    assertTrue(find.queryPattern().matcher("HP: 12").matches());
+    assertTrue(listener._events.get(3).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParseLogGrep() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#loggrep dragon fire;;#loggrep;;#loggrep /tells? you/");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 3);
+    LogGrepCommand grep = (LogGrepCommand)listener._commands.get(0);
+    assertTrue(grep.queryAction() == LogGrepCommand.Action.SEARCH);
+    assertTrue(grep.queryText().equals("dragon fire"));
+    assertTrue(grep.queryPattern() == null);
+    grep = (LogGrepCommand)listener._commands.get(1);
+    assertTrue(grep.queryAction() == LogGrepCommand.Action.CANCEL);
+    grep = (LogGrepCommand)listener._commands.get(2);
+    assertTrue(grep.queryPattern().matcher("Bob Tells You hi").find());
+  }
+
+  @Test
+  public void testParseDebug() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#debug telnet;;#debug TELNET all;;#debug telnet off;;" +
+                                       "#debug gmcp;;#debug telnet loud");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 5);
+    assertTrue(((DebugCommand)listener._commands.get(0)).queryLevel() ==
+               DebugCommand.Level.TOGGLE);
+    assertTrue(((DebugCommand)listener._commands.get(1)).queryLevel() == DebugCommand.Level.ALL);
+    assertTrue(((DebugCommand)listener._commands.get(2)).queryLevel() == DebugCommand.Level.OFF);
+    assertTrue(listener._events.get(3).queryEventKind() == TurtleEvent.EventKind.WARNING);
+    assertTrue(listener._events.get(4).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParsePrompt() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#prompt;;#prompt 300;;#prompt OFF;;#prompt -5");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 4);
+    PromptCommand prompt = (PromptCommand)listener._commands.get(0);
+    assertTrue(prompt.queryAction() == PromptCommand.Action.SHOW);
+    prompt = (PromptCommand)listener._commands.get(1);
+    assertTrue(prompt.queryAction() == PromptCommand.Action.SET);
+    assertTrue(prompt.queryTimeout() == 300);
+    prompt = (PromptCommand)listener._commands.get(2);
+    assertTrue(prompt.queryAction() == PromptCommand.Action.OFF);
+    assertTrue(listener._events.get(3).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParseCharset() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#charset;;#charset cp437;;#charset latin1;;" +
+                                       "#charset klingon");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 4);
+    assertTrue(((CharsetCommand)listener._commands.get(0)).queryCharset() == null);
+    assertTrue(((CharsetCommand)listener._commands.get(1)).queryCharset().name().equals("IBM437"));
+    assertTrue(((CharsetCommand)listener._commands.get(2)).queryCharset().name().equals(
+                 "ISO-8859-1"));
+    assertTrue(listener._events.get(3).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParseTerminal() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#terminal;;#terminal on;;#terminal OFF;;#terminal vt52");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 4);
+    TerminalCommand terminal = (TerminalCommand)listener._commands.get(0);
+    assertTrue(terminal.queryAction() == TerminalCommand.Action.TOGGLE);
+    terminal = (TerminalCommand)listener._commands.get(1);
+    assertTrue(terminal.queryAction() == TerminalCommand.Action.ON);
+    terminal = (TerminalCommand)listener._commands.get(2);
+    assertTrue(terminal.queryAction() == TerminalCommand.Action.OFF);
+    assertTrue(listener._events.get(3).queryEventKind() == TurtleEvent.EventKind.WARNING);
+  }
+
+  @Test
+  public void testParseSessionAndFanout() {
+    CommandParsingHandler handler = new CommandParsingHandler();
+    BoringListener listener = new BoringListener();
+    EventBus.registerEventListener(listener);
+    EventBus.registerCommandListener(listener);
+
+    TurtleEvent e = new UserInputEvent("#session;;#session open bob mud.org 4000 party tanks;;" +
+      "#session close bob;;#session open bob mud.org port;;#all say hi there;;" +
+      "#group party   kill rat;;#group party");
+    handler.eventOccurred(e.queryEventKind(), e);
+    assertTrue(listener._commands.size() == 7);
+    SessionCommand session = (SessionCommand)listener._commands.get(0);
+    assertTrue(session.queryAction() == SessionCommand.Action.LIST);
+    session = (SessionCommand)listener._commands.get(1);
+    assertTrue(session.queryAction() == SessionCommand.Action.OPEN);
+    assertTrue(session.queryName().equals("bob"));
+    assertTrue(session.queryHost().equals("mud.org"));
+    assertTrue(session.queryPort() == 4000);
+    assertTrue(session.queryGroups().size() == 2);
+    assertTrue(session.queryGroups().get(1).equals("tanks"));
+    session = (SessionCommand)listener._commands.get(2);
+    assertTrue(session.queryAction() == SessionCommand.Action.CLOSE);
+    assertTrue(listener._commands.get(3) == null);
+    FanoutCommand fanout = (FanoutCommand)listener._commands.get(4);
+    assertTrue(fanout.queryGroup() == null);
+    assertTrue(fanout.queryCommand().equals("say hi there"));
+    fanout = (FanoutCommand)listener._commands.get(5);
+    assertTrue(fanout.queryGroup().equals("party"));
+    assertTrue(fanout.queryCommand().equals("kill rat"));
+    assertTrue(listener._commands.get(6) == null);
+  }
+}
@@ -0,0 +1,116 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import turtle.connection.CommandScheduler;
+
+public class CommandSchedulerTest {
+  private static final long SECOND = 1000000000L;
+
+  @Test
+  public void testBurstThenRate() {
+    CommandScheduler scheduler = new CommandScheduler(4, 3);
+    long now = 5 * SECOND;
+    for (int i = 0; i < 10; i++) scheduler.submit("n" + i, false);
+    // the first three go out immediately
+    assertEquals("n0", scheduler.take(now));
+    assertEquals("n1", scheduler.take(now));
+    assertEquals("n2", scheduler.take(now));
+    assertTrue(scheduler.take(now) == null);
+    // then one every quarter of a second
+    assertTrue(scheduler.queryDelay(now) == SECOND / 4);
+    assertTrue(scheduler.take(now + SECOND / 8) == null);
+    assertTrue(scheduler.queryDelay(now + SECOND / 8) == SECOND / 8);
+    assertEquals("n3", scheduler.take(now + SECOND / 4));
+    assertTrue(scheduler.take(now + SECOND / 4) == null);
+    // after a long wait, the bucket is full again, but no fuller than the burst size
+    now += 10 * SECOND;
+    assertEquals("n4", scheduler.take(now));
+    assertEquals("n5", scheduler.take(now));
+    assertEquals("n6", scheduler.take(now));
+    assertTrue(scheduler.take(now) == null);
+    assertTrue(scheduler.queryPending() == 3);
+  }
+
+  @Test
+  public void testSpeedwalkTiming() {
+    // 300 steps at 8 per second with a burst of 10 take (300 - 10) / 8 seconds after the first
+    CommandScheduler scheduler = new CommandScheduler(8, 10);
+    for (int i = 0; i < 300; i++) scheduler.submit("e", false);
+    long now = 0;
+    int sent = 0;
+    while (scheduler.queryPending() > 0) {
+      while (scheduler.take(now) != null) sent++;
+      long delay = scheduler.queryDelay(now);
+      if (delay > 0) now += delay;
+    }
+    assertTrue(sent == 300);
+    assertTrue(now == 290 * SECOND / 8);
+  }
+
+  @Test
+  public void testUrgentJumpsQueue() {
+    CommandScheduler scheduler = new CommandScheduler(1, 1);
+    scheduler.submit("north", false);
+    scheduler.submit("east", false);
+    assertEquals("north", scheduler.take(0));
+    scheduler.submit("flee", true);
+    scheduler.submit("quaff heal", true);
+    assertTrue(scheduler.take(0) == null);
+    assertEquals("flee", scheduler.take(SECOND));
+    assertEquals("quaff heal", scheduler.take(2 * SECOND));
+    assertEquals("east", scheduler.take(3 * SECOND));
+    assertTrue(scheduler.queryDelay(3 * SECOND) == -1);
+  }
+
+  @Test
+  public void testCancel() {
+    CommandScheduler scheduler = new CommandScheduler(1, 1);
+    for (int i = 0; i < 5; i++) scheduler.submit("x", i == 2);
+    assertTrue(scheduler.take(0) != null);
+    assertTrue(scheduler.cancel() == 4);
+    assertTrue(scheduler.queryPending() == 0);
+    assertTrue(scheduler.take(10 * SECOND) == null);
+    // cancelling does not give back tokens, but time still does
+    scheduler.submit("y", false);
+    assertEquals("y", scheduler.take(10 * SECOND));
+  }
+
+  @Test
+  public void testPacingOff() {
+    CommandScheduler scheduler = new CommandScheduler(2, 2);
+    for (int i = 0; i < 100; i++) scheduler.submit("x", false);
+    scheduler.setLimits(0, 1);
+    assertTrue(scheduler.queryDelay(0) == 0);
+    int sent = 0;
+    while (scheduler.take(0) != null) sent++;
+    assertTrue(sent == 100);
+  }
+
+  @Test
+  public void testLoweringBurst() {
+    CommandScheduler scheduler = new CommandScheduler(1, 10);
+    scheduler.setLimits(1, 2);
+    for (int i = 0; i < 5; i++) scheduler.submit("x", false);
+    assertTrue(scheduler.take(0) != null);
+    assertTrue(scheduler.take(0) != null);
+    assertTrue(scheduler.take(0) == null);
+  }
+}
@@ -0,0 +1,110 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import turtle.completion.CompletionTrie;
+import turtle.completion.WordCompleter;
+
+public class CompletionTrieTest {
+  @Test
+  public void testCompleteByScore() {
+    CompletionTrie trie = new CompletionTrie(1000000);
+    trie.add("sword", 1);
+    trie.add("swordfish", 1);
+    trie.add("swordfish", 1);
+    trie.add("swamp", 5);
+    trie.add("shield", 10);
+    trie.add("sw", 20);
+    ArrayList<String> words = trie.complete("sw", 10);
+    assertTrue(words.size() == 3);
+    assertTrue(words.get(0).equals("swamp"));
+    assertTrue(words.get(1).equals("swordfish"));
+    assertTrue(words.get(2).equals("sword"));
+    assertTrue(trie.complete("SWO", 1).size() == 1);
+    assertTrue(trie.complete("SWO", 1).get(0).equals("swordfish"));
+    assertTrue(trie.complete("x", 10).size() == 0);
+    assertTrue(trie.complete("swordfish", 10).size() == 0);
+    assertTrue(trie.queryWordCount() == 5);
+  }
+
+  @Test
+  public void testRecentWordsWin() {
+    CompletionTrie trie = new CompletionTrie(10);
+    for (int i = 0; i < 5; i++) trie.add("goblin", 1);
+    // many words later, a single new occurrence outweighs the old ones
+    for (int i = 0; i < 100; i++) trie.add("filler", 1);
+    trie.add("gold", 1);
+    assertTrue(trie.complete("go", 2).get(0).equals("gold"));
+    assertTrue(trie.queryScore("goblin") < trie.queryScore("gold"));
+  }
+
+  @Test
+  public void testRescalingKeepsOrder() {
+    // with a half-life of 1 word, scores are rescaled every 66 words or so
+    CompletionTrie trie = new CompletionTrie(1);
+    for (int i = 0; i < 1000; i++) trie.add(i % 3 == 0 ? "alpha" : "alphabet", 1);
+    trie.add("alpine", 1);
+    ArrayList<String> words = trie.complete("alp", 5);
+    assertTrue(words.size() == 3);
+    assertTrue(words.get(0).equals("alpine"));
+    // alpha occurred last, and with such a short half-life, that counts for more than frequency
+    assertTrue(words.get(1).equals("alpha"));
+    assertTrue(words.get(2).equals("alphabet"));
+  }
+
+  @Test
+  public void testPrune() {
+    CompletionTrie trie = new CompletionTrie(1000000);
+    for (int i = 0; i < 200; i++) trie.add("word" + i, i + 1);
+    CompletionTrie pruned = trie.prune(50);
+    assertTrue(trie.queryWordCount() == 200);
+    assertTrue(pruned.queryWordCount() == 50);
+    assertTrue(pruned.queryNodeCount() < trie.queryNodeCount());
+    ArrayList<String> words = pruned.complete("word", 100);
+    assertTrue(words.size() == 50);
+    assertTrue(words.get(0).equals("word199"));
+    assertTrue(words.get(49).equals("word150"));
+    assertTrue(pruned.queryScore("word150") == trie.queryScore("word150"));
+    assertTrue(pruned.queryScore("word149") == 0);
+    pruned.add("word1", 1000);
+    assertTrue(pruned.complete("word", 1).get(0).equals("word1"));
+  }
+
+  @Test
+  public void testWordCompleter() {
+    WordCompleter completer = new WordCompleter(false, 7);
+    completer.offer("The \u001b[1;31mdragon\u001b[0m breathes fire at you!", false);
+    completer.offer("draw sword", true);
+    ArrayList<String> words = completer.complete("dr", 5);
+    assertTrue(words.size() == 2);
+    assertTrue(words.get(0).equals("draw"));
+    assertTrue(words.get(1).equals("dragon"));
+    // "at" is too short; 31m and 0m are part of escape sequences
+    assertTrue(completer.complete("a", 5).size() == 0);
+    assertTrue(completer.complete("3", 5).size() == 0);
+    assertTrue(completer.queryWordCount() == 7);
+    // going over the maximum prunes the vocabulary
+    completer.offer("additional", true);
+    assertTrue(completer.queryWordCount() == 5);
+    assertTrue(completer.complete("dr", 5).size() == 1);
+  }
+}
@@ -0,0 +1,71 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.PaceCommand;
+import turtle.events.InformationEvent;
+import turtle.handlers.ConnectionHandler;
+
+public class ConnectionHandlerTest {
+  private class InformationListener implements EventListener {
+    LinkedBlockingQueue<String> _texts = new LinkedBlockingQueue<String>();
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.INFORMATION) {
+        _texts.add(((InformationEvent)event).queryText());
+      }
+    }
+  }
+
+  private void give(ConnectionHandler handler, Command command) throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() {
+        handler.commandGiven(command.queryCommandKind(), command);
+      }
+    });
+  }
+
+  @Test
+  public void testPaceOffKeepsBurst() throws Exception {
+    ConnectionHandler handler = new ConnectionHandler();
+    InformationListener listener = new InformationListener();
+    EventBus.registerEventListener(listener);
+    try {
+      give(handler, new PaceCommand(PaceCommand.Action.SET, 4, 7));
+      assertEquals("Commands are sent at most 4 per second, in bursts of at most 7.",
+                   listener._texts.poll(5, TimeUnit.SECONDS));
+      give(handler, new PaceCommand(PaceCommand.Action.OFF, 0, -1));
+      assertEquals("Commands are sent without pacing.", listener._texts.poll(5, TimeUnit.SECONDS));
+      give(handler, new PaceCommand(PaceCommand.Action.SET, 2, -1));
+      assertEquals("Commands are sent at most 2 per second, in bursts of at most 7.",
+                   listener._texts.poll(5, TimeUnit.SECONDS));
+    }
+    finally {
+      EventBus.removeEventListener(listener);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.Command;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.FanoutCommand;
+import turtle.commands.SessionCommand;
+import turtle.events.InformationEvent;
+import turtle.handlers.ConnectionHandler;
+
+public class FanoutTest {
+  private static final int SESSIONS = 200;
+
+  /** A stand-in MUD which accepts any number of connections, and records every line it gets. */
+  private class StandInMud extends StandInServer {
+    LinkedBlockingQueue<String> _lines = new LinkedBlockingQueue<String>();
+
+    public StandInMud() throws IOException {
+      super(new ServerSocket(0, SESSIONS, InetAddress.getLoopbackAddress()));
+      start();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      BufferedReader in =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      String line;
+      while ((line = in.readLine()) != null) _lines.add(line);
+    }
+  }
+
+  private class InformationListener implements EventListener {
+    LinkedBlockingQueue<String> _texts = new LinkedBlockingQueue<String>();
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.INFORMATION) {
+        _texts.add(((InformationEvent)event).queryText());
+      }
+    }
+
+    /** Waits for an information message starting with the given text, and returns it. */
+    String await(String start) throws InterruptedException {
+      String text;
+      while ((text = _texts.poll(10, TimeUnit.SECONDS)) != null) {
+        if (text.startsWith(start)) return text;
+      }
+      return null;
+    }
+  }
+
+  private void give(ConnectionHandler handler, Command command) throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() {
+        handler.commandGiven(command.queryCommandKind(), command);
+      }
+    });
+  }
+
+  /** Asserts that the stand-in MUD receives the given line the given number of times. */
+  private void assertReceived(StandInMud mud, String line, int count) throws Exception {
+    for (int i = 0; i < count; i++) {
+      assertEquals(line, mud._lines.poll(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testFanoutToManySessions() throws Exception {
+    StandInMud mud = new StandInMud();
+    ConnectionHandler handler = new ConnectionHandler();
+    InformationListener listener = new InformationListener();
+    EventBus.registerEventListener(listener);
+    try {
+      for (int i = 0; i < SESSIONS; i++) {
+        ArrayList<String> groups = new ArrayList<String>();
+        if (i % 2 == 0) groups.add("even");
+        give(handler, new SessionCommand(SessionCommand.Action.OPEN, "s" + i, "127.0.0.1",
+                                         mud.queryPort(), groups));
+      }
+      for (int i = 0; i < SESSIONS; i++) assertTrue(listener.await("Session s") != null);
+
+      give(handler, new FanoutCommand(null, "say hello"));
+      assertReceived(mud, "say hello", SESSIONS);
+      String summary = listener.await("Sent [say hello]");
+      assertTrue(summary != null);
+      assertTrue(summary.startsWith("Sent [say hello] to " + SESSIONS + " sessions: median "));
+      EventQueue.invokeAndWait(new Runnable() {
+        public void run() {
+          for (int i = 0; i < SESSIONS; i++) assertTrue(handler.querySessionLatency("s" + i) >= 0);
+          assertTrue(handler.querySessionLatency("nobody") == -1);
+        }
+      });
+
+      give(handler, new FanoutCommand("even", "look"));
+      assertReceived(mud, "look", SESSIONS / 2);
+      summary = listener.await("Sent [look]");
+      assertTrue(summary.startsWith("Sent [look] to " + (SESSIONS / 2) + " sessions"));
+      assertTrue(mud._lines.poll(100, TimeUnit.MILLISECONDS) == null);
+
+      give(handler, new SessionCommand(SessionCommand.Action.CLOSE, "s0", null, 0, null));
+      give(handler, new FanoutCommand("even", "look"));
+      assertReceived(mud, "look", SESSIONS / 2 - 1);
+    }
+    finally {
+      EventBus.removeEventListener(listener);
+      for (int i = 0; i < SESSIONS; i++) {
+        give(handler, new SessionCommand(SessionCommand.Action.CLOSE, "s" + i, null, 0, null));
+      }
+      mud.close();
+    }
+  }
+
+  @Test
+  public void testSessionTelnet() throws Exception {
+    StandInServer server = new StandInServer();
+    server.start();
+    ConnectionHandler handler = new ConnectionHandler();
+    InformationListener listener = new InformationListener();
+    EventBus.registerEventListener(listener);
+    give(handler, new SessionCommand(SessionCommand.Action.OPEN, "t", "127.0.0.1",
+                                     server.queryPort(), new ArrayList<String>()));
+    try {
+      Socket socket = server.awaitConnection();
+      socket.setSoTimeout(10000);
+      OutputStream out = socket.getOutputStream();
+      InputStream in = socket.getInputStream();
+      int iac = TelnetCode.IAC;
+      // options are refused, and timing marks answered
+      out.write(new byte[] { (byte)iac, (byte)TelnetCode.WILL, (byte)201,
+                             (byte)iac, (byte)TelnetCode.DO, (byte)202,
+                             (byte)iac, (byte)TelnetCode.DO, 6 });
+      out.flush();
+      assertArrayEquals(new int[] { iac, TelnetCode.DONT, 201, iac, TelnetCode.WONT, 202,
+                                    iac, TelnetCode.WILL, 6 }, StandInServer.read(in, 9));
+      // a refusal is not acknowledged, and every timing mark is answered
+      out.write(new byte[] { (byte)iac, (byte)TelnetCode.DONT, (byte)202,
+                             (byte)iac, (byte)TelnetCode.DO, 6 });
+      out.flush();
+      assertArrayEquals(new int[] { iac, TelnetCode.WILL, 6 }, StandInServer.read(in, 3));
+      // a colour code split over two chunks is still removed, and IAC IAC is text
+      out.write("\u001b[3".getBytes("UTF-8"));
+      out.flush();
+      Thread.sleep(100);
+      out.write("1mred\u001b[0m ".getBytes("UTF-8"));
+      out.write(new byte[] { (byte)iac, (byte)iac });
+      out.write("\r\n".getBytes("UTF-8"));
+      out.flush();
+      // (byte 255 is not valid UTF-8, so it is shown as a replacement character)
+      assertEquals("[t] red \ufffd", listener.await("[t]"));
+    }
+    finally {
+      EventBus.removeEventListener(listener);
+      give(handler, new SessionCommand(SessionCommand.Action.CLOSE, "t", null, 0, null));
+      server.close();
+    }
+  }
+}
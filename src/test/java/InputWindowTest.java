@@ -22,10 +22,15 @@ import static org.junit.Assert.*;
 
 import javax.swing.KeyStroke;
 
+import turtle.interfaces.immutable.TelnetCode;
 import turtle.interfaces.immutable.TurtleEvent;
 import turtle.interfaces.EventListener;
 import turtle.interfaces.windowing.InputWindowComponent;
 import turtle.EventBus;
+import turtle.completion.WordCompleter;
+import turtle.connection.telnet.SupportTelnetCommand;
+import turtle.events.DisconnectEvent;
+import turtle.events.TelnetEvent;
 import turtle.events.UserInputEvent;
 import turtle.windowing.InputHistory;
 import turtle.windowing.InputWindow;
@@ -34,10 +39,14 @@ public class InputWindowTest {
   private static final KeyStroke ENTERSTROKE = KeyStroke.getKeyStroke("ENTER");
   private static final KeyStroke UPSTROKE = KeyStroke.getKeyStroke("UP");
   private static final KeyStroke DOWNSTROKE = KeyStroke.getKeyStroke("DOWN");
+  private static final KeyStroke TABSTROKE = KeyStroke.getKeyStroke("TAB");
+  private static final KeyStroke ESCAPESTROKE = KeyStroke.getKeyStroke("ESCAPE");
+  private static final KeyStroke CTRLRSTROKE = KeyStroke.getKeyStroke("ctrl R");
 
   private class TestComponent implements InputWindowComponent {
     String _lastText;
     boolean _selected;
+    String _suggestion;
 
     public TestComponent() {
       _lastText = null;
@@ -49,6 +58,7 @@ public class InputWindowTest {
     public void selectAll() { _selected = false; }
     public void registerSignificantKeystroke(KeyStroke k) {}
     public void deregisterSignificantKeystroke(KeyStroke k) {}
+    public void showSuggestion(String txt) { _suggestion = txt; }
   }
 
   private class TestListener implements EventListener {
@@ -211,5 +221,150 @@ public class InputWindowTest {
     window.specialKeyEvent(UPSTROKE);
     assertTrue(component._lastText.equals("AAA"));
   }
-}
 
+  @Test
+  public void testTabCompletion() {
+    InputHistory history = new InputHistory(5);
+    TestComponent component = new TestComponent();
+    WordCompleter completer = new WordCompleter(false, WordCompleter.DEFAULT_MAXWORDS);
+    InputWindow window = InputWindow.createTestWindow(component, history, completer);
+    completer.offer("A goblin and a golem block the way.", false);
+    completer.offer("kill golem", true);
+    component._lastText = "kill Go";
+    window.componentChanged();
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("kill Golem"));
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("kill Goblin"));
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("kill Go"));
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("kill Golem"));
+    // typing starts a new completion
+    component._lastText = "kill Golem bl";
+    window.componentChanged();
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("kill Golem block"));
+    // nothing happens without a word to complete
+    component._lastText = "kill ";
+    window.componentChanged();
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("kill "));
+  }
+
+  @Test
+  public void testHiddenLinesAreNotCompleted() {
+    InputHistory history = new InputHistory(5);
+    TestComponent component = new TestComponent();
+    WordCompleter completer = new WordCompleter(false, WordCompleter.DEFAULT_MAXWORDS);
+    InputWindow window = InputWindow.createTestWindow(component, history, completer);
+    EventBus.registerEventListener(completer);   // as the real input window does
+    component._lastText = "connect bob";
+    window.specialKeyEvent(ENTERSTROKE);
+    window.eventOccurred(TurtleEvent.EventKind.TELNET,
+                         new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 1)));
+    component._lastText = "swordfish";
+    window.specialKeyEvent(ENTERSTROKE);
+    window.eventOccurred(TurtleEvent.EventKind.TELNET,
+                         new TelnetEvent(new SupportTelnetCommand(TelnetCode.WONT, 1)));
+    component._lastText = "swim";
+    window.specialKeyEvent(ENTERSTROKE);
+    assertTrue(completer.complete("co", 10).contains("connect"));
+    assertTrue(completer.complete("sw", 10).contains("swim"));
+    assertTrue(!completer.complete("sw", 10).contains("swordfish"));
+    component._lastText = "sw";
+    window.componentChanged();
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("swim"));
+    window.specialKeyEvent(TABSTROKE);
+    assertTrue(component._lastText.equals("sw"));
+  }
+
+  @Test
+  public void testReverseSearch() {
+    InputHistory history = new InputHistory(5);
+    TestComponent component = new TestComponent();
+    InputWindow window = InputWindow.createTestWindow(component, history);
+    String[] commands = { "kill goblin", "look", "cast fireball at goblin", "north" };
+    for (String command : commands) {
+      component._lastText = command;
+      window.specialKeyEvent(ENTERSTROKE);
+    }
+    component._lastText = "";
+    window.componentChanged();
+    window.specialKeyEvent(CTRLRSTROKE);
+    assertTrue(component._suggestion.endsWith(" north"));
+    // typing updates the match
+    component._lastText = "g";
+    window.componentChanged();
+    assertTrue(component._suggestion.endsWith(" cast fireball at goblin"));
+    component._lastText = "go";
+    window.componentChanged();
+    assertTrue(component._suggestion.endsWith(" cast fireball at goblin"));
+    // ctrl-R again moves to older matches, and stays at the oldest
+    window.specialKeyEvent(CTRLRSTROKE);
+    assertTrue(component._suggestion.endsWith(" kill goblin"));
+    window.specialKeyEvent(CTRLRSTROKE);
+    assertTrue(component._suggestion.endsWith(" kill goblin"));
+    // escape restores the original text
+    window.specialKeyEvent(ESCAPESTROKE);
+    assertTrue(component._suggestion == null);
+    assertTrue(component._lastText.equals(""));
+    // another key accepts the match for editing
+    component._lastText = "loo";
+    window.specialKeyEvent(CTRLRSTROKE);
+    window.specialKeyEvent(UPSTROKE);
+    assertTrue(component._suggestion == null);
+    assertTrue(component._lastText.equals("look"));
+    // enter accepts and sends the match
+    component._lastText = "dragon";
+    window.componentChanged();
+    window.specialKeyEvent(CTRLRSTROKE);
+    assertTrue(component._suggestion.endsWith("no match"));
+    component._lastText = "fire";
+    window.componentChanged();
+    window.specialKeyEvent(ENTERSTROKE);
+    assertTrue(component._lastText.equals("cast fireball at goblin"));
+    assertTrue(history.browseUp().equals("cast fireball at goblin"));
+  }
+
+  @Test
+  public void testHiddenLinesAreNotRemembered() {
+    InputHistory history = new InputHistory(5);
+    TestComponent component = new TestComponent();
+    InputWindow window = InputWindow.createTestWindow(component, history);
+    component._lastText = "connect bob";
+    window.specialKeyEvent(ENTERSTROKE);
+    // the server takes over echoing while the password is typed
+    window.eventOccurred(TurtleEvent.EventKind.TELNET,
+                         new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 1)));
+    component._lastText = "secret";
+    window.specialKeyEvent(ENTERSTROKE);
+    window.eventOccurred(TurtleEvent.EventKind.TELNET,
+                         new TelnetEvent(new SupportTelnetCommand(TelnetCode.WONT, 1)));
+    // a leading space keeps a line out of the saved history, but not out of browsing
+    component._lastText = " tell alice the code is 1234";
+    window.specialKeyEvent(ENTERSTROKE);
+    component._lastText = "look";
+    window.specialKeyEvent(ENTERSTROKE);
+    assertTrue(history.browseUp().equals("look"));
+    assertTrue(history.browseUp().equals(" tell alice the code is 1234"));
+    assertTrue(history.browseUp().equals("connect bob"));
+    component._lastText = "";
+    window.componentChanged();
+    for (String query : new String[] { "secret", "code" }) {
+      component._lastText = query;
+      window.specialKeyEvent(CTRLRSTROKE);
+      assertTrue(component._suggestion.endsWith("no match"));
+      window.specialKeyEvent(ESCAPESTROKE);
+    }
+    // a disconnect ends the hidden input
+    window.eventOccurred(TurtleEvent.EventKind.TELNET,
+                         new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 1)));
+    window.eventOccurred(TurtleEvent.EventKind.DISCONNECT,
+                         new DisconnectEvent(DisconnectEvent.DisconnectSource.SERVER));
+    component._lastText = "north";
+    window.specialKeyEvent(ENTERSTROKE);
+    assertTrue(history.browseUp().equals("north"));
+  }
+}
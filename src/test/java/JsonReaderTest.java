@@ -0,0 +1,118 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import turtle.protocols.JsonReader;
+import turtle.protocols.JsonReader.Token;
+
+public class JsonReaderTest {
+  private JsonReader reader(String json) {
+    return new JsonReader(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testFlatObject() {
+    JsonReader r = reader("{ \"hp\": 120, \"maxhp\" : -7, \"name\":\"Bob\", \"ok\": true }");
+    assertTrue(r.next() == Token.START_OBJECT);
+    assertTrue(r.next() == Token.NAME);
+    assertTrue(r.nameEquals("hp"));
+    assertFalse(r.nameEquals("h"));
+    assertTrue(r.next() == Token.NUMBER);
+    assertTrue(r.queryLong() == 120);
+    assertTrue(r.next() == Token.NAME);
+    assertTrue(r.queryString().equals("maxhp"));
+    assertTrue(r.next() == Token.NUMBER);
+    assertTrue(r.queryLong() == -7);
+    assertTrue(r.next() == Token.NAME);
+    assertTrue(r.next() == Token.STRING);
+    assertTrue(r.queryString().equals("Bob"));
+    assertTrue(r.next() == Token.NAME);
+    assertTrue(r.next() == Token.TRUE);
+    assertTrue(r.next() == Token.END_OBJECT);
+    assertTrue(r.next() == Token.END);
+    assertTrue(r.next() == Token.END);
+  }
+
+  @Test
+  public void testNestedStructures() {
+    JsonReader r = reader("[1, [], {\"a\": [null, false]}, 2.5e1]");
+    Token[] expected = { Token.START_ARRAY, Token.NUMBER, Token.START_ARRAY, Token.END_ARRAY,
+                         Token.START_OBJECT, Token.NAME, Token.START_ARRAY, Token.NULL,
+                         Token.FALSE, Token.END_ARRAY, Token.END_OBJECT, Token.NUMBER,
+                         Token.END_ARRAY, Token.END };
+    for (int i = 0; i < expected.length; i++) assertTrue(r.next() == expected[i]);
+  }
+
+  @Test
+  public void testNumbers() {
+    JsonReader r = reader("[2.5e1, 0.75, -12]");
+    r.next();
+    r.next();
+    assertTrue(r.queryDouble() == 25.0);
+    assertTrue(r.queryLong() == 25);
+    r.next();
+    assertTrue(r.queryDouble() == 0.75);
+    r.next();
+    assertTrue(r.queryLong() == -12);
+  }
+
+  @Test
+  public void testEscapesAndUnicode() {
+    JsonReader r = reader("\"caf\u00e9 \\\"q\\\" \\u0041\\n\u2200\"");
+    assertTrue(r.next() == Token.STRING);
+    assertTrue(r.queryString().equals("caf\u00e9 \"q\" A\n\u2200"));
+  }
+
+  @Test
+  public void testSkipValue() {
+    JsonReader r = reader("{\"skip\": {\"x\": [1, {\"y\": 2}]}, \"keep\": 3}");
+    assertTrue(r.next() == Token.START_OBJECT);
+    Token t = r.next();
+    assertTrue(r.nameEquals("skip"));
+    r.skipValue(t);
+    assertTrue(r.next() == Token.NAME);
+    assertTrue(r.nameEquals("keep"));
+    assertTrue(r.next() == Token.NUMBER);
+    assertTrue(r.queryLong() == 3);
+  }
+
+  @Test
+  public void testPartialRange() {
+    byte[] data = "Char.Vitals {\"hp\": 5}".getBytes(StandardCharsets.UTF_8);
+    JsonReader r = new JsonReader(data, 12, data.length);
+    assertTrue(r.next() == Token.START_OBJECT);
+    assertTrue(r.next() == Token.NAME);
+  }
+
+  @Test
+  public void testMalformed() {
+    String[] bad = { "{\"a\" 1}", "[1,]", "{\"a\":1,}", "[1 2]", "{", "[1}", "tru", "\"abc",
+                     "1 2", "{1: 2}" };
+    for (int i = 0; i < bad.length; i++) {
+      JsonReader r = reader(bad[i]);
+      Token t;
+      do { t = r.next(); } while (t != Token.END && t != Token.ERROR);
+      assertTrue("Accepted: " + bad[i], t == Token.ERROR);
+      assertTrue(r.next() == Token.END);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.interfaces.TelnetSender;
+import turtle.EventBus;
+import turtle.connection.Connection;
+import turtle.events.LatencyEvent;
+import turtle.events.TelnetEvent;
+import turtle.handlers.TelnetHandler;
+import turtle.statistics.LatencyProbe;
+
+public class LatencyProbeTest {
+  /** A stand-in MUD server, which answers DO TIMING-MARK with WILL TIMING-MARK after a delay. */
+  private class DelayingServer extends StandInServer {
+    private int _delay;
+
+    public DelayingServer(int delay) throws IOException {
+      _delay = delay;
+      start();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+      int a = -1, b = -1, c;
+      while ((c = in.read()) != -1) {
+        if (a == TelnetCode.IAC && b == TelnetCode.DO && c == 6) {
+          Thread.sleep(_delay);
+          negotiate(out, TelnetCode.WILL, 6);
+          out.flush();
+        }
+        a = b;
+        b = c;
+      }
+    }
+  }
+
+  private class LatencyListener implements EventListener {
+    LatencyEvent _last = null;
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.LATENCY) _last = (LatencyEvent)event;
+    }
+  }
+
+  @Test
+  public void testMatchingReplies() {
+    LatencyProbe probe = new LatencyProbe();
+    assertTrue(probe.replyReceived(10) == -1);
+    probe.markSent(100);
+    probe.markSent(150);
+    assertTrue(probe.queryOutstanding());
+    assertTrue(probe.replyReceived(300) == 200);
+    assertTrue(probe.replyReceived(400) == 250);
+    assertFalse(probe.queryOutstanding());
+    assertTrue(probe.queryLast() == 250);
+    assertTrue(probe.querySampleCount() == 2);
+  }
+
+  @Test
+  public void testRollingWindow() {
+    LatencyProbe probe = new LatencyProbe();
+    for (int i = 0; i < LatencyProbe.WINDOW; i++) { probe.markSent(0); probe.replyReceived(1000); }
+    assertTrue(probe.queryPercentile(50) == 1000);
+    for (int i = 0; i < LatencyProbe.WINDOW; i++) { probe.markSent(0); probe.replyReceived(10); }
+    assertTrue(probe.querySampleCount() == LatencyProbe.WINDOW);
+    assertTrue(probe.queryPercentile(100) == 10);
+    probe.reset();
+    assertTrue(probe.queryLast() == -1);
+    assertTrue(probe.queryPercentile(50) == -1);
+  }
+
+  @Test
+  public void testUnansweredMarkersAreDropped() {
+    LatencyProbe probe = new LatencyProbe();
+    for (int i = 0; i < 20; i++) probe.markSent(i);
+    // only the 10 most recent markers are remembered
+    assertTrue(probe.replyReceived(100) == 90);
+  }
+
+  @Test
+  public void testLatencyAgainstDelayingServer() throws Exception {
+    DelayingServer server = new DelayingServer(200);
+    RecordingListener listener = new RecordingListener();
+    Connection connection = new Connection("localhost", server.queryPort(), listener);
+    assertEquals("established", listener.awaitStatus());
+
+    TelnetHandler handler = new TelnetHandler(new TelnetSender() {
+      public void sendTelnet(TelnetCode code) { connection.sendTelnet(code); }
+    });
+    LatencyListener events = new LatencyListener();
+    EventBus.registerEventListener(events);
+    try {
+      for (int i = 0; i < 2; i++) {
+        handler.sendTimingMark();
+        TelnetCode reply = listener._codes.poll(5, TimeUnit.SECONDS);
+        assertTrue(reply != null);
+        assertTrue(reply.queryCommand() == TelnetCode.WILL);
+        TelnetEvent evt = new TelnetEvent(reply);
+        handler.eventOccurred(evt.queryEventKind(), evt);
+        assertTrue(events._last != null);
+        assertTrue(events._last.querySampleCount() == i + 1);
+        // the round trip includes the server delay, and our own polling interval at most
+        assertTrue(events._last.queryLast() >= 200000000L);
+        assertTrue(events._last.queryLast() < 1500000000L);
+      }
+    }
+    finally {
+      EventBus.removeEventListener(events);
+      connection.disconnect();
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import turtle.statistics.LatencyRecorder;
+import turtle.statistics.Statistics;
+
+public class LatencyRecorderTest {
+  @Test
+  public void testEmptyRecorder() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    assertTrue(recorder.queryCount() == 0);
+    assertTrue(recorder.queryMean() == 0);
+    assertTrue(recorder.queryMax() == 0);
+    assertTrue(recorder.queryPercentile(50) == 0);
+  }
+
+  @Test
+  public void testSmallValuesExact() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    for (int i = 0; i < 8; i++) recorder.record(i);
+    assertTrue(recorder.queryCount() == 8);
+    assertTrue(recorder.queryMax() == 7);
+    assertTrue(recorder.queryPercentile(50) == 3);
+    assertTrue(recorder.queryPercentile(100) == 7);
+  }
+
+  @Test
+  public void testPercentilePrecision() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    for (int i = 1; i <= 1000; i++) recorder.record(i * 1000L);
+    assertTrue(recorder.queryCount() == 1000);
+    assertTrue(recorder.queryMean() == 500500);
+    assertTrue(recorder.queryMax() == 1000000);
+    long p50 = recorder.queryPercentile(50);
+    assertTrue(p50 >= 500000 && p50 <= 500000 + 500000 / 8);
+    long p99 = recorder.queryPercentile(99);
+    assertTrue(p99 >= 990000 && p99 <= 1000000);
+  }
+
+  @Test
+  public void testReset() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    recorder.record(12345);
+    recorder.record(-3);
+    assertTrue(recorder.queryCount() == 2);
+    recorder.reset();
+    assertTrue(recorder.queryCount() == 0);
+    assertTrue(recorder.queryMax() == 0);
+  }
+
+  @Test
+  public void testConcurrentRecording() throws InterruptedException {
+    LatencyRecorder recorder = new LatencyRecorder();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        public void run() { for (int j = 0; j < 10000; j++) recorder.record(j); }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) threads[i].join();
+    assertTrue(recorder.queryCount() == 40000);
+    assertTrue(recorder.queryMax() == 9999);
+  }
+
+  @Test
+  public void testDisabledStatisticsRecordNothing() {
+    Statistics.setEnabled(false);
+    Statistics.reset();
+    long start = Statistics.startTimer();
+    assertTrue(start == 0);
+    Statistics.stopTimer(Statistics.Stage.ANSI, start);
+    Statistics.recordRead(100);
+    assertTrue(Statistics.queryRecorder(Statistics.Stage.ANSI).queryCount() == 0);
+    assertTrue(Statistics.queryBytesRead() == 0);
+  }
+}
@@ -0,0 +1,180 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import turtle.search.LogGrep;
+
+public class LogGrepTest {
+  private class Collector implements LogGrep.Listener {
+    ArrayList<String> _lines = new ArrayList<String>();
+    boolean _finished = false;
+    public synchronized void found(File file, long offset, String line) {
+      _lines.add(file.getName() + ":" + offset + ":" + line);
+    }
+    public synchronized void finished(boolean cancelled) { _finished = true; }
+  }
+
+  private File makeDirectory() throws IOException {
+    File dir = File.createTempFile("turtle", "logs");
+    dir.delete();
+    dir.mkdir();
+    return dir;
+  }
+
+  private void write(File file, String text) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(text.getBytes(StandardCharsets.UTF_8));
+    out.close();
+  }
+
+  private void remove(File dir) {
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) remove(file);
+      else file.delete();
+    }
+    dir.delete();
+  }
+
+  private ArrayList<String> grep(File dir, String text, Pattern pattern, int max) {
+    Collector collector = new Collector();
+    LogGrep grep = new LogGrep(text, pattern, collector, max);
+    ArrayList<File> paths = new ArrayList<File>();
+    paths.add(dir);
+    grep.start(paths);
+    grep.await();
+    assertTrue(collector._finished);
+    Collections.sort(collector._lines);
+    return collector._lines;
+  }
+
+  @Test
+  public void testLiteralSearch() throws IOException {
+    File dir = makeDirectory();
+    try {
+      write(new File(dir, "a.log"), "You see a Goblin.\nThe goblin hits you.\nYou flee.\n");
+      new File(dir, "old").mkdir();
+      write(new File(dir, "old/b.log"), "hp: 12\r\nA GOBLIN arrives");
+      ArrayList<String> lines = grep(dir, "goblin", null, 100);
+      assertTrue(lines.size() == 3);
+      assertTrue(lines.get(0).equals("a.log:0:You see a Goblin."));
+      assertTrue(lines.get(1).equals("a.log:18:The goblin hits you."));
+      assertTrue(lines.get(2).equals("b.log:8:A GOBLIN arrives"));
+      assertTrue(grep(dir, "orc", null, 100).size() == 0);
+      assertTrue(grep(dir, "you", null, 100).size() == 3);
+    }
+    finally { remove(dir); }
+  }
+
+  @Test
+  public void testRegexSearch() throws IOException {
+    File dir = makeDirectory();
+    try {
+      write(new File(dir, "a.log"), "hp: 12\nhp: none\nHP: 7\nmana: 3\n");
+      Pattern pattern = Pattern.compile("hp: \\d+", Pattern.CASE_INSENSITIVE);
+      ArrayList<String> lines = grep(dir, "/hp: \\d+/", pattern, 100);
+      assertTrue(lines.size() == 2);
+      assertTrue(lines.get(0).equals("a.log:0:hp: 12"));
+      assertTrue(lines.get(1).equals("a.log:16:HP: 7"));
+      // without a required literal, every line is checked
+      lines = grep(dir, "/^\\w+: \\d$/", Pattern.compile("^\\w+: \\d$"), 100);
+      assertTrue(lines.size() == 2);
+    }
+    finally { remove(dir); }
+  }
+
+  @Test
+  public void testNonAsciiSearch() throws IOException {
+    File dir = makeDirectory();
+    try {
+      write(new File(dir, "a.log"), "You wield the \u00c9P\u00c9E.\n" +
+                                    "An \u00e9p\u00e9e lies here.\nAn epee lies here.\n");
+      int flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+      ArrayList<String> lines = grep(dir, "/\u00c9P\u00c9E/",
+                                     Pattern.compile("\u00c9P\u00c9E", flags), 100);
+      assertTrue(lines.size() == 2);
+      assertTrue(lines.get(0).equals("a.log:0:You wield the \u00c9P\u00c9E."));
+      lines = grep(dir, "/the \u00e9p\u00e9e/",
+                   Pattern.compile("the \u00e9p\u00e9e", flags), 100);
+      assertTrue(lines.size() == 1);
+      lines = grep(dir, "\u00e9p\u00e9e", null, 100);
+      assertTrue(lines.size() == 2);
+      assertTrue(lines.get(1).equals("a.log:22:An \u00e9p\u00e9e lies here."));
+    }
+    finally { remove(dir); }
+  }
+
+  @Test
+  public void testChunkBoundaries() throws IOException {
+    File dir = makeDirectory();
+    try {
+      StringBuilder text = new StringBuilder();
+      String filler = "Nothing interesting happens here.\n";
+      while (text.length() < LogGrep.CHUNKSIZE - 10) text.append(filler);
+      int first = text.length();
+      text.append("The dragon breathes fire at you!\n");   // crosses the first boundary
+      while (text.length() < 2 * LogGrep.CHUNKSIZE) text.append(filler);
+      text.setLength(2 * LogGrep.CHUNKSIZE);
+      text.append("\ndragon\n");                          // starts just after the second one
+      int second = 2 * LogGrep.CHUNKSIZE + 1;
+      write(new File(dir, "big.log"), text.toString());
+      ArrayList<String> lines = grep(dir, "DRAGON", null, 100);
+      assertTrue(lines.size() == 2);
+      assertTrue(lines.get(0).equals("big.log:" + first + ":The dragon breathes fire at you!"));
+      assertTrue(lines.get(1).equals("big.log:" + second + ":dragon"));
+    }
+    finally { remove(dir); }
+  }
+
+  @Test
+  public void testStopAndCancel() throws IOException {
+    File dir = makeDirectory();
+    try {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < 1000; i++) text.append("line " + i + "\n");
+      write(new File(dir, "a.log"), text.toString());
+      assertTrue(grep(dir, "line", null, 10).size() == 10);
+
+      final LogGrep[] grep = new LogGrep[1];
+      final int[] count = new int[] { 0 };
+      grep[0] = new LogGrep("line", null, new LogGrep.Listener() {
+        public void found(File file, long offset, String line) {
+          count[0]++;
+          grep[0].cancel();
+        }
+        public void finished(boolean cancelled) { assertTrue(cancelled); }
+      }, 100000);
+      ArrayList<File> paths = new ArrayList<File>();
+      paths.add(dir);
+      grep[0].start(paths);
+      grep[0].await();
+      assertTrue(count[0] == 1);
+      assertTrue(grep[0].queryMatches() == 1);
+    }
+    finally { remove(dir); }
+  }
+}
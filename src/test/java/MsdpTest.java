@@ -0,0 +1,150 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.interfaces.TelnetSender;
+import turtle.EventBus;
+import turtle.connection.telnet.*;
+import turtle.events.MsdpEvent;
+import turtle.events.TelnetEvent;
+import turtle.handlers.TelnetHandler;
+import turtle.protocols.Msdp;
+import turtle.protocols.MsdpValue;
+import turtle.protocols.MsdpVariables;
+
+public class MsdpTest {
+  private class MsdpListener implements EventListener {
+    ArrayList<MsdpEvent> _events = new ArrayList<MsdpEvent>();
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.MSDP) _events.add((MsdpEvent)event);
+    }
+  }
+
+  private class Sender implements TelnetSender {
+    ArrayList<TelnetCode> _codes = new ArrayList<TelnetCode>();
+    public void sendTelnet(TelnetCode code) { _codes.add(code); }
+  }
+
+  /** Builds MSDP data from a mixture of strings and control bytes. */
+  private byte[] build(Object... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Object part : parts) {
+      if (part instanceof Byte) out.write((Byte)part);
+      else {
+        byte[] bytes = ((String)part).getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private LinkedHashMap<String,MsdpValue> decode(byte[] data) {
+    LinkedHashMap<String,MsdpValue> ret = new LinkedHashMap<String,MsdpValue>();
+    Msdp.decode(data, 0, data.length, ret);
+    return ret;
+  }
+
+  @Test
+  public void testDecodeStrings() {
+    LinkedHashMap<String,MsdpValue> vars =
+      decode(build(Msdp.VAR, "HEALTH", Msdp.VAL, "100", Msdp.VAR, "NAME", Msdp.VAL, "Zoë"));
+    assertTrue(vars.size() == 2);
+    assertTrue(vars.get("HEALTH").queryText().equals("100"));
+    assertTrue(vars.get("NAME").queryText().equals("Zoë"));
+  }
+
+  @Test
+  public void testDecodeArraysAndTables() {
+    LinkedHashMap<String,MsdpValue> vars = decode(build(
+      Msdp.VAR, "ROOM", Msdp.VAL, Msdp.TABLE_OPEN,
+        Msdp.VAR, "VNUM", Msdp.VAL, "6008",
+        Msdp.VAR, "EXITS", Msdp.VAL, Msdp.TABLE_OPEN,
+          Msdp.VAR, "n", Msdp.VAL, "6011",
+        Msdp.TABLE_CLOSE,
+      Msdp.TABLE_CLOSE,
+      Msdp.VAR, "LIST", Msdp.VAL, Msdp.ARRAY_OPEN, Msdp.VAL, "a", Msdp.VAL, "b", Msdp.ARRAY_CLOSE,
+      Msdp.VAR, "MULTI", Msdp.VAL, "x", Msdp.VAL, "y"));
+    MsdpValue room = vars.get("ROOM");
+    assertTrue(room.queryKind() == MsdpValue.Kind.TABLE);
+    assertTrue(room.queryEntry("VNUM").queryText().equals("6008"));
+    assertTrue(room.queryEntry("EXITS").queryEntry("n").queryText().equals("6011"));
+    assertTrue(vars.get("LIST").queryKind() == MsdpValue.Kind.ARRAY);
+    assertTrue(vars.get("LIST").queryArray().size() == 2);
+    assertTrue(vars.get("MULTI").queryArray().get(1).queryText().equals("y"));
+  }
+
+  @Test
+  public void testStoreReportsOnlyChanges() {
+    MsdpVariables store = new MsdpVariables();
+    assertTrue(store.update("HEALTH", MsdpValue.makeString("10")));
+    assertFalse(store.update("HEALTH", MsdpValue.makeString("10")));
+    assertTrue(store.update("HEALTH", MsdpValue.makeString("9")));
+    assertTrue(store.queryText("HEALTH").equals("9"));
+    assertTrue(store.queryText("MANA") == null);
+    assertTrue(store.size() == 1);
+  }
+
+  @Test
+  public void testHandlerNegotiationAndEvents() {
+    Sender sender = new Sender();
+    TelnetHandler handler = new TelnetHandler(sender);
+    MsdpListener listener = new MsdpListener();
+    EventBus.registerEventListener(listener);
+    try {
+      TelnetEvent evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 69));
+      handler.eventOccurred(evt.queryEventKind(), evt);
+      assertTrue(sender._codes.get(0).queryCommand() == TelnetCode.DO);
+      assertTrue(sender._codes.get(1).queryOption() == 69);
+
+      // the server tells us what it can report, and we ask for all of it
+      byte[] data = build(Msdp.VAR, "REPORTABLE_VARIABLES", Msdp.VAL, Msdp.ARRAY_OPEN,
+                          Msdp.VAL, "HEALTH", Msdp.VAL, "MANA", Msdp.ARRAY_CLOSE);
+      evt = new TelnetEvent(new SubNegotiationTelnetCommand(69, data));
+      handler.eventOccurred(evt.queryEventKind(), evt);
+      ByteBuffer request = sender._codes.get(2).querySubNegotiation();
+      byte[] expected = { 1, 'R', 'E', 'P', 'O', 'R', 'T', 2, 'H', 'E', 'A', 'L', 'T', 'H',
+                         2, 'M', 'A', 'N', 'A' };
+      assertTrue(request.equals(ByteBuffer.wrap(expected)));
+      assertTrue(listener._events.size() == 0);
+
+      // updates only lead to events when something changed
+      data = build(Msdp.VAR, "HEALTH", Msdp.VAL, "50", Msdp.VAR, "MANA", Msdp.VAL, "20");
+      evt = new TelnetEvent(new SubNegotiationTelnetCommand(69, data));
+      handler.eventOccurred(evt.queryEventKind(), evt);
+      assertTrue(listener._events.size() == 2);
+      data = build(Msdp.VAR, "HEALTH", Msdp.VAL, "45", Msdp.VAR, "MANA", Msdp.VAL, "20");
+      evt = new TelnetEvent(new SubNegotiationTelnetCommand(69, data));
+      handler.eventOccurred(evt.queryEventKind(), evt);
+      assertTrue(listener._events.size() == 3);
+      assertTrue(listener._events.get(2).queryVariable().equals("HEALTH"));
+      assertTrue(handler.queryMsdpVariables().queryText("HEALTH").equals("45"));
+    }
+    finally { EventBus.removeEventListener(listener); }
+  }
+}
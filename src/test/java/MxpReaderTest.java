@@ -0,0 +1,209 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import turtle.styles.AnsiColour;
+import turtle.styles.AttributeGroup;
+import turtle.styles.LinkLayout;
+import turtle.styles.MxpReader;
+import turtle.styles.RGBAColour;
+import turtle.interfaces.immutable.CharacterLayout;
+import turtle.interfaces.immutable.LayoutedText;
+
+public class MxpReaderTest {
+  private static final String ESC = Character.toString((char)27);
+
+  private MxpReader enabledReader() {
+    MxpReader reader = new MxpReader();
+    reader.setEnabled(true);
+    return reader;
+  }
+
+  /** Returns the part of txt that contains the given text. */
+  private int partContaining(LayoutedText txt, String text) {
+    for (int i = 0; i < txt.numParts(); i++) {
+      if (txt.getPart(i).indexOf(text) >= 0) return i;
+    }
+    return -1;
+  }
+
+  @Test
+  public void testDisabledLeavesTagsAlone() {
+    MxpReader reader = new MxpReader();
+    LayoutedText txt = reader.parse("a <b>bold</b> &amp; " + ESC + "[1mbright" + ESC + "[0m.");
+    assertTrue(txt.getFullString().equals("a <b>bold</b> &amp; bright."));
+    assertTrue(txt.numParts() == 3);
+    assertTrue(txt.getStyle(1).queryBold());
+  }
+
+  @Test
+  public void testPlainTextIsNotCopied() {
+    MxpReader reader = enabledReader();
+    String text = "Nothing special here.\nOr here.\n";
+    LayoutedText txt = reader.parse(text);
+    assertTrue(txt.numParts() == 1);
+    assertTrue(txt.getPart(0) == text);
+  }
+
+  @Test
+  public void testFormattingTags() {
+    MxpReader reader = enabledReader();
+    LayoutedText txt = reader.parse("a <b>b <i>bi</i></b> <color red>red</color> " +
+                                    "<c fore=#00FF00 back=blue>green</c> &lt;x&gt;");
+    assertTrue(txt.getFullString().equals("a b bi red green <x>"));
+    CharacterLayout b = txt.getStyle(partContaining(txt, "b "));
+    assertTrue(b.queryBold() && !b.queryItalic());
+    CharacterLayout bi = txt.getStyle(partContaining(txt, "bi"));
+    assertTrue(bi.queryBold() && bi.queryItalic());
+    CharacterLayout red = txt.getStyle(partContaining(txt, "red"));
+    assertTrue(red.getFront().equals(new RGBAColour(255, 0, 0)));
+    assertFalse(red.queryBold());
+    CharacterLayout green = txt.getStyle(partContaining(txt, "green"));
+    assertTrue(green.getFront().equals(new RGBAColour(0, 255, 0)));
+    assertTrue(green.getBack().equals(new RGBAColour(0, 0, 255)));
+    assertTrue(txt.getStyle(txt.numParts() - 1).equals(new AttributeGroup()));
+  }
+
+  @Test
+  public void testAnsiAndTagsCombine() {
+    MxpReader reader = enabledReader();
+    LayoutedText txt = reader.parse(ESC + "[31m<u>x" + ESC + "[0my</u>z");
+    assertTrue(txt.getFullString().equals("xyz"));
+    assertTrue(txt.numParts() == 3);
+    assertTrue(txt.getStyle(0).getFront().equals(new AnsiColour(AnsiColour.COL_RED, false)));
+    assertTrue(txt.getStyle(0).queryUnderline());
+    assertTrue(txt.getStyle(1).queryUnderline());
+    assertFalse(txt.getStyle(1).getFront().equals(new AnsiColour(AnsiColour.COL_RED, false)));
+    assertFalse(txt.getStyle(2).queryUnderline());
+  }
+
+  @Test
+  public void testTokensSplitOverTexts() {
+    MxpReader reader = enabledReader();
+    String[] pieces = { "one <", "b>two</", "b> three &a", "mp; f", "our " + ESC + "[", "1mfive" };
+    StringBuilder full = new StringBuilder();
+    ArrayList<LayoutedText> texts = new ArrayList<LayoutedText>();
+    for (String piece : pieces) {
+      LayoutedText txt = reader.parse(piece);
+      texts.add(txt);
+      full.append(txt.getFullString());
+    }
+    assertTrue(full.toString().equals("one two three & four five"));
+    assertTrue(texts.get(1).getStyle(0).queryBold());
+    assertTrue(texts.get(1).getPart(0).equals("two"));
+    assertFalse(texts.get(2).getStyle(0).queryBold());
+    assertTrue(texts.get(3).getPart(0).equals("&"));
+    assertTrue(texts.get(5).getStyle(0).queryBold());
+  }
+
+  @Test
+  public void testLiteralSpecialCharacters() {
+    MxpReader reader = enabledReader();
+    LayoutedText txt = reader.parse("hp < 50 && sp<100 & more;\n");
+    assertTrue(txt.getFullString().equals("hp < 50 && sp<100 & more;\n"));
+    // an incomplete tag that becomes too long is printed after all
+    StringBuilder longtag = new StringBuilder("<b ");
+    for (int i = 0; i < MxpReader.MAXTOKEN - 10; i++) longtag.append('x');
+    txt = reader.parse(longtag.toString());
+    assertTrue(txt.isEmpty());
+    txt = reader.parse("xxxxxxxxxxxxxxxxxxxxyz");
+    assertTrue(txt.getFullString().equals(longtag.toString() + "xxxxxxxxxxxxxxxxxxxxyz"));
+  }
+
+  @Test
+  public void testLineModes() {
+    MxpReader reader = enabledReader();
+    // secure tags are ignored in open mode
+    LayoutedText txt = reader.parse("<send look>look</send>\n");
+    assertFalse(txt.getStyle(0) instanceof LinkLayout);
+    // open tags are closed at the end of the line
+    txt = reader.parse("<b>bold\nnormal\n");
+    assertTrue(txt.getStyle(0).queryBold());
+    assertFalse(txt.getStyle(1).queryBold());
+    // locked mode leaves tags alone for one line
+    txt = reader.parse(ESC + "[2z<b>x</b>\n<b>y</b>\n");
+    assertTrue(txt.getFullString().equals("<b>x</b>\ny\n"));
+    // a secure line allows links
+    txt = reader.parse(ESC + "[1z<send look>look</send>\n");
+    assertTrue(txt.getStyle(0) instanceof LinkLayout);
+    // but the next line is open again
+    txt = reader.parse("<send look>look</send>\n");
+    assertFalse(txt.getStyle(0) instanceof LinkLayout);
+    // unless the default mode was changed
+    txt = reader.parse(ESC + "[6z\n<send look>look</send>\n");
+    assertTrue(txt.getStyle(partContaining(txt, "look")) instanceof LinkLayout);
+    assertTrue(reader.queryEnabled());
+  }
+
+  @Test
+  public void testLinks() {
+    MxpReader reader = enabledReader();
+    LayoutedText txt = reader.parse(ESC + "[6z<send href=\"kill &text;\" hint='Attack!'>" +
+                                    "the <b>orc</b></send> <send>north</send> " +
+                                    "<a href=\"http://example.com/\">site</a>");
+    assertTrue(txt.getFullString().equals("the orc north site"));
+    LinkLayout orc = (LinkLayout)txt.getStyle(partContaining(txt, "orc"));
+    assertTrue(orc.queryBold() && orc.queryUnderline());
+    assertTrue(orc.queryLink().queryCommand().equals("kill the orc"));
+    assertTrue(orc.queryLink().queryHint().equals("Attack!"));
+    assertTrue(txt.getStyle(0) instanceof LinkLayout);
+    LinkLayout north = (LinkLayout)txt.getStyle(partContaining(txt, "north"));
+    assertTrue(north.queryLink().queryCommand().equals("north"));
+    LinkLayout site = (LinkLayout)txt.getStyle(partContaining(txt, "site"));
+    assertTrue(site.queryLink().queryCommand() == null);
+    assertTrue(site.queryLink().queryUrl().equals("http://example.com/"));
+    assertTrue(txt.getPart(2).equals(" "));
+    assertFalse(txt.getStyle(2) instanceof LinkLayout);
+  }
+
+  @Test
+  public void testElementsAndEntities() {
+    MxpReader reader = enabledReader();
+    LayoutedText txt = reader.parse(ESC + "[1z" +
+      "<!ELEMENT RName '<FONT COLOR=Red><B>' FLAG=RoomName>" +
+      "<!ELEMENT Ex \"<send href='go &dir;'>\" ATT='dir=north'><!ENTITY hp '120'>\n" +
+      ESC + "[1z<RName>The Inn</RName> &hp; <Ex south>S</Ex> <Ex>N</Ex>\n");
+    assertTrue(txt.getFullString().equals("\nThe Inn 120 S N\n"));
+    CharacterLayout inn = txt.getStyle(partContaining(txt, "Inn"));
+    assertTrue(inn.queryBold());
+    assertTrue(inn.getFront().equals(new RGBAColour(255, 0, 0)));
+    assertFalse(txt.getStyle(partContaining(txt, "120")).queryBold());
+    LinkLayout s = (LinkLayout)txt.getStyle(partContaining(txt, "S"));
+    assertTrue(s.queryLink().queryCommand().equals("go south"));
+    LinkLayout n = (LinkLayout)txt.getStyle(partContaining(txt, "N"));
+    assertTrue(n.queryLink().queryCommand().equals("go north"));
+    // elements are not available in open mode, unless defined as OPEN
+    txt = reader.parse("<RName>x</RName>\n");
+    assertFalse(txt.getStyle(0).queryBold());
+  }
+
+  @Test
+  public void testReplies() {
+    MxpReader reader = enabledReader();
+    reader.parse("<VERSION><SUPPORT>");
+    ArrayList<String> replies = reader.queryReplies();
+    assertTrue(replies.size() == 2);
+    assertTrue(replies.get(0).equals(ESC + "[1z<VERSION MXP=1.0 CLIENT=Turtle VERSION=1.0>"));
+    assertTrue(replies.get(1).startsWith(ESC + "[1z<SUPPORTS "));
+    assertTrue(reader.queryReplies().size() == 0);
+  }
+}
@@ -0,0 +1,141 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.TelnetSender;
+import turtle.connection.telnet.NawsReporter;
+import turtle.connection.telnet.SupportTelnetCommand;
+import turtle.events.TelnetEvent;
+import turtle.events.WindowSizeEvent;
+import turtle.handlers.TelnetHandler;
+import turtle.timers.TimingWheel;
+
+public class NawsTest {
+  private class Sender implements TelnetSender {
+    ArrayList<TelnetCode> _codes = new ArrayList<TelnetCode>();
+    public void sendTelnet(TelnetCode code) { _codes.add(code); }
+  }
+
+  /** Returns the size reported by the given NAWS subnegotiation, as columns x rows. */
+  private String size(TelnetCode code) {
+    assertTrue(code.queryCommand() == TelnetCode.SB && code.queryOption() == 31);
+    ByteBuffer data = code.querySubNegotiation();
+    assertTrue(data.remaining() == 4);
+    return (data.getShort(0) & 0xFFFF) + "x" + (data.getShort(2) & 0xFFFF);
+  }
+
+  /** Runs the given resizes on the event queue, and waits for them to be handled. */
+  private void resize(final NawsReporter naws, final int columns, final int rows)
+      throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { naws.resize(columns, rows); }
+    });
+  }
+
+  /** Moves time forward, and waits until any timers that expired have been handled. */
+  private void advance(TimingWheel wheel, long millis) throws Exception {
+    wheel.advance(millis);
+    EventQueue.invokeAndWait(new Runnable() { public void run() { } });
+  }
+
+  @Test
+  public void testEncode() {
+    byte[] data = NawsReporter.encode(80, 24);
+    assertTrue(data.length == 4 && data[0] == 0 && data[1] == 80 && data[2] == 0 && data[3] == 24);
+    data = NawsReporter.encode(300, 100000);
+    assertTrue(data[0] == 1 && data[1] == 44 && data[2] == (byte)0xFF && data[3] == (byte)0xFF);
+  }
+
+  @Test
+  public void testResizeStorm() throws Exception {
+    TimingWheel wheel = new TimingWheel(16);
+    Sender sender = new Sender();
+    final NawsReporter naws = new NawsReporter(sender, wheel);
+    resize(naws, 100, 30);
+    // nothing is sent until the server asks for it; then the size is sent immediately
+    assertTrue(sender._codes.size() == 0);
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { naws.setEnabled(true); }
+    });
+    assertTrue(sender._codes.size() == 1);
+    assertTrue(size(sender._codes.get(0)).equals("100x30"));
+
+    // a short drag: 40 resizes in 400 ms lead to a single update once the size is stable
+    for (int i = 0; i < 40; i++) {
+      resize(naws, 100 - i, 30 + i / 4);
+      if (i % 5 == 4) advance(wheel, TimingWheel.TICK);
+    }
+    assertTrue(sender._codes.size() == 1);
+    advance(wheel, NawsReporter.DELAY + TimingWheel.TICK);
+    assertTrue(sender._codes.size() == 2);
+    assertTrue(size(sender._codes.get(1)).equals("61x39"));
+
+    // a long drag: 600 resizes in 6 seconds; an update is sent at most every MAXWAIT ms
+    for (int i = 0; i < 600; i++) {
+      resize(naws, 60 + i % 37, 40);
+      if (i % 5 == 4) advance(wheel, TimingWheel.TICK);
+    }
+    advance(wheel, NawsReporter.DELAY + TimingWheel.TICK);
+    // one update for every MAXWAIT of dragging, and the final size once it is stable
+    int updates = sender._codes.size() - 2;
+    assertTrue(updates == 6);
+    assertTrue(size(sender._codes.get(sender._codes.size() - 1)).equals("67x40"));
+    assertTrue(naws.queryPacketsSent() == sender._codes.size());
+
+    // dragging back to the size the server already knows does not lead to an update
+    resize(naws, 80, 40);
+    resize(naws, 67, 40);
+    advance(wheel, 2 * NawsReporter.MAXWAIT);
+    assertTrue(naws.queryPacketsSent() == sender._codes.size());
+    assertTrue(size(sender._codes.get(sender._codes.size() - 1)).equals("67x40"));
+
+    // once switched off, nothing is sent anymore
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { naws.setEnabled(false); }
+    });
+    resize(naws, 90, 20);
+    advance(wheel, 2 * NawsReporter.MAXWAIT);
+    assertTrue(naws.queryPacketsSent() == sender._codes.size());
+  }
+
+  @Test
+  public void testHandlerNegotiation() {
+    Sender sender = new Sender();
+    TelnetHandler handler = new TelnetHandler(sender, new TimingWheel(16));
+    WindowSizeEvent size = new WindowSizeEvent(132, 50);
+    handler.eventOccurred(size.queryEventKind(), size);
+    TelnetEvent evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.DO, 31));
+    handler.eventOccurred(evt.queryEventKind(), evt);
+    assertTrue(sender._codes.size() == 2);
+    assertTrue(sender._codes.get(0).queryCommand() == TelnetCode.WILL);
+    assertTrue(sender._codes.get(0).queryOption() == 31);
+    assertTrue(size(sender._codes.get(1)).equals("132x50"));
+    assertTrue(handler.queryNawsReporter().queryEnabled());
+    evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.DONT, 31));
+    handler.eventOccurred(evt.queryEventKind(), evt);
+    assertFalse(handler.queryNawsReporter().queryEnabled());
+    assertTrue(sender._codes.get(2).queryCommand() == TelnetCode.WONT);
+  }
+}
@@ -0,0 +1,221 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.TelnetSender;
+import turtle.connection.Connection;
+import turtle.connection.telnet.OptionStates;
+import turtle.events.TelnetEvent;
+import turtle.handlers.TelnetHandler;
+
+public class OptionStatesTest {
+  private class RecordingSender implements TelnetSender {
+    ArrayList<TelnetCode> _codes = new ArrayList<TelnetCode>();
+    public void sendTelnet(TelnetCode code) { _codes.add(code); }
+    String last() {
+      if (_codes.isEmpty()) return "";
+      TelnetCode code = _codes.get(_codes.size() - 1);
+      return code.queryCommand() + " " + code.queryOption();
+    }
+  }
+
+  @Test
+  public void testAcceptAndRefuse() {
+    RecordingSender sender = new RecordingSender();
+    OptionStates states = new OptionStates(sender);
+    states.acceptServer(201, true);
+    states.acceptClient(24, true);
+    // accepted options are agreed to once; repeats are not answered
+    assertTrue(states.receive(TelnetCode.WILL, 201) == TelnetCode.WILL);
+    assertTrue(sender.last().equals(TelnetCode.DO + " 201"));
+    assertTrue(states.receive(TelnetCode.WILL, 201) == -1);
+    assertTrue(states.receive(TelnetCode.DO, 24) == TelnetCode.DO);
+    assertTrue(sender.last().equals(TelnetCode.WILL + " 24"));
+    assertTrue(states.receive(TelnetCode.DO, 24) == -1);
+    assertTrue(sender._codes.size() == 2);
+    assertTrue(states.queryServer(201) && states.queryClient(24));
+    assertFalse(states.queryClient(201) || states.queryServer(24));
+    // other options are refused every time, but WONT and DONT for them are ignored
+    assertTrue(states.receive(TelnetCode.WILL, 1) == -1);
+    assertTrue(sender.last().equals(TelnetCode.DONT + " 1"));
+    assertTrue(states.receive(TelnetCode.DO, 1) == -1);
+    assertTrue(sender.last().equals(TelnetCode.WONT + " 1"));
+    assertTrue(states.receive(TelnetCode.WONT, 1) == -1);
+    assertTrue(states.receive(TelnetCode.DONT, 1) == -1);
+    assertTrue(sender._codes.size() == 4);
+    assertTrue(states.queryRepliesSent() == 4);
+    assertTrue(states.queryRepliesSuppressed() == 4);
+    // the server switching off an option is confirmed
+    assertTrue(states.receive(TelnetCode.WONT, 201) == TelnetCode.WONT);
+    assertTrue(sender.last().equals(TelnetCode.DONT + " 201"));
+    assertFalse(states.queryServer(201));
+    // after a reset, options are negotiated anew
+    states.reset();
+    assertFalse(states.queryClient(24));
+    assertTrue(states.receive(TelnetCode.DO, 24) == TelnetCode.DO);
+  }
+
+  @Test
+  public void testRequests() {
+    RecordingSender sender = new RecordingSender();
+    OptionStates states = new OptionStates(sender);
+    // we ask the server to enable an option, and it agrees
+    states.requestServer(86, true);
+    assertTrue(sender.last().equals(TelnetCode.DO + " 86"));
+    assertTrue(states.queryServerState(86) == OptionStates.WANTYES);
+    states.requestServer(86, true);
+    assertTrue(sender._codes.size() == 1);
+    assertTrue(states.receive(TelnetCode.WILL, 86) == TelnetCode.WILL);
+    assertTrue(sender._codes.size() == 1);
+    assertTrue(states.queryServer(86));
+    // we switch it off, change our mind before the server answers, and get it back
+    states.requestServer(86, false);
+    assertTrue(sender.last().equals(TelnetCode.DONT + " 86"));
+    assertTrue(states.queryServerState(86) == OptionStates.WANTNO);
+    states.requestServer(86, true);
+    assertTrue(sender._codes.size() == 2);
+    assertTrue(states.receive(TelnetCode.WONT, 86) == -1);
+    assertTrue(sender.last().equals(TelnetCode.DO + " 86"));
+    assertTrue(states.queryServerState(86) == OptionStates.WANTYES);
+    assertTrue(states.receive(TelnetCode.WILL, 86) == TelnetCode.WILL);
+    // a refused request
+    states.requestClient(31, true);
+    assertTrue(sender.last().equals(TelnetCode.WILL + " 31"));
+    assertTrue(states.receive(TelnetCode.DONT, 31) == -1);
+    assertTrue(states.queryClientState(31) == OptionStates.NO);
+    // asking for an option and then cancelling before the answer
+    states.requestClient(31, true);
+    states.requestClient(31, false);
+    assertTrue(states.receive(TelnetCode.DO, 31) == -1);
+    assertTrue(sender.last().equals(TelnetCode.WONT + " 31"));
+    assertTrue(states.queryClientState(31) == OptionStates.WANTNO);
+    assertTrue(states.receive(TelnetCode.DONT, 31) == -1);
+    assertTrue(states.queryClientState(31) == OptionStates.NO);
+    // since we switched it off ourselves, the option is no longer accepted
+    assertTrue(states.receive(TelnetCode.DO, 31) == -1);
+    assertTrue(sender.last().equals(TelnetCode.WONT + " 31"));
+  }
+
+  /**
+   * A misbehaving stand-in server: it repeats all its requests several times, and "agrees" with
+   * everything the client sends (answering DO with WILL and so on).  A client which answers
+   * every request would keep up an endless exchange with it.  To see when the client is done,
+   * the server sends DO TIMING-MARK a few times in a row, each once the previous is answered.
+   */
+  private class EchoServer extends StandInServer {
+    int _packets = 0;
+    LinkedBlockingQueue<String> _received = new LinkedBlockingQueue<String>();
+
+    public EchoServer() throws IOException {
+      start();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+      for (int i = 0; i < 10; i++) {
+        negotiate(out, TelnetCode.WILL, 201);   // GMCP
+        negotiate(out, TelnetCode.DO, 24);      // TTYPE
+        negotiate(out, TelnetCode.WILL, 1);     // ECHO, which Turtle does not support
+      }
+      negotiate(out, TelnetCode.DO, 6);
+      out.flush();
+      int marks = 0;
+      int c;
+      while ((c = in.read()) != -1) {
+        if (c != TelnetCode.IAC) continue;
+        int command = in.read();
+        int option = in.read();
+        if (command == TelnetCode.SB) {
+          while (in.read() != TelnetCode.SE);
+          continue;
+        }
+        if (option == 6) {
+          if (++marks == 3) break;
+          negotiate(out, TelnetCode.DO, 6);
+          out.flush();
+          continue;
+        }
+        _packets++;
+        _received.add(command + " " + option);
+        if (command == TelnetCode.DO) negotiate(out, TelnetCode.WILL, option);
+        if (command == TelnetCode.DONT) negotiate(out, TelnetCode.WONT, option);
+        if (command == TelnetCode.WILL) negotiate(out, TelnetCode.DO, option);
+        if (command == TelnetCode.WONT) negotiate(out, TelnetCode.DONT, option);
+        out.flush();
+      }
+      _received.add("done");
+    }
+  }
+
+  private class ForwardingListener extends RecordingListener {
+    TelnetHandler _handler;
+    public synchronized void connectionReceivedTelnet(TelnetCode code) {
+      TelnetEvent evt = new TelnetEvent(code);
+      _handler.eventOccurred(evt.queryEventKind(), evt);
+    }
+  }
+
+  @Test
+  public void testAgainstMisbehavingServer() throws Exception {
+    EchoServer server = new EchoServer();
+    ForwardingListener listener = new ForwardingListener();
+    final Connection connection;
+    // the handler must be in place before the first telnet code arrives
+    synchronized (listener) {
+      connection = new Connection("localhost", server.queryPort(), listener);
+      listener._handler = new TelnetHandler(new TelnetSender() {
+        public void sendTelnet(TelnetCode code) { connection.sendTelnet(code); }
+      });
+    }
+    try {
+      ArrayList<String> received = new ArrayList<String>();
+      String packet;
+      while (!(packet = server._received.poll(5, TimeUnit.SECONDS)).equals("done")) {
+        received.add(packet);
+      }
+      // DO GMCP and WILL TTYPE are each sent once, the unsupported option is refused every time
+      assertTrue(received.size() == 12);
+      assertTrue(received.get(0).equals(TelnetCode.DO + " 201"));
+      assertTrue(received.get(1).equals(TelnetCode.WILL + " 24"));
+      for (int i = 2; i < 12; i++) assertTrue(received.get(i).equals(TelnetCode.DONT + " 1"));
+      OptionStates states = listener._handler.queryOptionStates();
+      assertTrue(states.queryRepliesSent() == 12);
+      // 9 repeated WILL GMCP, 9 repeated DO TTYPE, the echoes of our 2 agreements, and 10 WONT ECHO
+      assertTrue(states.queryRepliesSuppressed() == 30);
+      assertTrue(states.queryServer(201));
+      assertTrue(states.queryClient(24));
+      assertFalse(states.queryServer(1));
+    }
+    finally {
+      connection.disconnect();
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.connection.Connection;
+import turtle.connection.OutboundQueue;
+import turtle.connection.telnet.*;
+
+public class OutboundQueueTest {
+  private static final int PRODUCERS = 8;
+  private static final int FRAMES = 20000;
+
+  /** Each producer sends the lines "p:0", "p:1", ... alternated with IAC SB p <i> IAC SE. */
+  private class Producer extends Thread {
+    private int _id;
+    private CountDownLatch _start;
+    private OutboundQueue _queue;
+    private Connection _connection;
+
+    public Producer(int id, CountDownLatch start, OutboundQueue queue, Connection connection) {
+      _id = id;
+      _start = start;
+      _queue = queue;
+      _connection = connection;
+    }
+
+    public void run() {
+      try { _start.await(); }
+      catch (InterruptedException e) { return; }
+      for (int i = 0; i < FRAMES; i++) {
+        String text = _id + ":" + i;
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        TelnetCode code = new SubNegotiationTelnetCommand(_id, bytes);
+        if (_queue != null) { _queue.addText(text); _queue.addTelnet(code); }
+        else { _connection.send(text); _connection.sendTelnet(code); }
+      }
+    }
+  }
+
+  /**
+   * Checks that the given frame is the next one expected from its producer; next[p] is the number
+   * of frames seen from producer p so far.
+   */
+  private void checkFrame(boolean telnet, String text, int[] next) {
+    int k = text.indexOf(':');
+    int producer = Integer.parseInt(text.substring(0, k));
+    int index = Integer.parseInt(text.substring(k + 1));
+    assertTrue(index == next[producer] / 2);
+    assertTrue(telnet == (next[producer] % 2 == 1));
+    next[producer]++;
+  }
+
+  private String subNegotiationText(TelnetCode code) {
+    ByteBuffer data = code.querySubNegotiation();
+    byte[] bytes = new byte[data.remaining()];
+    data.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private ArrayList<Producer> startProducers(OutboundQueue queue, Connection connection,
+                                             CountDownLatch start) {
+    ArrayList<Producer> producers = new ArrayList<Producer>();
+    for (int p = 0; p < PRODUCERS; p++) {
+      Producer producer = new Producer(p, start, queue, connection);
+      producer.start();
+      producers.add(producer);
+    }
+    return producers;
+  }
+
+  @Test
+  public void testEmptyQueue() {
+    OutboundQueue queue = new OutboundQueue();
+    assertTrue(queue.isEmpty());
+    assertTrue(queue.poll() == null);
+    queue.addText("a");
+    queue.addTelnet(new SingleTelnetCommand(TelnetCode.NOP));
+    assertFalse(queue.isEmpty());
+    assertTrue(queue.poll().queryText().equals("a"));
+    assertTrue(queue.poll().isTelnet());
+    assertTrue(queue.poll() == null);
+  }
+
+  @Test
+  public void testManyProducersKeepOrder() throws InterruptedException {
+    OutboundQueue queue = new OutboundQueue();
+    CountDownLatch start = new CountDownLatch(1);
+    startProducers(queue, null, start);
+    start.countDown();
+
+    // consume while the producers are still running
+    int[] next = new int[PRODUCERS];
+    int total = 0;
+    long deadline = System.currentTimeMillis() + 30000;
+    while (total < 2 * PRODUCERS * FRAMES && System.currentTimeMillis() < deadline) {
+      OutboundQueue.Frame frame = queue.poll();
+      if (frame == null) { Thread.yield(); continue; }
+      if (frame.isTelnet()) checkFrame(true, subNegotiationText(frame.queryTelnetCode()), next);
+      else checkFrame(false, frame.queryText(), next);
+      total++;
+    }
+    assertTrue(total == 2 * PRODUCERS * FRAMES);
+    assertTrue(queue.poll() == null);
+  }
+
+  /** A stand-in MUD server, which collects everything it receives. */
+  private class CollectingServer extends StandInServer {
+    private ByteArrayOutputStream _received = new ByteArrayOutputStream();
+    private LinkedBlockingQueue<Boolean> _done = new LinkedBlockingQueue<Boolean>();
+
+    public CollectingServer() throws IOException {
+      start();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      try {
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = in.read(buffer)) != -1) _received.write(buffer, 0, len);
+      }
+      finally { _done.add(true); }
+    }
+  }
+
+  @Test
+  public void testConnectionSendsInOrder() throws Exception {
+    CollectingServer server = new CollectingServer();
+    RecordingListener listener = new RecordingListener();
+    Connection connection = new Connection("localhost", server.queryPort(), listener);
+    assertEquals("established", listener.awaitStatus());
+
+    CountDownLatch start = new CountDownLatch(1);
+    ArrayList<Producer> producers = startProducers(null, connection, start);
+    start.countDown();
+    for (Producer producer : producers) producer.join();
+    // everything that was queued before the disconnect is still sent
+    connection.disconnect();
+    assertTrue(server._done.poll(5, TimeUnit.SECONDS) != null);
+    server.close();
+
+    // split the received bytes into lines and subnegotiations again
+    byte[] bytes = server._received.toByteArray();
+    int[] next = new int[PRODUCERS];
+    int total = 0;
+    for (int i = 0; i < bytes.length; ) {
+      int j;
+      if (bytes[i] == (byte)TelnetCode.IAC) {
+        assertTrue(bytes[i+1] == (byte)TelnetCode.SB);
+        for (j = i + 3; bytes[j] != (byte)TelnetCode.IAC; j++);
+        checkFrame(true, new String(bytes, i + 3, j - i - 3, StandardCharsets.UTF_8), next);
+        i = j + 2;
+      }
+      else {
+        for (j = i; bytes[j] != '\n'; j++);
+        checkFrame(false, new String(bytes, i, j - i, StandardCharsets.UTF_8), next);
+        i = j + 1;
+      }
+      total++;
+    }
+    assertTrue(total == 2 * PRODUCERS * FRAMES);
+  }
+}
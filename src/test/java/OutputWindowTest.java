@@ -0,0 +1,85 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import turtle.interfaces.immutable.LayoutedText;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.OutputTarget;
+import turtle.events.MudTextEvent;
+import turtle.events.UserInputEvent;
+import turtle.handlers.InformationHandler;
+import turtle.windowing.OutputWindow;
+
+public class OutputWindowTest {
+  private boolean _found;
+
+  private void send(final InformationHandler handler, final TurtleEvent event) throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { handler.eventOccurred(event.queryEventKind(), event); }
+    });
+  }
+
+  /** Gives user input the way the frame and the InformationHandler see it. */
+  private void input(final OutputWindow window, InformationHandler handler, String text)
+      throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { window.markInput(); }
+    });
+    send(handler, new UserInputEvent(text));
+  }
+
+  private boolean find(final OutputWindow window, final String text) throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { _found = window.find(text, null); }
+    });
+    return _found;
+  }
+
+  private boolean findNext(final OutputWindow window, final int direction) throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { _found = window.findNext(direction); }
+    });
+    return _found;
+  }
+
+  @Test
+  public void testFindSkipsItsOwnEcho() throws Exception {
+    final OutputWindow window = new OutputWindow();
+    InformationHandler handler = new InformationHandler(new OutputTarget() {
+      public void print(LayoutedText text) { window.addText(text); }
+    });
+    send(handler, new MudTextEvent("A goblin is here.\n> "));
+    input(window, handler, "kill goblin");
+    send(handler, new MudTextEvent("You kill the goblin.\n> "));
+    input(window, handler, "#find goblin");
+    // the most recent match is in the output, not in the #find command itself
+    assertTrue(find(window, "goblin"));
+    assertTrue(!findNext(window, 1));
+    // older matches, including earlier commands, are still found
+    assertTrue(findNext(window, -1));
+    assertTrue(findNext(window, -1));
+    assertTrue(!findNext(window, -1));
+    // a search that only matches its own echo finds nothing
+    input(window, handler, "#find dragon");
+    assertTrue(!find(window, "dragon"));
+  }
+}
@@ -0,0 +1,212 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import turtle.interfaces.ConnectionListener;
+import turtle.interfaces.HostResolver;
+import turtle.connection.AddressCache;
+import turtle.connection.Connection;
+import turtle.connection.ParallelConnector;
+
+public class ParallelConnectorTest {
+  /** A stub resolver, which knows a fixed list of addresses for every host, and counts lookups. */
+  private class StubResolver implements HostResolver {
+    InetAddress[] _addresses;
+    AtomicInteger _lookups = new AtomicInteger(0);
+    CountDownLatch _release = null;
+    StubResolver(String ... addresses) throws UnknownHostException {
+      _addresses = new InetAddress[addresses.length];
+      for (int i = 0; i < addresses.length; i++) {
+        _addresses[i] = InetAddress.getByName(addresses[i]);
+      }
+    }
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+      _lookups.incrementAndGet();
+      if (_release != null) {
+        try { _release.await(); } catch (InterruptedException e) { }
+      }
+      if (host.startsWith("unknown")) throw new UnknownHostException(host);
+      return _addresses.clone();
+    }
+  }
+
+  /**
+   * Returns a server socket on 127.0.0.1 and the given port which never accepts connections, and
+   * whose backlog is full, so that connecting to it hangs like connecting to a dead address.
+   */
+  private ServerSocket blackHole(int port, ArrayList<Socket> fillers) throws IOException {
+    ServerSocket server = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"));
+    for (int i = 0; i < 2; i++) {
+      Socket filler = new Socket();
+      filler.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+      fillers.add(filler);
+    }
+    return server;
+  }
+
+  /** Returns a listening socket on 127.0.0.2, if this system has that loopback address. */
+  private ServerSocket secondLoopback() {
+    try { return new ServerSocket(0, 50, InetAddress.getByName("127.0.0.2")); }
+    catch (IOException e) { return null; }
+  }
+
+  @Test
+  public void testInterleaveFamilies() throws Exception {
+    InetAddress[] addresses = new InetAddress[] {
+      InetAddress.getByName("::1"), InetAddress.getByName("::2"), InetAddress.getByName("::3"),
+      InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2") };
+    ArrayList<InetAddress> order = ParallelConnector.interleave(addresses);
+    assertTrue(order.size() == 5);
+    assertTrue(order.get(0).equals(addresses[0]));
+    assertTrue(order.get(1).equals(addresses[3]));
+    assertTrue(order.get(2).equals(addresses[1]));
+    assertTrue(order.get(3).equals(addresses[4]));
+    assertTrue(order.get(4).equals(addresses[2]));
+  }
+
+  @Test
+  public void testCacheRemembersAddresses() throws Exception {
+    StubResolver resolver = new StubResolver("127.0.0.1", "::1");
+    AddressCache cache = new AddressCache(resolver, 60000);
+    assertTrue(cache.resolve("mud.example").length == 2);
+    assertTrue(cache.resolve("MUD.example").length == 2);
+    assertTrue(resolver._lookups.get() == 1);
+    cache.resolve("other.example");
+    assertTrue(resolver._lookups.get() == 2);
+    cache.clear();
+    cache.resolve("mud.example");
+    assertTrue(resolver._lookups.get() == 3);
+  }
+
+  @Test
+  public void testCacheExpiresAndForgetsFailures() throws Exception {
+    StubResolver resolver = new StubResolver("127.0.0.1");
+    AddressCache cache = new AddressCache(resolver, 0);
+    cache.resolve("mud.example");
+    cache.resolve("mud.example");
+    assertTrue(resolver._lookups.get() == 2);
+    cache = new AddressCache(resolver, 60000);
+    for (int i = 0; i < 2; i++) {
+      try { cache.resolve("unknown.example"); fail(); }
+      catch (UnknownHostException e) { }
+    }
+    assertTrue(resolver._lookups.get() == 4);
+  }
+
+  @Test
+  public void testConcurrentLookupsShareOneQuery() throws Exception {
+    StubResolver resolver = new StubResolver("127.0.0.1");
+    resolver._release = new CountDownLatch(1);
+    AddressCache cache = new AddressCache(resolver, 60000);
+    LinkedBlockingQueue<Integer> results = new LinkedBlockingQueue<Integer>();
+    for (int i = 0; i < 10; i++) {
+      Thread thread = new Thread() {
+        public void run() {
+          try { results.add(cache.resolve("mud.example").length); }
+          catch (UnknownHostException e) { results.add(-1); }
+        }
+      };
+      thread.start();
+    }
+    Thread.sleep(100);
+    resolver._release.countDown();
+    for (int i = 0; i < 10; i++) assertTrue(results.poll(5, TimeUnit.SECONDS) == 1);
+    assertTrue(resolver._lookups.get() == 1);
+  }
+
+  @Test
+  public void testRefusedAddressIsSkipped() throws Exception {
+    ServerSocket good;
+    try { good = new ServerSocket(0, 50, InetAddress.getByName("::1")); }
+    catch (IOException e) { good = null; }
+    assumeTrue(good != null);
+    // nothing listens on 127.0.0.1 with this port (most likely), so that attempt is refused
+    InetAddress[] addresses = new InetAddress[] {
+      InetAddress.getByName("127.0.0.1"), InetAddress.getByName("::1") };
+    ParallelConnector connector = new ParallelConnector(addresses, good.getLocalPort(), 5000);
+    long start = System.nanoTime();
+    try (Socket socket = connector.connect(10000, "mud.example", null)) {
+      assertTrue(socket.getInetAddress().equals(addresses[1]));
+      // the next address is tried as soon as the first fails, not after the delay
+      assertTrue(System.nanoTime() - start < 4000000000L);
+    }
+    finally { good.close(); }
+  }
+
+  @Test
+  public void testDeadAddressIsOvertaken() throws Exception {
+    ServerSocket good = secondLoopback();
+    assumeTrue(good != null);
+    ArrayList<Socket> fillers = new ArrayList<Socket>();
+    ServerSocket dead = blackHole(good.getLocalPort(), fillers);
+    StubResolver resolver = new StubResolver("127.0.0.1", "127.0.0.2");
+    RecordingListener listener = new RecordingListener();
+    long start = System.nanoTime();
+    Connection connection = new Connection("mud.example", good.getLocalPort(),
+      StandardCharsets.UTF_8, null, new AddressCache(resolver, 60000), listener);
+    try {
+      assertEquals("established", listener.awaitStatus());
+      assertEquals("/127.0.0.2", listener._address);
+      // the second attempt starts after the delay, rather than when the first times out
+      long time = System.nanoTime() - start;
+      assertTrue(time >= ParallelConnector.DEFAULT_DELAY * 1000000L);
+      assertTrue(time < 5000000000L);
+      assertTrue(listener._attempts.size() == 2);
+      assertTrue(listener._phases.size() == 2);
+      assertTrue(listener._phases.get(0) == ConnectionListener.ConnectionPhase.RESOLVE);
+      assertTrue(listener._phases.get(1) == ConnectionListener.ConnectionPhase.CONNECT);
+    }
+    finally {
+      connection.disconnect();
+      for (Socket filler : fillers) filler.close();
+      dead.close();
+      good.close();
+    }
+  }
+
+  @Test
+  public void testAllAddressesFail() throws Exception {
+    ServerSocket unused = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    int port = unused.getLocalPort();
+    unused.close();
+    StubResolver resolver = new StubResolver("127.0.0.1");
+    RecordingListener listener = new RecordingListener();
+    Connection connection = new Connection("mud.example", port, StandardCharsets.UTF_8, null,
+                                           new AddressCache(resolver, 60000), listener);
+    assertTrue(listener.awaitStatus().startsWith("failed: Could not"));
+    connection = new Connection("unknown.example", port, StandardCharsets.UTF_8, null,
+                                new AddressCache(resolver, 60000), listener);
+    assertEquals("failed: Unknown host: unknown.example", listener.awaitStatus());
+  }
+}
@@ -0,0 +1,115 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.connection.telnet.SingleTelnetCommand;
+import turtle.events.DisconnectEvent;
+import turtle.events.MudTextEvent;
+import turtle.events.PromptEvent;
+import turtle.events.TelnetEvent;
+import turtle.handlers.PromptHandler;
+
+public class PromptHandlerTest {
+  private class PromptListener implements EventListener {
+    LinkedBlockingQueue<PromptEvent> _prompts = new LinkedBlockingQueue<PromptEvent>();
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.PROMPT) _prompts.add((PromptEvent)event);
+    }
+  }
+
+  private void send(final PromptHandler handler, final TurtleEvent event) throws Exception {
+    EventQueue.invokeAndWait(new Runnable() {
+      public void run() { handler.eventOccurred(event.queryEventKind(), event); }
+    });
+  }
+
+  private void sendText(PromptHandler handler, String text) throws Exception {
+    send(handler, new MudTextEvent(text));
+  }
+
+  private void sendTelnet(PromptHandler handler, int command) throws Exception {
+    send(handler, new TelnetEvent(new SingleTelnetCommand(command)));
+  }
+
+  @Test
+  public void testMarkedPrompts() throws Exception {
+    PromptListener listener = new PromptListener();
+    EventBus.registerEventListener(listener);
+    PromptHandler handler = new PromptHandler();
+    handler.setTimeout(0);
+    sendText(handler, "You see a door.\r\nHP: 10");
+    assertTrue(handler.queryPartialLine().equals("HP: 10"));
+    sendText(handler, " > ");
+    sendTelnet(handler, TelnetCode.GA);
+    PromptEvent prompt = listener._prompts.poll();
+    assertTrue(prompt.queryText().equals("HP: 10 > "));
+    assertTrue(prompt.queryMarked());
+    assertTrue(handler.queryPartialLine().equals(""));
+    // without text since the last prompt, GA does nothing
+    sendTelnet(handler, TelnetCode.GA);
+    sendText(handler, "A rat arrives.\r\n");
+    sendTelnet(handler, TelnetCode.EOR);
+    assertTrue(listener._prompts.isEmpty());
+    sendText(handler, "\u001b[1mHP: 9\u001b[0m> ");
+    sendTelnet(handler, TelnetCode.EOR);
+    assertTrue(listener._prompts.poll().queryText().equals("\u001b[1mHP: 9\u001b[0m> "));
+    // other telnet codes are not prompt markers
+    sendText(handler, "HP: 8");
+    sendTelnet(handler, TelnetCode.NOP);
+    assertTrue(listener._prompts.isEmpty());
+    send(handler, new DisconnectEvent(DisconnectEvent.DisconnectSource.USER));
+    assertTrue(handler.queryPartialLine().equals(""));
+    EventBus.removeEventListener(listener);
+  }
+
+  @Test
+  public void testIdleTimeout() throws Exception {
+    PromptListener listener = new PromptListener();
+    EventBus.registerEventListener(listener);
+    PromptHandler handler = new PromptHandler();
+    handler.setTimeout(50);
+    // complete lines are not prompts
+    sendText(handler, "Welcome!\r\n");
+    assertTrue(listener._prompts.poll(200, TimeUnit.MILLISECONDS) == null);
+    sendText(handler, "Name: ");
+    PromptEvent prompt = listener._prompts.poll(5, TimeUnit.SECONDS);
+    assertTrue(prompt.queryText().equals("Name: "));
+    assertFalse(prompt.queryMarked());
+    // once the server marks its prompts, the timeout is no longer used
+    sendText(handler, "HP: 10> ");
+    sendTelnet(handler, TelnetCode.GA);
+    assertTrue(listener._prompts.poll(5, TimeUnit.SECONDS).queryMarked());
+    sendText(handler, "Half a line");
+    assertTrue(listener._prompts.poll(200, TimeUnit.MILLISECONDS) == null);
+    // ... until the next connection
+    send(handler, new DisconnectEvent(DisconnectEvent.DisconnectSource.SERVER));
+    sendText(handler, "Login: ");
+    assertTrue(listener._prompts.poll(5, TimeUnit.SECONDS).queryText().equals("Login: "));
+    EventBus.removeEventListener(listener);
+  }
+}
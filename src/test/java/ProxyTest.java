@@ -0,0 +1,290 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.proxy.Bouncer;
+import turtle.proxy.FrontEnd;
+import turtle.proxy.Scrollback;
+
+public class ProxyTest {
+  private static final String IAC = Character.toString((char)TelnetCode.IAC);
+
+  /**
+   * A stand-in MUD: it sends a given number of lines and offers option 201, and then answers
+   * every line with "echo: <line>", and every DO TIMING-MARK with WILL TIMING-MARK.  Lines that it
+   * receives and telnet codes are recorded.
+   */
+  private class StandInMud extends StandInServer {
+    private int _lines;
+    LinkedBlockingQueue<String> _received = new LinkedBlockingQueue<String>();
+    int _offersAccepted = 0;
+    int _timingMarks = 0;
+
+    StandInMud(int lines) throws IOException {
+      _lines = lines;
+      start();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      OutputStream out = socket.getOutputStream();
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < _lines; i++) {
+        text.append("You hear the sound of line ").append(i).append(" in the distance.\r\n");
+      }
+      out.write(text.toString().getBytes(StandardCharsets.ISO_8859_1));
+      negotiate(out, TelnetCode.WILL, 201);
+      out.flush();
+      InputStream in = socket.getInputStream();
+      StringBuilder line = new StringBuilder();
+      for (int b = in.read(); b != -1; b = in.read()) {
+        if (b == TelnetCode.IAC) {
+          int command = in.read();
+          if (command == TelnetCode.IAC) {
+            line.append((char)255);
+            continue;
+          }
+          int option = in.read();
+          if (command == TelnetCode.DO && option == 201) _offersAccepted++;
+          if (command == TelnetCode.DO && option == 6) {
+            _timingMarks++;
+            negotiate(out, TelnetCode.WILL, 6);
+            out.flush();
+          }
+        }
+        else if (b == '\n') {
+          _received.add(line.toString());
+          out.write(("echo: " + line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+          out.flush();
+          line.setLength(0);
+        }
+        else line.append((char)b);
+      }
+    }
+  }
+
+  /** Reads from the given stream (as ISO-8859-1) until the given text has been seen. */
+  private String readUntil(InputStream in, String marker) throws IOException {
+    StringBuilder seen = new StringBuilder();
+    byte[] buffer = new byte[65536];
+    while (true) {
+      int n = in.read(buffer);
+      if (n == -1) throw new IOException("Stream ended before [" + marker + "]");
+      int from = Math.max(0, seen.length() - marker.length());
+      seen.append(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+      if (seen.indexOf(marker, from) >= 0) return seen.toString();
+    }
+  }
+
+  private static final String SECRET = "open sesame";
+
+  /** Connects a front-end to the bouncer, and authenticates. */
+  private Socket frontEnd(Bouncer bouncer) throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), bouncer.queryPort());
+    socket.setSoTimeout(10000);
+    socket.getOutputStream().write(("auth " + SECRET + "\r\n").getBytes("ISO-8859-1"));
+    return socket;
+  }
+
+  @Test
+  public void testScrollbackBounds() {
+    Scrollback scrollback = new Scrollback(10);
+    for (int i = 0; i < 25; i++) scrollback.append("line " + i + "\n");
+    assertTrue(scrollback.queryLines() == 10);
+    assertTrue(scrollback.queryChunks().get(0).equals("line 15\n"));
+    // an incomplete line is kept, but does not count as a line
+    scrollback.append("> ");
+    assertTrue(scrollback.queryLines() == 10);
+    assertTrue(scrollback.queryChunks().size() == 11);
+    // text without newlines is bounded as well
+    for (int i = 0; i < 1000; i++) scrollback.append("xxxxxxxxxx");
+    assertTrue(scrollback.queryChars() <= 10 * Scrollback.MAXLINELENGTH);
+  }
+
+  @Test
+  public void testAttachAndReplay() throws Exception {
+    int lines = 50000;
+    StandInMud mud = new StandInMud(lines);
+    Bouncer bouncer = new Bouncer(0, Bouncer.DEFAULT_SCROLLBACK, SECRET);
+    String last = "line " + (lines - 1) + " in the distance.\r\n";
+    String offer = IAC + (char)TelnetCode.WILL + (char)201;
+    String accept = IAC + (char)TelnetCode.DO + (char)201;
+
+    // the first front-end opens the session, accepts the offer, and goes away
+    Socket first = frontEnd(bouncer);
+    OutputStream out = first.getOutputStream();
+    readUntil(first.getInputStream(), "No sessions.");
+    out.write(("open mud 127.0.0.1 " + mud.queryPort() + "\r\n").getBytes("ISO-8859-1"));
+    String text = readUntil(first.getInputStream(), offer);
+    assertTrue(text.contains(last));
+    out.write(accept.getBytes("ISO-8859-1"));
+    out.write("first\r\n".getBytes("ISO-8859-1"));
+    assertTrue(mud._received.poll(5, TimeUnit.SECONDS).equals("first"));
+    first.close();
+
+    // the second front-end attaches, and gets the negotiation and the whole scrollback
+    Socket second = frontEnd(bouncer);
+    out = second.getOutputStream();
+    readUntil(second.getInputStream(), "Session mud");
+    long start = System.nanoTime();
+    out.write("attach mud\r\n".getBytes("ISO-8859-1"));
+    text = readUntil(second.getInputStream(), "echo: first\r\n");
+    long duration = (System.nanoTime() - start) / 1000000;
+    assertTrue("Attaching took " + duration + " ms", duration < 1000);
+    assertTrue(text.indexOf(offer) < text.indexOf("line 0 in"));
+    assertTrue(text.contains("You hear the sound of line 0 in the distance.\r\n"));
+    assertTrue(text.indexOf(last) < text.indexOf("echo: first"));
+
+    // its answer to the offer is not repeated to the server, but its commands are passed on
+    out.write(accept.getBytes("ISO-8859-1"));
+    out.write("second\r\n".getBytes("ISO-8859-1"));
+    readUntil(second.getInputStream(), "echo: second\r\n");
+    assertTrue(mud._received.poll(5, TimeUnit.SECONDS).equals("second"));
+    assertTrue(mud._offersAccepted == 1);
+
+    // when the session is closed, the front-end is disconnected
+    bouncer.shutdown();
+    readUntil(second.getInputStream(), "closed");
+    byte[] rest = new byte[1000];
+    while (second.getInputStream().read(rest) != -1) { }
+    second.close();
+    mud.close();
+  }
+
+  @Test
+  public void testAuthentication() throws Exception {
+    Bouncer bouncer = new Bouncer(0, Bouncer.DEFAULT_SCROLLBACK, SECRET);
+    // commands are not accepted before the secret is given, and end the connection
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), bouncer.queryPort());
+    socket.setSoTimeout(10000);
+    socket.getOutputStream().write("list\r\nauth open sesame\r\n".getBytes("ISO-8859-1"));
+    String text = readUntil(socket.getInputStream(), "Authentication failed.");
+    byte[] rest = new byte[1000];
+    for (int n = socket.getInputStream().read(rest); n != -1;
+         n = socket.getInputStream().read(rest)) {
+      text += new String(rest, 0, n, StandardCharsets.ISO_8859_1);
+    }
+    assertTrue(!text.contains("sessions"));
+    socket.close();
+    // with the right secret, the bouncer can be used
+    socket = frontEnd(bouncer);
+    readUntil(socket.getInputStream(), "No sessions.");
+    socket.close();
+    bouncer.shutdown();
+  }
+
+  @Test
+  public void testLongLinesBeforeAuthentication() throws Exception {
+    Bouncer bouncer = new Bouncer(0, Bouncer.DEFAULT_SCROLLBACK, SECRET);
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), bouncer.queryPort());
+    socket.setSoTimeout(10000);
+    byte[] junk = new byte[FrontEnd.MAXUNAUTHENTICATED + 1];
+    Arrays.fill(junk, (byte)'x');
+    socket.getOutputStream().write(junk);
+    readUntil(socket.getInputStream(), "Authentication failed.");
+    byte[] rest = new byte[1000];
+    while (socket.getInputStream().read(rest) != -1) { }
+    socket.close();
+    bouncer.shutdown();
+  }
+
+  @Test
+  public void testEscapedBytesKeepTheirPlace() throws Exception {
+    Bouncer bouncer = new Bouncer(0, Bouncer.DEFAULT_SCROLLBACK, SECRET);
+    StandInMud mud = new StandInMud(1);
+    Socket socket = frontEnd(bouncer);
+    OutputStream out = socket.getOutputStream();
+    readUntil(socket.getInputStream(), "No sessions.");
+    out.write(("open mud 127.0.0.1 " + mud.queryPort() + "\r\n").getBytes("ISO-8859-1"));
+    readUntil(socket.getInputStream(), "line 0");
+    // a data byte 255 (IAC IAC) reaches the server in the middle of its line
+    out.write("say caf".getBytes("ISO-8859-1"));
+    out.write(new byte[] { (byte)TelnetCode.IAC, (byte)TelnetCode.IAC });
+    out.write(" ok\r\n".getBytes("ISO-8859-1"));
+    assertEquals("say caf\u00ff ok", mud._received.poll(5, TimeUnit.SECONDS));
+    socket.close();
+    bouncer.shutdown();
+    mud.close();
+  }
+
+  @Test
+  public void testReadSecret() throws Exception {
+    File file = File.createTempFile("turtle", ".token");
+    file.delete();
+    file.deleteOnExit();
+    // a missing file is created with a new secret, for the owner only
+    String secret = Bouncer.readSecret(file);
+    assertTrue(secret.length() >= 32);
+    assertTrue(Bouncer.readSecret(file).equals(secret));
+    assertTrue(PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath()))
+                                   .equals("rw-------"));
+    Files.write(file.toPath(), " my secret \nsecond line\n".getBytes(StandardCharsets.UTF_8));
+    assertTrue(Bouncer.readSecret(file).equals("my secret"));
+    // a file that others can read is refused
+    Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+    try {
+      Bouncer.readSecret(file);
+      fail("A readable token file was accepted.");
+    }
+    catch (IOException e) { }
+  }
+
+  @Test
+  public void testTimingMarksArePassedOn() throws Exception {
+    StandInMud mud = new StandInMud(1);
+    Bouncer bouncer = new Bouncer(0, Bouncer.DEFAULT_SCROLLBACK, SECRET);
+    String probe = IAC + (char)TelnetCode.DO + (char)6;
+    String answer = IAC + (char)TelnetCode.WILL + (char)6;
+    Socket first = frontEnd(bouncer);
+    OutputStream out = first.getOutputStream();
+    out.write(("open mud 127.0.0.1 " + mud.queryPort() + "\r\n").getBytes("ISO-8859-1"));
+    readUntil(first.getInputStream(), IAC + (char)TelnetCode.WILL + (char)201);
+    // every probe reaches the server, and every answer comes back
+    for (int i = 0; i < 2; i++) {
+      out.write(probe.getBytes("ISO-8859-1"));
+      readUntil(first.getInputStream(), answer);
+    }
+    assertTrue(mud._timingMarks == 2);
+    // the answers are not replayed to a front-end that attaches later
+    out.write("first\r\n".getBytes("ISO-8859-1"));
+    readUntil(first.getInputStream(), "echo: first\r\n");
+    Socket second = frontEnd(bouncer);
+    second.getOutputStream().write("attach mud\r\n".getBytes("ISO-8859-1"));
+    String text = readUntil(second.getInputStream(), "echo: first\r\n");
+    assertTrue(!text.contains(answer));
+    first.close();
+    second.close();
+    bouncer.shutdown();
+    mud.close();
+  }
+}
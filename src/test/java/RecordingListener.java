@@ -0,0 +1,70 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.ConnectionListener;
+
+/**
+ * A ConnectionListener for the tests, which records everything the connection reports.  Changes
+ * in status are recorded as "established", "closed" or "failed: <error>".  Tests that need to act
+ * on telnet codes override connectionReceivedTelnet.
+ */
+public class RecordingListener implements ConnectionListener {
+  LinkedBlockingQueue<String> _status = new LinkedBlockingQueue<String>();
+  LinkedBlockingQueue<String> _text = new LinkedBlockingQueue<String>();
+  LinkedBlockingQueue<TelnetCode> _codes = new LinkedBlockingQueue<TelnetCode>();
+  ArrayList<String> _attempts = new ArrayList<String>();
+  ArrayList<ConnectionPhase> _phases = new ArrayList<ConnectionPhase>();
+  volatile String _address = null;   // the address that the connection was established with
+
+  public void connectionFailed(String error) { _status.add("failed: " + error); }
+  public void connectionClosed(boolean remote) { _status.add("closed"); }
+  public void connectionEstablished(String host, String address, int port) {
+    _address = address;
+    _status.add("established");
+  }
+  public synchronized void connectionFoundAddress(String host, String address, int port) {
+    _attempts.add(address);
+  }
+  public synchronized void connectionPhaseTimed(ConnectionPhase phase, long nanos) {
+    _phases.add(phase);
+  }
+  public void connectionReceivedText(String text) { _text.add(text); }
+  public void connectionReceivedTelnet(TelnetCode code) { _codes.add(code); }
+  public void connectionErrorOccurred(String explanation) { }
+
+  /** Returns the next change in status, or null if there is none within 5 seconds. */
+  String awaitStatus() throws InterruptedException {
+    return _status.poll(5, TimeUnit.SECONDS);
+  }
+
+  /** Waits until the text received so far contains the given string. */
+  boolean awaitText(String expected) throws InterruptedException {
+    StringBuilder received = new StringBuilder();
+    String text;
+    while ((text = _text.poll(5, TimeUnit.SECONDS)) != null) {
+      received.append(text);
+      if (received.indexOf(expected) >= 0) return true;
+    }
+    return false;
+  }
+}
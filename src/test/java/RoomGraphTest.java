@@ -0,0 +1,312 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.GotoCommand;
+import turtle.commands.MudCommand;
+import turtle.events.GmcpEvent;
+import turtle.events.UserInputEvent;
+import turtle.handlers.MapperHandler;
+import turtle.mapper.RoomGraph;
+
+public class RoomGraphTest {
+  private class InputListener implements EventListener {
+    ArrayList<String> _inputs = new ArrayList<String>();
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.USERINPUT) {
+        _inputs.add(((UserInputEvent)event).queryCommand());
+      }
+    }
+  }
+
+  /** Creates a width x height grid of rooms numbered 1000 + y * width + x, linked n/e/s/w. */
+  private RoomGraph makeGrid(int width, int height) {
+    RoomGraph graph = new RoomGraph();
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) graph.addRoom(1000 + y * width + x, "Room " + x + "," + y);
+    }
+    int east = RoomGraph.parseDirection("east"), south = RoomGraph.parseDirection("s");
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int room = graph.findRoom(1000 + y * width + x);
+        if (x + 1 < width) {
+          int other = graph.findRoom(1000 + y * width + x + 1);
+          graph.setExit(room, east, other);
+          graph.setExit(other, RoomGraph.opposite(east), room);
+        }
+        if (y + 1 < height) {
+          int other = graph.findRoom(1000 + (y + 1) * width + x);
+          graph.setExit(room, south, other);
+          graph.setExit(other, RoomGraph.opposite(south), room);
+        }
+      }
+    }
+    return graph;
+  }
+
+  private int length(int[] path) {
+    return path == null ? -1 : path.length;
+  }
+
+  @Test
+  public void testDirections() {
+    assertTrue(RoomGraph.DIRECTIONS[RoomGraph.parseDirection("North")].equals("n"));
+    assertTrue(RoomGraph.DIRECTIONS[RoomGraph.parseDirection("sw")].equals("sw"));
+    assertTrue(RoomGraph.parseDirection("look") == RoomGraph.NONE);
+    int up = RoomGraph.parseDirection("up");
+    assertTrue(RoomGraph.DIRECTIONS[RoomGraph.opposite(up)].equals("d"));
+    assertTrue(RoomGraph.DIRECTIONS[RoomGraph.opposite(RoomGraph.parseDirection("in"))]
+                 .equals("out"));
+  }
+
+  @Test
+  public void testRooms() {
+    RoomGraph graph = new RoomGraph();
+    int a = graph.addRoom(17, "Town square");
+    int b = graph.addRoom(-4, null);
+    for (int i = 0; i < 100; i++) graph.addRoom(500 + 7 * i, null);
+    assertTrue(graph.size() == 102);
+    assertTrue(graph.addRoom(17, null) == a);
+    assertTrue(graph.findRoom(17) == a);
+    assertTrue(graph.findRoom(-4) == b);
+    assertTrue(graph.findRoom(18) == RoomGraph.NONE);
+    assertTrue(graph.queryNumber(graph.findRoom(507)) == 507);
+    assertTrue(graph.queryName(a).equals("Town square"));
+    assertTrue(graph.queryName(b) == null);
+    graph.addRoom(-4, "Dark alley");
+    assertTrue(graph.findRoomByName("town SQUARE") == a);
+    assertTrue(graph.findRoomByName("alley") == b);
+    assertTrue(graph.findRoomByName("castle") == RoomGraph.NONE);
+  }
+
+  @Test
+  public void testShortestPath() {
+    RoomGraph graph = makeGrid(10, 10);
+    int from = graph.findRoom(1000), to = graph.findRoom(1099);
+    int[] path = graph.findPath(from, to);
+    assertTrue(path.length == 18);
+    int room = from;
+    for (int dir : path) room = graph.queryExit(room, dir);
+    assertTrue(room == to);
+    assertTrue(length(graph.findPath(to, to)) == 0);
+    // a one-way exit is not used backwards
+    int lonely = graph.addRoom(5, null);
+    graph.setExit(lonely, RoomGraph.parseDirection("d"), from);
+    assertTrue(graph.findPath(from, lonely) == null);
+    assertTrue(length(graph.findPath(lonely, to)) == 19);
+  }
+
+  @Test
+  public void testWeights() {
+    RoomGraph graph = makeGrid(3, 3);
+    int from = graph.findRoom(1000), to = graph.findRoom(1002);
+    assertTrue(length(graph.findPath(from, to)) == 2);
+    // make the middle of the top row expensive, so walking around it is cheaper
+    graph.setWeight(graph.findRoom(1001), 10);
+    assertTrue(length(graph.findPath(from, to)) == 4);
+  }
+
+  @Test
+  public void testCacheIsInvalidatedByEdits() {
+    RoomGraph graph = makeGrid(5, 1);
+    int from = graph.findRoom(1000), to = graph.findRoom(1004);
+    assertTrue(length(graph.findPath(from, to)) == 4);
+    int[] path = graph.findPath(from, graph.findRoom(1003));
+    assertTrue(path.length == 3);
+    int portal = RoomGraph.parseDirection("in");
+    graph.setExit(from, portal, to);
+    assertTrue(length(graph.findPath(from, to)) == 1);
+    graph.setExit(from, portal, RoomGraph.NONE);
+    assertTrue(length(graph.findPath(from, to)) == 4);
+    graph.setExit(graph.findRoom(1002), RoomGraph.parseDirection("e"), RoomGraph.NONE);
+    assertTrue(graph.findPath(from, to) == null);
+    // rooms added after a search are also found
+    int extra = graph.addRoom(1, null);
+    graph.setExit(from, RoomGraph.parseDirection("n"), extra);
+    assertTrue(length(graph.findPath(from, extra)) == 1);
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    RoomGraph graph = makeGrid(20, 20);
+    graph.addRoom(1000, "D\u00e9part");
+    graph.setWeight(graph.findRoom(1210), 5);
+    File file = File.createTempFile("turtle", ".map");
+    try {
+      graph.save(file);
+      RoomGraph loaded = RoomGraph.load(file);
+      assertTrue(loaded.size() == 400);
+      assertTrue(loaded.queryExitCount() == graph.queryExitCount());
+      assertTrue(loaded.queryName(loaded.findRoom(1000)).equals("D\u00e9part"));
+      assertTrue(loaded.queryName(loaded.findRoom(1399)).equals("Room 19,19"));
+      assertTrue(loaded.queryWeight(loaded.findRoom(1210)) == 5);
+      int from = loaded.findRoom(1000), to = loaded.findRoom(1399);
+      assertTrue(length(loaded.findPath(from, to)) == 38);
+      // the loaded graph can still be extended
+      int extra = loaded.addRoom(7, "Attic");
+      loaded.setExit(to, RoomGraph.parseDirection("u"), extra);
+      assertTrue(length(loaded.findPath(from, extra)) == 39);
+      assertTrue(loaded.findRoomByName("attic") == extra);
+    }
+    finally { file.delete(); }
+  }
+
+  @Test(expected = java.io.IOException.class)
+  public void testLoadRejectsOtherFiles() throws Exception {
+    File file = File.createTempFile("turtle", ".map");
+    try {
+      java.nio.file.Files.write(file.toPath(), "not a map".getBytes(StandardCharsets.UTF_8));
+      RoomGraph.load(file);
+    }
+    finally { file.delete(); }
+  }
+
+  private void sendRoom(MapperHandler handler, String json) {
+    ByteBuffer data = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    GmcpEvent event = new GmcpEvent("Room.Info", data, 0, data.limit());
+    handler.eventOccurred(event.queryEventKind(), event);
+  }
+
+  private void move(MapperHandler handler, String dir) {
+    MudCommand cmd = new MudCommand(dir);
+    handler.commandGiven(cmd.queryCommandKind(), cmd);
+  }
+
+  @Test
+  public void testMapperHandler() {
+    MapperHandler handler = new MapperHandler();
+    InputListener listener = new InputListener();
+    EventBus.registerEventListener(listener);
+    sendRoom(handler, "{ \"num\": 1, \"name\": \"Gate\", \"area\": \"town\", " +
+                      "\"exits\": { \"n\": 2 } }");
+    move(handler, "north");
+    sendRoom(handler, "{ \"num\": 2, \"name\": \"Market\", \"exits\": { \"s\": 1 } }");
+    // the server does not list the secret exit, but the movement is recorded, as the way back
+    // confirms it
+    move(handler, "ne");
+    sendRoom(handler, "{ \"name\": \"Hidden shop\", \"num\": 3, \"exits\": { \"sw\": 2 } }");
+    RoomGraph graph = handler.queryGraph();
+    assertTrue(graph.size() == 3);
+    assertTrue(graph.queryName(handler.queryCurrentRoom()).equals("Hidden shop"));
+    assertTrue(graph.queryExit(graph.findRoom(2), RoomGraph.parseDirection("ne")) ==
+               graph.findRoom(3));
+    // a room we teleported to is not linked
+    sendRoom(handler, "{ \"num\": 1, \"name\": \"Gate\" }");
+    assertTrue(graph.queryExitCount() == 4);
+    GotoCommand cmd = new GotoCommand("shop");
+    handler.commandGiven(cmd.queryCommandKind(), cmd);
+    assertTrue(listener._inputs.size() == 1);
+    assertTrue(listener._inputs.get(0).equals("n;;ne"));
+  }
+
+  @Test
+  public void testMapperIgnoresUnconfirmedMoves() {
+    MapperHandler handler = new MapperHandler();
+    sendRoom(handler, "{ \"num\": 1, \"exits\": { \"n\": 2, \"e\": 4 } }");
+    // the server refuses the first move, so no room information follows for it
+    move(handler, "w");
+    move(handler, "n");
+    sendRoom(handler, "{ \"num\": 2, \"exits\": { \"s\": 1 } }");
+    RoomGraph graph = handler.queryGraph();
+    assertTrue(graph.queryExit(graph.findRoom(1), RoomGraph.parseDirection("w")) ==
+               RoomGraph.NONE);
+    // after a look, the next move still matches the next room
+    sendRoom(handler, "{ \"num\": 2, \"exits\": { \"s\": 1 } }");
+    move(handler, "u");
+    sendRoom(handler, "{ \"num\": 3, \"exits\": { \"d\": 2 } }");
+    assertTrue(graph.queryExit(graph.findRoom(2), RoomGraph.parseDirection("u")) ==
+               graph.findRoom(3));
+    // a move that does not match the room we end up in does not become an exit
+    move(handler, "e");
+    sendRoom(handler, "{ \"num\": 5, \"exits\": {} }");
+    assertTrue(graph.queryExit(graph.findRoom(3), RoomGraph.parseDirection("e")) ==
+               RoomGraph.NONE);
+    // and the queue is cleared, so the stale move does not shift onto later rooms
+    sendRoom(handler, "{ \"num\": 6, \"exits\": { \"w\": 5 } }");
+    assertTrue(graph.queryExit(graph.findRoom(5), RoomGraph.parseDirection("e")) ==
+               RoomGraph.NONE);
+    assertTrue(handler.queryPendingMoves() == 0);
+    for (int i = 0; i < 2 * MapperHandler.MAXMOVES; i++) move(handler, "n");
+    assertTrue(handler.queryPendingMoves() == MapperHandler.MAXMOVES);
+  }
+
+  @Test
+  public void testLoadRejectsDamagedFiles() throws Exception {
+    RoomGraph graph = makeGrid(3, 3);
+    File file = File.createTempFile("turtle", ".map");
+    try {
+      graph.save(file);
+      byte[] data = java.nio.file.Files.readAllBytes(file.toPath());
+      // 16 header bytes, 9 room numbers and 9 weights, then the exits of the first room
+      int exits = 16 + 9 * 4 + 9;
+      byte[] broken = data.clone();
+      ByteBuffer.wrap(broken).putInt(exits, 9);
+      assertTrue(loadFails(file, broken));
+      broken = data.clone();
+      ByteBuffer.wrap(broken).putInt(exits, -7);
+      assertTrue(loadFails(file, broken));
+      // the name starts follow the 9 * 12 exits, and the name lengths follow those
+      int lengths = exits + 9 * 12 * 4 + 9 * 4;
+      broken = data.clone();
+      ByteBuffer.wrap(broken).putInt(lengths, 100000);
+      assertTrue(loadFails(file, broken));
+      broken = data.clone();
+      ByteBuffer.wrap(broken).putInt(lengths - 9 * 4, -3);
+      assertTrue(loadFails(file, broken));
+      assertFalse(loadFails(file, data));
+    }
+    finally { file.delete(); }
+  }
+
+  @Test
+  public void testLoadRejectsBadWeights() throws Exception {
+    RoomGraph graph = makeGrid(3, 3);
+    File file = File.createTempFile("turtle", ".map");
+    try {
+      graph.save(file);
+      byte[] data = java.nio.file.Files.readAllBytes(file.toPath());
+      // 16 header bytes and 9 room numbers, then the weights
+      int weights = 16 + 9 * 4;
+      byte[] broken = data.clone();
+      broken[weights + 4] = -5;
+      assertTrue(loadFails(file, broken));
+      broken[weights + 4] = 0;
+      assertTrue(loadFails(file, broken));
+      broken[weights + 4] = 127;
+      assertFalse(loadFails(file, broken));
+    }
+    finally { file.delete(); }
+  }
+
+  private boolean loadFails(File file, byte[] data) throws Exception {
+    java.nio.file.Files.write(file.toPath(), data);
+    try { RoomGraph.load(file); }
+    catch (java.io.IOException e) { return true; }
+    return false;
+  }
+}
@@ -0,0 +1,159 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+import turtle.search.ScrollbackIndex;
+import turtle.search.TrigramIndex;
+
+public class ScrollbackIndexTest {
+  private ScrollbackIndex makeIndex() {
+    ScrollbackIndex index = new ScrollbackIndex();
+    index.append("You see a Goblin.\nThe goblin hits you");   // in two parts, split mid-line
+    index.append(".\nYou kill the goblin.\nHP: 20\n");
+    index.append("> ");
+    return index;
+  }
+
+  private Pattern regex(String text) {
+    return Pattern.compile(text, Pattern.CASE_INSENSITIVE);
+  }
+
+  @Test
+  public void testLines() {
+    ScrollbackIndex index = makeIndex();
+    assertTrue(index.queryFirstLine() == 0);
+    assertTrue(index.queryLastLine() == 4);
+    assertTrue(index.queryLine(1).equals("The goblin hits you."));
+    assertTrue(index.queryLine(4).equals("> "));
+    assertTrue(index.queryOffset(1) == 18);
+    assertTrue(index.queryLength() == 69);
+  }
+
+  @Test
+  public void testLiteralSearch() {
+    ScrollbackIndex index = makeIndex();
+    ScrollbackIndex.Match match = index.findBefore("GOBLIN", index.queryLastLine() + 1);
+    assertTrue(match.queryLine() == 2);
+    assertTrue(match.queryStart() == 52 && match.queryEnd() == 58);
+    match = index.findBefore("goblin", match.queryLine());
+    assertTrue(match.queryLine() == 1);
+    match = index.findBefore("goblin", match.queryLine());
+    assertTrue(match.queryLine() == 0);
+    assertTrue(match.queryStart() == 10);
+    assertTrue(index.findBefore("goblin", 0) == null);
+    match = index.findAfter("goblin", 0);
+    assertTrue(match.queryLine() == 1);
+    assertTrue(index.findAfter("goblin", 2) == null);
+    assertTrue(index.findBefore("dragon", 10) == null);
+    // short queries do not use trigrams
+    assertTrue(index.findBefore("hp", 10).queryLine() == 3);
+    // the open line is also searched, in both directions
+    assertTrue(index.findBefore("> ", 10).queryLine() == 4);
+    assertTrue(index.findAfter(">", 0).queryLine() == 4);
+    index.append("the goblin is back");
+    assertTrue(index.findBefore("goblin", 10).queryLine() == 4);
+    assertTrue(index.findAfter("goblin", 2).queryLine() == 4);
+    // the trigrams of "goblin hits" all occur on line 2, but not the query itself
+    assertTrue(index.findBefore("kill the goblin hits", 10) == null);
+  }
+
+  @Test
+  public void testRegexSearch() {
+    ScrollbackIndex index = makeIndex();
+    ScrollbackIndex.Match match = index.findBefore(regex("hp: \\d+"), 10);
+    assertTrue(match.queryLine() == 3);
+    assertTrue(match.queryEnd() - match.queryStart() == 6);
+    match = index.findBefore(regex("^the"), 10);
+    assertTrue(match.queryLine() == 1);
+    match = index.findAfter(regex("gob(lin)?\\."), -1);
+    assertTrue(match.queryLine() == 0);
+    assertTrue(index.findAfter(regex("gob(lin)?\\."), 0).queryLine() == 2);
+    assertTrue(index.findBefore(regex("dragon|orc"), 10) == null);
+  }
+
+  @Test
+  public void testRequiredLiteral() {
+    assertTrue(ScrollbackIndex.requiredLiteral("hp: \\d+").equals("hp"));
+    assertTrue(ScrollbackIndex.requiredLiteral("kill (the )?goblins?").equals("goblin"));
+    assertTrue(ScrollbackIndex.requiredLiteral("a|b") == null);
+    assertTrue(ScrollbackIndex.requiredLiteral("x{2,3}y").equals("y"));
+    assertTrue(ScrollbackIndex.requiredLiteral("[abc]+.*") == null);
+    assertTrue(ScrollbackIndex.requiredLiteral("go+d").equals("go"));
+    // brackets in classes do not end groups, and classes may start with ]
+    assertTrue(ScrollbackIndex.requiredLiteral("[)abc]x").equals("x"));
+    assertTrue(ScrollbackIndex.requiredLiteral("(a[)]b)cd").equals("cd"));
+    assertTrue(ScrollbackIndex.requiredLiteral("[]abc]x").equals("x"));
+    assertTrue(ScrollbackIndex.requiredLiteral("[^]abc]x").equals("x"));
+    assertTrue(ScrollbackIndex.requiredLiteral("[a[bc]]x").equals("x"));
+    // quoting, inline flags and comments make it unsure
+    assertTrue(ScrollbackIndex.requiredLiteral("\\Qa.b\\Ecd") == null);
+    assertTrue(ScrollbackIndex.requiredLiteral("(?x)go blin") == null);
+    assertTrue(ScrollbackIndex.requiredLiteral("(?-i:goblin)") == null);
+    assertTrue(ScrollbackIndex.requiredLiteral("(?:the )?goblin").equals("goblin"));
+    assertTrue(ScrollbackIndex.requiredLiteral(Pattern.compile("go blin", Pattern.COMMENTS)) ==
+               null);
+    assertTrue(ScrollbackIndex.requiredLiteral(regex("go blin")).equals("go blin"));
+  }
+
+  @Test
+  public void testTrim() {
+    ScrollbackIndex index = new ScrollbackIndex();
+    for (int i = 0; i < 5000; i++) index.append("line number " + i + "\n");
+    int length = index.queryLength();
+    int removed = index.trim(4000);
+    assertTrue(index.queryLength() == length - removed);
+    assertTrue(index.queryFirstLine() == 4000);
+    assertTrue(index.queryOffset(4000) == 0);
+    assertTrue(index.queryLine(4000).equals("line number 4000"));
+    assertTrue(index.findBefore("number 3999", 10000) == null);
+    assertTrue(index.findBefore("number 4", 10000).queryLine() == 4999);
+    ScrollbackIndex.Match match = index.findAfter("number 4", 0);
+    assertTrue(match.queryLine() == 4000);
+    assertTrue(match.queryStart() == 5);
+    // adding a lot more text reuses the space of the trimmed lines
+    for (int i = 5000; i < 20000; i++) index.append("line number " + i + "\n");
+    index.trim(index.queryLastLine() - 100 - index.queryFirstLine());
+    assertTrue(index.queryLastLine() - index.queryFirstLine() == 100);
+    assertTrue(index.findBefore("number 19900", 100000).queryLine() == 19900);
+    assertTrue(index.findBefore("number 19899", 100000) == null);
+    assertTrue(index.findBefore(regex("number 1989\\d"), 100000) == null);
+    // the last line is never trimmed
+    index.append("open");
+    index.trim(1000);
+    assertTrue(index.queryFirstLine() == index.queryLastLine());
+    assertTrue(index.findBefore("open", 100000).queryStart() == 0);
+  }
+
+  @Test
+  public void testTrigramIndexTrim() {
+    TrigramIndex index = new TrigramIndex();
+    for (int i = 0; i < 100; i++) index.add(i, i % 2 == 0 ? "even line" : "odd line");
+    index.trimBefore(90);
+    assertTrue(index.queryFirst() == 90);
+    assertTrue(index.findBefore("odd", 100) == 99);
+    assertTrue(index.findAfter("odd", 0) == 91);
+    assertTrue(index.findBefore("even", 90) == -1);
+    assertTrue(index.findAfter("ev", -5) == 90);
+    index.add(100, "even more");
+    assertTrue(index.findBefore("even", 1000) == 100);
+  }
+}
@@ -0,0 +1,115 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-in MUD server for the tests, listening on a free port of the loopback interface (or on
+ * a given server socket, for instance one for TLS).  Every connection is handled by serve() on its
+ * own daemon thread, and closed when serve() returns.  Tests override serve() to act like the
+ * server they need; by default, connections are handed to the test through awaitConnection(),
+ * and kept open until the server is closed.
+ * Subclasses should call start() once they are set up.
+ */
+public class StandInServer extends Thread {
+  private ServerSocket _server;
+  private ArrayList<Socket> _sockets;
+  private LinkedBlockingQueue<Socket> _connections;
+  private CountDownLatch _closed;
+
+  public StandInServer() throws IOException {
+    this(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+  }
+
+  public StandInServer(ServerSocket server) {
+    _server = server;
+    _sockets = new ArrayList<Socket>();
+    _connections = new LinkedBlockingQueue<Socket>();
+    _closed = new CountDownLatch(1);
+    setDaemon(true);
+  }
+
+  public int queryPort() {
+    return _server.getLocalPort();
+  }
+
+  public void run() {
+    try {
+      while (true) {
+        final Socket socket = _server.accept();
+        synchronized (_sockets) { _sockets.add(socket); }
+        Thread handler = new Thread() {
+          public void run() {
+            try { serve(socket); }
+            catch (Exception e) { }
+            finally {
+              try { socket.close(); } catch (IOException e) { }
+            }
+          }
+        };
+        handler.setDaemon(true);
+        handler.start();
+      }
+    }
+    catch (IOException e) { }
+  }
+
+  /** Handles a connection; the default hands it to awaitConnection(), and waits for close(). */
+  protected void serve(Socket socket) throws Exception {
+    _connections.add(socket);
+    _closed.await();
+  }
+
+  /** Returns the next connection handled by the default serve(), or null after 10 seconds. */
+  public Socket awaitConnection() throws InterruptedException {
+    return _connections.poll(10, TimeUnit.SECONDS);
+  }
+
+  /** Stops listening, and closes all connections. */
+  public void close() {
+    try { _server.close(); } catch (IOException e) { }
+    _closed.countDown();
+    synchronized (_sockets) {
+      for (Socket socket : _sockets) {
+        try { socket.close(); } catch (IOException e) { }
+      }
+    }
+  }
+
+  /** Sends IAC <command> <option>, without flushing. */
+  public static void negotiate(OutputStream out, int command, int option) throws IOException {
+    out.write(new byte[] { (byte)255, (byte)command, (byte)option });
+  }
+
+  /** Reads n bytes from the given stream; -1 stands for the end of the stream. */
+  public static int[] read(InputStream in, int n) throws IOException {
+    int[] ret = new int[n];
+    for (int i = 0; i < n; i++) ret[i] = in.read();
+    return ret;
+  }
+}
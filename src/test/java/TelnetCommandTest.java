@@ -16,16 +16,30 @@
 *   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
 *   02111-1307  USA                                                                               *
 **************************************************************************************************/
-
 import org.junit.Test;
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.connection.telnet.*;
 
 public class TelnetCommandTest {
+  /** Returns the given values (which should be between 0 and 255) as a byte array. */
+  private byte[] bytes(int ...values) {
+    byte[] ret = new byte[values.length];
+    for (int i = 0; i < values.length; i++) ret[i] = (byte)values[i];
+    return ret;
+  }
+
+  /** Returns the contents of the given buffer (from its position to its limit) as integers. */
+  private int[] ints(ByteBuffer buffer) {
+    int[] ret = new int[buffer.remaining()];
+    for (int i = 0; i < ret.length; i++) ret[i] = buffer.get(buffer.position() + i) & 0xFF;
+    return ret;
+  }
+
   @Test
   public void testSingleTelnetCommandConstruction() {
     // we want to know that _any_ telnet command is recognised as a single command other than those
@@ -41,10 +55,8 @@ public class TelnetCommandTest {
   @Test
   public void testSingleTelnetCommandReadSuccess() {
     // read from input
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(29);
-    TelnetCode code = SingleTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, 29);
+    TelnetCode code = SingleTelnetCommand.readFromBytes(list, 2);
     // test that it is what we expect
     assertTrue(code != null);
     assertTrue(code.queryCommand() == 29);
@@ -55,36 +67,30 @@ public class TelnetCommandTest {
   @Test
   public void testSingleTelnetCommandReadFailureTooShort() {
     // read from input
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    TelnetCode code = SingleTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, 29);
+    TelnetCode code = SingleTelnetCommand.readFromBytes(list, 1);
     assertTrue(code == null);
   }
 
   @Test(expected = java.lang.Error.class)
   public void testSingleTelnetCommandReadFailureTooLong() {
     // read from input
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.GA);
-    list.add(TelnetCode.SE);
-    TelnetCode code = SingleTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.GA, TelnetCode.SE);
+    TelnetCode code = SingleTelnetCommand.readFromBytes(list, 3);
   }
 
   @Test
   public void testSingleTelnetCommandReadFailureWrongCommand() {
     // read from input
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.WILL);
-    TelnetCode code = SingleTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.WILL);
+    TelnetCode code = SingleTelnetCommand.readFromBytes(list, 2);
     assertTrue(code == null);
   }
 
   @Test
   public void testSingleTelnetCommandComplete() {
     TelnetCode code = new SingleTelnetCommand(TelnetCode.GA);
-    int[] parts = code.queryCompleteCode();
+    int[] parts = ints(code.queryCompleteCode());
     assertTrue(parts.length == 2);
     assertTrue(parts[0] == TelnetCode.IAC);
     assertTrue(parts[1] == TelnetCode.GA);
@@ -97,48 +103,44 @@ public class TelnetCommandTest {
 
   @Test
   public void SupportTelnetCommandReadSuccess() {
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.DONT);
-    list.add(89);
-    TelnetCode code = SupportTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.DONT, 89);
+    TelnetCode code = SupportTelnetCommand.readFromBytes(list, 3);
     assertTrue(code != null);
+    assertTrue(code.queryOption() == 89);
+  }
+
+  @Test
+  public void SupportTelnetCommandReadHighOption() {
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.WILL, 201);
+    TelnetCode code = SupportTelnetCommand.readFromBytes(list, 3);
+    assertTrue(code.queryOption() == 201);
   }
 
   @Test
   public void SupportTelnetCommandReadFailureTooShort() {
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.DO);
-    TelnetCode code = SupportTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.DO);
+    TelnetCode code = SupportTelnetCommand.readFromBytes(list, 2);
     assertTrue(code == null);
   }
 
   @Test(expected = java.lang.Error.class)
   public void SupportTelnetCommandFailureTooLong() {
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.WONT);
-    list.add(89);
-    list.add(98);
-    TelnetCode code = SupportTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.WONT, 89, 98);
+    TelnetCode code = SupportTelnetCommand.readFromBytes(list, 4);
     assertTrue(code == null);
   }
 
   @Test
   public void SupportTelnetCommandReadFailureWrongCommand() {
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.GA);
-    list.add(89);
-    TelnetCode code = SupportTelnetCommand.readFromArrayList(list);
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.GA, 89);
+    TelnetCode code = SupportTelnetCommand.readFromBytes(list, 3);
     assertTrue(code == null);
   }
 
   @Test
   public void testSupportTelnetCommandComplete() {
     TelnetCode code = new SupportTelnetCommand(TelnetCode.WILL, 88);
-    int[] parts = code.queryCompleteCode();
+    int[] parts = ints(code.queryCompleteCode());
     assertTrue(parts.length == 3);
     assertTrue(parts[0] == TelnetCode.IAC);
     assertTrue(parts[1] == TelnetCode.WILL);
@@ -147,60 +149,83 @@ public class TelnetCommandTest {
 
   @Test
   public void SubNegotiationTelnetCommandConstruction() {
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(0);
-    list.add(127);
-    list.add(19);
+    byte[] list = bytes(0, 127, 19);
     TelnetCode code = new SubNegotiationTelnetCommand(17, list);
+    // changing the original afterwards should not affect the command
+    list[1] = 3;
     // was the data copied faithfully?
-    int[] arr = code.querySubNegotiation();
+    int[] arr = ints(code.querySubNegotiation());
     assertTrue(arr.length == 3);
     assertTrue(arr[0] == 0);
     assertTrue(arr[1] == 127);
     assertTrue(arr[2] == 19);
   }
 
-  private ArrayList<Integer> constructGoodList(boolean includeIAC) {
-    ArrayList<Integer> list = new ArrayList<Integer>();
-    list.add(TelnetCode.IAC);
-    list.add(TelnetCode.SB);
-    list.add(17);
-    list.add(97);
-    list.add(200);
-    list.add(4);
-    list.add(77);
-    if (includeIAC) list.add(TelnetCode.IAC);
-    list.add(TelnetCode.SE);
-    return list;
+  @Test(expected = ReadOnlyBufferException.class)
+  public void SubNegotiationTelnetCommandImmutable() {
+    TelnetCode code = new SubNegotiationTelnetCommand(17, bytes(1, 2, 3));
+    code.querySubNegotiation().put(0, (byte)5);
+  }
+
+  private byte[] constructGoodList(boolean includeIAC) {
+    if (includeIAC) return bytes(TelnetCode.IAC, TelnetCode.SB, 17, 97, 200, 4, 77,
+                                 TelnetCode.IAC, TelnetCode.SE);
+    else return bytes(TelnetCode.IAC, TelnetCode.SB, 17, 97, 200, 4, 77, TelnetCode.SE);
   }
 
   @Test
   public void SubNegotiationTelnetCommandReadSuccess() {
-    TelnetCode code = SubNegotiationTelnetCommand.readFromArrayList(constructGoodList(true));
+    byte[] list = constructGoodList(true);
+    TelnetCode code = SubNegotiationTelnetCommand.readFromBytes(list, list.length);
     assertTrue(code.queryCommand() == TelnetCode.SB);
     assertTrue(code.queryOption() == 17);
-    int[] args = code.querySubNegotiation();
+    int[] args = ints(code.querySubNegotiation());
     assertTrue(args.length == 4);
+    assertTrue(args[1] == 200);
     assertTrue(args[2] == 4);
   }
 
   @Test
-  public void SubNegotiationTelnetCommandReadTolerant() {
-    TelnetCode code = SubNegotiationTelnetCommand.readFromArrayList(constructGoodList(false));
-    assertTrue(code.queryCommand() == TelnetCode.SB);
-    assertTrue(code.queryOption() == 17);
-    int[] args = code.querySubNegotiation();
+  public void SubNegotiationTelnetCommandReadRequiresIAC() {
+    // a bare SE is a normal data byte (for instance the lead byte of a 4-byte UTF-8 character in
+    // a GMCP message), so it does not end the subnegotiation
+    byte[] list = constructGoodList(false);
+    assertTrue(SubNegotiationTelnetCommand.readFromBytes(list, list.length) == null);
+  }
+
+  @Test
+  public void SubNegotiationTelnetCommandReadEscapedIAC() {
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.SB, 17, 1, TelnetCode.IAC, TelnetCode.IAC,
+                        TelnetCode.SE, 2, TelnetCode.IAC, TelnetCode.SE);
+    // IAC IAC SE is an escaped 255 followed by the data byte SE, not the end of the command
+    assertTrue(SubNegotiationTelnetCommand.readFromBytes(list, 7) == null);
+    TelnetCode code = SubNegotiationTelnetCommand.readFromBytes(list, list.length);
+    assertTrue(code != null);
+    int[] args = ints(code.querySubNegotiation());
     assertTrue(args.length == 4);
-    assertTrue(args[3] == 77);
+    assertTrue(args[0] == 1);
+    assertTrue(args[1] == 255);
+    assertTrue(args[2] == TelnetCode.SE);
+    assertTrue(args[3] == 2);
+    // the complete code is given exactly as it was received
+    assertTrue(ints(code.queryCompleteCode()).length == list.length);
+  }
+
+  @Test
+  public void SubNegotiationTelnetCommandReadEscapedIACAtEnd() {
+    byte[] list = bytes(TelnetCode.IAC, TelnetCode.SB, 17, TelnetCode.IAC, TelnetCode.IAC,
+                        TelnetCode.IAC, TelnetCode.SE);
+    TelnetCode code = SubNegotiationTelnetCommand.readFromBytes(list, list.length);
+    assertTrue(code != null);
+    int[] args = ints(code.querySubNegotiation());
+    assertTrue(args.length == 1);
+    assertTrue(args[0] == 255);
   }
 
   @Test
   public void testSubNegotiationTelnetCommandComplete() {
-    ArrayList<Integer> data = new ArrayList<Integer>();
-    data.add(1);
-    data.add(12);
-    TelnetCode code = new SubNegotiationTelnetCommand(100, data);
-    int[] parts = code.queryCompleteCode();
+    TelnetCode code = new SubNegotiationTelnetCommand(100, bytes(1, 12));
+    int[] parts = ints(code.queryCompleteCode());
     assertTrue(parts.length == 7);
     assertTrue(parts[0] == TelnetCode.IAC);
     assertTrue(parts[1] == TelnetCode.SB);
@@ -210,5 +235,21 @@ public class TelnetCommandTest {
     assertTrue(parts[5] == TelnetCode.IAC);
     assertTrue(parts[6] == TelnetCode.SE);
   }
-}
 
+  @Test
+  public void testSubNegotiationTelnetCommandCompleteEscapesIAC() {
+    TelnetCode code = new SubNegotiationTelnetCommand(100, bytes(1, 255, 12));
+    int[] parts = ints(code.queryCompleteCode());
+    assertTrue(parts.length == 9);
+    assertTrue(parts[3] == 1);
+    assertTrue(parts[4] == TelnetCode.IAC);
+    assertTrue(parts[5] == TelnetCode.IAC);
+    assertTrue(parts[6] == 12);
+    assertTrue(parts[7] == TelnetCode.IAC);
+    assertTrue(parts[8] == TelnetCode.SE);
+    // but the subnegotiation itself is unescaped
+    int[] data = ints(code.querySubNegotiation());
+    assertTrue(data.length == 3);
+    assertTrue(data[1] == 255);
+  }
+}
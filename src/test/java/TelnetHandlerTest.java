@@ -20,35 +20,55 @@
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import turtle.interfaces.immutable.Command;
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.interfaces.immutable.TurtleEvent;
 import turtle.interfaces.EventListener;
 import turtle.interfaces.TelnetSender;
 import turtle.EventBus;
+import turtle.commands.DebugCommand;
 import turtle.connection.telnet.*;
+import turtle.events.CharsetEvent;
 import turtle.events.DisconnectEvent;
+import turtle.events.GmcpEvent;
 import turtle.events.InformationEvent;
+import turtle.events.MxpEvent;
+import turtle.events.TelnetDebugEvent;
 import turtle.events.TelnetEvent;
 import turtle.handlers.TelnetHandler;
+import turtle.protocols.JsonReader;
 
 public class TelnetHandlerTest {
   private class Listener implements EventListener {
     private TurtleEvent _last;
+    private GmcpEvent _lastGmcp;
+    private MxpEvent _lastMxp;
 
-    public Listener() { _last = null; }
+    public Listener() { _last = null; _lastGmcp = null; _lastMxp = null; }
 
-    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) { _last = event; }
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      _last = event;
+      if (kind == TurtleEvent.EventKind.GMCP) _lastGmcp = (GmcpEvent)event;
+      if (kind == TurtleEvent.EventKind.MXP) _lastMxp = (MxpEvent)event;
+    }
     public TurtleEvent queryLast() { return _last; }
   }
 
   private class Sender implements TelnetSender {
     private TelnetCode _last;
+    private ArrayList<TelnetCode> _all;
 
-    public Sender() { _last = null; }
-    public void sendTelnet(TelnetCode code) { _last = code; }
+    public Sender() { _last = null; _all = new ArrayList<TelnetCode>(); }
+    public void sendTelnet(TelnetCode code) { _last = code; _all.add(code); }
     public TelnetCode queryLast() { return _last; }
   }
+
+  private byte[] makeList(String txt) {
+    return txt.getBytes(StandardCharsets.UTF_8);
+  }
   
   private Listener _listener;
   private Sender _sender;
@@ -61,15 +81,42 @@ public class TelnetHandlerTest {
     EventBus.registerEventListener(_listener);
   }
 
-  @Test
-  public void testInformation() {
-    TelnetCode code = new SingleTelnetCommand(TelnetCode.NOP);
+  private TurtleEvent receiveAndReport(TelnetCode code) {
+    _listener._last = null;
     TelnetEvent evt = new TelnetEvent(code);
     _handler.eventOccurred(evt.queryEventKind(), evt);
-    TurtleEvent last = _listener.queryLast();
-    assertTrue(last != null);
-    assertTrue(last instanceof InformationEvent);
-    assertTrue(((InformationEvent)last).queryText().equals("[Received telnet: IAC NOP]"));
+    return _listener.queryLast();
+  }
+
+  @Test
+  public void testDebugEvents() {
+    TelnetCode nop = new SingleTelnetCommand(TelnetCode.NOP);
+    TelnetCode subn = new SubNegotiationTelnetCommand(26, new byte[] { 7 });
+    // by default, no telnet is shown
+    assertTrue(receiveAndReport(nop) == null);
+    _handler.commandGiven(Command.CommandKind.DEBUGCMD,
+                          new DebugCommand(DebugCommand.Level.TOGGLE));
+    assertTrue(_listener.queryLast() instanceof InformationEvent);
+    assertTrue(_handler.queryDebugLevel() == DebugCommand.Level.NEGOTIATION);
+    TurtleEvent last = receiveAndReport(nop);
+    assertTrue(last instanceof TelnetDebugEvent);
+    assertFalse(((TelnetDebugEvent)last).querySent());
+    assertTrue(((TelnetDebugEvent)last).queryTelnetCode() == nop);
+    assertTrue(((TelnetDebugEvent)last).queryText().equals("[Received telnet: IAC NOP]"));
+    // subnegotiation is only shown at the highest level
+    assertTrue(receiveAndReport(subn) == null);
+    _handler.commandGiven(Command.CommandKind.DEBUGCMD, new DebugCommand(DebugCommand.Level.ALL));
+    last = receiveAndReport(subn);
+    assertTrue(((TelnetDebugEvent)last).queryText().equals(
+                 "[Received telnet: IAC SB 26 7 IAC SE]"));
+    // codes we send are shown, too
+    last = receiveAndReport(new SupportTelnetCommand(TelnetCode.DO, 24));
+    assertTrue(((TelnetDebugEvent)last).querySent());
+    assertTrue(((TelnetDebugEvent)last).queryText().equals("[Sent telnet: IAC WILL TTYPE]"));
+    _handler.commandGiven(Command.CommandKind.DEBUGCMD,
+                          new DebugCommand(DebugCommand.Level.TOGGLE));
+    assertTrue(_handler.queryDebugLevel() == DebugCommand.Level.OFF);
+    assertTrue(receiveAndReport(nop) == null);
   }
 
   @Test
@@ -81,26 +128,14 @@ public class TelnetHandlerTest {
     assertTrue(_handler.telnetToString(code2).equals("IAC WILL COMPRESS"));
     assertTrue(_handler.telnetToString(code3).equals("IAC DONT ZMP"));
 
-    ArrayList<Integer> subn = new ArrayList<Integer>();
-    subn.add(0);
-    subn.add((int)'a');
-    subn.add((int)'b');
-    subn.add((int)'c');
+    byte[] subn = { 0, 'a', 'b', 'c' };
     TelnetCode code4 = new SubNegotiationTelnetCommand(24, subn);
     assertTrue(_handler.telnetToString(code4).equals("IAC SB TTYPE IS \"abc\" IAC SE"));
 
-    TelnetCode code5 = new SubNegotiationTelnetCommand(25, subn);
-    assertTrue(_handler.telnetToString(code5).equals("IAC SB 25 IS 97 98 99 IAC SE"));
-
-    subn = new ArrayList<Integer>();
-    subn.add(0);
-    subn.add((int)'a');
-    subn.add((int)'b');
-    subn.add((int)'c');
-    subn.add(0);
-    subn.add((int)'x');
-    subn.add((int)'y');
-    subn.add(0);
+    TelnetCode code5 = new SubNegotiationTelnetCommand(26, subn);
+    assertTrue(_handler.telnetToString(code5).equals("IAC SB 26 IS 97 98 99 IAC SE"));
+
+    subn = new byte[] { 0, 'a', 'b', 'c', 0, 'x', 'y', 0 };
     TelnetCode code6 = new SubNegotiationTelnetCommand(93, subn);
     assertTrue(_handler.telnetToString(code6).equals("IAC SB ZMP IS \"abc\" \"xy\" IAC SE"));
   }
@@ -117,8 +152,7 @@ public class TelnetHandlerTest {
 
   @Test
   public void testTTypeLoop() {
-    ArrayList<Integer> arr = new ArrayList<Integer>();
-    arr.add(1);
+    byte[] arr = { 1 };
     TelnetCode request = new SubNegotiationTelnetCommand(24, arr);
     String resultRepresentation;
 
@@ -150,8 +184,7 @@ public class TelnetHandlerTest {
 
   @Test
   public void testTtypeLoopWithReconnect() {
-    ArrayList<Integer> arr = new ArrayList<Integer>();
-    arr.add(1);
+    byte[] arr = { 1 };
     TelnetCode request = new SubNegotiationTelnetCommand(24, arr);
     String resultRepresentation;
 
@@ -176,5 +209,102 @@ public class TelnetHandlerTest {
     resultRepresentation = _handler.telnetToString(_sender.queryLast());
     assertTrue(resultRepresentation.equals("IAC SB TTYPE IS \"xterm256\" IAC SE"));
   }
-}
 
+  @Test
+  public void testGmcpNegotiation() {
+    TelnetEvent evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 201));
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    assertTrue(_sender._all.size() == 3);
+    assertTrue(_sender._all.get(0).queryCommand() == TelnetCode.DO);
+    assertTrue(_sender._all.get(0).queryOption() == 201);
+    assertTrue(_handler.telnetToString(_sender._all.get(1))
+                       .startsWith("IAC SB GMCP \"Core.Hello {"));
+  }
+
+  @Test
+  public void testEorNegotiation() {
+    TelnetEvent evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 25));
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    assertTrue(_sender._all.size() == 1);
+    assertTrue(_handler.telnetToString(_sender.queryLast()).equals("IAC DO EOR"));
+    TelnetCode eor = new SingleTelnetCommand(TelnetCode.EOR);
+    assertTrue(_handler.telnetToString(eor).equals("IAC EOR"));
+  }
+
+  /** Sends a CHARSET subnegotiation with the given data, and returns the data of the reply. */
+  private String charsetRequest(byte kind, String request) {
+    byte[] text = request.getBytes(StandardCharsets.ISO_8859_1);
+    byte[] data = new byte[text.length + 1];
+    data[0] = kind;
+    System.arraycopy(text, 0, data, 1, text.length);
+    TelnetEvent evt = new TelnetEvent(new SubNegotiationTelnetCommand(42, data));
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    ByteBuffer reply = _sender.queryLast().querySubNegotiation();
+    byte[] bytes = new byte[reply.remaining()];
+    reply.get(bytes);
+    return (int)bytes[0] + new String(bytes, 1, bytes.length - 1, StandardCharsets.ISO_8859_1);
+  }
+
+  @Test
+  public void testCharsetNegotiation() {
+    TelnetEvent evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.DO, 42));
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    assertTrue(_handler.telnetToString(_sender.queryLast()).equals("IAC WILL CHARSET"));
+    // UTF-8 is preferred, wherever it is in the list
+    assertTrue(charsetRequest((byte)1, ";ISO-8859-1;UTF-8").equals("2UTF-8"));
+    assertTrue(((CharsetEvent)_listener.queryLast()).queryCharset() == StandardCharsets.UTF_8);
+    // otherwise the first supported one is chosen
+    assertTrue(charsetRequest((byte)1, " KLINGON CP437 ISO-8859-1").equals("2CP437"));
+    assertTrue(((CharsetEvent)_listener.queryLast()).queryCharset().name().equals("IBM437"));
+    assertTrue(charsetRequest((byte)1, "[TTABLE]\u0001;latin1").equals("2latin1"));
+    // unsupported character sets and translation tables are rejected
+    _listener._last = null;
+    assertTrue(charsetRequest((byte)1, ";KLINGON;[bad]").equals("3"));
+    assertTrue(charsetRequest((byte)4, "\u0001x").equals("5"));
+    assertTrue(_listener.queryLast() == null);
+  }
+
+  @Test
+  public void testGmcpMessage() {
+    String msg = "Char.Vitals { \"hp\": 17, \"name\": \"é\" }";
+    TelnetCode code = new SubNegotiationTelnetCommand(201, makeList(msg));
+    TelnetEvent evt = new TelnetEvent(code);
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    GmcpEvent gmcp = _listener._lastGmcp;
+    assertTrue(gmcp != null);
+    assertTrue(gmcp.queryPackage().equals("Char.Vitals"));
+    assertTrue(gmcp.queryModule().equals("Char"));
+    assertTrue(gmcp.queryMessage().equals("Vitals"));
+    assertTrue(gmcp.queryJson().equals("{ \"hp\": 17, \"name\": \"é\" }"));
+    JsonReader reader = gmcp.queryReader();
+    reader.next();
+    reader.next();
+    assertTrue(reader.nameEquals("hp"));
+    reader.next();
+    assertTrue(reader.queryLong() == 17);
+  }
+
+  @Test
+  public void testGmcpMessageWithoutData() {
+    TelnetCode code = new SubNegotiationTelnetCommand(201, makeList("Core.Goodbye"));
+    TelnetEvent evt = new TelnetEvent(code);
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    GmcpEvent gmcp = _listener._lastGmcp;
+    assertTrue(gmcp.queryPackage().equals("Core.Goodbye"));
+    assertFalse(gmcp.hasData());
+  }
+
+  @Test
+  public void testMxpNegotiation() {
+    TelnetEvent evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.WILL, 91));
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    assertTrue(_sender._all.size() == 1);
+    assertTrue(_sender._last.queryCommand() == TelnetCode.DO);
+    assertTrue(_sender._last.queryOption() == 91);
+    assertTrue(_listener._lastMxp.queryEnabled());
+    evt = new TelnetEvent(new SupportTelnetCommand(TelnetCode.WONT, 91));
+    _handler.eventOccurred(evt.queryEventKind(), evt);
+    assertFalse(_listener._lastMxp.queryEnabled());
+    assertTrue(_sender._last.queryCommand() == TelnetCode.DONT);
+  }
+}
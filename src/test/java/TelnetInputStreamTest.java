@@ -23,7 +23,9 @@ import static org.junit.Assert.*;
 import java.io.InputStream;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import turtle.interfaces.immutable.TelnetCode;
 import turtle.connection.TelnetInputStream;
 
@@ -106,10 +108,10 @@ public class TelnetInputStreamTest {
     code = tstream.readTelnetCode();
     assertTrue(code.queryCommand() == TelnetCode.SB);
     assertTrue(code.queryOption() == 87);
-    int[] subneg = code.querySubNegotiation();
+    ByteBuffer subneg = code.querySubNegotiation();
     assertTrue(subneg != null);
-    assertTrue(subneg.length == 1);
-    assertTrue(subneg[0] == 0);
+    assertTrue(subneg.remaining() == 1);
+    assertTrue(subneg.get(0) == 0);
   }
 
   @Test
@@ -132,8 +134,8 @@ public class TelnetInputStreamTest {
     TelnetCode code = tstream.readTelnetCode();
     assertTrue(code.queryCommand() == TelnetCode.SB);
     assertTrue(code.queryOption() == 87);
-    int[] subneg = code.querySubNegotiation();
-    assertTrue(subneg.length == 1);
+    ByteBuffer subneg = code.querySubNegotiation();
+    assertTrue(subneg.remaining() == 1);
   }
 
   @Test
@@ -161,5 +163,95 @@ public class TelnetInputStreamTest {
     assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
     assertTrue(tstream.readString().equals("∀∅ λ"));
   }
-}
 
+  @Test
+  public void testLongSubNegotiation() throws IOException {
+    // a long GMCP message containing 4-byte UTF-8 characters, whose lead byte equals SE
+    String text = "Comm.Channel.Text { \"text\": \"";
+    for (int i = 0; i < 500; i++) text += "\uD834\uDD1E";
+    text += "\" }";
+    byte[] payload = text.getBytes(Charset.forName("UTF-8"));
+    VariableStream vstream = new VariableStream();
+    vstream.bytes = new byte[payload.length + 6];
+    vstream.bytes[0] = (byte)TelnetCode.IAC;
+    vstream.bytes[1] = (byte)TelnetCode.SB;
+    vstream.bytes[2] = (byte)201;
+    System.arraycopy(payload, 0, vstream.bytes, 3, payload.length);
+    vstream.bytes[payload.length + 3] = (byte)TelnetCode.IAC;
+    vstream.bytes[payload.length + 4] = (byte)TelnetCode.SE;
+    vstream.bytes[payload.length + 5] = 'x';
+    vstream.counter = 0;
+    TelnetInputStream tstream = new TelnetInputStream(vstream);
+    TelnetInputStream.StreamStatus status = tstream.probeAvailableContent();
+    while (status == TelnetInputStream.StreamStatus.NONE) status = tstream.probeAvailableContent();
+    assertTrue(status == TelnetInputStream.StreamStatus.TELNET);
+    ByteBuffer subneg = tstream.readTelnetCode().querySubNegotiation();
+    byte[] received = new byte[subneg.remaining()];
+    subneg.get(received);
+    assertTrue(new String(received, Charset.forName("UTF-8")).equals(text));
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("x"));
+  }
+
+  @Test
+  public void testSingleByteCharsets() throws IOException {
+    assertTrue(TelnetInputStream.singleByteTable(StandardCharsets.UTF_8) == null);
+    char[] table = TelnetInputStream.singleByteTable(Charset.forName("CP437"));
+    assertTrue(table[0xC9] == '\u2554' && table['a'] == 'a' && table[0xE1] == '\u00DF');
+
+    VariableStream vstream = new VariableStream();
+    vstream.bytes = new byte[] { 'c', 'a', 'f', (byte)0xE9 };
+    vstream.counter = 0;
+    TelnetInputStream tstream = new TelnetInputStream(vstream);
+    tstream.setCharset(StandardCharsets.ISO_8859_1);
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("caf\u00e9"));
+    // switching character sets applies to the text that follows
+    tstream.setCharset(Charset.forName("CP437"));
+    assertTrue(tstream.queryCharset().name().equals("IBM437"));
+    vstream.bytes = new byte[] { (byte)0xC9, (byte)0xCD, (byte)0xBB, ' ', (byte)0x82 };
+    vstream.counter = 0;
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("\u2554\u2550\u2557 \u00e9"));
+    tstream.setCharset(StandardCharsets.UTF_8);
+    vstream.bytes = "\u00e9\u2200".getBytes(StandardCharsets.UTF_8);
+    vstream.counter = 0;
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("\u00e9\u2200"));
+  }
+
+  @Test
+  public void testEscapedIacIsText() throws IOException {
+    VariableStream vstream = new VariableStream();
+    vstream.bytes = new byte[] { 'a', (byte)TelnetCode.IAC, (byte)TelnetCode.IAC, 'b',
+                                 (byte)TelnetCode.IAC, (byte)TelnetCode.WILL, 87, 'c',
+                                 (byte)TelnetCode.IAC };
+    vstream.counter = 0;
+    TelnetInputStream tstream = new TelnetInputStream(vstream);
+    tstream.setCharset(StandardCharsets.ISO_8859_1);
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("a"));
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("\u00ffb"));
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TELNET);
+    assertTrue(tstream.readTelnetCode().queryCommand() == TelnetCode.WILL);
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("c"));
+    // the escaped byte may be split over two reads
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.NONE);
+    vstream.bytes = new byte[] { (byte)TelnetCode.IAC, 'd' };
+    vstream.counter = 0;
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("\u00ffd"));
+  }
+
+  @Test
+  public void testMalformedUTF() throws IOException {
+    VariableStream vstream = new VariableStream();
+    vstream.bytes = new byte[] { 'a', (byte)0xE9, 'b' };
+    vstream.counter = 0;
+    TelnetInputStream tstream = new TelnetInputStream(vstream);
+    assertTrue(tstream.probeAvailableContent() == TelnetInputStream.StreamStatus.TEXT);
+    assertTrue(tstream.readString().equals("a\uFFFDb"));
+  }
+}
@@ -70,7 +70,7 @@ public class TelnetOutputStreamTest {
     list.add(new SupportTelnetCommand(TelnetCode.DO, 78));
     list.add(new SingleTelnetCommand(TelnetCode.GA));
     tstream.sendTelnetCodes(list);
-    tstream.sendTelnet(new SubNegotiationTelnetCommand(78, new ArrayList<Integer>()));
+    tstream.sendTelnet(new SubNegotiationTelnetCommand(78, new byte[0]));
     assertTrue(vstream.bytes.size() == 12);
     assertTrue(vstream.bytes.get(0) == (byte)TelnetCode.IAC);
     assertTrue(vstream.bytes.get(1) == (byte)TelnetCode.NOP);
@@ -87,5 +87,27 @@ public class TelnetOutputStreamTest {
     int k = vstream.bytes.size()-3;
     assertTrue(makeString(vstream.bytes, 2, k).equals("∃∀∅\n"));
   }
-}
 
+  @Test
+  public void testTelnetOutputStreamCharset() throws IOException {
+    VariableStream vstream = new VariableStream();
+    TelnetOutputStream tstream = new TelnetOutputStream(vstream);
+    tstream.setCharset(Charset.forName("ISO-8859-1"));
+    tstream.sendCommand("caf\u00e9");
+    assertTrue(vstream.bytes.size() == 5);
+    assertTrue(vstream.bytes.get(3).byteValue() == (byte)0xE9);
+  }
+
+  @Test
+  public void testTelnetOutputStreamDoublesIacInCommands() throws IOException {
+    VariableStream vstream = new VariableStream();
+    TelnetOutputStream tstream = new TelnetOutputStream(vstream);
+    tstream.setCharset(Charset.forName("ISO-8859-1"));
+    tstream.sendCommand("say \u00ff!");
+    assertTrue(vstream.bytes.size() == 8);
+    assertTrue(vstream.bytes.get(4).byteValue() == (byte)TelnetCode.IAC);
+    assertTrue(vstream.bytes.get(5).byteValue() == (byte)TelnetCode.IAC);
+    assertTrue(vstream.bytes.get(6) == '!');
+    assertTrue(vstream.bytes.get(7) == '\n');
+  }
+}
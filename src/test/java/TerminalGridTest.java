@@ -0,0 +1,190 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import turtle.interfaces.immutable.CharacterLayout;
+import turtle.styles.AnsiColour;
+import turtle.styles.AttributeGroup;
+import turtle.styles.TerminalGrid;
+
+public class TerminalGridTest {
+  private static final String ESC = Character.toString((char)27);
+  private static final String CSI = ESC + "[";
+
+  @Test
+  public void testWrapAndScroll() {
+    TerminalGrid grid = new TerminalGrid(5, 3);
+    grid.write("abcdefg\r\nhi\r\njk\r\nlm");
+    assertTrue(grid.queryLine(0).equals("hi"));
+    assertTrue(grid.queryLine(1).equals("jk"));
+    assertTrue(grid.queryLine(2).equals("lm"));
+    assertTrue(grid.queryCursorRow() == 2);
+    assertTrue(grid.queryCursorColumn() == 2);
+    // a full row does not wrap until the next character arrives
+    grid.write("\rvwxyz");
+    assertTrue(grid.queryCursorColumn() == 4);
+    assertTrue(grid.queryLine(2).equals("vwxyz"));
+    assertTrue(grid.queryLine(1).equals("jk"));
+  }
+
+  @Test
+  public void testCursorMovement() {
+    TerminalGrid grid = new TerminalGrid(10, 5);
+    grid.write(CSI + "3;4Hx" + CSI + "A" + "y" + CSI + "2D" + "z" + CSI + "10;20H" + "!");
+    assertTrue(grid.queryLine(1).equals("   zy"));
+    assertTrue(grid.queryLine(2).equals("   x"));
+    assertTrue(grid.queryLine(4).equals("         !"));
+    grid.write(CSI + "H" + CSI + "2Ba" + CSI + "G" + "b" + ESC + "7" + CSI + "5;5H" + ESC + "8c");
+    assertTrue(grid.queryLine(2).equals("bc x"));
+  }
+
+  @Test
+  public void testErase() {
+    TerminalGrid grid = new TerminalGrid(6, 3);
+    grid.write("abcdef\r\nghijkl\r\nmnopqr");
+    grid.write(CSI + "2;3H" + CSI + "K");
+    assertTrue(grid.queryLine(1).equals("gh"));
+    grid.write(CSI + "1K");
+    assertTrue(grid.queryLine(1).equals(""));
+    grid.write(CSI + "1;2H" + CSI + "2X");
+    assertTrue(grid.queryLine(0).equals("a  def"));
+    grid.write(CSI + "P");
+    assertTrue(grid.queryLine(0).equals("a def"));
+    grid.write(CSI + "2@");
+    assertTrue(grid.queryLine(0).equals("a   de"));
+    grid.write(CSI + "J");
+    assertTrue(grid.queryLine(0).equals("a"));
+    assertTrue(grid.queryLine(2).equals(""));
+    grid.write("xyz" + CSI + "2J");
+    assertTrue(grid.queryLine(0).equals(""));
+    assertTrue(grid.queryCursorColumn() == 4);
+  }
+
+  @Test
+  public void testScrollRegion() {
+    TerminalGrid grid = new TerminalGrid(8, 5);
+    grid.write("status\r\n1\r\n2\r\n3\r\ninput");
+    grid.write(CSI + "2;4r");
+    assertTrue(grid.queryCursorRow() == 0);
+    grid.clearDamage();
+    grid.write(CSI + "4;1H" + "\n4");
+    assertTrue(grid.queryLine(0).equals("status"));
+    assertTrue(grid.queryLine(1).equals("2"));
+    assertTrue(grid.queryLine(2).equals("3"));
+    assertTrue(grid.queryLine(3).equals("4"));
+    assertTrue(grid.queryLine(4).equals("input"));
+    assertFalse(grid.queryDamaged(0));
+    assertTrue(grid.queryDamaged(1) && grid.queryDamaged(3));
+    assertFalse(grid.queryDamaged(4));
+    // insert and delete lines stay within the region
+    grid.write(CSI + "2;1H" + CSI + "L");
+    assertTrue(grid.queryLine(1).equals(""));
+    assertTrue(grid.queryLine(2).equals("2"));
+    assertTrue(grid.queryLine(3).equals("3"));
+    assertTrue(grid.queryLine(4).equals("input"));
+    grid.write(CSI + "2M");
+    assertTrue(grid.queryLine(1).equals("3"));
+    assertTrue(grid.queryLine(3).equals(""));
+    assertTrue(grid.queryLine(4).equals("input"));
+    // reverse index at the top of the region scrolls it down
+    grid.write(ESC + "M");
+    assertTrue(grid.queryLine(1).equals(""));
+    assertTrue(grid.queryLine(2).equals("3"));
+    assertTrue(grid.queryLine(0).equals("status"));
+  }
+
+  @Test
+  public void testDamageTracking() {
+    TerminalGrid grid = new TerminalGrid(20, 10);
+    assertTrue(grid.queryDamageCount() == 10);
+    grid.clearDamage();
+    assertTrue(grid.nextDamagedRow(0) == -1);
+    // updating a status line only damages that row
+    grid.write(ESC + "7" + CSI + "1;1HHP: 100" + CSI + "K" + ESC + "8");
+    assertTrue(grid.queryDamageCount() == 1);
+    assertTrue(grid.nextDamagedRow(0) == 0);
+    assertTrue(grid.nextDamagedRow(1) == -1);
+    grid.clearDamage();
+    // writing the same text again changes nothing, and cursor movement does not damage rows
+    grid.write(CSI + "1;1HHP: 100" + CSI + "5;5H" + CSI + "B");
+    assertTrue(grid.queryDamageCount() == 0);
+    grid.write(CSI + "8;1Hx");
+    assertTrue(grid.queryDamageCount() == 1);
+    assertTrue(grid.nextDamagedRow(0) == 7);
+  }
+
+  @Test
+  public void testSplitSequencesAndStyles() {
+    TerminalGrid grid = new TerminalGrid(10, 2);
+    grid.write("a" + ESC);
+    grid.write("[3");
+    grid.write("1mb" + CSI + "?25");
+    grid.write("l" + ESC + "]0;title" + (char)7 + CSI + "0mc");
+    assertTrue(grid.queryLine(0).equals("abc"));
+    assertFalse(grid.queryCursorVisible());
+    CharacterLayout red = grid.queryLayout(0, 1);
+    assertTrue(red.getFront().equals(new AnsiColour(AnsiColour.COL_RED, false)));
+    assertTrue(grid.queryStyleId(0, 0) == grid.queryStyleId(0, 2));
+    assertTrue(grid.queryStyleId(0, 0) != grid.queryStyleId(0, 1));
+  }
+
+  @Test
+  public void testAlternateScreen() {
+    TerminalGrid grid = new TerminalGrid(10, 3);
+    grid.write("prompt> ");
+    grid.write(CSI + "?1049h" + CSI + "H" + "editor");
+    assertTrue(grid.queryLine(0).equals("editor"));
+    grid.write(CSI + "?1049l");
+    assertTrue(grid.queryLine(0).equals("prompt>"));
+    assertTrue(grid.queryCursorColumn() == 8);
+  }
+
+  @Test
+  public void testResize() {
+    TerminalGrid grid = new TerminalGrid(10, 3);
+    grid.write("abcdefghij\r\n\r\nxyz");
+    grid.resize(4, 2);
+    assertTrue(grid.queryLine(0).equals("abcd"));
+    assertTrue(grid.queryCursorRow() == 1);
+    assertTrue(grid.queryCursorColumn() == 3);
+    grid.resize(6, 4);
+    assertTrue(grid.queryLine(0).equals("abcd"));
+    assertTrue(grid.queryLine(3).equals(""));
+    assertTrue(grid.queryDamageCount() == 4);
+  }
+
+  @Test
+  public void testResizeFillsWithBlanks() {
+    TerminalGrid grid = new TerminalGrid(10, 3);
+    grid.write(CSI + "31m" + "abcdefghij" + "abcdefghij" + "abcdefghi");
+    // enough colours to make the grid compact its styles, after which the first id in the
+    // table is no longer the blank style
+    for (int i = 0; i < 1100; i++) {
+      grid.write(CSI + "H" + CSI + "38;2;" + (i % 256) + ";" + (i / 256) + ";7mx");
+    }
+    grid.write(CSI + "H" + CSI + "0;31ma");
+    grid.resize(12, 4);
+    String blank = new AttributeGroup().toString();
+    assertTrue(grid.queryLayout(3, 0).toString().equals(blank));
+    assertTrue(grid.queryLayout(0, 11).toString().equals(blank));
+    assertTrue(grid.queryLayout(0, 0).getFront().equals(new AnsiColour(AnsiColour.COL_RED, false)));
+  }
+}
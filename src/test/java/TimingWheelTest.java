@@ -0,0 +1,180 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TurtleEvent;
+import turtle.interfaces.EventListener;
+import turtle.EventBus;
+import turtle.commands.TimerCommand;
+import turtle.events.UserInputEvent;
+import turtle.handlers.TimerHandler;
+import turtle.timers.TimingWheel;
+
+public class TimingWheelTest {
+  private class Counter implements Runnable {
+    int _count = 0;
+    public void run() { _count++; }
+  }
+
+  private class InputListener implements EventListener {
+    ArrayList<String> _inputs = new ArrayList<String>();
+    public void eventOccurred(TurtleEvent.EventKind kind, TurtleEvent event) {
+      if (kind == TurtleEvent.EventKind.USERINPUT) {
+        _inputs.add(((UserInputEvent)event).queryCommand());
+      }
+    }
+  }
+
+  @Test
+  public void testFiresAtDeadline() {
+    TimingWheel wheel = new TimingWheel(8);
+    Counter counter = new Counter();
+    wheel.schedule(counter, 5 * TimingWheel.TICK);
+    wheel.advance(4 * TimingWheel.TICK);
+    assertTrue(counter._count == 0);
+    wheel.advance(TimingWheel.TICK);
+    assertTrue(counter._count == 1);
+    wheel.advance(100 * TimingWheel.TICK);
+    assertTrue(counter._count == 1);
+  }
+
+  @Test
+  public void testDelaysAreRoundedUp() {
+    TimingWheel wheel = new TimingWheel(8);
+    Counter counter = new Counter();
+    TimingWheel.Timeout timeout = wheel.schedule(counter, TimingWheel.TICK + 1);
+    wheel.advance(TimingWheel.TICK);
+    assertTrue(counter._count == 0);
+    wheel.advance(TimingWheel.TICK);
+    assertTrue(counter._count == 1);
+    assertTrue(timeout.isExpired());
+    // a delay of 0 runs at the next tick
+    wheel.schedule(counter, 0);
+    wheel.advance(TimingWheel.TICK);
+    assertTrue(counter._count == 2);
+    // a huge delay does not overflow into the past
+    wheel.schedule(counter, Long.MAX_VALUE);
+    wheel.advance(100 * TimingWheel.TICK);
+    assertTrue(counter._count == 2);
+  }
+
+  @Test
+  public void testMoreThanOneTurn() {
+    // with 8 buckets, these timers all end up in the same bucket, in different turns
+    TimingWheel wheel = new TimingWheel(8);
+    Counter[] counters = new Counter[4];
+    for (int i = 0; i < 4; i++) {
+      counters[i] = new Counter();
+      wheel.schedule(counters[i], (3 + 8 * i) * TimingWheel.TICK);
+    }
+    for (int i = 0; i < 4; i++) {
+      wheel.advance((i == 0 ? 3 : 8) * TimingWheel.TICK);
+      for (int j = 0; j < 4; j++) assertTrue(counters[j]._count == (j <= i ? 1 : 0));
+    }
+  }
+
+  @Test
+  public void testCancel() {
+    TimingWheel wheel = new TimingWheel(8);
+    Counter counter = new Counter();
+    TimingWheel.Timeout a = wheel.schedule(counter, 3 * TimingWheel.TICK);
+    TimingWheel.Timeout b = wheel.schedule(counter, 3 * TimingWheel.TICK);
+    TimingWheel.Timeout c = wheel.schedule(counter, 3 * TimingWheel.TICK);
+    // cancelled before and after being placed in the wheel
+    assertTrue(b.cancel());
+    wheel.advance(TimingWheel.TICK);
+    assertTrue(c.cancel());
+    assertFalse(c.cancel());
+    wheel.advance(2 * TimingWheel.TICK);
+    assertTrue(counter._count == 1);
+    assertTrue(a.isExpired());
+    assertFalse(a.cancel());
+    assertTrue(b.isCancelled());
+  }
+
+  @Test
+  public void testFailingActionDoesNotStopOthers() {
+    TimingWheel wheel = new TimingWheel(8);
+    Counter counter = new Counter();
+    wheel.schedule(new Runnable() {
+      public void run() { throw new IllegalStateException("oops"); }
+    }, TimingWheel.TICK);
+    wheel.schedule(counter, TimingWheel.TICK);
+    wheel.advance(TimingWheel.TICK);
+    assertTrue(counter._count == 1);
+  }
+
+  @Test
+  public void testRealTime() throws InterruptedException {
+    TimingWheel wheel = new TimingWheel(8);
+    wheel.start();
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+    wheel.schedule(new Runnable() {
+      public void run() { latch.countDown(); }
+    }, 200);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= 200000000L);
+    wheel.stop();
+  }
+
+  /**
+   * Moves the wheel forward one tick at a time, each time waiting until the event queue has
+   * handled everything the timers put on it; this keeps the test deterministic, as the event queue
+   * runs in a separate thread.
+   */
+  private void advance(TimingWheel wheel, long millis) throws Exception {
+    for (long i = 0; i < millis; i += TimingWheel.TICK) {
+      wheel.advance(TimingWheel.TICK);
+      EventQueue.invokeAndWait(new Runnable() { public void run() { } });
+    }
+  }
+
+  @Test
+  public void testTimerHandler() throws Exception {
+    TimingWheel wheel = new TimingWheel(64);
+    TimerHandler handler = new TimerHandler(wheel);
+    InputListener listener = new InputListener();
+    EventBus.registerEventListener(listener);
+    try {
+      TimerCommand cmd = new TimerCommand(TimerCommand.Action.ADD, "heal", 1, "cast heal");
+      handler.commandGiven(cmd.queryCommandKind(), cmd);
+      cmd = new TimerCommand(TimerCommand.Action.ONCE, null, 1.5, "look");
+      handler.commandGiven(cmd.queryCommandKind(), cmd);
+      advance(wheel, 4000);
+      assertEquals("" + listener._inputs, 5, listener._inputs.size());
+      assertEquals("cast heal", listener._inputs.get(0));
+      assertEquals("look", listener._inputs.get(1));
+      assertEquals("cast heal", listener._inputs.get(4));
+
+      cmd = new TimerCommand(TimerCommand.Action.REMOVE, "heal", 0, null);
+      handler.commandGiven(cmd.queryCommandKind(), cmd);
+      advance(wheel, 5000);
+      assertTrue(listener._inputs.size() == 5);
+    }
+    finally {
+      EventBus.removeEventListener(listener);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import turtle.connection.Connection;
+import turtle.connection.TlsTransport;
+
+public class TlsTest {
+  private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+  /** Returns a context with the self-signed test certificate, as both key and trusted CA. */
+  private static SSLContext testContext() throws Exception {
+    KeyStore store = KeyStore.getInstance("PKCS12");
+    try (InputStream in = TlsTest.class.getResourceAsStream("/testkeys.p12")) {
+      store.load(in, "turtle".toCharArray());
+    }
+    KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keys.init(store, "turtle".toCharArray());
+    TrustManagerFactory trust =
+      TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trust.init(store);
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+    return context;
+  }
+
+  /**
+   * A stand-in MUD on a TLS port: it greets every connection, and then answers every line with
+   * "echo: <line>".  The creation time of each session is recorded, which a resumed session
+   * shares with the session it continues.
+   */
+  private class StandInMud extends StandInServer {
+    LinkedBlockingQueue<Long> _sessions = new LinkedBlockingQueue<Long>();
+
+    public StandInMud(SSLContext context) throws IOException {
+      super(context.getServerSocketFactory().createServerSocket(0, 50,
+                                                                InetAddress.getLoopbackAddress()));
+      start();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      SSLSocket tls = (SSLSocket)socket;
+      tls.startHandshake();
+      _sessions.add(tls.getSession().getCreationTime());
+      OutputStream out = socket.getOutputStream();
+      out.write("Welcome!\r\n".getBytes("UTF-8"));
+      out.flush();
+      BufferedReader in =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      String line;
+      while ((line = in.readLine()) != null) {
+        out.write(("echo: " + line + "\r\n").getBytes("UTF-8"));
+        out.flush();
+      }
+    }
+  }
+
+  @Test
+  public void testEchoOverTls() throws Exception {
+    SSLContext context = testContext();
+    StandInMud mud = new StandInMud(context);
+    RecordingListener listener = new RecordingListener();
+    Connection connection =
+      new Connection("localhost", mud.queryPort(), UTF8, context, listener);
+    try {
+      assertEquals("established", listener.awaitStatus());
+      assertTrue(listener.awaitText("Welcome!\r\n"));
+      connection.send("hello");
+      assertTrue(listener.awaitText("echo: hello\r\n"));
+      // a larger batch, sent from another thread than the reading one, spans several records
+      StringBuilder line = new StringBuilder();
+      for (int i = 0; i < 5000; i++) line.append((char)('a' + i % 26));
+      for (int i = 0; i < 10; i++) connection.send(line.toString() + i);
+      assertTrue(connection.flush());
+      assertTrue(listener.awaitText("echo: " + line + "9\r\n"));
+    }
+    finally {
+      connection.disconnect();
+      mud.close();
+    }
+  }
+
+  @Test
+  public void testUntrustedCertificate() throws Exception {
+    StandInMud mud = new StandInMud(testContext());
+    RecordingListener listener = new RecordingListener();
+    Connection connection = new Connection("localhost", mud.queryPort(), UTF8,
+                                           TlsTransport.defaultContext(), listener);
+    try {
+      assertTrue(listener.awaitStatus().startsWith("failed: TLS handshake failed"));
+    }
+    finally {
+      connection.disconnect();
+      mud.close();
+    }
+  }
+
+  @Test
+  public void testReconnectResumesSession() throws Exception {
+    SSLContext context = testContext();
+    StandInMud mud = new StandInMud(context);
+    try {
+      for (int i = 0; i < 2; i++) {
+        RecordingListener listener = new RecordingListener();
+        Connection connection =
+          new Connection("localhost", mud.queryPort(), UTF8, context, listener);
+        assertEquals("established", listener.awaitStatus());
+        assertTrue(listener.awaitText("Welcome!"));
+        connection.disconnect();
+        Thread.sleep(50);
+      }
+      Long first = mud._sessions.poll(5, TimeUnit.SECONDS);
+      Long second = mud._sessions.poll(5, TimeUnit.SECONDS);
+      assertTrue(first != null && first.equals(second));
+    }
+    finally {
+      mud.close();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/**************************************************************************************************
+*   Turtle Mud Client                                                                             *
+*   Copyright (C) 2019 Cynthia Kop                                                                *
+*                                                                                                 *
+*   This program is protected under the GNU GPL (See COPYING).                                    *
+*                                                                                                 *
+*   This program is free software; you can redistribute it and/or modify  it under the terms of   *
+*   the GNU General Public License as published by the Free Software Foundation; either version   *
+*   2 of the License, or (at your option) any later version.                                      *
+*                                                                                                 *
+*   This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;     *
+*   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     *
+*   See the GNU General Public License for more details.                                          *
+*                                                                                                 *
+*   You should have received a copy of the GNU General Public License along with this program;    *
+*   if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA   *
+*   02111-1307  USA                                                                               *
+**************************************************************************************************/
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import turtle.interfaces.immutable.TelnetCode;
+import turtle.interfaces.TelnetSender;
+import turtle.connection.Connection;
+import turtle.events.TelnetEvent;
+import turtle.handlers.TelnetHandler;
+import turtle.protocols.Zmp;
+import turtle.protocols.ZmpRegistry;
+
+public class ZmpTest {
+  /**
+   * A stand-in MUD server, which offers ZMP, and reports what the client sends: "DO" for DO ZMP,
+   * and the parts of each ZMP message joined by "|".
+   */
+  private class ZmpServer extends StandInServer {
+    private OutputStream _out;
+    LinkedBlockingQueue<String> _received = new LinkedBlockingQueue<String>();
+
+    public ZmpServer() throws IOException {
+      start();
+    }
+
+    public synchronized void sendZmp(String command, String... arguments) throws IOException {
+      _out.write(new byte[] { (byte)TelnetCode.IAC, (byte)TelnetCode.SB, 93 });
+      _out.write(Zmp.encode(command, arguments));
+      _out.write(new byte[] { (byte)TelnetCode.IAC, (byte)TelnetCode.SE });
+      _out.flush();
+    }
+
+    protected void serve(Socket socket) throws Exception {
+      InputStream in = socket.getInputStream();
+      synchronized (this) {
+        _out = socket.getOutputStream();
+        negotiate(_out, TelnetCode.WILL, 93);
+        _out.flush();
+      }
+      int c;
+      while ((c = in.read()) != -1) {
+        if (c != TelnetCode.IAC) continue;
+        int command = in.read();
+        int option = in.read();
+        if (command == TelnetCode.DO && option == 93) _received.add("DO");
+        if (command != TelnetCode.SB || option != 93) continue;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        while ((c = in.read()) != TelnetCode.IAC) data.write(c);
+        in.read();
+        String[] message = Zmp.decode(ByteBuffer.wrap(data.toByteArray()));
+        _received.add(String.join("|", message));
+      }
+    }
+  }
+
+  private class ForwardingListener extends RecordingListener {
+    TelnetHandler _handler;
+    public synchronized void connectionReceivedTelnet(TelnetCode code) {
+      TelnetEvent evt = new TelnetEvent(code);
+      _handler.eventOccurred(evt.queryEventKind(), evt);
+    }
+  }
+
+  @Test
+  public void testDecodeAndEncode() {
+    byte[] data = Zmp.encode("zmp.ident", "Turtle", "", "caf\u00e9");
+    assertTrue(data.length == 24);
+    String[] message = Zmp.decode(ByteBuffer.wrap(data).asReadOnlyBuffer());
+    assertTrue(message.length == 4);
+    assertTrue(message[0].equals("zmp.ident"));
+    assertTrue(message[1].equals("Turtle"));
+    assertTrue(message[2].equals(""));
+    assertTrue(message[3].equals("caf\u00e9"));
+    // decoding works on part of a larger buffer, too
+    ByteBuffer buffer = ByteBuffer.wrap(("xx" + "zmp.ping\u0000" + "yy").getBytes(
+                                          StandardCharsets.UTF_8), 2, 9);
+    message = Zmp.decode(buffer.slice());
+    assertTrue(message.length == 1 && message[0].equals("zmp.ping"));
+    // malformed messages
+    assertTrue(Zmp.decode(ByteBuffer.wrap(new byte[0])) == null);
+    assertTrue(Zmp.decode(ByteBuffer.wrap(new byte[] { 'a', 'b' })) == null);
+    assertTrue(Zmp.decode(ByteBuffer.wrap(new byte[] { 0, 'a', 0 })) == null);
+  }
+
+  @Test
+  public void testRegistry() {
+    ZmpRegistry registry = new ZmpRegistry();
+    final String[][] last = new String[1][];
+    ZmpRegistry.Handler handler = new ZmpRegistry.Handler() {
+      public void handle(String[] message) { last[0] = message; }
+    };
+    registry.register("zmp.ping", handler);
+    registry.register("my.pkg.cmd", handler);
+    assertTrue(registry.supports("zmp.ping"));
+    assertTrue(registry.supports("zmp."));
+    assertTrue(registry.supports("my."));
+    assertTrue(registry.supports("my.pkg."));
+    assertFalse(registry.supports("my.pkg"));
+    assertFalse(registry.supports("zmp.time"));
+    assertTrue(registry.dispatch(new String[] { "my.pkg.cmd", "a" }));
+    assertTrue(last[0][1].equals("a"));
+    assertFalse(registry.dispatch(new String[] { "my.pkg.other" }));
+    registry.remove("my.pkg.cmd");
+    assertFalse(registry.supports("my."));
+    assertTrue(registry.supports("zmp."));
+  }
+
+  @Test
+  public void testAgainstStandInServer() throws Exception {
+    ZmpServer server = new ZmpServer();
+    ForwardingListener listener = new ForwardingListener();
+    final Connection connection;
+    // the handler must be in place before the first telnet code arrives
+    synchronized (listener) {
+      connection = new Connection("localhost", server.queryPort(), listener);
+      listener._handler = new TelnetHandler(new TelnetSender() {
+        public void sendTelnet(TelnetCode code) { connection.sendTelnet(code); }
+      });
+    }
+    final LinkedBlockingQueue<String> echoes = new LinkedBlockingQueue<String>();
+    listener._handler.queryZmpRegistry().register("test.echo", new ZmpRegistry.Handler() {
+      public void handle(String[] message) {
+        echoes.add(message[1]);
+        listener._handler.sendZmp("test.echo", message[1]);
+      }
+    });
+    try {
+      assertEquals("established", listener.awaitStatus());
+      assertEquals("DO", server._received.poll(5, TimeUnit.SECONDS));
+      assertEquals("zmp.ident|Turtle|1.0|A Java MUD client",
+                   server._received.poll(5, TimeUnit.SECONDS));
+
+      server.sendZmp("zmp.ping");
+      String time = server._received.poll(5, TimeUnit.SECONDS);
+      assertTrue(time.matches("zmp\\.time\\|\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3}"));
+
+      server.sendZmp("zmp.check", "zmp.");
+      assertEquals("zmp.support|zmp.", server._received.poll(5, TimeUnit.SECONDS));
+      server.sendZmp("zmp.check", "test.echo");
+      assertEquals("zmp.support|test.echo", server._received.poll(5, TimeUnit.SECONDS));
+      server.sendZmp("zmp.check", "color.");
+      assertEquals("zmp.no-support|color.", server._received.poll(5, TimeUnit.SECONDS));
+
+      // unknown commands are ignored
+      server.sendZmp("color.define", "1", "red");
+      server.sendZmp("test.echo", "h\u00e9llo");
+      assertEquals("h\u00e9llo", echoes.poll(5, TimeUnit.SECONDS));
+      assertEquals("test.echo|h\u00e9llo", server._received.poll(5, TimeUnit.SECONDS));
+      assertTrue(server._received.isEmpty());
+    }
+    finally {
+      connection.disconnect();
+      server.close();
+    }
+  }
+}
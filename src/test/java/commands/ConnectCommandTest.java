@@ -106,5 +106,22 @@ public class ConnectCommandTest {
     assertTrue(((ConnectCommand)cmd).queryHost().equals("localhost"));
     assertTrue(((ConnectCommand)cmd).queryPort() == 23);
   }
-}
 
+  @Test
+  public void testTls() {
+    TestCommandParser parser = new TestCommandParser();
+    Command cmd = ConnectCommand.parse("#connect localhost 4243 ssl", parser);
+    assertTrue(parser._warningCount == 0);
+    assertTrue(((ConnectCommand)cmd).queryPort() == 4243);
+    assertTrue(((ConnectCommand)cmd).queryTls());
+    cmd = ConnectCommand.parse("#connect localhost TLS", parser);
+    assertTrue(parser._warningCount == 0);
+    assertTrue(((ConnectCommand)cmd).queryPort() == 992);
+    assertTrue(((ConnectCommand)cmd).queryTls());
+    cmd = ConnectCommand.parse("#connect localhost 4242", parser);
+    assertFalse(((ConnectCommand)cmd).queryTls());
+    assertTrue(ConnectCommand.parse("#connect localhost 4243 ssl now", parser) == null);
+    assertTrue(ConnectCommand.parse("#connect localhost ssl 4243", parser) == null);
+    assertTrue(parser._warningCount == 2);
+  }
+}